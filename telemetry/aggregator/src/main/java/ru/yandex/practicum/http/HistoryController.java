@@ -0,0 +1,41 @@
+package ru.yandex.practicum.http;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import ru.yandex.practicum.store.SensorHistoryStore;
+
+import java.util.List;
+
+/**
+ * История последних показаний датчика для отладки и сценариев по трендам.
+ */
+@RestController
+@ConditionalOnProperty(name = "aggregator.history.enabled", havingValue = "true")
+public class HistoryController {
+
+    private final SensorHistoryStore historyStore;
+
+    public HistoryController(SensorHistoryStore historyStore) {
+        this.historyStore = historyStore;
+    }
+
+    @GetMapping("/history/{hubId}/{sensorId}")
+    public List<SensorHistoryStore.Reading> getHistory(@PathVariable String hubId,
+                                                       @PathVariable String sensorId,
+                                                       @RequestParam(defaultValue = "10") int limit) {
+        if (limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit должен быть положительным");
+        }
+        List<SensorHistoryStore.Reading> readings = historyStore.history(hubId, sensorId, limit);
+        if (readings.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Нет показаний датчика " + sensorId + " хаба " + hubId);
+        }
+        return readings;
+    }
+}
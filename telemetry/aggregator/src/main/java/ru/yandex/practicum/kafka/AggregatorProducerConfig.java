@@ -22,6 +22,10 @@ public class AggregatorProducerConfig {
     private String bootstrapServers;
     private String keySerializer;
     private String valueSerializer;
+    // непустой — транзакционный режим: снимки и смещения фиксируются одной транзакцией на пакет;
+    // у каждого экземпляра агрегатора должен быть свой
+    private String transactionalId;
+    private int transactionTimeoutMs = 60000;
 
     @Bean
     public KafkaProducer<String, SpecificRecordBase> kafkaProducer() {
@@ -29,7 +33,16 @@ public class AggregatorProducerConfig {
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, keySerializer);
         config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, valueSerializer);
+        if (isTransactional()) {
+            config.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, transactionalId);
+            config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+            config.put(ProducerConfig.TRANSACTION_TIMEOUT_CONFIG, transactionTimeoutMs);
+        }
 
         return new KafkaProducer<>(config);
     }
+
+    public boolean isTransactional() {
+        return transactionalId != null && !transactionalId.isBlank();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.kafka;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.kafka.streams.StreamsConfig;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Properties;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "aggregator.streams")
+public class AggregatorStreamsConfig {
+
+    private String applicationId = "aggregator-streams";
+    private String stateDir = "/tmp/aggregator-streams";
+    private int numStreamThreads = 1;
+    // копии хранилища на других экземплярах: при их падении разделы переезжают без полного восстановления
+    private int numStandbyReplicas = 1;
+    private String processingGuarantee = StreamsConfig.AT_LEAST_ONCE;
+    private long commitIntervalMs = 1000;
+
+    public Properties toProperties(String bootstrapServers) {
+        Properties config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(StreamsConfig.STATE_DIR_CONFIG, stateDir);
+        config.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, numStreamThreads);
+        config.put(StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG, numStandbyReplicas);
+        config.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, processingGuarantee);
+        config.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, commitIntervalMs);
+
+        return config;
+    }
+}
@@ -0,0 +1,54 @@
+package ru.yandex.practicum.kafka;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.deserializer.SensorsSnapshotDeserializer;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.util.Properties;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "aggregator.changelog")
+public class ChangelogConfig {
+
+    private boolean enabled;
+    private String topic = "telemetry.aggregator.state.v1";
+    private short replicationFactor = 1;
+    private long restoreTimeoutMs = 30000;
+    // чтение снимков вытесненных хабов пакета; идёт в потоке обработки, поэтому ждать его долго нельзя
+    private long lookupTimeoutMs = 1000;
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "aggregator.changelog.enabled", havingValue = "true")
+    public KafkaConsumer<String, SensorsSnapshotAvro> changelogRestoreConsumer(AggregatorConsumerConfig consumerConfig) {
+        Properties config = new Properties();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, consumerConfig.getBootstrapServers());
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 5000);
+        // снимки из отменённых транзакций не должны попасть в восстановленное состояние
+        config.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, SensorsSnapshotDeserializer.class);
+
+        return new KafkaConsumer<>(config);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "aggregator.changelog.enabled", havingValue = "true")
+    public Admin changelogAdmin(AggregatorConsumerConfig consumerConfig) {
+        Properties config = new Properties();
+        config.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, consumerConfig.getBootstrapServers());
+        return Admin.create(config);
+    }
+}
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.deserializer.HubEventDeserializer;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+
+import java.util.Properties;
+
+@Configuration
+public class ScenarioConsumerConfig {
+
+    /**
+     * Консьюмер событий хабов без группы: каждый экземпляр читает все разделы с начала,
+     * потому что показания любого хаба могут попасть к нему после перебалансировки.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "aggregator.suppression.enabled", havingValue = "true")
+    public KafkaConsumer<String, HubEventAvro> scenarioConsumer(AggregatorConsumerConfig consumerConfig) {
+        Properties config = new Properties();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, consumerConfig.getBootstrapServers());
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, HubEventDeserializer.class);
+
+        return new KafkaConsumer<>(config);
+    }
+}
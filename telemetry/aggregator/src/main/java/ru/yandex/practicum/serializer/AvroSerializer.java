@@ -1,33 +0,0 @@
-package ru.yandex.practicum.serializer;
-
-import org.apache.avro.io.BinaryEncoder;
-import org.apache.avro.io.DatumWriter;
-import org.apache.avro.io.EncoderFactory;
-import org.apache.avro.specific.SpecificDatumWriter;
-import org.apache.avro.specific.SpecificRecordBase;
-import org.apache.kafka.common.serialization.Serializer;
-
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
-public class AvroSerializer<T extends SpecificRecordBase> implements Serializer<T> {
-
-    @Override
-    public byte[] serialize(String topic, T data) {
-        if (data == null) {
-            return null;
-        }
-
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        try {
-            DatumWriter<T> datumWriter = new SpecificDatumWriter<>(data.getSchema());
-            BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(outputStream, null);
-            datumWriter.write(data, encoder);
-            encoder.flush();
-            outputStream.close();
-            return outputStream.toByteArray();
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to serialize Avro object", e);
-        }
-    }
-}
@@ -1,75 +1,329 @@
 package ru.yandex.practicum.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.producer.Producer;
-import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
 import org.apache.kafka.common.errors.WakeupException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.AggregatorProducerConfig;
 import ru.yandex.practicum.kafka.KafkaClient;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 public class AggregationStarter {
 
+    private static final long POLL_TIMEOUT_MS = 100;
+
     @Value("${aggregator.kafka.topics.sensors-events}")
     private String sensorsEventsTopic;
 
-    @Value("${aggregator.kafka.topics.snapshots-events}")
-    private String snapshotsEventsTopic;
+    @Value("${aggregator.parallel.enabled:false}")
+    private boolean parallel;
+
+    @Value("${aggregator.engine:POLL}")
+    private AggregatorEngine engine;
 
     private final Producer<String, SpecificRecordBase> producer;
     private final Consumer<String, SpecificRecordBase> consumer;
     private final SnapshotAggregator snapshotAggregator;
+    private final SnapshotEmitter emitter;
+    private final EmitProperties emitProperties;
+    private final Optional<StateChangelog> stateChangelog;
+    private final PartitionParallelAggregation parallelAggregation;
+    private final Optional<StreamsAggregation> streamsAggregation;
+    private final boolean transactional;
+    private final Timer transactionDuration;
+    private final Counter abortedTransactions;
+    // результаты отправки в однопоточном режиме не ожидаются
+    private final List<Future<RecordMetadata>> unawaited = new ArrayList<>();
 
-    public AggregationStarter(KafkaClient kafkaClient, SnapshotAggregator snapshotAggregator) {
+    // момент первого ещё не отправленного изменения в режиме PER_BATCH, 0 — изменений нет
+    private long pendingSinceNanos;
+    private long pendingChanges;
+    // в режиме PER_BATCH прочитаны записи, смещения которых ещё не зафиксированы
+    private boolean uncommitted;
+
+    public AggregationStarter(KafkaClient kafkaClient,
+                              SnapshotAggregator snapshotAggregator,
+                              SnapshotEmitter emitter,
+                              EmitProperties emitProperties,
+                              Optional<StateChangelog> stateChangelog,
+                              PartitionParallelAggregation parallelAggregation,
+                              Optional<StreamsAggregation> streamsAggregation,
+                              AggregatorProducerConfig producerConfig,
+                              MeterRegistry registry) {
         this.producer = kafkaClient.getProducer();
         this.consumer = kafkaClient.getConsumer();
         this.snapshotAggregator = snapshotAggregator;
+        this.emitter = emitter;
+        this.emitProperties = emitProperties;
+        this.stateChangelog = stateChangelog;
+        this.parallelAggregation = parallelAggregation;
+        this.streamsAggregation = streamsAggregation;
+        this.transactional = producerConfig.isTransactional();
+        this.transactionDuration = Timer.builder("aggregator.transaction.duration")
+                .description("Время транзакции пакета: от начала обработки до фиксации")
+                .register(registry);
+        this.abortedTransactions = Counter.builder("aggregator.transaction.aborted")
+                .description("Отменённые транзакции, пакеты которых обработаны заново")
+                .register(registry);
     }
 
     public void start() {
+        if (engine == AggregatorEngine.STREAMS) {
+            streamsAggregation.orElseThrow().start();
+            return;
+        }
+        if (parallel && transactional) {
+            log.warn("Транзакционный режим поддерживается только однопоточным циклом, обработка по разделам отключена");
+        } else if (parallel) {
+            parallelAggregation.start();
+            return;
+        }
         Runtime.getRuntime().addShutdownHook(new Thread(consumer::wakeup));
+        if (transactional) {
+            producer.initTransactions();
+        }
         try {
-            consumer.subscribe(List.of(sensorsEventsTopic));
+            consumer.subscribe(List.of(sensorsEventsTopic), new ConsumerRebalanceListener() {
+                @Override
+                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                    // в транзакционном режиме смещения уже зафиксированы вместе с последним пакетом
+                    if (!transactional) {
+                        flush();
+                        persistSuppressed();
+                        producer.flush();
+                        consumer.commitSync();
+                    }
+                    // без журнала состояние не восстановить, поэтому оно сохраняется на случай возврата разделов
+                    stateChangelog.ifPresent(changelog -> snapshotAggregator.dropPartitions(partitions.stream()
+                            .map(TopicPartition::partition)
+                            .collect(Collectors.toSet())));
+                }
+
+                @Override
+                public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                    snapshotAggregator.claimStored(partitions.stream()
+                            .map(TopicPartition::partition)
+                            .collect(Collectors.toSet()));
+                    stateChangelog.ifPresent(changelog -> changelog.restore(partitions, snapshotAggregator));
+                }
+            });
             while (true) {
-                ConsumerRecords<String, SpecificRecordBase> records = consumer.poll(Duration.ofMillis(100));
-                for (ConsumerRecord<String, SpecificRecordBase> record : records) {
-                    SensorEventAvro event = (SensorEventAvro) record.value();
-
-                    Optional<SensorsSnapshotAvro> updatedSnapshot = snapshotAggregator.updateState(event);
-
-                    updatedSnapshot.ifPresent(snapshot -> {
-                        SensorsSnapshotAvro snap = updatedSnapshot.get();
-                        producer.send(new ProducerRecord<>(
-                                snapshotsEventsTopic,
-                                snapshot.getHubId(),
-                                snap
-                        ));
-                    });
+                ConsumerRecords<String, SpecificRecordBase> records = consumer.poll(pollTimeout());
+                if (transactional) {
+                    processTransaction(records);
+                } else if (emitProperties.getMode() == EmitMode.PER_BATCH) {
+                    processBatch(records);
+                } else {
+                    processEach(records);
                 }
-                consumer.commitAsync();
             }
         } catch (WakeupException ignored) {
             // Игнорируем при выключении
         } catch (Exception e) {
-            // Игнорируем ошибки
+            log.error("Ошибка агрегации, обработка показаний остановлена", e);
         } finally {
             try {
-                producer.flush();
-                consumer.commitSync();
+                if (!transactional) {
+                    flush();
+                    persistSuppressed();
+                    producer.flush();
+                    consumer.commitSync();
+                }
             } finally {
                 consumer.close();
                 producer.close();
             }
         }
     }
-}
\ No newline at end of file
+
+    private void processEach(ConsumerRecords<String, SpecificRecordBase> records) {
+        snapshotAggregator.prefetch(records);
+        applyEach(records);
+        persistSuppressed();
+        consumer.commitAsync();
+        snapshotAggregator.evict();
+    }
+
+    private void applyEach(ConsumerRecords<String, SpecificRecordBase> records) {
+        for (ConsumerRecord<String, SpecificRecordBase> record : records) {
+            SensorEventAvro event = (SensorEventAvro) record.value();
+
+            Optional<SensorsSnapshotAvro> updatedSnapshot = snapshotAggregator.updateState(event, record.partition());
+
+            updatedSnapshot.ifPresent(snapshot -> {
+                emitter.changed();
+                send(snapshot);
+            });
+        }
+    }
+
+    /**
+     * Обрабатывает пакет в одной транзакции: снимки (и записи дельт и журнала) вместе со смещениями пакета
+     * становятся видны читателям с {@code read_committed} только все сразу. Снимки в этом режиме
+     * отправляются в конце каждого пакета, без накопления через несколько poll.
+     * Если транзакцию пришлось отменить, состояние изменённых хабов возвращается, а консьюмер
+     * перематывается к началу пакета, чтобы обработать его заново.
+     */
+    private void processTransaction(ConsumerRecords<String, SpecificRecordBase> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        snapshotAggregator.prefetch(records);
+        snapshotAggregator.beginUndo();
+        try {
+            producer.beginTransaction();
+            if (emitProperties.getMode() == EmitMode.PER_BATCH) {
+                for (ConsumerRecord<String, SpecificRecordBase> record : records) {
+                    if (snapshotAggregator.apply((SensorEventAvro) record.value(), record.partition())) {
+                        emitter.changed();
+                        pendingChanges++;
+                    }
+                }
+                flush();
+            } else {
+                applyEach(records);
+            }
+            persistSuppressed();
+            producer.sendOffsetsToTransaction(nextOffsets(records), consumer.groupMetadata());
+            producer.commitTransaction();
+            snapshotAggregator.commitUndo();
+        } catch (ProducerFencedException | OutOfOrderSequenceException | AuthorizationException e) {
+            // после этих ошибок продюсер непригоден, транзакцию отменит брокер
+            throw e;
+        } catch (KafkaException e) {
+            abortedTransactions.increment();
+            int restored = snapshotAggregator.rollback();
+            abortTransaction(e);
+            rewind(records);
+            log.warn("Транзакция пакета отменена, хабов возвращено {}, пакет будет обработан заново", restored, e);
+            return;
+        }
+        transactionDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        snapshotAggregator.evict();
+    }
+
+    /**
+     * Отменяет транзакцию пакета. Отмена сама может не удаться (продюсер перешёл в состояние фатальной ошибки,
+     * истёк {@code max.block.ms}) — тогда продюсер непригоден и цикл останавливается, а незавершённую
+     * транзакцию брокер отменит сам по {@code transaction.timeout.ms}.
+     */
+    private void abortTransaction(KafkaException cause) {
+        try {
+            producer.abortTransaction();
+        } catch (KafkaException e) {
+            e.addSuppressed(cause);
+            throw e;
+        }
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> nextOffsets(ConsumerRecords<String, SpecificRecordBase> records) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : records.partitions()) {
+            List<ConsumerRecord<String, SpecificRecordBase>> partitionRecords = records.records(partition);
+            offsets.put(partition, new OffsetAndMetadata(partitionRecords.get(partitionRecords.size() - 1).offset() + 1));
+        }
+        return offsets;
+    }
+
+    private void rewind(ConsumerRecords<String, SpecificRecordBase> records) {
+        for (TopicPartition partition : records.partitions()) {
+            consumer.seek(partition, records.records(partition).get(0).offset());
+        }
+    }
+
+    /**
+     * Применяет пакет к состоянию и отправляет по снимку на каждый изменённый хаб — сразу после пакета
+     * или, если пакеты идут часто, не позже {@code maxBatchLatencyMs} от первого неотправленного изменения.
+     * Смещения фиксируются только когда неотправленных изменений нет.
+     */
+    private void processBatch(ConsumerRecords<String, SpecificRecordBase> records) {
+        snapshotAggregator.prefetch(records);
+        uncommitted |= !records.isEmpty();
+        for (ConsumerRecord<String, SpecificRecordBase> record : records) {
+            if (snapshotAggregator.apply((SensorEventAvro) record.value(), record.partition())) {
+                emitter.changed();
+                pendingChanges++;
+                if (pendingSinceNanos == 0) {
+                    pendingSinceNanos = System.nanoTime();
+                }
+            }
+            if (pendingSinceNanos != 0 && remainingLatencyNanos() <= 0) {
+                flush();
+            }
+        }
+        if (pendingSinceNanos != 0 && (records.isEmpty() || remainingLatencyNanos() <= 0
+                || emitProperties.getMaxBatchLatencyMs() == 0)) {
+            flush();
+        }
+        // последние изменения отправляются по пустому poll, и смещения их пакетов фиксируются тогда же
+        if (pendingSinceNanos == 0 && uncommitted) {
+            persistSuppressed();
+            consumer.commitAsync();
+            uncommitted = false;
+            snapshotAggregator.evict();
+        }
+    }
+
+    private void flush() {
+        if (snapshotAggregator.hasDirty()) {
+            emitter.flushed(pendingChanges, snapshotAggregator.drainDirty(this::send));
+        }
+        pendingChanges = 0;
+        pendingSinceNanos = 0;
+    }
+
+    // изменения без снимка попадают в журнал до фиксации смещений, иначе их не восстановить
+    private void persistSuppressed() {
+        emitter.persistSuppressed(snapshotAggregator, unawaited);
+        unawaited.clear();
+    }
+
+    private void send(SensorsSnapshotAvro snapshot) {
+        emitter.emit(snapshotAggregator, snapshot, unawaited);
+        unawaited.clear();
+    }
+
+    private Duration pollTimeout() {
+        if (pendingSinceNanos == 0) {
+            return Duration.ofMillis(POLL_TIMEOUT_MS);
+        }
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(remainingLatencyNanos());
+        return Duration.ofMillis(Math.max(0, Math.min(POLL_TIMEOUT_MS, remainingMs)));
+    }
+
+    private long remainingLatencyNanos() {
+        return pendingSinceNanos + TimeUnit.MILLISECONDS.toNanos(emitProperties.getMaxBatchLatencyMs())
+                - System.nanoTime();
+    }
+}
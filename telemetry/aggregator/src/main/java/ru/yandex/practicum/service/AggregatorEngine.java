@@ -0,0 +1,8 @@
+package ru.yandex.practicum.service;
+
+public enum AggregatorEngine {
+    // собственный цикл poll (однопоточный или по разделам)
+    POLL,
+    // топология Kafka Streams с постоянным хранилищем состояния
+    STREAMS
+}
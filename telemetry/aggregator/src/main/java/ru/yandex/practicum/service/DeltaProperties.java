@@ -0,0 +1,19 @@
+package ru.yandex.practicum.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "aggregator.delta")
+public class DeltaProperties {
+
+    private boolean enabled = false;
+    // ключевой кадр не реже, чем через столько дельт хаба
+    private int keyframeEvery = 100;
+    // и не реже, чем через столько миллисекунд — чтобы новый потребитель собрал снапшот быстро
+    private long keyframeIntervalMs = 30000;
+}
@@ -0,0 +1,8 @@
+package ru.yandex.practicum.service;
+
+public enum EmitMode {
+    // снимок отправляется после каждого изменившего состояние показания
+    PER_EVENT,
+    // показания пакета сначала применяются к состоянию, затем по каждому изменённому хабу уходит один снимок
+    PER_BATCH
+}
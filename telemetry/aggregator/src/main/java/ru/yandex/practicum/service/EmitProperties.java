@@ -0,0 +1,17 @@
+package ru.yandex.practicum.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "aggregator.emit")
+public class EmitProperties {
+
+    private EmitMode mode = EmitMode.PER_EVENT;
+    // сколько изменение может ждать отправки в режиме PER_BATCH, накапливаясь по нескольким poll
+    private long maxBatchLatencyMs = 100;
+}
@@ -0,0 +1,93 @@
+package ru.yandex.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Правила вытеснения хабов из {@link SnapshotAggregator} и их возврата. Вытесненный хаб
+ * при следующем показании загружается из журнала состояния; без журнала он начинается заново,
+ * и датчики, молчащие с момента вытеснения, до своего показания в снимок не попадут. Если снимок
+ * не успел прочитаться, хаб тоже начинается заново, а снимок дочитывается с последующими пакетами.
+ */
+@Component
+public class HubCache {
+
+    private final HubCacheProperties properties;
+    private final Optional<StateChangelog> stateChangelog;
+    private final long idleTimeoutNanos;
+
+    private final Counter evictedIdle;
+    private final Counter evictedSize;
+    private final Counter rehydrated;
+    private final Counter lookupTimeouts;
+
+    public HubCache(HubCacheProperties properties, Optional<StateChangelog> stateChangelog, MeterRegistry registry) {
+        this.properties = properties;
+        this.stateChangelog = stateChangelog;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(properties.getIdleTimeoutMs());
+
+        this.evictedIdle = Counter.builder("aggregator.hub-cache.evictions")
+                .description("Хабы, вытесненные из памяти")
+                .tag("cause", "idle")
+                .register(registry);
+        this.evictedSize = Counter.builder("aggregator.hub-cache.evictions")
+                .description("Хабы, вытесненные из памяти")
+                .tag("cause", "size")
+                .register(registry);
+        this.rehydrated = Counter.builder("aggregator.hub-cache.rehydrations")
+                .description("Хабы, загруженные из журнала состояния после вытеснения")
+                .register(registry);
+        this.lookupTimeouts = Counter.builder("aggregator.hub-cache.lookup-timeouts")
+                .description("Снимки хабов, не прочитанные из журнала состояния за отведённое время")
+                .register(registry);
+    }
+
+    boolean isBounded() {
+        return properties.isEnabled();
+    }
+
+    int maxHubs() {
+        return properties.getMaxHubs();
+    }
+
+    boolean isIdle(long lastAccessNanos, long nowNanos) {
+        return nowNanos - lastAccessNanos >= idleTimeoutNanos;
+    }
+
+    void evicted(boolean idle) {
+        (idle ? evictedIdle : evictedSize).increment();
+    }
+
+    /**
+     * Запрос последнего снимка хаба, которого нет в памяти, — если хаб уже встречался и включён журнал.
+     */
+    Optional<StateChangelog.Lookup> lookupOf(String hubId, int partition) {
+        if (!properties.isEnabled() || stateChangelog.isEmpty()) {
+            return Optional.empty();
+        }
+        return stateChangelog.get().lookupOf(hubId, partition);
+    }
+
+    /**
+     * Читает снимки вытесненных хабов одним обращением к журналу.
+     *
+     * @return запросы, не выполненные за {@code lookupTimeoutMs}
+     */
+    List<StateChangelog.Lookup> rehydrate(Collection<StateChangelog.Lookup> lookups,
+                                          BiConsumer<StateChangelog.Lookup, SensorsSnapshotAvro> found) {
+        List<StateChangelog.Lookup> unresolved = stateChangelog.orElseThrow().read(lookups, (lookup, snapshot) -> {
+            rehydrated.increment();
+            found.accept(lookup, snapshot);
+        });
+        lookupTimeouts.increment(unresolved.size());
+        return unresolved;
+    }
+}
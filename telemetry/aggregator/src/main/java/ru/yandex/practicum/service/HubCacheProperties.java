@@ -0,0 +1,19 @@
+package ru.yandex.practicum.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "aggregator.hub-cache")
+public class HubCacheProperties {
+
+    private boolean enabled = false;
+    // хабов в памяти на один экземпляр (в параллельном режиме — на раздел)
+    private int maxHubs = 100000;
+    // хаб без показаний дольше этого вытесняется, даже если место есть
+    private long idleTimeoutMs = 3600000;
+}
@@ -0,0 +1,326 @@
+package ru.yandex.practicum.service;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.store.OffHeapSensorStore;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Изменяемое состояние датчиков одного хаба. Показание обновляет запись датчика на месте,
+ * а наружу выдаются только независимые копии ({@link #snapshot}, {@link #delta}), собранные в момент выдачи,
+ * так что последующие показания их не меняют.
+ * Флаг {@code dirty} показывает, что снимок изменился с момента последней выдачи,
+ * {@code unlogged} — что изменения ещё не записаны в журнал состояния (снимок мог быть подавлен),
+ * а {@code changed} — какие датчики изменились с последней дельты.
+ * <p>
+ * Если задано хранилище вне кучи, показания сравниваются и записываются в нём, хаб помнит только
+ * id своих датчиков, а карта состояний собирается из хранилища при выдаче снимка.
+ */
+class HubState {
+
+    private final Map<String, SensorStateAvro> sensors = new HashMap<>();
+    private final SensorsSnapshotAvro snapshot;
+    private final Set<String> changed = new HashSet<>();
+    private final OffHeapSensorStore store;
+    private final Set<String> storedSensors;
+    // раздел топика показаний, из которого приходят события хаба; -1 — раздел неизвестен
+    private int partition;
+    private boolean dirty;
+    private boolean unlogged;
+    private long lastAccessNanos;
+    private long lastEmitNanos;
+    // истинность условий сценариев по датчикам (см. SuppressionGate) и версия порогов, по которой она посчитана
+    private final Map<String, long[]> truth = new HashMap<>();
+    private long truthVersion = Long.MIN_VALUE;
+    private long nextSequence;
+    private int deltasSinceKeyframe;
+    private long lastKeyframeNanos;
+    // запись потока дельт могла потеряться при повторной отправке: следующая будет ключевым кадром
+    private boolean keyframeRequired;
+
+    HubState(String hubId, Instant timestamp, int partition, OffHeapSensorStore store) {
+        this.snapshot = SensorsSnapshotAvro.newBuilder()
+                .setHubId(hubId)
+                .setTimestamp(timestamp)
+                .setSensorsState(sensors)
+                .build();
+        this.partition = partition;
+        this.lastAccessNanos = System.nanoTime();
+        this.lastEmitNanos = lastAccessNanos;
+        this.store = store;
+        this.storedSensors = store == null ? null : new HashSet<>();
+    }
+
+    /**
+     * Состояние, восстановленное из снимка журнала.
+     */
+    static HubState restored(SensorsSnapshotAvro stored, int partition, OffHeapSensorStore store) {
+        HubState hub = new HubState(stored.getHubId(), stored.getTimestamp(), partition, store);
+        if (store == null) {
+            // состояния датчиков меняются на месте, поэтому записи исходного снимка не разделяются с ним
+            stored.getSensorsState().forEach((sensorId, state) -> hub.sensors.put(sensorId, copyOf(state)));
+        } else {
+            stored.getSensorsState().forEach((sensorId, state) -> {
+                store.put(stored.getHubId(), sensorId, partition, state);
+                hub.storedSensors.add(sensorId);
+            });
+        }
+        return hub;
+    }
+
+    /**
+     * Хаб, датчики которого уже лежат в хранилище (файл пережил перезапуск).
+     */
+    void addStored(String sensorId, Instant timestamp) {
+        storedSensors.add(sensorId);
+        if (timestamp.isAfter(snapshot.getTimestamp())) {
+            snapshot.setTimestamp(timestamp);
+        }
+    }
+
+    /**
+     * @return {@code false}, если показание старее сохранённого или не изменило данных датчика
+     */
+    boolean apply(SensorEventAvro event) {
+        if (store != null) {
+            return applyStored(event);
+        }
+        SensorStateAvro state = sensors.get(event.getId());
+        if (state == null) {
+            sensors.put(event.getId(), SensorStateAvro.newBuilder()
+                    .setTimestamp(event.getTimestamp())
+                    .setData(event.getPayload())
+                    .build());
+        } else {
+            if (state.getTimestamp().isAfter(event.getTimestamp()) || state.getData().equals(event.getPayload())) {
+                return false;
+            }
+            state.setTimestamp(event.getTimestamp());
+            state.setData(event.getPayload());
+        }
+        markChanged(event);
+        return true;
+    }
+
+    /**
+     * Дополняет хаб, начатый заново, его снимком из журнала: берутся датчики, которых в хабе нет,
+     * и показания новее имеющихся. Метка времени снимка назад не сдвигается.
+     *
+     * @return {@code true}, если состояние изменилось
+     */
+    boolean merge(SensorsSnapshotAvro stored) {
+        Instant latest = snapshot.getTimestamp();
+        boolean merged = false;
+        for (Map.Entry<String, SensorStateAvro> entry : stored.getSensorsState().entrySet()) {
+            merged |= apply(SensorEventAvro.newBuilder()
+                    .setId(entry.getKey())
+                    .setHubId(snapshot.getHubId())
+                    .setTimestamp(entry.getValue().getTimestamp())
+                    .setPayload(entry.getValue().getData())
+                    .build());
+        }
+        if (latest.isAfter(snapshot.getTimestamp())) {
+            snapshot.setTimestamp(latest);
+        }
+        return merged;
+    }
+
+    private boolean applyStored(SensorEventAvro event) {
+        int result = store.compareAndUpdate(snapshot.getHubId(), event.getId(), partition,
+                event.getTimestamp().toEpochMilli(), event.getPayload());
+        // датчик мог остаться в хранилище от прежнего состояния хаба: тогда он снова входит в снимок
+        boolean known = storedSensors.contains(event.getId());
+        if (!known) {
+            storedSensors.add(event.getId());
+        }
+        if (known && (result == OffHeapSensorStore.STALE || result == OffHeapSensorStore.UNCHANGED)) {
+            return false;
+        }
+        markChanged(event);
+        return true;
+    }
+
+    private void markChanged(SensorEventAvro event) {
+        snapshot.setTimestamp(event.getTimestamp());
+        changed.add(event.getId());
+        dirty = true;
+        unlogged = true;
+    }
+
+    int partition() {
+        return partition;
+    }
+
+    void assignPartition(int partition) {
+        this.partition = partition;
+        if (store != null) {
+            for (String sensorId : storedSensors) {
+                store.assignPartition(snapshot.getHubId(), sensorId, partition);
+            }
+        }
+    }
+
+    /**
+     * Удаляет состояния датчиков хаба из хранилища вне кучи: хаб забыт или вытеснен,
+     * и его датчики не должны загрузиться после перезапуска.
+     */
+    void release() {
+        if (store != null) {
+            for (String sensorId : storedSensors) {
+                store.remove(snapshot.getHubId(), sensorId);
+            }
+            storedSensors.clear();
+        }
+    }
+
+    long lastAccessNanos() {
+        return lastAccessNanos;
+    }
+
+    void touch(long nowNanos) {
+        lastAccessNanos = nowNanos;
+    }
+
+    long lastEmitNanos() {
+        return lastEmitNanos;
+    }
+
+    /**
+     * Забывает истинность условий, если пороги сценариев хаба сменились.
+     *
+     * @return {@code true}, если версия порогов изменилась
+     */
+    boolean resetTruthIfStale(long version) {
+        if (version == truthVersion) {
+            return false;
+        }
+        truthVersion = version;
+        truth.clear();
+        return true;
+    }
+
+    /**
+     * @return {@code true}, если истинность хотя бы одного условия датчика изменилась
+     */
+    boolean updateTruth(String sensorId, long value) {
+        long[] current = truth.get(sensorId);
+        if (current == null) {
+            truth.put(sensorId, new long[]{value});
+            return value != 0;
+        }
+        if (current[0] == value) {
+            return false;
+        }
+        current[0] = value;
+        return true;
+    }
+
+    /**
+     * Изменение применено, но снимок не нужен: хаб не ставится в очередь на отправку.
+     * В журнал состояния изменение всё равно должно попасть ({@link #changelogSnapshot}).
+     */
+    void suppress() {
+        dirty = false;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    boolean isUnlogged() {
+        return unlogged;
+    }
+
+    /**
+     * Снимок для записи только в журнал состояния, без отправки читателям: {@code dirty} и время
+     * последней отправки не меняются.
+     */
+    SensorsSnapshotAvro changelogSnapshot() {
+        unlogged = false;
+        return copy();
+    }
+
+    /**
+     * Снимок хаба на текущий момент — независимая копия, которую последующие показания не меняют.
+     * Сборка стоит O(датчиков хаба), столько же, сколько и сериализация снимка.
+     */
+    SensorsSnapshotAvro snapshot() {
+        dirty = false;
+        // выданный снимок записывается в журнал вместе с отправкой
+        unlogged = false;
+        lastEmitNanos = System.nanoTime();
+        return copy();
+    }
+
+    /**
+     * Независимая копия текущего снимка, не сбрасывающая {@code dirty}, — для отката транзакции.
+     */
+    SensorsSnapshotAvro copy() {
+        materialize();
+        Map<String, SensorStateAvro> states = new HashMap<>((int) (sensors.size() / 0.75f) + 1);
+        sensors.forEach((sensorId, state) -> states.put(sensorId, copyOf(state)));
+        return new SensorsSnapshotAvro(snapshot.getHubId(), snapshot.getTimestamp(), states);
+    }
+
+    String hubId() {
+        return snapshot.getHubId();
+    }
+
+    private void materialize() {
+        if (store != null) {
+            sensors.clear();
+            for (String sensorId : storedSensors) {
+                sensors.put(sensorId, store.read(snapshot.getHubId(), sensorId));
+            }
+        }
+    }
+
+    void requireKeyframe() {
+        keyframeRequired = true;
+    }
+
+    /**
+     * Следующая запись потока дельт: изменённые с прошлой записи датчики или, если пора, ключевой кадр
+     * со всеми датчиками. Первая запись хаба всегда ключевой кадр.
+     */
+    SensorsSnapshotDeltaAvro delta(int keyframeEvery, long keyframeIntervalNanos, long nowNanos) {
+        boolean keyframe = nextSequence == 0
+                || keyframeRequired
+                || deltasSinceKeyframe >= keyframeEvery
+                || nowNanos - lastKeyframeNanos >= keyframeIntervalNanos;
+        Map<String, SensorStateAvro> states;
+        if (keyframe) {
+            states = new HashMap<>((int) (sensors.size() / 0.75f) + 1);
+            sensors.forEach((sensorId, state) -> states.put(sensorId, copyOf(state)));
+            deltasSinceKeyframe = 0;
+            lastKeyframeNanos = nowNanos;
+            keyframeRequired = false;
+        } else {
+            states = new HashMap<>(changed.size() * 2);
+            for (String sensorId : changed) {
+                states.put(sensorId, copyOf(sensors.get(sensorId)));
+            }
+            deltasSinceKeyframe++;
+        }
+        changed.clear();
+        return SensorsSnapshotDeltaAvro.newBuilder()
+                .setHubId(snapshot.getHubId())
+                .setSequence(nextSequence++)
+                .setKeyframe(keyframe)
+                .setTimestamp(snapshot.getTimestamp())
+                .setSensorsState(states)
+                .build();
+    }
+
+    // данные показания (ClimateSensorAvro и т.п.) не меняются на месте, поэтому копируется только обёртка
+    private static SensorStateAvro copyOf(SensorStateAvro state) {
+        return new SensorStateAvro(state.getTimestamp(), state.getData());
+    }
+}
@@ -0,0 +1,202 @@
+package ru.yandex.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.KafkaClient;
+import ru.yandex.practicum.store.SensorHistoryStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Многопоточная агрегация: по обработчику ({@link PartitionWorker}) на каждый назначенный раздел,
+ * у каждого своя часть состояния. Поток консьюмера только раздаёт записи: раздел с переданным
+ * обработчику пакетом ставится на паузу, а после подтверждения Kafka всех снимков пакета его смещение
+ * фиксируется и раздел снимается с паузы. При отзыве раздела текущий пакет дожидается,
+ * смещение фиксируется синхронно, а состояние раздела отбрасывается — новый владелец восстановит
+ * его из журнала состояния, если он включён.
+ * <p>
+ * Ошибка пакета останавливает только его раздел: консьюмер перематывается к началу пакета, и после паузы
+ * пакет обрабатывается заново тем же обработчиком (его состояние возвращено к началу пакета)
+ * или новым, восстановленным из журнала, если вернуть состояние не удалось.
+ */
+@Slf4j
+@Component
+public class PartitionParallelAggregation {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+    private static final long RETRY_BACKOFF_MS = 1000;
+
+    @Value("${aggregator.kafka.topics.sensors-events}")
+    private String sensorsEventsTopic;
+
+    @Value("${aggregator.parallel.revoke-timeout-ms:10000}")
+    private long revokeTimeoutMs;
+
+    private final Producer<String, SpecificRecordBase> producer;
+    private final Consumer<String, SpecificRecordBase> consumer;
+    private final SnapshotEmitter emitter;
+    private final EmitProperties emitProperties;
+    private final Optional<StateChangelog> stateChangelog;
+    private final HubCache hubCache;
+    private final SuppressionGate gate;
+    private final Optional<SensorHistoryStore> history;
+    private final Map<TopicPartition, PartitionWorker> workers = new HashMap<>();
+    // разделы после ошибки пакета: остаются на паузе до указанного момента (System.nanoTime)
+    private final Map<TopicPartition, Long> retryAt = new HashMap<>();
+
+    public PartitionParallelAggregation(KafkaClient kafkaClient,
+                                        SnapshotEmitter emitter,
+                                        EmitProperties emitProperties,
+                                        Optional<StateChangelog> stateChangelog,
+                                        HubCache hubCache,
+                                        SuppressionGate gate,
+                                        Optional<SensorHistoryStore> history) {
+        this.producer = kafkaClient.getProducer();
+        this.consumer = kafkaClient.getConsumer();
+        this.emitter = emitter;
+        this.emitProperties = emitProperties;
+        this.stateChangelog = stateChangelog;
+        this.hubCache = hubCache;
+        this.gate = gate;
+        this.history = history;
+    }
+
+    public void start() {
+        Runtime.getRuntime().addShutdownHook(new Thread(consumer::wakeup));
+        try {
+            consumer.subscribe(List.of(sensorsEventsTopic), new ConsumerRebalanceListener() {
+                @Override
+                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                    revoke(partitions);
+                }
+
+                @Override
+                public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                    assign(partitions);
+                }
+            });
+            while (true) {
+                ConsumerRecords<String, SpecificRecordBase> records = consumer.poll(POLL_TIMEOUT);
+                for (TopicPartition partition : records.partitions()) {
+                    workers.get(partition).submit(records.records(partition));
+                    consumer.pause(Set.of(partition));
+                }
+                commitCompleted();
+                resumeRetried();
+            }
+        } catch (WakeupException ignored) {
+            // Игнорируем при выключении
+        } catch (Exception e) {
+            log.error("Ошибка многопоточной агрегации", e);
+        } finally {
+            try {
+                revoke(List.copyOf(workers.keySet()));
+            } finally {
+                consumer.close();
+                producer.close();
+            }
+        }
+    }
+
+    private void commitCompleted() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        List<TopicPartition> failed = new ArrayList<>();
+        workers.forEach((partition, worker) -> {
+            try {
+                Long next = worker.completedOffset();
+                if (next != null) {
+                    offsets.put(partition, new OffsetAndMetadata(next));
+                }
+            } catch (CompletionException e) {
+                log.error("Пакет раздела {} не обработан, раздел будет прочитан заново со смещения {}",
+                        partition, worker.batchStart(), e.getCause());
+                failed.add(partition);
+            }
+        });
+        failed.forEach(this::retry);
+        if (!offsets.isEmpty()) {
+            consumer.commitAsync(offsets, null);
+            consumer.resume(offsets.keySet());
+        }
+    }
+
+    /**
+     * Перематывает раздел к началу неудавшегося пакета и оставляет его на паузе на {@value #RETRY_BACKOFF_MS} мс.
+     * Обработчик, состояние которого не удалось вернуть к началу пакета, заменяется новым.
+     */
+    private void retry(TopicPartition partition) {
+        PartitionWorker worker = workers.get(partition);
+        consumer.seek(partition, worker.batchStart());
+        if (!worker.isIntact()) {
+            log.warn("Состояние раздела {} не удалось вернуть к началу пакета, обработчик создаётся заново", partition);
+            worker.close();
+            workers.put(partition, newWorker(partition));
+        }
+        retryAt.put(partition, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_BACKOFF_MS));
+    }
+
+    private void resumeRetried() {
+        long now = System.nanoTime();
+        List<TopicPartition> ready = new ArrayList<>();
+        retryAt.forEach((partition, at) -> {
+            if (now - at >= 0) {
+                ready.add(partition);
+            }
+        });
+        if (!ready.isEmpty()) {
+            ready.forEach(retryAt::remove);
+            consumer.resume(ready);
+        }
+    }
+
+    private void assign(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            workers.put(partition, newWorker(partition));
+        }
+        log.info("Назначены разделы {}, обработчиков {}", partitions, workers.size());
+    }
+
+    private PartitionWorker newWorker(TopicPartition partition) {
+        PartitionWorker worker = new PartitionWorker(partition, emitter, emitProperties.getMode(),
+                hubCache, gate, history);
+        stateChangelog.ifPresent(changelog -> changelog.restore(List.of(partition), worker.shard()));
+        return worker;
+    }
+
+    private void revoke(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            retryAt.remove(partition);
+            PartitionWorker worker = workers.remove(partition);
+            if (worker == null) {
+                continue;
+            }
+            Long next = worker.awaitCompletion(revokeTimeoutMs);
+            if (next != null) {
+                offsets.put(partition, new OffsetAndMetadata(next));
+            }
+            worker.close();
+        }
+        if (!offsets.isEmpty()) {
+            consumer.commitSync(offsets);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package ru.yandex.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.store.SensorHistoryStore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Обработчик одного раздела топика показаний: свой поток и своё состояние хабов раздела.
+ * Пакет записей считается обработанным, только когда Kafka подтвердила все отправленные по нему снимки,
+ * включая записи журнала состояния по подавленным изменениям. При ошибке отправки текущие снимки
+ * затронутых хабов отправляются повторно, пока не будут приняты,
+ * а раздел всё это время остаётся на паузе.
+ * <p>
+ * Если пакет завершился исключением, состояние шарда возвращается к началу пакета, и пакет можно прочитать
+ * заново с {@link #batchStart}; {@link #isIntact} показывает, удалось ли вернуть состояние.
+ */
+@Slf4j
+class PartitionWorker implements AutoCloseable {
+
+    private static final long RETRY_BACKOFF_MS = 500;
+    private static final long STOP_WARN_MS = 5_000;
+
+    private final TopicPartition partition;
+    private final SnapshotAggregator shard;
+    private final SnapshotEmitter emitter;
+    private final EmitMode mode;
+    private final ExecutorService executor;
+    private volatile boolean closed;
+    // false, пока пакет применяется, и после ошибки, состояние после которой вернуть не удалось
+    private volatile boolean intact = true;
+    private long batchStart;
+    // смещение, с которого продолжать после текущего пакета; null — пакета нет
+    private CompletableFuture<Long> current;
+
+    PartitionWorker(TopicPartition partition, SnapshotEmitter emitter, EmitMode mode, HubCache hubCache,
+                    SuppressionGate gate, Optional<SensorHistoryStore> history) {
+        this.partition = partition;
+        this.shard = new SnapshotAggregator(hubCache, gate, history);
+        this.emitter = emitter;
+        this.mode = mode;
+        this.executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "aggregator-" + partition));
+    }
+
+    SnapshotAggregator shard() {
+        return shard;
+    }
+
+    void submit(List<ConsumerRecord<String, SpecificRecordBase>> records) {
+        batchStart = records.get(0).offset();
+        current = CompletableFuture.supplyAsync(() -> process(records), executor);
+    }
+
+    /**
+     * Смещение первой записи последнего переданного пакета — с него пакет читается заново после ошибки.
+     */
+    long batchStart() {
+        return batchStart;
+    }
+
+    /**
+     * @return {@code false}, если пакет завершился ошибкой, а состояние шарда не удалось вернуть к его началу
+     */
+    boolean isIntact() {
+        return intact;
+    }
+
+    /**
+     * @return смещение для фиксации, если пакет обработан, иначе {@code null}
+     * @throws java.util.concurrent.CompletionException если пакет завершился ошибкой
+     */
+    Long completedOffset() {
+        if (current == null || !current.isDone()) {
+            return null;
+        }
+        CompletableFuture<Long> done = current;
+        current = null;
+        return done.join();
+    }
+
+    /**
+     * Дожидается текущего пакета при отзыве раздела.
+     *
+     * @return смещение для фиксации или {@code null}, если пакета нет или он не успел завершиться
+     */
+    Long awaitCompletion(long timeoutMs) {
+        if (current == null) {
+            return null;
+        }
+        try {
+            return current.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            log.warn("Раздел {} отозван до подтверждения отправки снимков, пакет будет обработан заново", partition);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            current = null;
+        }
+    }
+
+    /**
+     * Останавливает поток раздела и ждёт его завершения: только после этого раздел может получить
+     * новый обработчик, иначе два потока писали бы в историю показаний одних и тех же датчиков.
+     * Хабы шарда забываются — новый обработчик загрузит их заново.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(STOP_WARN_MS, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+                log.warn("Обработчик раздела {} ещё не остановился", partition);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        shard.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long process(List<ConsumerRecord<String, SpecificRecordBase>> records) {
+        shard.prefetch(records);
+        intact = false;
+        shard.beginUndo();
+        try {
+            long next = emit(records);
+            shard.commitUndo();
+            intact = true;
+            shard.evict();
+            return next;
+        } catch (RuntimeException e) {
+            shard.rollback();
+            intact = true;
+            throw e;
+        }
+    }
+
+    private long emit(List<ConsumerRecord<String, SpecificRecordBase>> records) {
+        List<Future<RecordMetadata>> sent = new ArrayList<>();
+        Set<String> touched = new HashSet<>();
+        if (mode == EmitMode.PER_BATCH) {
+            long changes = 0;
+            for (ConsumerRecord<String, SpecificRecordBase> record : records) {
+                SensorEventAvro event = (SensorEventAvro) record.value();
+                if (shard.apply(event, partition.partition())) {
+                    emitter.changed();
+                    touched.add(event.getHubId());
+                    changes++;
+                }
+            }
+            emitter.flushed(changes, shard.drainDirty(snapshot -> emitter.emit(shard, snapshot, sent)));
+        } else {
+            for (ConsumerRecord<String, SpecificRecordBase> record : records) {
+                SensorEventAvro event = (SensorEventAvro) record.value();
+                shard.updateState(event, partition.partition()).ifPresent(snapshot -> {
+                    emitter.changed();
+                    touched.add(event.getHubId());
+                    emitter.emit(shard, snapshot, sent);
+                });
+            }
+        }
+        List<String> logged = emitter.persistSuppressed(shard, sent);
+
+        while (!awaitAll(sent)) {
+            sent.clear();
+            if (closed) {
+                throw new IllegalStateException("Обработчик раздела " + partition + " остановлен");
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(RETRY_BACKOFF_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Обработчик раздела " + partition + " прерван", e);
+            }
+            for (String hubId : touched) {
+                emitter.resend(shard, hubId, sent);
+            }
+            for (String hubId : logged) {
+                if (!touched.contains(hubId)) {
+                    emitter.relog(shard, hubId, sent);
+                }
+            }
+        }
+        return records.get(records.size() - 1).offset() + 1;
+    }
+
+    private boolean awaitAll(List<Future<RecordMetadata>> sent) {
+        try {
+            for (Future<RecordMetadata> result : sent) {
+                result.get();
+            }
+            return true;
+        } catch (ExecutionException e) {
+            log.warn("Не удалось отправить снимки раздела {}, повторная отправка", partition, e.getCause());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Обработчик раздела " + partition + " прерван", e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Фоновое чтение топика событий хабов в {@link ScenarioThresholds}: все разделы с начала,
+ * после чего пороги считаются загруженными и подавление снимков включается.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "aggregator.suppression.enabled", havingValue = "true")
+public class ScenarioListener {
+
+    @Value("${aggregator.kafka.topics.hubs-events}")
+    private String hubsEventsTopic;
+
+    private final KafkaConsumer<String, HubEventAvro> consumer;
+    private final ScenarioThresholds thresholds;
+    private final Thread thread = new Thread(this::run, "scenario-listener");
+
+    public ScenarioListener(KafkaConsumer<String, HubEventAvro> scenarioConsumer, ScenarioThresholds thresholds) {
+        this.consumer = scenarioConsumer;
+        this.thresholds = thresholds;
+    }
+
+    @PostConstruct
+    public void start() {
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        consumer.wakeup();
+        thread.join(1000);
+    }
+
+    private void run() {
+        try {
+            List<TopicPartition> partitions = consumer.partitionsFor(hubsEventsTopic).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            consumer.assign(partitions);
+            consumer.seekToBeginning(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            while (true) {
+                for (ConsumerRecord<String, HubEventAvro> record : consumer.poll(Duration.ofMillis(1000))) {
+                    if (record.value() != null) {
+                        thresholds.apply(record.value());
+                    }
+                }
+                if (!thresholds.isCaughtUp() && endOffsets.entrySet().stream()
+                        .allMatch(end -> consumer.position(end.getKey()) >= end.getValue())) {
+                    thresholds.markCaughtUp();
+                }
+            }
+        } catch (WakeupException ignored) {
+            // Игнорируем при выключении
+        } catch (Exception e) {
+            thresholds.invalidate();
+            log.error("Ошибка чтения событий хабов, подавление снимков отключено", e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioConditionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioRemovedEventAvro;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пороги условий сценариев по хабам и датчикам, собранные из событий хабов.
+ * Состояние хаба неизменяемо и заменяется целиком, поэтому его можно читать из потоков агрегации
+ * без блокировок; версия меняется при каждом добавлении или удалении сценария.
+ */
+@Slf4j
+@Component
+public class ScenarioThresholds {
+
+    private final Map<String, HubThresholds> hubs = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private volatile boolean caughtUp;
+
+    HubThresholds get(String hubId) {
+        return hubs.get(hubId);
+    }
+
+    boolean isCaughtUp() {
+        return caughtUp;
+    }
+
+    void markCaughtUp() {
+        caughtUp = true;
+        log.info("Сценарии загружены: хабов {}", hubs.size());
+    }
+
+    /**
+     * Пороги больше не отражают топик событий хабов — подавление снимков прекращается.
+     */
+    void invalidate() {
+        caughtUp = false;
+    }
+
+    void apply(HubEventAvro event) {
+        if (event.getPayload() instanceof ScenarioAddedEventAvro added) {
+            hubs.compute(event.getHubId(), (hubId, current) -> {
+                Map<String, List<ScenarioConditionAvro>> scenarios =
+                        current == null ? new HashMap<>() : new HashMap<>(current.scenarios());
+                scenarios.put(added.getName(), List.copyOf(added.getConditions()));
+                return index(scenarios);
+            });
+        } else if (event.getPayload() instanceof ScenarioRemovedEventAvro removed) {
+            hubs.computeIfPresent(event.getHubId(), (hubId, current) -> {
+                Map<String, List<ScenarioConditionAvro>> scenarios = new HashMap<>(current.scenarios());
+                scenarios.remove(removed.getName());
+                return scenarios.isEmpty() ? null : index(scenarios);
+            });
+        }
+    }
+
+    private HubThresholds index(Map<String, List<ScenarioConditionAvro>> scenarios) {
+        Map<String, List<Threshold>> bySensor = new HashMap<>();
+        for (List<ScenarioConditionAvro> conditions : scenarios.values()) {
+            for (ScenarioConditionAvro condition : conditions) {
+                Integer value = switch (condition.getValue()) {
+                    case Integer number -> number;
+                    case Boolean flag -> flag ? 1 : 0;
+                    case null, default -> null;
+                };
+                if (value == null) {
+                    continue;
+                }
+                List<Threshold> thresholds = bySensor.computeIfAbsent(condition.getSensorId(), id -> new ArrayList<>());
+                Threshold threshold = new Threshold(condition.getType(), condition.getOperation(), value);
+                if (!thresholds.contains(threshold)) {
+                    thresholds.add(threshold);
+                }
+            }
+        }
+        Map<String, Threshold[]> sensors = new HashMap<>();
+        bySensor.forEach((sensorId, thresholds) -> sensors.put(sensorId, thresholds.toArray(Threshold[]::new)));
+        return new HubThresholds(versions.incrementAndGet(), scenarios, sensors);
+    }
+
+    record HubThresholds(long version, Map<String, List<ScenarioConditionAvro>> scenarios,
+                         Map<String, Threshold[]> sensors) {
+    }
+
+    record Threshold(ConditionTypeAvro type, ConditionOperationAvro operation, int value) {
+    }
+}
@@ -1,61 +1,439 @@
 package ru.yandex.practicum.service;
 
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
-import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.store.OffHeapSensorStore;
+import ru.yandex.practicum.store.SensorHistoryStore;
 
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
+/**
+ * Агрегирование показаний в снимки состояния хабов. Состояние каждого хаба обновляется на месте
+ * ({@link HubState}), так что обработка показания не зависит от числа датчиков на хабе.
+ * Состояния датчиков хранятся в куче или, если включено, в {@link OffHeapSensorStore}.
+ * <p>
+ * Если число хабов ограничено ({@link HubCache}), карта хабов ведётся в порядке доступа,
+ * и {@link #evict} снимает с её головы давно молчащие хабы и хабы сверх лимита. Вытесненные хабы пакета
+ * возвращаются из журнала состояния до его обработки ({@link #prefetch}).
+ * <p>
+ * Забытые и вытесненные хабы удаляются и из хранилища вне кучи, так что после перезапуска из его файла
+ * загружаются только хабы, которые экземпляр ещё держал; из них остаются хабы назначенных разделов
+ * ({@link #claimStored}).
+ */
+@Slf4j
 @Component
 public class SnapshotAggregator {
 
-    private final Map<String, SensorsSnapshotAvro> snapshots = new HashMap<>();
+    private static final int MAX_IDLE_EVICTIONS = 64;
 
-    Optional<SensorsSnapshotAvro> updateState(SensorEventAvro event) {
-        if (event == null || event.getHubId() == null || event.getId() == null) {
+    private final Map<String, HubState> hubs;
+    private final List<HubState> dirtyHubs = new ArrayList<>();
+    // хабы, изменения которых подавлены и ещё не записаны в журнал состояния
+    private final Set<HubState> unloggedHubs = new LinkedHashSet<>();
+    private final OffHeapSensorStore store;
+    private final HubCache cache;
+    private final SuppressionGate gate;
+    private final SensorHistoryStore history;
+    // хабы, загруженные из файла хранилища, пока консьюмеру не назначены разделы
+    private final Set<String> unclaimed = new HashSet<>();
+    // хабы, начатые заново, потому что их снимок не успел прочитаться из журнала; дочитываются в следующих пакетах
+    private final Map<String, StateChangelog.Lookup> lagging = new HashMap<>();
+    // журнал отката транзакции: состояние хаба до первого изменения в ней, null — хаба не было
+    private Map<String, SensorsSnapshotAvro> undo;
+    // позиции истории датчиков до первой записи в транзакции: при откате история возвращается к ним
+    private Map<String, Map<String, Long>> historyUndo;
+
+    public SnapshotAggregator(HubCache cache, SuppressionGate gate, Optional<SensorHistoryStore> history) {
+        this(Optional.empty(), cache, gate, history);
+    }
+
+    @Autowired
+    public SnapshotAggregator(Optional<OffHeapSensorStore> store, HubCache cache, SuppressionGate gate,
+                              Optional<SensorHistoryStore> history) {
+        this.store = store.orElse(null);
+        this.cache = cache;
+        this.gate = gate;
+        this.history = history.orElse(null);
+        this.hubs = cache.isBounded() ? new LinkedHashMap<>(16, 0.75f, true) : new HashMap<>();
+        if (this.store != null && this.store.size() > 0) {
+            this.store.forEach((hubId, sensorId, partition, timestamp) -> hubs
+                    .computeIfAbsent(hubId, id -> new HubState(id, timestamp, partition, this.store))
+                    .addStored(sensorId, timestamp));
+            unclaimed.addAll(hubs.keySet());
+            log.info("Из хранилища состояний загружено хабов: {}", hubs.size());
+        }
+    }
+
+    /**
+     * Загружает из журнала состояния вытесненные хабы пакета одним чтением, а не по хабу на показание.
+     * Вызывается перед обработкой пакета; заодно повторяет чтение снимков, не успевших прочитаться раньше.
+     */
+    void prefetch(Iterable<ConsumerRecord<String, SpecificRecordBase>> records) {
+        if (!cache.isBounded()) {
+            return;
+        }
+        Map<String, StateChangelog.Lookup> lookups = new HashMap<>(lagging);
+        for (ConsumerRecord<String, SpecificRecordBase> record : records) {
+            if (record.value() instanceof SensorEventAvro event && event.getHubId() != null
+                    && !hubs.containsKey(event.getHubId()) && !lookups.containsKey(event.getHubId())) {
+                cache.lookupOf(event.getHubId(), record.partition())
+                        .ifPresent(lookup -> lookups.put(lookup.hubId(), lookup));
+            }
+        }
+        if (lookups.isEmpty()) {
+            return;
+        }
+        lagging.clear();
+        for (StateChangelog.Lookup unresolved : cache.rehydrate(lookups.values(), this::rehydrated)) {
+            lagging.put(unresolved.hubId(), unresolved);
+        }
+    }
+
+    /**
+     * Возвращает снимок хаба, если показание его изменило и {@link SuppressionGate} пропустил изменение.
+     * Снимок — независимая копия: следующие показания его не меняют.
+     */
+    Optional<SensorsSnapshotAvro> updateState(SensorEventAvro event, int partition) {
+        HubState hub = hubFor(event, partition);
+        if (hub == null || !hub.apply(event)) {
+            return Optional.empty();
+        }
+        record(event);
+        if (!gate.admit(hub, event)) {
+            suppress(hub);
             return Optional.empty();
         }
-        String hubId = event.getHubId();
-        String sensorId = event.getId();
+        return Optional.of(hub.snapshot());
+    }
+
+    /**
+     * Применяет показание к состоянию, не выдавая снимка: изменённый хаб запоминается
+     * до ближайшего {@link #drainDirty}, если {@link SuppressionGate} не счёл снимок лишним.
+     *
+     * @return {@code true}, если показание изменило состояние хаба и хаб ждёт отправки снимка
+     */
+    boolean apply(SensorEventAvro event, int partition) {
+        HubState hub = hubFor(event, partition);
+        if (hub == null) {
+            return false;
+        }
+        boolean wasDirty = hub.isDirty();
+        if (!hub.apply(event)) {
+            return false;
+        }
+        record(event);
+        // оценка нужна и для хаба, уже ждущего отправки: она обновляет истинность условий датчика
+        boolean admitted = gate.admit(hub, event);
+        if (!wasDirty && !admitted) {
+            suppress(hub);
+            return false;
+        }
+        if (!wasDirty) {
+            dirtyHubs.add(hub);
+        }
+        return true;
+    }
 
-        SensorsSnapshotAvro snapshot = snapshots.computeIfAbsent(hubId, id -> SensorsSnapshotAvro.newBuilder()
-                .setHubId(hubId)
-                .setTimestamp(event.getTimestamp())
-                .setSensorsState(new HashMap<>())
-                .build()
-        );
+    /**
+     * Передаёт {@code sink} по одному снимку на каждый хаб, изменённый с прошлого вызова.
+     *
+     * @return число выданных снимков
+     */
+    int drainDirty(Consumer<SensorsSnapshotAvro> sink) {
+        int drained = dirtyHubs.size();
+        for (HubState hub : dirtyHubs) {
+            sink.accept(hub.snapshot());
+        }
+        dirtyHubs.clear();
+        return drained;
+    }
 
-        Map<String, SensorStateAvro> sensorStates = new HashMap<>(snapshot.getSensorsState());
-        SensorStateAvro oldState = sensorStates.get(sensorId);
+    /**
+     * Передаёт {@code sink} снимки хабов, изменения которых были подавлены и не записаны в журнал состояния.
+     * Вызывается перед фиксацией смещений: иначе при восстановлении, после вытеснения хаба
+     * или в следующих снимках эти изменения были бы потеряны.
+     *
+     * @return число выданных снимков
+     */
+    int drainUnlogged(Consumer<SensorsSnapshotAvro> sink) {
+        int drained = 0;
+        for (HubState hub : unloggedHubs) {
+            // хаб мог уже уйти со снимком, который записывается в журнал вместе с отправкой
+            if (hub.isUnlogged()) {
+                sink.accept(hub.changelogSnapshot());
+                drained++;
+            }
+        }
+        unloggedHubs.clear();
+        return drained;
+    }
 
-        Instant newTimestamp = event.getTimestamp();
-        if (oldState != null) {
-            Instant oldTimestamp = oldState.getTimestamp();
+    /**
+     * Запись потока дельт для хаба, снимок которого только что выдан.
+     */
+    SensorsSnapshotDeltaAvro delta(String hubId, int keyframeEvery, long keyframeIntervalNanos) {
+        return hubs.get(hubId).delta(keyframeEvery, keyframeIntervalNanos, System.nanoTime());
+    }
 
-            if (oldTimestamp.isAfter(newTimestamp) ||
-                    oldState.getData().equals(event.getPayload())) {
-                return Optional.empty();
+    /**
+     * Следующая запись потока дельт хаба будет ключевым кадром.
+     */
+    void requireKeyframe(String hubId) {
+        hubs.get(hubId).requireKeyframe();
+    }
+
+    boolean hasDirty() {
+        return !dirtyHubs.isEmpty();
+    }
+
+    /**
+     * Текущий снимок хаба — для повторной отправки, если предыдущая не удалась.
+     */
+    SensorsSnapshotAvro snapshotOf(String hubId) {
+        return hubs.get(hubId).copy();
+    }
+
+    int partitionOf(String hubId) {
+        return hubs.get(hubId).partition();
+    }
+
+    /**
+     * Заменяет состояние хаба снимком из журнала.
+     */
+    void restore(SensorsSnapshotAvro stored, int partition) {
+        HubState previous = hubs.remove(stored.getHubId());
+        if (previous != null) {
+            previous.release();
+        }
+        hubs.put(stored.getHubId(), HubState.restored(stored, partition, store));
+    }
+
+    void remove(String hubId) {
+        HubState hub = hubs.remove(hubId);
+        if (hub != null) {
+            dirtyHubs.remove(hub);
+            unloggedHubs.remove(hub);
+            forget(hub);
+        }
+        lagging.remove(hubId);
+    }
+
+    /**
+     * Забывает хабы разделов, отозванных у этого экземпляра при перебалансировке.
+     */
+    void dropPartitions(Set<Integer> partitions) {
+        hubs.values().removeIf(hub -> {
+            if (!partitions.contains(hub.partition())) {
+                return false;
+            }
+            forget(hub);
+            return true;
+        });
+        dirtyHubs.removeIf(hub -> partitions.contains(hub.partition()));
+        unloggedHubs.removeIf(hub -> partitions.contains(hub.partition()));
+        lagging.values().removeIf(lookup -> partitions.contains(lookup.partition()));
+    }
+
+    /**
+     * Оставляет из хабов, загруженных из файла хранилища, только хабы назначенных разделов: остальные
+     * теперь обрабатывает другой экземпляр, и они удаляются из хранилища. Затем применяется лимит хабов.
+     * Действует только при первом назначении разделов после запуска.
+     */
+    void claimStored(Collection<Integer> assigned) {
+        if (unclaimed.isEmpty()) {
+            return;
+        }
+        int released = 0;
+        for (String hubId : unclaimed) {
+            HubState hub = hubs.get(hubId);
+            if (hub != null && !assigned.contains(hub.partition())) {
+                hubs.remove(hubId);
+                forget(hub);
+                released++;
             }
         }
+        unclaimed.clear();
+        evict();
+        log.info("Хабов из хранилища состояний чужих разделов удалено: {}, осталось хабов: {}", released, hubs.size());
+    }
 
-        SensorStateAvro newState = SensorStateAvro.newBuilder()
-                .setTimestamp(event.getTimestamp())
-                .setData(event.getPayload())
-                .build();
+    int hubCount() {
+        return hubs.size();
+    }
 
-        sensorStates.put(sensorId, newState);
+    /**
+     * Начинает запоминать исходное состояние изменяемых хабов, чтобы его можно было вернуть {@link #rollback}.
+     */
+    void beginUndo() {
+        undo = new HashMap<>();
+        historyUndo = new HashMap<>();
+    }
 
-        SensorsSnapshotAvro updateSnapshot = SensorsSnapshotAvro.newBuilder(snapshot)
-                .setTimestamp(event.getTimestamp())
-                .setSensorsState(sensorStates)
-                .build();
+    /**
+     * Транзакция зафиксирована — журнал отката больше не нужен.
+     */
+    void commitUndo() {
+        undo = null;
+        historyUndo = null;
+    }
 
-        snapshots.put(hubId, updateSnapshot);
+    /**
+     * Возвращает хабы, изменённые после {@link #beginUndo}, в исходное состояние. Номер последовательности дельт
+     * и истинность условий сценариев при этом сбрасываются, так что следующей записью хаба будет ключевой кадр.
+     * Из истории показаний убираются записанные в транзакции: пакет будет обработан заново и запишет их снова.
+     *
+     * @return число возвращённых хабов
+     */
+    int rollback() {
+        if (undo == null) {
+            return 0;
+        }
+        dirtyHubs.removeIf(hub -> undo.containsKey(hub.hubId()));
+        unloggedHubs.removeIf(hub -> undo.containsKey(hub.hubId()));
+        undo.forEach((hubId, stored) -> {
+            HubState current = hubs.remove(hubId);
+            if (stored == null) {
+                // хаба до транзакции не было
+                if (current != null) {
+                    forget(current);
+                }
+                return;
+            }
+            if (current != null) {
+                // датчики, добавленные в отменённой транзакции, не должны остаться в хранилище
+                current.release();
+            }
+            hubs.put(hubId, HubState.restored(stored, current == null ? -1 : current.partition(), store));
+        });
+        historyUndo.forEach((hubId, marks) -> marks.forEach((sensorId, mark) -> history.truncate(hubId, sensorId, mark)));
+        int restored = undo.size();
+        undo = null;
+        historyUndo = null;
+        return restored;
+    }
+
+    boolean isBounded() {
+        return cache.isBounded();
+    }
+
+    /**
+     * Вытесняет хабы сверх лимита и до {@value #MAX_IDLE_EVICTIONS} давно молчащих. Хабы с невыданным снимком
+     * или с изменениями, не записанными в журнал состояния, а также недочитанные из журнала остаются. Вызывается между пакетами,
+     * когда снимки отправлены, чтобы не вытеснить хаб, снимок которого ещё может понадобиться
+     * для повторной отправки.
+     */
+    void evict() {
+        if (!cache.isBounded()) {
+            return;
+        }
+        long now = System.nanoTime();
+        int excess = hubs.size() - cache.maxHubs();
+        int idleChecks = MAX_IDLE_EVICTIONS;
+        Iterator<HubState> eldest = hubs.values().iterator();
+        while (eldest.hasNext() && (excess > 0 || idleChecks > 0)) {
+            HubState hub = eldest.next();
+            boolean idle = cache.isIdle(hub.lastAccessNanos(), now);
+            if (excess <= 0) {
+                if (!idle) {
+                    return;
+                }
+                idleChecks--;
+            }
+            if (hub.isDirty() || hub.isUnlogged() || lagging.containsKey(hub.hubId())) {
+                continue;
+            }
+            eldest.remove();
+            forget(hub);
+            excess--;
+            cache.evicted(idle);
+        }
+    }
 
-        return Optional.of(updateSnapshot);
+    private void rehydrated(StateChangelog.Lookup lookup, SensorsSnapshotAvro stored) {
+        HubState hub = hubs.get(lookup.hubId());
+        if (hub == null) {
+            hubs.put(lookup.hubId(), HubState.restored(stored, lookup.partition(), store));
+            return;
+        }
+        // хаб уже начат заново: снимок дополняет его, и результат должен попасть в журнал
+        boolean wasDirty = hub.isDirty();
+        if (hub.merge(stored) && !wasDirty) {
+            suppress(hub);
+        }
+    }
+
+    /**
+     * Забывает все хабы — шард обработчика раздела закрывается.
+     */
+    void clear() {
+        hubs.values().forEach(this::forget);
+        hubs.clear();
+        dirtyHubs.clear();
+        unloggedHubs.clear();
+        lagging.clear();
+        undo = null;
+        historyUndo = null;
+    }
+
+    // хаб больше не держится этим экземпляром: его датчики уходят из хранилища вне кучи и из истории показаний
+    private void forget(HubState hub) {
+        hub.release();
+        if (history != null) {
+            history.remove(hub.hubId());
+        }
+    }
+
+    private void suppress(HubState hub) {
+        hub.suppress();
+        unloggedHubs.add(hub);
+    }
+
+    private void record(SensorEventAvro event) {
+        if (history == null) {
+            return;
+        }
+        if (historyUndo != null) {
+            historyUndo.computeIfAbsent(event.getHubId(), hubId -> new HashMap<>())
+                    .computeIfAbsent(event.getId(), sensorId -> history.mark(event.getHubId(), sensorId));
+        }
+        history.record(event);
+    }
+
+    private HubState hubFor(SensorEventAvro event, int partition) {
+        if (event == null || event.getHubId() == null || event.getId() == null) {
+            return null;
+        }
+        HubState hub = hubs.get(event.getHubId());
+        if (undo != null && !undo.containsKey(event.getHubId())) {
+            undo.put(event.getHubId(), hub == null ? null : hub.copy());
+        }
+        if (hub == null) {
+            // вытесненный хаб уже загружен prefetch, если его снимок есть в журнале и успел прочитаться
+            hub = new HubState(event.getHubId(), event.getTimestamp(), partition, store);
+            hubs.put(event.getHubId(), hub);
+        } else if (hub.partition() != partition) {
+            hub.assignPartition(partition);
+        }
+        if (cache.isBounded()) {
+            hub.touch(System.nanoTime());
+        }
+        return hub;
     }
 }
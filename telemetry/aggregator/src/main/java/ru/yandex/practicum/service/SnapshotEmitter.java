@@ -0,0 +1,153 @@
+package ru.yandex.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.KafkaClient;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отправка снимка хаба вместе со всем, что к нему прилагается: записью потока дельт и журнала состояния.
+ * Потокобезопасен при условии, что каждый поток передаёт своё {@link SnapshotAggregator}.
+ */
+@Component
+public class SnapshotEmitter {
+
+    @Value("${aggregator.kafka.topics.snapshots-events}")
+    private String snapshotsEventsTopic;
+
+    @Value("${aggregator.kafka.topics.snapshot-deltas:telemetry.snapshots.deltas.v1}")
+    private String snapshotDeltasTopic;
+
+    private final Producer<String, SpecificRecordBase> producer;
+    private final DeltaProperties deltaProperties;
+    private final Optional<StateChangelog> stateChangelog;
+
+    private final Counter changes;
+    private final Counter emitted;
+    private final DistributionSummary coalescingRatio;
+    private final Counter deltas;
+    private final Counter keyframes;
+    private final DistributionSummary deltaSensors;
+
+    public SnapshotEmitter(KafkaClient kafkaClient,
+                           DeltaProperties deltaProperties,
+                           Optional<StateChangelog> stateChangelog,
+                           MeterRegistry registry) {
+        this.producer = kafkaClient.getProducer();
+        this.deltaProperties = deltaProperties;
+        this.stateChangelog = stateChangelog;
+
+        this.changes = Counter.builder("aggregator.snapshot.changes")
+                .description("Показания, изменившие состояние хаба")
+                .register(registry);
+        this.emitted = Counter.builder("aggregator.snapshot.emitted")
+                .description("Отправленные снимки")
+                .register(registry);
+        this.coalescingRatio = DistributionSummary.builder("aggregator.snapshot.coalescing-ratio")
+                .description("Сколько изменений приходится на один отправленный снимок")
+                .register(registry);
+        this.deltas = Counter.builder("aggregator.snapshot.deltas")
+                .tag("kind", "delta")
+                .register(registry);
+        this.keyframes = Counter.builder("aggregator.snapshot.deltas")
+                .tag("kind", "keyframe")
+                .register(registry);
+        this.deltaSensors = DistributionSummary.builder("aggregator.snapshot.delta-sensors")
+                .description("Число состояний датчиков в записи потока дельт")
+                .register(registry);
+    }
+
+    /**
+     * Отправляет снимок, только что выданный {@code aggregator}.
+     *
+     * @param sent сюда добавляются результаты отправки всех записей — по ним можно дождаться подтверждения Kafka
+     */
+    public void emit(SnapshotAggregator aggregator, SensorsSnapshotAvro snapshot, List<Future<RecordMetadata>> sent) {
+        sent.add(producer.send(new ProducerRecord<>(
+                snapshotsEventsTopic,
+                snapshot.getHubId(),
+                snapshot
+        )));
+        emitted.increment();
+        stateChangelog.ifPresent(changelog ->
+                sent.add(changelog.append(snapshot, aggregator.partitionOf(snapshot.getHubId()))));
+        if (deltaProperties.isEnabled()) {
+            sent.add(sendDelta(aggregator, snapshot.getHubId()));
+        }
+    }
+
+    /**
+     * Записывает в журнал состояния изменения, снимки по которым были подавлены ({@link SuppressionGate}).
+     * Вызывается перед фиксацией смещений: иначе после восстановления из журнала эти изменения пропали бы.
+     *
+     * @return идентификаторы хабов, записанных в журнал
+     */
+    public List<String> persistSuppressed(SnapshotAggregator aggregator, List<Future<RecordMetadata>> sent) {
+        List<String> logged = new ArrayList<>();
+        aggregator.drainUnlogged(snapshot -> {
+            stateChangelog.ifPresent(changelog ->
+                    sent.add(changelog.append(snapshot, aggregator.partitionOf(snapshot.getHubId()))));
+            logged.add(snapshot.getHubId());
+        });
+        return logged;
+    }
+
+    /**
+     * Повторно отправляет текущий снимок хаба и его запись в журнал состояния, если предыдущая отправка не удалась.
+     * Запись потока дельт заново не строится, иначе у того же состояния появился бы новый номер;
+     * вместо этого следующей записью хаба будет ключевой кадр — на случай, если потерялась дельта.
+     */
+    public void resend(SnapshotAggregator aggregator, String hubId, List<Future<RecordMetadata>> sent) {
+        SensorsSnapshotAvro snapshot = aggregator.snapshotOf(hubId);
+        sent.add(producer.send(new ProducerRecord<>(snapshotsEventsTopic, hubId, snapshot)));
+        stateChangelog.ifPresent(changelog -> sent.add(changelog.append(snapshot, aggregator.partitionOf(hubId))));
+        if (deltaProperties.isEnabled()) {
+            aggregator.requireKeyframe(hubId);
+        }
+    }
+
+    /**
+     * Повторно записывает в журнал состояния текущий снимок хаба, если предыдущая запись не удалась.
+     */
+    public void relog(SnapshotAggregator aggregator, String hubId, List<Future<RecordMetadata>> sent) {
+        stateChangelog.ifPresent(changelog ->
+                sent.add(changelog.append(aggregator.snapshotOf(hubId), aggregator.partitionOf(hubId))));
+    }
+
+    public void changed() {
+        changes.increment();
+    }
+
+    public void flushed(long changesInFlush, int snapshotsSent) {
+        if (snapshotsSent > 0) {
+            coalescingRatio.record((double) changesInFlush / snapshotsSent);
+        }
+    }
+
+    public void flush() {
+        producer.flush();
+    }
+
+    private Future<RecordMetadata> sendDelta(SnapshotAggregator aggregator, String hubId) {
+        SensorsSnapshotDeltaAvro delta = aggregator.delta(hubId, deltaProperties.getKeyframeEvery(),
+                TimeUnit.MILLISECONDS.toNanos(deltaProperties.getKeyframeIntervalMs()));
+        Future<RecordMetadata> sent = producer.send(new ProducerRecord<>(snapshotDeltasTopic, hubId, delta));
+        (delta.getKeyframe() ? keyframes : deltas).increment();
+        deltaSensors.record(delta.getSensorsState().size());
+        return sent;
+    }
+}
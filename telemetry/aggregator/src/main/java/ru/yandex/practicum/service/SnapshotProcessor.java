@@ -0,0 +1,45 @@
+package ru.yandex.practicum.service;
+
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+/**
+ * Агрегирование показаний в топологии Kafka Streams: снимок хаба лежит в хранилище состояния
+ * и обновляется по тем же правилам, что и в {@link SnapshotAggregator} ({@link HubState#apply}).
+ */
+class SnapshotProcessor implements Processor<String, SensorEventAvro, String, SensorsSnapshotAvro> {
+
+    static final String STORE = "hub-snapshots";
+
+    private ProcessorContext<String, SensorsSnapshotAvro> context;
+    private KeyValueStore<String, SensorsSnapshotAvro> store;
+
+    @Override
+    public void init(ProcessorContext<String, SensorsSnapshotAvro> context) {
+        this.context = context;
+        this.store = context.getStateStore(STORE);
+    }
+
+    @Override
+    public void process(Record<String, SensorEventAvro> record) {
+        SensorEventAvro event = record.value();
+        if (event == null || event.getHubId() == null || event.getId() == null) {
+            return;
+        }
+        SensorsSnapshotAvro stored = store.get(event.getHubId());
+        // раздел здесь не нужен: хранилище и так разбито по разделам топика показаний
+        HubState hub = stored == null
+                ? new HubState(event.getHubId(), event.getTimestamp(), -1, null)
+                : HubState.restored(stored, -1, null);
+        if (!hub.apply(event)) {
+            return;
+        }
+        SensorsSnapshotAvro snapshot = hub.snapshot();
+        store.put(event.getHubId(), snapshot);
+        context.forward(record.withKey(event.getHubId()).withValue(snapshot));
+    }
+}
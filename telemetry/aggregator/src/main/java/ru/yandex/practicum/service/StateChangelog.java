@@ -0,0 +1,269 @@
+package ru.yandex.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.ChangelogConfig;
+import ru.yandex.practicum.kafka.KafkaClient;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Журнал состояния хабов в сжимаемом (compact) топике: после каждого отправленного снимка
+ * туда пишется полный снимок хаба с ключом hubId. Запись идёт в раздел с тем же номером,
+ * что и у раздела показаний, поэтому при назначении разделов консьюмеру достаточно прочитать
+ * те же номера разделов журнала. Благодаря сжатию на каждый хаб там хранится только последний снимок.
+ * <p>
+ * При ограниченном числе хабов в памяти ({@link HubCacheProperties}) восстановление только запоминает
+ * смещение последнего снимка каждого хаба, а сам снимок читается по смещению, когда хаб снова встречается
+ * в пакете показаний: снимки всех таких хабов пакета читаются разом ({@link #read}).
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "aggregator.changelog.enabled", havingValue = "true")
+public class StateChangelog {
+
+    private static final long LOOKUP_POLL_MS = 50;
+    // столько записей (max.poll.records консьюмера восстановления) дешевле дочитать, чем перематывать
+    private static final long SKIP_AHEAD_RECORDS = 5000;
+
+    @Value("${aggregator.kafka.topics.sensors-events}")
+    private String sensorsEventsTopic;
+
+    private final ChangelogConfig config;
+    private final Producer<String, SpecificRecordBase> producer;
+    private final Consumer<String, SensorsSnapshotAvro> restoreConsumer;
+    private final Admin admin;
+    private final boolean lazy;
+    // смещение последнего снимка хаба в его разделе журнала; ведётся только при ленивой загрузке
+    private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+
+    private final AtomicLong remaining = new AtomicLong();
+    private final Counter restoredRecords;
+    private final Timer restoreDuration;
+
+    public StateChangelog(ChangelogConfig config,
+                          KafkaClient kafkaClient,
+                          Consumer<String, SensorsSnapshotAvro> changelogRestoreConsumer,
+                          Admin changelogAdmin,
+                          HubCacheProperties hubCacheProperties,
+                          MeterRegistry registry) {
+        this.config = config;
+        this.producer = kafkaClient.getProducer();
+        this.restoreConsumer = changelogRestoreConsumer;
+        this.admin = changelogAdmin;
+        this.lazy = hubCacheProperties.isEnabled();
+
+        Gauge.builder("aggregator.restore.remaining", remaining, AtomicLong::get)
+                .description("Записи журнала состояния, которые ещё предстоит прочитать при восстановлении")
+                .register(registry);
+        restoredRecords = Counter.builder("aggregator.restore.records")
+                .description("Прочитанные при восстановлении записи журнала состояния")
+                .register(registry);
+        restoreDuration = Timer.builder("aggregator.restore.duration")
+                .description("Время восстановления состояния назначенных разделов")
+                .register(registry);
+    }
+
+    /**
+     * Создаёт топик журнала с тем же числом разделов, что у топика показаний, если его ещё нет.
+     */
+    @PostConstruct
+    public void ensureTopic() {
+        try {
+            TopicDescription sensors = admin.describeTopics(List.of(sensorsEventsTopic))
+                    .allTopicNames().get().get(sensorsEventsTopic);
+            NewTopic changelog = new NewTopic(config.getTopic(), sensors.partitions().size(), config.getReplicationFactor())
+                    .configs(Map.of(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT));
+            admin.createTopics(List.of(changelog)).all().get();
+            log.info("Создан топик журнала состояния {} ({} разделов)", config.getTopic(), sensors.partitions().size());
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof TopicExistsException)) {
+                log.warn("Не удалось проверить топик журнала состояния {}", config.getTopic(), e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Future<RecordMetadata> append(SensorsSnapshotAvro snapshot, int partition) {
+        ProducerRecord<String, SpecificRecordBase> record =
+                new ProducerRecord<>(config.getTopic(), partition, snapshot.getHubId(), snapshot);
+        if (!lazy) {
+            return producer.send(record);
+        }
+        String hubId = snapshot.getHubId();
+        return producer.send(record, (metadata, exception) -> {
+            if (exception == null) {
+                offsets.merge(hubId, metadata.offset(), Math::max);
+            }
+        });
+    }
+
+    /**
+     * Запрос снимка хаба из журнала, если хаб там есть.
+     */
+    Optional<Lookup> lookupOf(String hubId, int partition) {
+        Long offset = offsets.get(hubId);
+        return offset == null ? Optional.empty() : Optional.of(new Lookup(hubId, partition, offset));
+    }
+
+    /**
+     * Читает последние снимки хабов по запомненным смещениям — все разделы сразу и не дольше
+     * {@code lookupTimeoutMs}, чтобы не задерживать обработку показаний.
+     *
+     * @param found получает каждый прочитанный снимок вместе с его запросом
+     * @return запросы, которые не удалось выполнить за отведённое время
+     */
+    synchronized List<Lookup> read(Collection<Lookup> lookups, BiConsumer<Lookup, SensorsSnapshotAvro> found) {
+        Map<String, Lookup> unresolved = new HashMap<>();
+        Map<TopicPartition, TreeMap<Long, Lookup>> pending = new HashMap<>();
+        for (Lookup lookup : lookups) {
+            unresolved.put(lookup.hubId(), lookup);
+            pending.computeIfAbsent(new TopicPartition(config.getTopic(), lookup.partition()), ignored -> new TreeMap<>())
+                    .put(lookup.offset(), lookup);
+        }
+        if (unresolved.isEmpty()) {
+            return List.of();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getLookupTimeoutMs());
+        try {
+            restoreConsumer.assign(pending.keySet());
+            pending.forEach((partition, wanted) -> restoreConsumer.seek(partition, wanted.firstKey()));
+            while (!unresolved.isEmpty() && System.nanoTime() < deadline) {
+                for (ConsumerRecord<String, SensorsSnapshotAvro> record
+                        : restoreConsumer.poll(Duration.ofMillis(LOOKUP_POLL_MS))) {
+                    Lookup lookup = unresolved.get(record.key());
+                    // запись по смещению могла быть удалена сжатием, тогда берём ближайшую следующую того же хаба
+                    if (lookup == null || lookup.partition() != record.partition() || record.offset() < lookup.offset()) {
+                        continue;
+                    }
+                    unresolved.remove(lookup.hubId());
+                    pending.get(new TopicPartition(record.topic(), record.partition())).remove(lookup.offset());
+                    if (record.value() != null) {
+                        found.accept(lookup, record.value());
+                    }
+                }
+                skipAhead(pending);
+            }
+        } finally {
+            restoreConsumer.unsubscribe();
+        }
+        if (!unresolved.isEmpty()) {
+            log.warn("Не удалось прочитать снимки хабов из журнала состояния за {} мс: {}",
+                    config.getLookupTimeoutMs(), unresolved.size());
+        }
+        return List.copyOf(unresolved.values());
+    }
+
+    /**
+     * Загружает в {@code aggregator} последние снимки хабов из разделов журнала с номерами
+     * назначенных разделов показаний. Ждёт не дольше {@code restoreTimeoutMs}, затем продолжает
+     * с тем, что успело прочитаться.
+     */
+    public synchronized void restore(Collection<TopicPartition> assigned, SnapshotAggregator aggregator) {
+        List<TopicPartition> partitions = assigned.stream()
+                .map(partition -> new TopicPartition(config.getTopic(), partition.partition()))
+                .toList();
+        if (partitions.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(config.getRestoreTimeoutMs());
+        long records = 0;
+        try {
+            restoreConsumer.assign(partitions);
+            restoreConsumer.seekToBeginning(partitions);
+            Map<TopicPartition, Long> endOffsets = restoreConsumer.endOffsets(partitions);
+            while (updateRemaining(endOffsets) > 0) {
+                if (System.nanoTime() > deadline) {
+                    log.warn("Восстановление состояния прервано по таймауту, не прочитано записей: {}", remaining.get());
+                    break;
+                }
+                ConsumerRecords<String, SensorsSnapshotAvro> polled = restoreConsumer.poll(Duration.ofMillis(100));
+                for (ConsumerRecord<String, SensorsSnapshotAvro> record : polled) {
+                    if (record.value() == null) {
+                        offsets.remove(record.key());
+                        aggregator.remove(record.key());
+                    } else if (lazy) {
+                        offsets.put(record.key(), record.offset());
+                    } else {
+                        aggregator.restore(record.value(), record.partition());
+                    }
+                }
+                records += polled.count();
+                restoredRecords.increment(polled.count());
+            }
+        } finally {
+            restoreConsumer.unsubscribe();
+            remaining.set(0);
+        }
+        long elapsed = System.nanoTime() - start;
+        restoreDuration.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Состояние разделов {} восстановлено: записей {}, хабов {}, за {} мс",
+                partitions.stream().map(TopicPartition::partition).toList(), records,
+                lazy ? offsets.size() : aggregator.hubCount(),
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    // между нужными записями раздела может лежать много чужих: их не читаем, а перематываем
+    private void skipAhead(Map<TopicPartition, TreeMap<Long, Lookup>> pending) {
+        for (Map.Entry<TopicPartition, TreeMap<Long, Lookup>> entry : pending.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                restoreConsumer.pause(List.of(entry.getKey()));
+                continue;
+            }
+            long next = entry.getValue().firstKey();
+            if (next - restoreConsumer.position(entry.getKey()) > SKIP_AHEAD_RECORDS) {
+                restoreConsumer.seek(entry.getKey(), next);
+            }
+        }
+    }
+
+    private long updateRemaining(Map<TopicPartition, Long> endOffsets) {
+        long left = 0;
+        for (Map.Entry<TopicPartition, Long> end : endOffsets.entrySet()) {
+            left += Math.max(0, end.getValue() - restoreConsumer.position(end.getKey()));
+        }
+        remaining.set(left);
+        return left;
+    }
+
+    /**
+     * Снимок хаба в журнале: раздел и смещение последней записанной версии.
+     */
+    record Lookup(String hubId, int partition, long offset) {
+    }
+}
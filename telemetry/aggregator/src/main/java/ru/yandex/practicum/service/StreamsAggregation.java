@@ -0,0 +1,101 @@
+package ru.yandex.practicum.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.kafka.KafkaStreamsMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.errors.StreamsUncaughtExceptionHandler.StreamThreadExceptionResponse;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.Stores;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.deserializer.SensorEventDeserializer;
+import ru.yandex.practicum.deserializer.SensorsSnapshotDeserializer;
+import ru.yandex.practicum.kafka.AggregatorConsumerConfig;
+import ru.yandex.practicum.kafka.AggregatorStreamsConfig;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.serializer.AvroSerializer;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Агрегатор на Kafka Streams вместо собственного цикла poll. Состояние хабов — постоянное хранилище
+ * (RocksDB) с журналом в Kafka, так что перебалансировку, восстановление и резервные копии
+ * на других экземплярах ({@code numStandbyReplicas}) обеспечивает сам Kafka Streams.
+ * Показания уже разбиты по хабам (ключ — hubId), поэтому перераспределения топика не требуется.
+ * Поток дельт, подавление снимков и ограничение числа хабов в памяти здесь не поддерживаются.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "STREAMS")
+public class StreamsAggregation {
+
+    @Value("${aggregator.kafka.topics.sensors-events}")
+    private String sensorsEventsTopic;
+
+    @Value("${aggregator.kafka.topics.snapshots-events}")
+    private String snapshotsEventsTopic;
+
+    private final AggregatorStreamsConfig streamsConfig;
+    private final AggregatorConsumerConfig consumerConfig;
+    private final MeterRegistry registry;
+
+    public StreamsAggregation(AggregatorStreamsConfig streamsConfig,
+                              AggregatorConsumerConfig consumerConfig,
+                              MeterRegistry registry) {
+        this.streamsConfig = streamsConfig;
+        this.consumerConfig = consumerConfig;
+        this.registry = registry;
+    }
+
+    Topology topology() {
+        Serde<SensorEventAvro> events = Serdes.serdeFrom(new AvroSerializer<>(), new SensorEventDeserializer());
+        Serde<SensorsSnapshotAvro> snapshots = Serdes.serdeFrom(new AvroSerializer<>(), new SensorsSnapshotDeserializer());
+
+        StreamsBuilder builder = new StreamsBuilder();
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(SnapshotProcessor.STORE), Serdes.String(), snapshots));
+        builder.stream(sensorsEventsTopic, Consumed.with(Serdes.String(), events))
+                .process(SnapshotProcessor::new, SnapshotProcessor.STORE)
+                .to(snapshotsEventsTopic, Produced.with(Serdes.String(), snapshots));
+        return builder.build();
+    }
+
+    /**
+     * Запускает топологию и блокирует поток до остановки приложения.
+     */
+    public void start() {
+        Topology topology = topology();
+        log.debug("Топология агрегатора: {}", topology.describe());
+        KafkaStreams streams = new KafkaStreams(topology, streamsConfig.toProperties(consumerConfig.getBootstrapServers()));
+        CountDownLatch stopped = new CountDownLatch(1);
+        streams.setStateListener((newState, oldState) -> {
+            log.info("Kafka Streams: {} -> {}", oldState, newState);
+            if (newState == KafkaStreams.State.NOT_RUNNING || newState == KafkaStreams.State.ERROR) {
+                stopped.countDown();
+            }
+        });
+        streams.setUncaughtExceptionHandler(exception -> {
+            log.error("Ошибка в потоке Kafka Streams, поток будет заменён", exception);
+            return StreamThreadExceptionResponse.REPLACE_THREAD;
+        });
+        new KafkaStreamsMetrics(streams).bindTo(registry);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> streams.close(Duration.ofSeconds(10))));
+
+        streams.start();
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            streams.close(Duration.ofSeconds(10));
+        }
+    }
+}
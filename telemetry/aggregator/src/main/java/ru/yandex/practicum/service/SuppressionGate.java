@@ -0,0 +1,164 @@
+package ru.yandex.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Решает, нужен ли снимок после изменения состояния хаба. Снимок нужен, если показание изменило
+ * истинность хотя бы одного условия сценариев хаба на этом датчике, если сценарии хаба поменялись
+ * или если снимок хаба не отправлялся дольше {@code keepAliveMs}. Остальные изменения остаются
+ * в состоянии хаба и уйдут со следующим снимком.
+ * <p>
+ * Истинность условий датчика хранится битовой маской в {@link HubState}; датчики с числом порогов
+ * больше 64 не подавляются.
+ */
+@Component
+public class SuppressionGate {
+
+    private static final int MAX_THRESHOLDS = Long.SIZE;
+    private static final long NO_THRESHOLDS = -1;
+
+    private final SuppressionProperties properties;
+    private final ScenarioThresholds thresholds;
+    private final long keepAliveNanos;
+
+    private final LongAdder admittedCount = new LongAdder();
+    private final LongAdder suppressedCount = new LongAdder();
+    private final Counter byThreshold;
+    private final Counter byScenarios;
+    private final Counter byKeepAlive;
+    private final Counter byUnknownHub;
+    private final Counter byWarmup;
+
+    public SuppressionGate(SuppressionProperties properties, ScenarioThresholds thresholds, MeterRegistry registry) {
+        this.properties = properties;
+        this.thresholds = thresholds;
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(properties.getKeepAliveMs());
+
+        this.byThreshold = admittedCounter(registry, "threshold");
+        this.byScenarios = admittedCounter(registry, "scenarios");
+        this.byKeepAlive = admittedCounter(registry, "keep-alive");
+        this.byUnknownHub = admittedCounter(registry, "unknown-hub");
+        this.byWarmup = admittedCounter(registry, "warmup");
+        FunctionCounter.builder("aggregator.suppression.suppressed", suppressedCount, LongAdder::sum)
+                .description("Изменения состояния, не потребовавшие снимка")
+                .register(registry);
+        Gauge.builder("aggregator.suppression.ratio", this, SuppressionGate::ratio)
+                .description("Доля изменений состояния, для которых снимок не отправлялся")
+                .register(registry);
+    }
+
+    /**
+     * Вызывается для каждого изменения состояния, даже если снимок хаба уже ждёт отправки:
+     * маска истинности должна соответствовать последнему показанию датчика.
+     *
+     * @return {@code true}, если изменение требует снимка
+     */
+    boolean admit(HubState hub, SensorEventAvro event) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        if (!thresholds.isCaughtUp()) {
+            return admitted(byWarmup);
+        }
+        ScenarioThresholds.HubThresholds hubThresholds = thresholds.get(event.getHubId());
+        long version = hubThresholds == null ? NO_THRESHOLDS : hubThresholds.version();
+        boolean scenariosChanged = hub.resetTruthIfStale(version);
+
+        boolean flipped = false;
+        if (hubThresholds != null) {
+            ScenarioThresholds.Threshold[] sensorThresholds = hubThresholds.sensors().get(event.getId());
+            if (sensorThresholds != null) {
+                if (sensorThresholds.length > MAX_THRESHOLDS) {
+                    return admitted(byThreshold);
+                }
+                long truth = truth(sensorThresholds, event.getPayload());
+                flipped = hub.updateTruth(event.getId(), truth);
+            }
+        }
+
+        if (flipped) {
+            return admitted(byThreshold);
+        }
+        if (scenariosChanged) {
+            return admitted(byScenarios);
+        }
+        if (hubThresholds == null && properties.isPassUnknownHubs()) {
+            return admitted(byUnknownHub);
+        }
+        if (System.nanoTime() - hub.lastEmitNanos() >= keepAliveNanos) {
+            return admitted(byKeepAlive);
+        }
+        suppressedCount.increment();
+        return false;
+    }
+
+    private boolean admitted(Counter reason) {
+        reason.increment();
+        admittedCount.increment();
+        return true;
+    }
+
+    private double ratio() {
+        long suppressed = suppressedCount.sum();
+        long total = suppressed + admittedCount.sum();
+        return total == 0 ? 0 : (double) suppressed / total;
+    }
+
+    private static long truth(ScenarioThresholds.Threshold[] sensorThresholds, Object payload) {
+        long truth = 0;
+        for (int i = 0; i < sensorThresholds.length; i++) {
+            ScenarioThresholds.Threshold threshold = sensorThresholds[i];
+            Integer current = value(threshold, payload);
+            if (current != null && holds(threshold, current)) {
+                truth |= 1L << i;
+            }
+        }
+        return truth;
+    }
+
+    private static boolean holds(ScenarioThresholds.Threshold threshold, int current) {
+        return switch (threshold.operation()) {
+            case EQUALS -> current == threshold.value();
+            case GREATER_THAN -> current > threshold.value();
+            case LOWER_THAN -> current < threshold.value();
+        };
+    }
+
+    /**
+     * Значение, с которым сравнивает условие анализатор; {@code null}, если тип показаний условию не подходит.
+     */
+    private static Integer value(ScenarioThresholds.Threshold threshold, Object payload) {
+        return switch (threshold.type()) {
+            case MOTION -> payload instanceof MotionSensorAvro motion ? (motion.getMotion() ? 1 : 0) : null;
+            case LUMINOSITY -> payload instanceof LightSensorAvro light ? light.getLuminosity() : null;
+            case SWITCH -> payload instanceof SwitchSensorAvro sw ? (sw.getState() ? 1 : 0) : null;
+            case TEMPERATURE -> switch (payload) {
+                case ClimateSensorAvro climate -> climate.getTemperatureC();
+                case TemperatureSensorAvro temperature -> temperature.getTemperatureC();
+                default -> null;
+            };
+            case CO2LEVEL -> payload instanceof ClimateSensorAvro climate ? climate.getCo2Level() : null;
+            case HUMIDITY -> payload instanceof ClimateSensorAvro climate ? climate.getHumidity() : null;
+        };
+    }
+
+    private static Counter admittedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("aggregator.suppression.admitted")
+                .description("Изменения состояния, после которых отправлен снимок")
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "aggregator.suppression")
+public class SuppressionProperties {
+
+    private boolean enabled = false;
+    // снимок хаба отправляется не реже, чем раз в этот интервал, даже если условия сценариев не изменились
+    private long keepAliveMs = 60000;
+    // хабы без известных сценариев: true — отправлять каждое изменение, false — только по keep-alive
+    private boolean passUnknownHubs = true;
+}
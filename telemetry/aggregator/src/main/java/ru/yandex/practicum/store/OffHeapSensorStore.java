@@ -0,0 +1,420 @@
+package ru.yandex.practicum.store;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Состояния датчиков вне кучи: хеш-таблица с открытой адресацией из слотов фиксированного размера
+ * и отдельный журнал ключей.
+ * <p>
+ * Слот (32 байта): ссылка на ключ в журнале (0 — слот пуст), хеш ключа, метка времени,
+ * тип показаний, номер раздела топика показаний и до трёх int-полей показаний (климат: температура, влажность, CO2; свет: связь, освещённость;
+ * движение: связь, движение, напряжение; переключатель: состояние; температура: °C, °F).
+ * Ключ — пара hubId и id датчика, записанная в журнал ключей символами без преобразования,
+ * поэтому поиск и {@link #compareAndUpdate} ничего не выделяют в куче.
+ * <p>
+ * Удаление ({@link #remove}) сдвигает назад следующие слоты цепочки, так что пробы не упираются в «надгробия»;
+ * место ключа в журнале ключей при этом не освобождается.
+ * <p>
+ * Если задан каталог, таблица и журнал ключей отображаются в файлы и переживают перезапуск.
+ * Не потокобезопасен.
+ */
+@Slf4j
+public class OffHeapSensorStore implements AutoCloseable {
+
+    public static final int STALE = 0;
+    public static final int UNCHANGED = 1;
+    public static final int UPDATED = 2;
+    public static final int INSERTED = 3;
+
+    // «SEN2»: в слоте хранится номер раздела, файлы прежнего формата не читаются
+    private static final int MAGIC = 0x53454E32;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 32;
+    private static final int KEY_REF = 0;
+    private static final int HASH = 4;
+    private static final int TIMESTAMP = 8;
+    private static final int TYPE = 16;
+    private static final int PARTITION = 18;
+    private static final int VALUES = 20;
+    private static final double MAX_LOAD = 0.7;
+
+    private final Path directory;
+    private ByteBuffer index;
+    private ByteBuffer keys;
+    private int capacity;
+    private int mask;
+    private int size;
+    private int keysPosition;
+
+    // разобранные показания последнего compareAndUpdate — поля, а не объект, чтобы не выделять память
+    private byte type;
+    private short partition;
+    private int v0;
+    private int v1;
+    private int v2;
+
+    /**
+     * @param directory каталог для файлов или {@code null}, чтобы держать состояние только в памяти процесса
+     */
+    public OffHeapSensorStore(int initialCapacity, Path directory) throws IOException {
+        this.directory = directory;
+        int requested = Integer.highestOneBit(Math.max(16, initialCapacity - 1)) << 1;
+        if (directory != null && Files.exists(directory.resolve("index.bin")) && open()) {
+            return;
+        }
+        capacity = requested;
+        mask = capacity - 1;
+        index = allocate("index.bin", HEADER_SIZE + (long) capacity * SLOT_SIZE, true);
+        keys = allocate("keys.bin", (long) capacity * 32, true);
+        keysPosition = 0;
+        writeHeader();
+    }
+
+    /**
+     * Сравнивает показание с сохранённым и, если оно новее и отличается, записывает его.
+     *
+     * @param partition раздел топика показаний, из которого пришло показание
+     * @return {@link #INSERTED}, {@link #UPDATED}, {@link #UNCHANGED} или {@link #STALE}
+     * @throws IllegalArgumentException для неизвестного типа показаний
+     */
+    public int compareAndUpdate(String hubId, String sensorId, int partition, long timestampMillis, Object payload) {
+        decode(payload, partition);
+        int hash = hash(hubId, sensorId);
+        int slot = find(hash, hubId, sensorId);
+        int offset = slotOffset(slot);
+        if (index.getInt(offset + KEY_REF) == 0) {
+            insert(slot, hash, hubId, sensorId, timestampMillis);
+            return INSERTED;
+        }
+        if (index.getLong(offset + TIMESTAMP) > timestampMillis) {
+            return STALE;
+        }
+        if (index.get(offset + TYPE) == type
+                && index.getInt(offset + VALUES) == v0
+                && index.getInt(offset + VALUES + 4) == v1
+                && index.getInt(offset + VALUES + 8) == v2) {
+            return UNCHANGED;
+        }
+        writeValues(offset, timestampMillis);
+        return UPDATED;
+    }
+
+    /**
+     * Записывает состояние без сравнения (восстановление из журнала).
+     */
+    public void put(String hubId, String sensorId, int partition, SensorStateAvro state) {
+        decode(state.getData(), partition);
+        int hash = hash(hubId, sensorId);
+        int slot = find(hash, hubId, sensorId);
+        if (index.getInt(slotOffset(slot) + KEY_REF) == 0) {
+            insert(slot, hash, hubId, sensorId, state.getTimestamp().toEpochMilli());
+        } else {
+            writeValues(slotOffset(slot), state.getTimestamp().toEpochMilli());
+        }
+    }
+
+    /**
+     * Собирает Avro-состояние датчика; выделяет память, поэтому вызывается только при выдаче снимка.
+     *
+     * @return {@code null}, если датчика нет
+     */
+    public SensorStateAvro read(String hubId, String sensorId) {
+        int offset = slotOffset(find(hash(hubId, sensorId), hubId, sensorId));
+        if (index.getInt(offset + KEY_REF) == 0) {
+            return null;
+        }
+        Object data = PayloadLayout.build(index.get(offset + TYPE), index.getInt(offset + VALUES),
+                index.getInt(offset + VALUES + 4), index.getInt(offset + VALUES + 8));
+        return new SensorStateAvro(Instant.ofEpochMilli(index.getLong(offset + TIMESTAMP)), data);
+    }
+
+    /**
+     * Удаляет состояние датчика. Следующие за слотом записи той же цепочки сдвигаются на его место
+     * (backward-shift), поэтому поиск после удаления не удлиняется.
+     *
+     * @return {@code false}, если датчика не было
+     */
+    public boolean remove(String hubId, String sensorId) {
+        int hole = find(hash(hubId, sensorId), hubId, sensorId);
+        if (index.getInt(slotOffset(hole) + KEY_REF) == 0) {
+            return false;
+        }
+        int next = (hole + 1) & mask;
+        while (index.getInt(slotOffset(next) + KEY_REF) != 0) {
+            int home = index.getInt(slotOffset(next) + HASH) & mask;
+            // запись можно перенести в дыру, только если её цепочка начинается не позже дыры
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index.put(slotOffset(hole), index, slotOffset(next), SLOT_SIZE);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        index.putInt(slotOffset(hole) + KEY_REF, 0);
+        size--;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Переносит сохранённое состояние датчика в другой раздел (изменилось число разделов топика).
+     */
+    public void assignPartition(String hubId, String sensorId, int partition) {
+        int offset = slotOffset(find(hash(hubId, sensorId), hubId, sensorId));
+        if (index.getInt(offset + KEY_REF) != 0) {
+            index.putShort(offset + PARTITION, (short) partition);
+        }
+    }
+
+    /**
+     * Обходит все сохранённые датчики — для восстановления списка хабов после перезапуска.
+     */
+    public void forEach(KeyVisitor visitor) {
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = slotOffset(slot);
+            int keyRef = index.getInt(offset + KEY_REF);
+            if (keyRef != 0) {
+                visitor.visit(readKey(keyRef - 1, 0), readKey(keyRef - 1, 1), index.getShort(offset + PARTITION),
+                        Instant.ofEpochMilli(index.getLong(offset + TIMESTAMP)));
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long offHeapBytes() {
+        return index.capacity() + (long) keys.capacity();
+    }
+
+    @Override
+    public void close() {
+        writeHeader();
+        if (index instanceof MappedByteBuffer mappedIndex && keys instanceof MappedByteBuffer mappedKeys) {
+            mappedIndex.force();
+            mappedKeys.force();
+        }
+    }
+
+    private void decode(Object payload, int partition) {
+        if (partition > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Номер раздела " + partition + " не помещается в слот хранилища");
+        }
+        type = PayloadLayout.type(payload);
+        this.partition = (short) partition;
+        v0 = PayloadLayout.field(payload, 0);
+        v1 = PayloadLayout.field(payload, 1);
+        v2 = PayloadLayout.field(payload, 2);
+    }
+
+    private void writeValues(int offset, long timestampMillis) {
+        index.putLong(offset + TIMESTAMP, timestampMillis);
+        index.put(offset + TYPE, type);
+        index.putShort(offset + PARTITION, partition);
+        index.putInt(offset + VALUES, v0);
+        index.putInt(offset + VALUES + 4, v1);
+        index.putInt(offset + VALUES + 8, v2);
+    }
+
+    private void insert(int slot, int hash, String hubId, String sensorId, long timestampMillis) {
+        int keyRef = appendKey(hubId, sensorId) + 1;
+        // позиция журнала ключей сохраняется до того, как слот начнёт ссылаться на ключ
+        writeHeader();
+        int offset = slotOffset(slot);
+        index.putInt(offset + HASH, hash);
+        writeValues(offset, timestampMillis);
+        index.putInt(offset + KEY_REF, keyRef);
+        size++;
+        if (size > capacity * MAX_LOAD) {
+            grow();
+        }
+        writeHeader();
+    }
+
+    private int find(int hash, String hubId, String sensorId) {
+        int slot = hash & mask;
+        while (true) {
+            int offset = slotOffset(slot);
+            int keyRef = index.getInt(offset + KEY_REF);
+            if (keyRef == 0 || (index.getInt(offset + HASH) == hash && keyEquals(keyRef - 1, hubId, sensorId))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(int position, String hubId, String sensorId) {
+        int hubLength = keys.getInt(position);
+        int sensorLength = keys.getInt(position + 4);
+        if (hubLength != hubId.length() || sensorLength != sensorId.length()) {
+            return false;
+        }
+        int chars = position + 8;
+        for (int i = 0; i < hubLength; i++) {
+            if (keys.getChar(chars + 2 * i) != hubId.charAt(i)) {
+                return false;
+            }
+        }
+        chars += 2 * hubLength;
+        for (int i = 0; i < sensorLength; i++) {
+            if (keys.getChar(chars + 2 * i) != sensorId.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int appendKey(String hubId, String sensorId) {
+        int length = 8 + 2 * (hubId.length() + sensorId.length());
+        if (keysPosition + length > keys.capacity()) {
+            keys = resize(keys, "keys.bin", Math.max(2L * keys.capacity(), keysPosition + length));
+        }
+        int position = keysPosition;
+        keys.putInt(position, hubId.length());
+        keys.putInt(position + 4, sensorId.length());
+        int chars = position + 8;
+        for (int i = 0; i < hubId.length(); i++, chars += 2) {
+            keys.putChar(chars, hubId.charAt(i));
+        }
+        for (int i = 0; i < sensorId.length(); i++, chars += 2) {
+            keys.putChar(chars, sensorId.charAt(i));
+        }
+        keysPosition += length;
+        return position;
+    }
+
+    private String readKey(int position, int part) {
+        int hubLength = keys.getInt(position);
+        int sensorLength = keys.getInt(position + 4);
+        int start = position + 8 + (part == 0 ? 0 : 2 * hubLength);
+        char[] chars = new char[part == 0 ? hubLength : sensorLength];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = keys.getChar(start + 2 * i);
+        }
+        return new String(chars);
+    }
+
+    private void grow() {
+        ByteBuffer old = index;
+        int oldCapacity = capacity;
+        capacity <<= 1;
+        mask = capacity - 1;
+        try {
+            index = allocate("index.bin.new", HEADER_SIZE + (long) capacity * SLOT_SIZE, true);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось расширить хранилище состояний", e);
+        }
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int from = HEADER_SIZE + slot * SLOT_SIZE;
+            if (old.getInt(from + KEY_REF) == 0) {
+                continue;
+            }
+            int to = slotOffset(findEmpty(old.getInt(from + HASH)));
+            index.put(to, old, from, SLOT_SIZE);
+        }
+        writeHeader();
+        if (directory != null) {
+            try {
+                Files.move(directory.resolve("index.bin.new"), directory.resolve("index.bin"),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось расширить хранилище состояний", e);
+            }
+        }
+        log.debug("Хранилище состояний расширено до {} слотов", capacity);
+    }
+
+    private int findEmpty(int hash) {
+        int slot = hash & mask;
+        while (index.getInt(slotOffset(slot) + KEY_REF) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean open() throws IOException {
+        long indexSize = Files.size(directory.resolve("index.bin"));
+        index = allocate("index.bin", indexSize, false);
+        if (index.getInt(0) != MAGIC) {
+            log.warn("Файл хранилища состояний {} повреждён или записан в прежнем формате, состояние начинается заново",
+                    directory);
+            return false;
+        }
+        capacity = index.getInt(4);
+        mask = capacity - 1;
+        size = index.getInt(8);
+        keysPosition = index.getInt(12);
+        keys = allocate("keys.bin", Files.size(directory.resolve("keys.bin")), false);
+        log.info("Хранилище состояний открыто: датчиков {}, слотов {}", size, capacity);
+        return true;
+    }
+
+    private void writeHeader() {
+        index.putInt(0, MAGIC);
+        index.putInt(4, capacity);
+        index.putInt(8, size);
+        index.putInt(12, keysPosition);
+    }
+
+    private ByteBuffer resize(ByteBuffer buffer, String file, long newSize) {
+        try {
+            ByteBuffer resized = allocate(file, newSize, false);
+            if (directory == null) {
+                resized.put(0, buffer, 0, keysPosition);
+            }
+            return resized;
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось расширить журнал ключей", e);
+        }
+    }
+
+    private ByteBuffer allocate(String file, long bytes, boolean truncate) throws IOException {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Хранилище состояний превысило 2 ГБ");
+        }
+        if (directory == null) {
+            return ByteBuffer.allocateDirect((int) bytes);
+        }
+        Files.createDirectories(directory);
+        try (FileChannel channel = FileChannel.open(directory.resolve(file), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (truncate) {
+                channel.truncate(0);
+            }
+            // отображение остаётся действительным и после закрытия канала
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int hash(String hubId, String sensorId) {
+        int h = 0;
+        for (int i = 0; i < hubId.length(); i++) {
+            h = 31 * h + hubId.charAt(i);
+        }
+        h = 31 * h;
+        for (int i = 0; i < sensorId.length(); i++) {
+            h = 31 * h + sensorId.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    @FunctionalInterface
+    public interface KeyVisitor {
+        void visit(String hubId, String sensorId, int partition, Instant timestamp);
+    }
+}
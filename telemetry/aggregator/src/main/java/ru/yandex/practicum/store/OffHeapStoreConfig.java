@@ -0,0 +1,36 @@
+package ru.yandex.practicum.store;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Slf4j
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "aggregator.store.off-heap")
+public class OffHeapStoreConfig {
+
+    private boolean enabled;
+    private int initialCapacity = 65536;
+    // каталог для отображаемых в память файлов; пусто — состояние только в памяти процесса
+    private String directory = "";
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "aggregator.store.off-heap.enabled", havingValue = "true")
+    public OffHeapSensorStore offHeapSensorStore(@Value("${aggregator.parallel.enabled:false}") boolean parallel)
+            throws IOException {
+        if (parallel) {
+            log.warn("Хранилище вне кучи используется только в однопоточном режиме, разделы будут хранить состояние в куче");
+        }
+        return new OffHeapSensorStore(initialCapacity, directory.isBlank() ? null : Path.of(directory));
+    }
+}
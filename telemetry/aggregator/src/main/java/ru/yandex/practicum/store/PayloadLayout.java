@@ -0,0 +1,101 @@
+package ru.yandex.practicum.store;
+
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+/**
+ * Показания датчика как тип и до трёх int-полей (логические — 0/1) — общая раскладка
+ * для хранилищ состояний вне Avro-объектов. Разбор не выделяет память.
+ */
+final class PayloadLayout {
+
+    static final int FIELDS = 3;
+
+    static final byte CLIMATE = 1;
+    static final byte LIGHT = 2;
+    static final byte MOTION = 3;
+    static final byte SWITCH = 4;
+    static final byte TEMPERATURE = 5;
+
+    private static final String[][] FIELD_NAMES = {
+            {},
+            {"temperatureC", "humidity", "co2Level"},
+            {"linkQuality", "luminosity"},
+            {"linkQuality", "motion", "voltage"},
+            {"state"},
+            {"temperatureC", "temperatureF"}
+    };
+    private static final String[] TYPE_NAMES = {"", "CLIMATE", "LIGHT", "MOTION", "SWITCH", "TEMPERATURE"};
+
+    private PayloadLayout() {
+    }
+
+    /**
+     * @throws IllegalArgumentException для неизвестного типа показаний
+     */
+    static byte type(Object payload) {
+        return switch (payload) {
+            case ClimateSensorAvro ignored -> CLIMATE;
+            case LightSensorAvro ignored -> LIGHT;
+            case MotionSensorAvro ignored -> MOTION;
+            case SwitchSensorAvro ignored -> SWITCH;
+            case TemperatureSensorAvro ignored -> TEMPERATURE;
+            default -> throw new IllegalArgumentException("Неизвестный тип показаний: " + payload);
+        };
+    }
+
+    /**
+     * Поле {@code index} показаний; отсутствующие у типа поля равны 0.
+     */
+    static int field(Object payload, int index) {
+        return switch (payload) {
+            case ClimateSensorAvro climate -> switch (index) {
+                case 0 -> climate.getTemperatureC();
+                case 1 -> climate.getHumidity();
+                default -> climate.getCo2Level();
+            };
+            case LightSensorAvro light -> switch (index) {
+                case 0 -> light.getLinkQuality();
+                case 1 -> light.getLuminosity();
+                default -> 0;
+            };
+            case MotionSensorAvro motion -> switch (index) {
+                case 0 -> motion.getLinkQuality();
+                case 1 -> motion.getMotion() ? 1 : 0;
+                default -> motion.getVoltage();
+            };
+            case SwitchSensorAvro sw -> index == 0 && sw.getState() ? 1 : 0;
+            case TemperatureSensorAvro temperature -> switch (index) {
+                case 0 -> temperature.getTemperatureC();
+                case 1 -> temperature.getTemperatureF();
+                default -> 0;
+            };
+            default -> throw new IllegalArgumentException("Неизвестный тип показаний: " + payload);
+        };
+    }
+
+    static Object build(byte type, int a, int b, int c) {
+        return switch (type) {
+            case CLIMATE -> new ClimateSensorAvro(a, b, c);
+            case LIGHT -> new LightSensorAvro(a, b);
+            case MOTION -> new MotionSensorAvro(a, b != 0, c);
+            case SWITCH -> new SwitchSensorAvro(a != 0);
+            default -> new TemperatureSensorAvro(a, b);
+        };
+    }
+
+    static String typeName(byte type) {
+        return TYPE_NAMES[type];
+    }
+
+    static String[] fieldNames(byte type) {
+        return FIELD_NAMES[type];
+    }
+
+    static boolean isBoolean(byte type, int index) {
+        return (type == MOTION && index == 1) || (type == SWITCH && index == 0);
+    }
+}
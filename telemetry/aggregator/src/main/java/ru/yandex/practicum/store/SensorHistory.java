@@ -0,0 +1,145 @@
+package ru.yandex.practicum.store;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Кольцевой буфер последних показаний одного датчика в примитивных массивах:
+ * метки времени, тип и по массиву на каждое int-поле {@link PayloadLayout}.
+ * <p>
+ * Писатель один (поток, обрабатывающий раздел хаба), читателей — сколько угодно, и никто не блокируется:
+ * запись обрамлена счётчиком-seqlock (нечётный — идёт запись), а читатель копирует нужный хвост
+ * и повторяет попытку, если счётчик за это время изменился.
+ */
+final class SensorHistory {
+
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(SensorHistory.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final long[] timestamps;
+    private final byte[] types;
+    private final int[][] fields = new int[PayloadLayout.FIELDS][];
+    private final int mask;
+
+    // число завершённых записей * 2; нечётное значение — запись в процессе
+    @SuppressWarnings("unused")
+    private volatile long version;
+    // всего записано показаний; читается только под проверкой version
+    private long written;
+    // номер самого старого показания, которое ещё можно прочитать; растёт, когда кольцо перезаписывается
+    private long oldest;
+
+    SensorHistory(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.timestamps = new long[size];
+        this.types = new byte[size];
+        for (int i = 0; i < PayloadLayout.FIELDS; i++) {
+            fields[i] = new int[size];
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Добавляет показание. Повтор последнего показания (то же время и те же данные) не записывается.
+     * Показания отменённого пакета убирает {@link #truncate} — повторная обработка пакета
+     * из нескольких показаний иначе записала бы их второй раз.
+     */
+    void append(long timestampMillis, Object payload) {
+        byte type = PayloadLayout.type(payload);
+        if (written > oldest && isLast(timestampMillis, type, payload)) {
+            return;
+        }
+        long current = (long) VERSION.getOpaque(this);
+        VERSION.setOpaque(this, current + 1);
+        VarHandle.storeStoreFence();
+        int slot = (int) (written & mask);
+        timestamps[slot] = timestampMillis;
+        types[slot] = type;
+        for (int i = 0; i < PayloadLayout.FIELDS; i++) {
+            fields[i][slot] = PayloadLayout.field(payload, i);
+        }
+        written++;
+        if (written - oldest > timestamps.length) {
+            oldest = written - timestamps.length;
+        }
+        VERSION.setRelease(this, current + 2);
+    }
+
+    /**
+     * Позиция записи для последующего {@link #truncate}. Вызывается только писателем.
+     */
+    long mark() {
+        return written;
+    }
+
+    /**
+     * Забывает показания, записанные после {@code mark}. Показания до неё, место которых в кольце
+     * за это время заняли более новые, уже не вернуть — они тоже перестают читаться.
+     */
+    void truncate(long mark) {
+        if (mark >= written) {
+            return;
+        }
+        long current = (long) VERSION.getOpaque(this);
+        VERSION.setOpaque(this, current + 1);
+        VarHandle.storeStoreFence();
+        written = mark;
+        if (oldest > mark) {
+            oldest = mark;
+        }
+        VERSION.setRelease(this, current + 2);
+    }
+
+    /**
+     * Копирует до {@code limit} последних показаний, от новых к старым.
+     *
+     * @return число скопированных показаний
+     */
+    int read(int limit, long[] timestampsOut, byte[] typesOut, int[][] fieldsOut) {
+        while (true) {
+            long before = (long) VERSION.getAcquire(this);
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long total = written;
+            int count = (int) Math.min(limit, total - oldest);
+            for (int i = 0; i < count; i++) {
+                int slot = (int) ((total - 1 - i) & mask);
+                timestampsOut[i] = timestamps[slot];
+                typesOut[i] = types[slot];
+                for (int f = 0; f < PayloadLayout.FIELDS; f++) {
+                    fieldsOut[f][i] = fields[f][slot];
+                }
+            }
+            VarHandle.loadLoadFence();
+            if ((long) VERSION.getOpaque(this) == before) {
+                return count;
+            }
+        }
+    }
+
+    int capacity() {
+        return timestamps.length;
+    }
+
+    private boolean isLast(long timestampMillis, byte type, Object payload) {
+        int slot = (int) ((written - 1) & mask);
+        if (timestamps[slot] != timestampMillis || types[slot] != type) {
+            return false;
+        }
+        for (int i = 0; i < PayloadLayout.FIELDS; i++) {
+            if (fields[i][slot] != PayloadLayout.field(payload, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Последние показания каждого датчика ({@link SensorHistory}). Пишут потоки агрегации, читают
+ * HTTP-запросы; ни те, ни другие не блокируют друг друга.
+ */
+@Component
+@ConditionalOnProperty(name = "aggregator.history.enabled", havingValue = "true")
+public class SensorHistoryStore {
+
+    private final Map<String, Map<String, SensorHistory>> hubs = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    public SensorHistoryStore(@Value("${aggregator.history.capacity:64}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void record(SensorEventAvro event) {
+        hubs.computeIfAbsent(event.getHubId(), hubId -> new ConcurrentHashMap<>())
+                .computeIfAbsent(event.getId(), sensorId -> new SensorHistory(capacity))
+                .append(event.getTimestamp().toEpochMilli(), event.getPayload());
+    }
+
+    /**
+     * Позиция записи в истории датчика, к которой её можно вернуть ({@link #truncate}); 0 — истории ещё нет.
+     */
+    public long mark(String hubId, String sensorId) {
+        SensorHistory history = find(hubId, sensorId);
+        return history == null ? 0 : history.mark();
+    }
+
+    /**
+     * Забывает показания датчика, записанные после {@code mark}, — при откате пакета, который будет обработан заново.
+     */
+    public void truncate(String hubId, String sensorId, long mark) {
+        SensorHistory history = find(hubId, sensorId);
+        if (history != null) {
+            history.truncate(mark);
+        }
+    }
+
+    /**
+     * Забывает историю хаба, который этот экземпляр больше не держит.
+     */
+    public void remove(String hubId) {
+        hubs.remove(hubId);
+    }
+
+    /**
+     * До {@code limit} последних показаний датчика, от новых к старым.
+     *
+     * @return пустой список, если показаний датчика нет
+     */
+    public List<Reading> history(String hubId, String sensorId, int limit) {
+        SensorHistory history = find(hubId, sensorId);
+        if (history == null || limit <= 0) {
+            return List.of();
+        }
+        int size = Math.min(limit, history.capacity());
+        long[] timestamps = new long[size];
+        byte[] types = new byte[size];
+        int[][] fields = new int[PayloadLayout.FIELDS][size];
+        int count = history.read(size, timestamps, types, fields);
+
+        List<Reading> readings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] names = PayloadLayout.fieldNames(types[i]);
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int f = 0; f < names.length; f++) {
+                values.put(names[f], PayloadLayout.isBoolean(types[i], f) ? fields[f][i] != 0 : fields[f][i]);
+            }
+            readings.add(new Reading(Instant.ofEpochMilli(timestamps[i]), PayloadLayout.typeName(types[i]), values));
+        }
+        return readings;
+    }
+
+    private SensorHistory find(String hubId, String sensorId) {
+        Map<String, SensorHistory> sensors = hubs.get(hubId);
+        return sensors == null ? null : sensors.get(sensorId);
+    }
+
+    public record Reading(Instant timestamp, String type, Map<String, Object> data) {
+    }
+}
@@ -0,0 +1,184 @@
+package ru.yandex.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.kafka.AggregatorProducerConfig;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.yandex.practicum.service.Fixtures.event;
+
+/**
+ * Однопоточный цикл агрегатора на {@link MockConsumer} и {@link MockProducer}: задачи poll
+ * выполняются по одной на каждый вызов, последняя останавливает цикл через {@code wakeup}.
+ */
+class AggregationStarterTest {
+
+    private static final String EVENTS_TOPIC = "telemetry.sensors.v1";
+    private static final TopicPartition PARTITION = new TopicPartition(EVENTS_TOPIC, 0);
+
+    private final MockConsumer<String, SpecificRecordBase> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    private final MockProducer<String, SpecificRecordBase> producer = Fixtures.producer(true);
+    private final SnapshotAggregator aggregator = Fixtures.aggregator();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void batchFlushedOnIdlePollIsCommitted() {
+        EmitProperties emitProperties = new EmitProperties();
+        emitProperties.setMode(EmitMode.PER_BATCH);
+        Map<TopicPartition, OffsetAndMetadata> committed = new HashMap<>();
+        consumer.schedulePollTask(() -> {
+            assign();
+            addRecord(0, event("hub-1", "t1", 1_000, 20));
+            addRecord(1, event("hub-1", "t1", 2_000, 21));
+        });
+        // пустой poll: снимок отправляется, не дожидаясь maxBatchLatencyMs
+        consumer.schedulePollTask(() -> {
+        });
+        consumer.schedulePollTask(() -> {
+            committed.putAll(consumer.committed(Set.of(PARTITION)));
+            consumer.wakeup();
+        });
+
+        starter(emitProperties, new AggregatorProducerConfig()).start();
+
+        assertEquals(1, producer.history().size());
+        assertEquals(2, committed.get(PARTITION).offset());
+    }
+
+    @Test
+    void failedSendAbortsTransactionAndRewindsBatch() {
+        assertBatchRolledBack(() -> producer.sendException = new KafkaException("Брокер недоступен"));
+    }
+
+    @Test
+    void failedCommitAbortsTransactionAndRewindsBatch() {
+        assertBatchRolledBack(() -> producer.commitTransactionException = new KafkaException("Брокер недоступен"));
+    }
+
+    @Test
+    void failedAbortEndsLoop() {
+        AtomicBoolean continued = new AtomicBoolean();
+        consumer.schedulePollTask(() -> {
+            assign();
+            producer.commitTransactionException = new KafkaException("Брокер недоступен");
+            producer.abortTransactionException = new KafkaException("Продюсер в состоянии фатальной ошибки");
+            addRecord(0, event("hub-1", "t1", 1_000, 20));
+        });
+        consumer.schedulePollTask(() -> {
+            continued.set(true);
+            consumer.wakeup();
+        });
+
+        starter(new EmitProperties(), transactional()).start();
+
+        assertFalse(continued.get());
+        assertTrue(consumer.closed());
+        // состояние возвращается до отмены транзакции, даже если отменить её не удалось
+        assertEquals(0, aggregator.hubCount());
+    }
+
+    @Test
+    void fencedProducerEndsLoop() {
+        AtomicBoolean continued = new AtomicBoolean();
+        consumer.schedulePollTask(() -> {
+            assign();
+            producer.fenceProducer();
+            addRecord(0, event("hub-1", "t1", 1_000, 20));
+        });
+        consumer.schedulePollTask(() -> {
+            continued.set(true);
+            consumer.wakeup();
+        });
+
+        starter(new EmitProperties(), transactional()).start();
+
+        assertFalse(continued.get());
+        assertFalse(producer.transactionAborted());
+        assertTrue(consumer.closed());
+    }
+
+    /**
+     * Первый пакет фиксируется, второй (изменение hub-1 и новый hub-2) падает из-за {@code failure}:
+     * транзакция отменяется, hub-1 возвращается к состоянию после первого пакета, hub-2 забывается,
+     * а консьюмер перематывается к началу второго пакета.
+     */
+    private void assertBatchRolledBack(Runnable failure) {
+        AtomicReference<SensorsSnapshotAvro> committedHub = new AtomicReference<>();
+        AtomicReference<SensorsSnapshotAvro> restoredHub = new AtomicReference<>();
+        AtomicInteger hubs = new AtomicInteger();
+        AtomicLong position = new AtomicLong();
+        consumer.schedulePollTask(() -> {
+            assign();
+            addRecord(0, event("hub-1", "t1", 1_000, 20));
+        });
+        consumer.schedulePollTask(() -> {
+            committedHub.set(aggregator.snapshotOf("hub-1"));
+            failure.run();
+            addRecord(1, event("hub-1", "t1", 2_000, 21));
+            addRecord(2, event("hub-2", "t1", 2_000, 20));
+        });
+        consumer.schedulePollTask(() -> {
+            restoredHub.set(aggregator.snapshotOf("hub-1"));
+            hubs.set(aggregator.hubCount());
+            position.set(consumer.position(PARTITION));
+            consumer.wakeup();
+        });
+
+        starter(new EmitProperties(), transactional()).start();
+
+        assertTrue(producer.transactionAborted());
+        assertEquals(1, registry.counter("aggregator.transaction.aborted").count());
+        // снимки отменённой транзакции читателям не видны
+        assertEquals(1, producer.history().size());
+        assertEquals(committedHub.get(), restoredHub.get());
+        assertEquals(1, hubs.get());
+        assertEquals(1, position.get());
+    }
+
+    private AggregationStarter starter(EmitProperties emitProperties, AggregatorProducerConfig producerConfig) {
+        AggregationStarter starter = new AggregationStarter(Fixtures.kafkaClient(producer, consumer),
+                aggregator, Fixtures.emitter(producer, false), emitProperties, Optional.empty(),
+                null, Optional.empty(), producerConfig, registry);
+        ReflectionTestUtils.setField(starter, "sensorsEventsTopic", EVENTS_TOPIC);
+        ReflectionTestUtils.setField(starter, "engine", AggregatorEngine.POLL);
+        return starter;
+    }
+
+    private static AggregatorProducerConfig transactional() {
+        AggregatorProducerConfig config = new AggregatorProducerConfig();
+        config.setTransactionalId("aggregator-test");
+        return config;
+    }
+
+    private void assign() {
+        consumer.rebalance(List.of(PARTITION));
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+    }
+
+    private void addRecord(long offset, SensorEventAvro event) {
+        consumer.addRecord(new ConsumerRecord<>(EVENTS_TOPIC, PARTITION.partition(), offset, event.getHubId(), event));
+    }
+}
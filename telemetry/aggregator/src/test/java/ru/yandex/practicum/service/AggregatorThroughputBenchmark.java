@@ -0,0 +1,303 @@
+package ru.yandex.practicum.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsConfig;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.deserializer.SensorEventDeserializer;
+import ru.yandex.practicum.kafka.AggregatorConsumerConfig;
+import ru.yandex.practicum.kafka.AggregatorProducerConfig;
+import ru.yandex.practicum.kafka.AggregatorStreamsConfig;
+import ru.yandex.practicum.kafka.KafkaClient;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+import ru.yandex.practicum.serializer.AvroSerializer;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность движков агрегатора на живом брокере: входной топик заранее заполняется показаниями,
+ * и замеряется время, за которое группа движка зафиксирует смещения всех показаний.
+ * Нагрузка повторяет профиль load-generator по умолчанию: 100 хабов, по 2 датчика каждого из 5 типов,
+ * значения меняются случайным блужданием, 30% показаний не меняют данных. Каждый движок собран так же,
+ * как в приложении ({@link AggregationStarter}, {@link StreamsAggregation}), с настройками по умолчанию
+ * (только у Kafka Streams нет резервных копий хранилища: экземпляр один).
+ * Корректность топологии Kafka Streams проверяет {@link StreamsAggregationTest}.
+ * <p>
+ * Лежит в тестовых исходниках и не попадает в jar модуля. Запуск после {@code mvn test-compile}:
+ * {@code java -cp target/test-classes:target/classes:<classpath> ru.yandex.practicum.service.AggregatorThroughputBenchmark
+ * [bootstrap] [events] [partitions]}
+ * <p>
+ * Один брокер KRaft 3.6.1 на той же машине (1 vCPU на брокер и агрегатор, журналы в tmpfs), 1 000 000 показаний,
+ * 4 раздела, второй проход из двух. Время включает вход в группу, а у Kafka Streams — и интервал фиксации
+ * ({@code commitIntervalMs} = 1000). По одному снимку на изменение ожидалось 509 707. Транзакция охватывает
+ * один poll (до 500 записей), поэтому транзакционный PER_BATCH отправляет снимки после каждого poll.
+ * Между запусками результаты расходятся до полутора раз (у POLL_PER_BATCH прежде было 406 041 показание/с).
+ * <pre>
+ * POLL_PER_EVENT                  92 227 показаний/с,   509 707 снимков,  10.84 с
+ * POLL_PER_BATCH                 249 892 показаний/с,     1 475 снимков,   4.00 с
+ * POLL_TRANSACTIONAL              27 459 показаний/с,   509 707 снимков,  36.42 с
+ * POLL_TRANSACTIONAL_PER_BATCH    89 544 показаний/с,    53 850 снимков,  11.17 с
+ * STREAMS                         53 295 показаний/с,   509 707 снимков,  18.76 с
+ * STREAMS_EXACTLY_ONCE            43 832 показаний/с,   509 707 снимков,  22.81 с
+ * </pre>
+ */
+public final class AggregatorThroughputBenchmark {
+
+    private static final int HUBS = 100;
+    private static final int SENSORS_PER_TYPE = 2;
+    private static final double UNCHANGED_RATIO = 0.3;
+    private static final long TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private AggregatorThroughputBenchmark() {
+    }
+
+    enum Engine {
+        POLL_PER_EVENT,
+        POLL_PER_BATCH,
+        POLL_TRANSACTIONAL,
+        POLL_TRANSACTIONAL_PER_BATCH,
+        STREAMS,
+        STREAMS_EXACTLY_ONCE
+    }
+
+    public static void main(String[] args) throws Exception {
+        String bootstrap = args.length > 0 ? args[0] : "localhost:9092";
+        int events = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int partitions = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).getLogger("ROOT").setLevel(Level.WARN);
+
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        String input = "bench.sensors." + run;
+        try (Admin admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap))) {
+            admin.createTopics(List.of(new NewTopic(input, partitions, (short) 1))).all().get();
+            long expected = fill(bootstrap, input, events);
+            System.out.printf("Показаний %d, разделов %d, снимков по одному на изменение %d%n",
+                    events, partitions, expected);
+
+            for (int round = 0; round < 2; round++) {
+                boolean report = round == 1; // первый проход — прогрев JIT
+                for (Engine engine : Engine.values()) {
+                    String name = run + "." + round + "." + engine.name().toLowerCase();
+                    String output = "bench.snapshots." + name;
+                    admin.createTopics(List.of(new NewTopic(output, partitions, (short) 1))).all().get();
+                    long elapsed = measure(admin, bootstrap, engine, "bench-" + name, input, output, events);
+                    long snapshots = count(bootstrap, output);
+                    if (report) {
+                        System.out.printf("%-28s %8.0f показаний/с, %8d снимков, %6.2f с%n", engine,
+                                events / (elapsed / 1e9), snapshots, elapsed / 1e9);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Запускает движок и ждёт, пока его группа не зафиксирует смещения всех показаний.
+     *
+     * @return время обработки в наносекундах
+     */
+    private static long measure(Admin admin, String bootstrap, Engine engine, String group,
+                                String input, String output, int events) throws Exception {
+        Runnable stop;
+        Thread worker;
+        long start = System.nanoTime();
+        if (engine == Engine.STREAMS || engine == Engine.STREAMS_EXACTLY_ONCE) {
+            AggregatorStreamsConfig streamsConfig = new AggregatorStreamsConfig();
+            streamsConfig.setApplicationId(group);
+            streamsConfig.setStateDir(Files.createTempDirectory("aggregator-streams").toString());
+            // экземпляр один, резервным копиям хранилища негде разместиться
+            streamsConfig.setNumStandbyReplicas(0);
+            if (engine == Engine.STREAMS_EXACTLY_ONCE) {
+                streamsConfig.setProcessingGuarantee(StreamsConfig.EXACTLY_ONCE_V2);
+            }
+            AggregatorConsumerConfig consumerConfig = new AggregatorConsumerConfig();
+            consumerConfig.setBootstrapServers(bootstrap);
+            StreamsAggregation aggregation = new StreamsAggregation(streamsConfig, consumerConfig,
+                    new SimpleMeterRegistry());
+            ReflectionTestUtils.setField(aggregation, "sensorsEventsTopic", input);
+            ReflectionTestUtils.setField(aggregation, "snapshotsEventsTopic", output);
+            worker = new Thread(aggregation::start);
+            // прерывание ожидания в StreamsAggregation#start закрывает Kafka Streams
+            stop = worker::interrupt;
+        } else {
+            AggregatorProducerConfig producerConfig = new AggregatorProducerConfig();
+            producerConfig.setBootstrapServers(bootstrap);
+            producerConfig.setKeySerializer(StringSerializer.class.getName());
+            producerConfig.setValueSerializer(AvroSerializer.class.getName());
+            if (engine == Engine.POLL_TRANSACTIONAL || engine == Engine.POLL_TRANSACTIONAL_PER_BATCH) {
+                producerConfig.setTransactionalId(group);
+            }
+            KafkaClient client = client(bootstrap, group, producerConfig);
+            worker = new Thread(starter(client, engine, producerConfig, input, output)::start);
+            stop = client.getConsumer()::wakeup;
+        }
+        worker.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (committed(admin, group) < events) {
+            if (System.currentTimeMillis() > deadline || !worker.isAlive()) {
+                throw new IllegalStateException("Движок " + engine + " не обработал все показания");
+            }
+            Thread.sleep(10);
+        }
+        long elapsed = System.nanoTime() - start;
+        stop.run();
+        worker.join();
+        return elapsed;
+    }
+
+    private static KafkaClient client(String bootstrap, String group, AggregatorProducerConfig producerConfig) {
+        AggregatorConsumerConfig consumerConfig = new AggregatorConsumerConfig();
+        consumerConfig.setBootstrapServers(bootstrap);
+        consumerConfig.setGroupId(group);
+        consumerConfig.setAutoOffsetReset("earliest");
+        consumerConfig.setKeyDeserializer(StringDeserializer.class.getName());
+        consumerConfig.setValueDeserializer(SensorEventDeserializer.class.getName());
+        return Fixtures.kafkaClient(producerConfig.kafkaProducer(), consumerConfig.kafkaConsumer());
+    }
+
+    private static AggregationStarter starter(KafkaClient client, Engine engine, AggregatorProducerConfig producerConfig,
+                                              String input, String output) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SnapshotEmitter emitter = new SnapshotEmitter(client, new DeltaProperties(), Optional.empty(), registry);
+        ReflectionTestUtils.setField(emitter, "snapshotsEventsTopic", output);
+        EmitProperties emitProperties = new EmitProperties();
+        emitProperties.setMode(engine == Engine.POLL_PER_BATCH || engine == Engine.POLL_TRANSACTIONAL_PER_BATCH
+                ? EmitMode.PER_BATCH : EmitMode.PER_EVENT);
+        AggregationStarter starter = new AggregationStarter(client, Fixtures.aggregator(), emitter, emitProperties,
+                Optional.empty(), null, Optional.empty(), producerConfig, registry);
+        ReflectionTestUtils.setField(starter, "sensorsEventsTopic", input);
+        ReflectionTestUtils.setField(starter, "engine", AggregatorEngine.POLL);
+        return starter;
+    }
+
+    private static long committed(Admin admin, String group) throws Exception {
+        return admin.listConsumerGroupOffsets(group).partitionsToOffsetAndMetadata().get().values().stream()
+                .mapToLong(OffsetAndMetadata::offset)
+                .sum();
+    }
+
+    /**
+     * Заполняет входной топик и считает, сколько снимков выдал бы агрегатор по одному на каждое изменение.
+     */
+    private static long fill(String bootstrap, String input, int events) {
+        Map<String, Object> config = Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap,
+                ProducerConfig.LINGER_MS_CONFIG, 5,
+                ProducerConfig.BATCH_SIZE_CONFIG, 65536);
+        SnapshotAggregator aggregator = Fixtures.aggregator();
+        Workload workload = new Workload();
+        long expected = 0;
+        try (KafkaProducer<String, SensorEventAvro> producer =
+                     new KafkaProducer<>(config, new StringSerializer(), new AvroSerializer<>())) {
+            for (int i = 0; i < events; i++) {
+                SensorEventAvro event = workload.next();
+                producer.send(new ProducerRecord<>(input, event.getHubId(), event));
+                if (aggregator.updateState(event, 0).isPresent()) {
+                    expected++;
+                }
+            }
+        }
+        return expected;
+    }
+
+    private static long count(String bootstrap, String output) {
+        Map<String, Object> config = Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap,
+                ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        try (KafkaConsumer<byte[], byte[]> consumer =
+                     new KafkaConsumer<>(config, new ByteArrayDeserializer(), new ByteArrayDeserializer())) {
+            List<TopicPartition> partitions = consumer.partitionsFor(output).stream()
+                    .map(info -> new TopicPartition(output, info.partition()))
+                    .toList();
+            consumer.assign(partitions);
+            consumer.seekToBeginning(partitions);
+            Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+            long count = 0;
+            while (partitions.stream().anyMatch(partition -> consumer.position(partition) < end.get(partition))) {
+                ConsumerRecords<byte[], byte[]> records = consumer.poll(Duration.ofMillis(100));
+                count += records.count();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Показания в духе load-generator: случайный хаб, случайный датчик, блуждание значений.
+     */
+    private static final class Workload {
+
+        private static final String[] TYPES = {"motion", "temperature", "light", "climate", "switch"};
+
+        private final SplittableRandom random = new SplittableRandom(42);
+        private final int[][] values = new int[HUBS * TYPES.length * SENSORS_PER_TYPE][];
+        private long timestamp = Instant.parse("2026-01-01T00:00:00Z").toEpochMilli();
+
+        SensorEventAvro next() {
+            int hub = random.nextInt(HUBS);
+            int type = random.nextInt(TYPES.length);
+            int index = random.nextInt(SENSORS_PER_TYPE);
+            int sensor = (hub * TYPES.length + type) * SENSORS_PER_TYPE + index;
+            int[] v = values[sensor];
+            if (v == null) {
+                v = values[sensor] = new int[]{type == 1 || type == 3 ? 20 : 0, type == 3 ? 40 : 100,
+                        type == 3 ? 600 : 220};
+                walk(v, type);
+            } else if (random.nextDouble() >= UNCHANGED_RATIO) {
+                walk(v, type);
+            }
+            Object payload = switch (TYPES[type]) {
+                case "motion" -> new MotionSensorAvro(v[1], v[0] != 0, v[2]);
+                case "temperature" -> new TemperatureSensorAvro(v[0], v[0] * 9 / 5 + 32);
+                case "light" -> new LightSensorAvro(v[1], v[0]);
+                case "climate" -> new ClimateSensorAvro(v[0], v[1], v[2]);
+                default -> new SwitchSensorAvro(v[0] != 0);
+            };
+            return SensorEventAvro.newBuilder()
+                    .setHubId("load-hub-" + hub)
+                    .setId("load-hub-" + hub + "-" + TYPES[type] + "-" + index)
+                    .setTimestamp(Instant.ofEpochMilli(timestamp++))
+                    .setPayload(payload)
+                    .build();
+        }
+
+        private void walk(int[] v, int type) {
+            switch (TYPES[type]) {
+                case "motion", "switch" -> v[0] = random.nextInt(2);
+                case "light" -> v[0] = Math.max(0, v[0] + random.nextInt(-50, 51));
+                default -> v[0] += random.nextInt(-1, 2);
+            }
+            if (type == 3) {
+                v[1] = Math.clamp(v[1] + random.nextInt(-2, 3), 0, 100);
+                v[2] = Math.max(300, v[2] + random.nextInt(-20, 21));
+            }
+        }
+    }
+}
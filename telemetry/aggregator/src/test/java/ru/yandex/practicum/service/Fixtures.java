@@ -0,0 +1,98 @@
+package ru.yandex.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.kafka.KafkaClient;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Общие заготовки тестов агрегатора.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static SnapshotAggregator aggregator() {
+        return new SnapshotAggregator(hubCache(new HubCacheProperties(), null), gate(), Optional.empty());
+    }
+
+    static HubCache hubCache(HubCacheProperties properties, StateChangelog changelog) {
+        return new HubCache(properties, Optional.ofNullable(changelog), new SimpleMeterRegistry());
+    }
+
+    static SuppressionGate gate() {
+        return new SuppressionGate(new SuppressionProperties(), new ScenarioThresholds(), new SimpleMeterRegistry());
+    }
+
+    /**
+     * Подавляет все изменения, кроме keep-alive: сценариев нет, хабы без сценариев не пропускаются.
+     */
+    static SuppressionGate suppressingGate() {
+        SuppressionProperties properties = new SuppressionProperties();
+        properties.setEnabled(true);
+        properties.setPassUnknownHubs(false);
+        ScenarioThresholds thresholds = new ScenarioThresholds();
+        thresholds.markCaughtUp();
+        return new SuppressionGate(properties, thresholds, new SimpleMeterRegistry());
+    }
+
+    static final String SNAPSHOTS_TOPIC = "telemetry.snapshots.v1";
+    static final String DELTAS_TOPIC = "telemetry.snapshots.deltas.v1";
+
+    /**
+     * Продюсер без брокера; отправки подтверждаются вручную, если {@code autoComplete} не задан.
+     */
+    static MockProducer<String, SpecificRecordBase> producer(boolean autoComplete) {
+        return new MockProducer<>(autoComplete, (topic, key) -> new byte[0], (topic, value) -> new byte[0]);
+    }
+
+    static SnapshotEmitter emitter(Producer<String, SpecificRecordBase> producer, boolean deltas) {
+        DeltaProperties properties = new DeltaProperties();
+        properties.setEnabled(deltas);
+        SnapshotEmitter emitter = new SnapshotEmitter(kafkaClient(producer, null), properties, Optional.empty(),
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(emitter, "snapshotsEventsTopic", SNAPSHOTS_TOPIC);
+        ReflectionTestUtils.setField(emitter, "snapshotDeltasTopic", DELTAS_TOPIC);
+        return emitter;
+    }
+
+    static KafkaClient kafkaClient(Producer<String, SpecificRecordBase> producer,
+                                   Consumer<String, SpecificRecordBase> consumer) {
+        return new KafkaClient() {
+            @Override
+            public Producer<String, SpecificRecordBase> getProducer() {
+                return producer;
+            }
+
+            @Override
+            public Consumer<String, SpecificRecordBase> getConsumer() {
+                return consumer;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    static SensorEventAvro event(String hubId, String sensorId, long timestampMs, int temperature) {
+        return SensorEventAvro.newBuilder()
+                .setHubId(hubId)
+                .setId(sensorId)
+                .setTimestamp(Instant.ofEpochMilli(timestampMs))
+                .setPayload(TemperatureSensorAvro.newBuilder()
+                        .setTemperatureC(temperature)
+                        .setTemperatureF(temperature * 9 / 5 + 32)
+                        .build())
+                .build();
+    }
+}
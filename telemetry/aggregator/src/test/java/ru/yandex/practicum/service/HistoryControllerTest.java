@@ -0,0 +1,55 @@
+package ru.yandex.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import ru.yandex.practicum.http.HistoryController;
+import ru.yandex.practicum.store.SensorHistoryStore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static ru.yandex.practicum.service.Fixtures.event;
+
+class HistoryControllerTest {
+
+    private final SensorHistoryStore history = new SensorHistoryStore(8);
+    private final HistoryController controller = new HistoryController(history);
+
+    @Test
+    void returnsUpToLimitReadings() {
+        for (int i = 1; i <= 5; i++) {
+            history.record(event("hub-1", "t1", i * 1_000L, i));
+        }
+
+        assertEquals(3, controller.getHistory("hub-1", "t1", 3).size());
+        assertEquals(5, controller.getHistory("hub-1", "t1", 100).size());
+    }
+
+    @Test
+    void unknownSensorIsNotFound() {
+        history.record(event("hub-1", "t1", 1_000, 20));
+
+        assertStatus(HttpStatus.NOT_FOUND, () -> controller.getHistory("hub-1", "t2", 10));
+        assertStatus(HttpStatus.NOT_FOUND, () -> controller.getHistory("hub-2", "t1", 10));
+    }
+
+    @Test
+    void forgottenHubIsNotFound() {
+        history.record(event("hub-1", "t1", 1_000, 20));
+        history.remove("hub-1");
+
+        assertStatus(HttpStatus.NOT_FOUND, () -> controller.getHistory("hub-1", "t1", 10));
+    }
+
+    @Test
+    void nonPositiveLimitIsBadRequest() {
+        history.record(event("hub-1", "t1", 1_000, 20));
+
+        assertStatus(HttpStatus.BAD_REQUEST, () -> controller.getHistory("hub-1", "t1", 0));
+        assertStatus(HttpStatus.BAD_REQUEST, () -> controller.getHistory("hub-1", "t1", -1));
+    }
+
+    private static void assertStatus(HttpStatus status, Runnable request) {
+        assertEquals(status, assertThrows(ResponseStatusException.class, request::run).getStatusCode());
+    }
+}
@@ -0,0 +1,94 @@
+package ru.yandex.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.yandex.practicum.service.Fixtures.event;
+
+/**
+ * Когда поток дельт хаба выдаёт ключевой кадр: первой записью, каждые N дельт, по интервалу
+ * и после {@link HubState#requireKeyframe}.
+ */
+class HubStateTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private final HubState hub = new HubState("hub-1", Instant.EPOCH, 0, null);
+
+    @Test
+    void firstRecordIsKeyframeAndDeltasCarryOnlyChangedSensors() {
+        hub.apply(event("hub-1", "t1", 1_000, 20));
+        hub.apply(event("hub-1", "t2", 1_000, 30));
+
+        SensorsSnapshotDeltaAvro keyframe = hub.delta(100, NEVER, 0);
+        hub.apply(event("hub-1", "t2", 2_000, 31));
+        SensorsSnapshotDeltaAvro delta = hub.delta(100, NEVER, 0);
+
+        assertTrue(keyframe.getKeyframe());
+        assertEquals(0, keyframe.getSequence());
+        assertEquals(Set.of("t1", "t2"), keyframe.getSensorsState().keySet());
+        assertFalse(delta.getKeyframe());
+        assertEquals(1, delta.getSequence());
+        assertEquals(Set.of("t2"), delta.getSensorsState().keySet());
+    }
+
+    @Test
+    void keyframeEveryNDeltas() {
+        assertEquals(List.of(true, false, false, false, true, false), keyframes(6, 3, NEVER, 0));
+    }
+
+    @Test
+    void keyframeByInterval() {
+        // записи через каждые 400 нс при интервале 1000 нс: 0, 400, 800, 1200 (кадр), 1600, 2000, 2400 (кадр)
+        assertEquals(List.of(true, false, false, true, false, false, true), keyframes(7, 100, 1_000, 400));
+    }
+
+    @Test
+    void requiredKeyframeComesNextThenDeltasResume() {
+        hub.apply(event("hub-1", "t1", 1_000, 20));
+        hub.delta(100, NEVER, 0);
+        hub.apply(event("hub-1", "t1", 2_000, 21));
+        hub.requireKeyframe();
+
+        SensorsSnapshotDeltaAvro required = hub.delta(100, NEVER, 0);
+        hub.apply(event("hub-1", "t1", 3_000, 22));
+        SensorsSnapshotDeltaAvro next = hub.delta(100, NEVER, 0);
+
+        assertTrue(required.getKeyframe());
+        assertEquals(1, required.getSequence());
+        assertFalse(next.getKeyframe());
+        assertEquals(2, next.getSequence());
+    }
+
+    @Test
+    void restoredHubStartsWithKeyframeZero() {
+        hub.apply(event("hub-1", "t1", 1_000, 20));
+        hub.delta(100, NEVER, 0);
+        hub.apply(event("hub-1", "t1", 2_000, 21));
+        hub.delta(100, NEVER, 0);
+
+        HubState restored = HubState.restored(hub.snapshot(), 0, null);
+        SensorsSnapshotDeltaAvro first = restored.delta(100, NEVER, 0);
+
+        assertTrue(first.getKeyframe());
+        assertEquals(0, first.getSequence());
+        assertEquals(Set.of("t1"), first.getSensorsState().keySet());
+    }
+
+    private List<Boolean> keyframes(int records, int keyframeEvery, long keyframeIntervalNanos, long stepNanos) {
+        List<Boolean> keyframes = new ArrayList<>();
+        for (int i = 0; i < records; i++) {
+            hub.apply(event("hub-1", "t1", 1_000L * (i + 1), 20 + i));
+            keyframes.add(hub.delta(keyframeEvery, keyframeIntervalNanos, i * stepNanos).getKeyframe());
+        }
+        return keyframes;
+    }
+}
@@ -0,0 +1,75 @@
+package ru.yandex.practicum.service;
+
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.yandex.practicum.service.Fixtures.event;
+
+/**
+ * Ошибка пакета останавливает только его раздел, а не всю агрегацию.
+ */
+class PartitionParallelAggregationTest {
+
+    private static final String TOPIC = "telemetry.sensors.v1";
+    private static final TopicPartition FAILING = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition HEALTHY = new TopicPartition(TOPIC, 1);
+
+    private final MockProducer<String, SpecificRecordBase> producer = Fixtures.producer(true);
+    private final MockConsumer<String, SpecificRecordBase> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    @Test
+    void failedBatchRewindsOnlyItsPartition() throws Exception {
+        SnapshotEmitter emitter = Fixtures.emitter(producer, false);
+        PartitionParallelAggregation aggregation = new PartitionParallelAggregation(
+                Fixtures.kafkaClient(producer, consumer), emitter, new EmitProperties(), Optional.empty(),
+                Fixtures.hubCache(new HubCacheProperties(), null), Fixtures.gate(), Optional.empty());
+        ReflectionTestUtils.setField(aggregation, "sensorsEventsTopic", TOPIC);
+        consumer.updateBeginningOffsets(Map.of(FAILING, 5L, HEALTHY, 0L));
+        consumer.schedulePollTask(() -> {
+            consumer.rebalance(List.of(FAILING, HEALTHY));
+            consumer.addRecord(record(FAILING, 5, "hub-bad"));
+            consumer.addRecord(record(FAILING, 6, "hub-bad"));
+        });
+        // первый пакет раздела 0 падает на отправке снимка
+        producer.sendException = new KafkaException("продюсер недоступен");
+        Thread loop = new Thread(aggregation::start);
+        loop.start();
+
+        await(() -> consumer.paused().contains(FAILING) && consumer.position(FAILING) == 5);
+        producer.sendException = null;
+        consumer.schedulePollTask(() -> consumer.addRecord(record(HEALTHY, 0, "hub-ok")));
+        await(() -> consumer.committed(Set.of(HEALTHY)).get(HEALTHY) != null);
+        assertTrue(loop.isAlive());
+
+        // после паузы раздел снова читается с начала неудавшегося пакета
+        await(() -> !consumer.paused().contains(FAILING));
+        consumer.wakeup();
+        loop.join(5_000);
+    }
+
+    private static ConsumerRecord<String, SpecificRecordBase> record(TopicPartition partition, long offset, String hubId) {
+        return new ConsumerRecord<>(partition.topic(), partition.partition(), offset, hubId,
+                event(hubId, "t1", 1_000 + offset, 20));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,112 @@
+package ru.yandex.practicum.service;
+
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.yandex.practicum.service.Fixtures.event;
+
+class PartitionWorkerTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("telemetry.sensors.v1", 0);
+
+    private final MockProducer<String, SpecificRecordBase> producer = Fixtures.producer(false);
+    private final PartitionWorker worker = new PartitionWorker(PARTITION, Fixtures.emitter(producer, true),
+            EmitMode.PER_EVENT, Fixtures.hubCache(new HubCacheProperties(), null), Fixtures.gate(), Optional.empty());
+
+    @AfterEach
+    void close() {
+        worker.close();
+    }
+
+    @Test
+    void failedSendIsRetriedWithoutNewDelta() throws Exception {
+        worker.submit(List.of(record(10, event("hub-1", "t1", 1_000, 20))));
+        awaitSent(2);
+        producer.errorNext(new TimeoutException("нет подтверждения"));
+
+        // повтор: только снимок, без новой записи потока дельт
+        awaitSent(3);
+        while (producer.completeNext()) {
+            // подтверждаем всё, включая исходную дельту
+        }
+        assertEquals(11L, awaitOffset());
+        assertEquals(List.of(Fixtures.SNAPSHOTS_TOPIC, Fixtures.DELTAS_TOPIC, Fixtures.SNAPSHOTS_TOPIC),
+                producer.history().stream().map(ProducerRecord::topic).toList());
+
+        // пропущенная дельта восполняется ключевым кадром
+        worker.submit(List.of(record(11, event("hub-1", "t1", 2_000, 25))));
+        awaitSent(5);
+        while (producer.completeNext()) {
+            // подтверждаем пакет
+        }
+        assertEquals(12L, awaitOffset());
+        SensorsSnapshotDeltaAvro next = (SensorsSnapshotDeltaAvro) producer.history().get(4).value();
+        assertEquals(1, next.getSequence());
+        assertTrue(next.getKeyframe());
+    }
+
+    @Test
+    void failedBatchRollsBackStateForReplay() throws Exception {
+        producer.sendException = new KafkaException("продюсер недоступен");
+        worker.submit(List.of(record(10, event("hub-1", "t1", 1_000, 20))));
+        assertThrows(CompletionException.class, this::awaitOffset);
+
+        assertTrue(worker.isIntact());
+        assertEquals(10, worker.batchStart());
+        assertEquals(0, worker.shard().hubCount());
+
+        // тот же пакет после сбоя снова меняет состояние и даёт снимок
+        producer.sendException = null;
+        worker.submit(List.of(record(10, event("hub-1", "t1", 1_000, 20))));
+        awaitSent(2);
+        while (producer.completeNext()) {
+            // подтверждаем пакет
+        }
+        assertEquals(11L, awaitOffset());
+    }
+
+    private void awaitSent(int records) throws InterruptedException {
+        await(() -> producer.history().size() >= records);
+        assertEquals(records, producer.history().size());
+    }
+
+    private Long awaitOffset() throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            Long offset = worker.completedOffset();
+            if (offset != null) {
+                return offset;
+            }
+            Thread.sleep(10);
+        }
+        assertNull(worker.completedOffset(), "пакет не завершился");
+        return null;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static ConsumerRecord<String, SpecificRecordBase> record(long offset, SpecificRecordBase event) {
+        return new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, "hub-1", event);
+    }
+}
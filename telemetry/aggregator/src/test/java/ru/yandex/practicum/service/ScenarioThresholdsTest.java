@@ -0,0 +1,101 @@
+package ru.yandex.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioConditionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioRemovedEventAvro;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Пороги датчиков, собранные из событий добавления и удаления сценариев.
+ */
+class ScenarioThresholdsTest {
+
+    private final ScenarioThresholds thresholds = new ScenarioThresholds();
+
+    @Test
+    void conditionsOfAllScenariosAreMergedWithoutDuplicates() {
+        add("s1", condition("m1", ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, true),
+                condition("t1", ConditionTypeAvro.TEMPERATURE, ConditionOperationAvro.GREATER_THAN, 25));
+        add("s2", condition("t1", ConditionTypeAvro.TEMPERATURE, ConditionOperationAvro.GREATER_THAN, 25),
+                condition("t1", ConditionTypeAvro.TEMPERATURE, ConditionOperationAvro.LOWER_THAN, 10));
+
+        ScenarioThresholds.HubThresholds hub = thresholds.get("hub-1");
+
+        assertArrayEquals(new ScenarioThresholds.Threshold[]{
+                new ScenarioThresholds.Threshold(ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, 1)
+        }, hub.sensors().get("m1"));
+        assertArrayEquals(new ScenarioThresholds.Threshold[]{
+                new ScenarioThresholds.Threshold(ConditionTypeAvro.TEMPERATURE, ConditionOperationAvro.GREATER_THAN, 25),
+                new ScenarioThresholds.Threshold(ConditionTypeAvro.TEMPERATURE, ConditionOperationAvro.LOWER_THAN, 10)
+        }, sorted(hub.sensors().get("t1")));
+    }
+
+    @Test
+    void conditionWithoutValueIsSkipped() {
+        add("s1", condition("m1", ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, null),
+                condition("sw1", ConditionTypeAvro.SWITCH, ConditionOperationAvro.EQUALS, false));
+
+        ScenarioThresholds.HubThresholds hub = thresholds.get("hub-1");
+
+        assertNull(hub.sensors().get("m1"));
+        assertArrayEquals(new ScenarioThresholds.Threshold[]{
+                new ScenarioThresholds.Threshold(ConditionTypeAvro.SWITCH, ConditionOperationAvro.EQUALS, 0)
+        }, hub.sensors().get("sw1"));
+    }
+
+    @Test
+    void everyChangeGetsNewVersion() {
+        add("s1", condition("m1", ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, true));
+        long first = thresholds.get("hub-1").version();
+        add("s2", condition("m2", ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, true));
+        long second = thresholds.get("hub-1").version();
+        remove("s1");
+        long third = thresholds.get("hub-1").version();
+
+        assertTrue(first < second && second < third);
+        assertNull(thresholds.get("hub-1").sensors().get("m1"));
+    }
+
+    @Test
+    void hubWithoutScenariosIsForgotten() {
+        add("s1", condition("m1", ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, true));
+
+        remove("s1");
+        // удаление сценария неизвестного хаба ничего не создаёт
+        thresholds.apply(new HubEventAvro("hub-2", Instant.EPOCH, new ScenarioRemovedEventAvro("s1")));
+
+        assertNull(thresholds.get("hub-1"));
+        assertNull(thresholds.get("hub-2"));
+    }
+
+    private void add(String name, ScenarioConditionAvro... conditions) {
+        thresholds.apply(new HubEventAvro("hub-1", Instant.EPOCH,
+                new ScenarioAddedEventAvro(name, List.of(conditions), List.of())));
+    }
+
+    private void remove(String name) {
+        thresholds.apply(new HubEventAvro("hub-1", Instant.EPOCH, new ScenarioRemovedEventAvro(name)));
+    }
+
+    // сценарии хранятся в HashMap, поэтому порядок порогов датчика не определён
+    private static ScenarioThresholds.Threshold[] sorted(ScenarioThresholds.Threshold[] thresholds) {
+        return List.of(thresholds).stream()
+                .sorted((left, right) -> left.operation().compareTo(right.operation()))
+                .toArray(ScenarioThresholds.Threshold[]::new);
+    }
+
+    private static ScenarioConditionAvro condition(String sensorId, ConditionTypeAvro type,
+                                                   ConditionOperationAvro operation, Object value) {
+        return new ScenarioConditionAvro(sensorId, type, operation, value);
+    }
+}
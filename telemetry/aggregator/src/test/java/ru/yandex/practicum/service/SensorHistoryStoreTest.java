@@ -0,0 +1,138 @@
+package ru.yandex.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.store.SensorHistoryStore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.yandex.practicum.service.Fixtures.event;
+
+/**
+ * История показаний: порядок от новых к старым, перезапись кольца, ограничение выдачи
+ * и согласованное чтение во время записи.
+ */
+class SensorHistoryStoreTest {
+
+    @Test
+    void readingsComeNewestFirst() {
+        SensorHistoryStore history = new SensorHistoryStore(8);
+        history.record(event("hub-1", "t1", 1_000, 20));
+        history.record(event("hub-1", "t1", 2_000, 21));
+        history.record(event("hub-1", "t2", 2_500, 30));
+        history.record(event("hub-1", "t1", 3_000, 22));
+
+        List<SensorHistoryStore.Reading> readings = history.history("hub-1", "t1", 10);
+
+        assertEquals(List.of(3_000L, 2_000L, 1_000L), timestamps(readings));
+        assertEquals(new SensorHistoryStore.Reading(Instant.ofEpochMilli(3_000), "TEMPERATURE",
+                Map.of("temperatureC", 22, "temperatureF", 71)), readings.get(0));
+    }
+
+    @Test
+    void repeatedLastReadingIsNotRecorded() {
+        SensorHistoryStore history = new SensorHistoryStore(8);
+        history.record(event("hub-1", "t1", 1_000, 20));
+        history.record(event("hub-1", "t1", 1_000, 20));
+        // то же время, но другие данные — это новое показание
+        history.record(event("hub-1", "t1", 1_000, 21));
+
+        assertEquals(2, history.history("hub-1", "t1", 10).size());
+    }
+
+    @Test
+    void ringKeepsLastReadingsAfterWrapAround() {
+        SensorHistoryStore history = new SensorHistoryStore(4);
+        for (int i = 1; i <= 10; i++) {
+            history.record(event("hub-1", "t1", i * 1_000L, i));
+        }
+
+        assertEquals(List.of(10_000L, 9_000L, 8_000L, 7_000L), timestamps(history.history("hub-1", "t1", 10)));
+    }
+
+    @Test
+    void limitIsClampedToCapacity() {
+        SensorHistoryStore history = new SensorHistoryStore(4);
+        for (int i = 1; i <= 6; i++) {
+            history.record(event("hub-1", "t1", i * 1_000L, i));
+        }
+
+        assertEquals(List.of(6_000L, 5_000L), timestamps(history.history("hub-1", "t1", 2)));
+        assertEquals(4, history.history("hub-1", "t1", Integer.MAX_VALUE).size());
+        assertTrue(history.history("hub-1", "t1", 0).isEmpty());
+        assertTrue(history.history("hub-1", "t2", 10).isEmpty());
+        assertTrue(history.history("hub-2", "t1", 10).isEmpty());
+    }
+
+    @Test
+    void truncateAfterWrapAroundHidesOverwrittenReadings() {
+        SensorHistoryStore history = new SensorHistoryStore(4);
+        for (int i = 1; i <= 4; i++) {
+            history.record(event("hub-1", "t1", i * 1_000L, i));
+        }
+        long mark = history.mark("hub-1", "t1");
+        history.record(event("hub-1", "t1", 5_000, 5));
+        history.record(event("hub-1", "t1", 6_000, 6));
+
+        history.truncate("hub-1", "t1", mark);
+
+        // места первых двух показаний заняли отменённые, вернуть их уже нельзя
+        assertEquals(List.of(4_000L, 3_000L), timestamps(history.history("hub-1", "t1", 10)));
+        history.record(event("hub-1", "t1", 5_000, 5));
+        assertEquals(List.of(5_000L, 4_000L, 3_000L), timestamps(history.history("hub-1", "t1", 10)));
+    }
+
+    @Test
+    void readerNeverSeesPartlyWrittenReadings() throws Exception {
+        SensorHistoryStore history = new SensorHistoryStore(8);
+        history.record(event("hub-1", "t1", 1, 1));
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        List<String> errors = new CopyOnWriteArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            Thread reader = new Thread(() -> {
+                while (writing.get() && errors.isEmpty()) {
+                    List<SensorHistoryStore.Reading> readings = history.history("hub-1", "t1", 8);
+                    long previous = Long.MAX_VALUE;
+                    for (SensorHistoryStore.Reading reading : readings) {
+                        long timestamp = reading.timestamp().toEpochMilli();
+                        // показание i записано как температура i: расхождение значит, что чтение застало запись
+                        if (((Integer) reading.data().get("temperatureC")) != timestamp
+                                || (previous != Long.MAX_VALUE && timestamp != previous - 1)) {
+                            errors.add(previous + " -> " + reading);
+                        }
+                        previous = timestamp;
+                    }
+                    reads.incrementAndGet();
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int i = 2; i <= 500_000 && errors.isEmpty(); i++) {
+            history.record(event("hub-1", "t1", i, i));
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertEquals(List.of(), errors);
+        assertTrue(reads.get() > 0);
+    }
+
+    private static List<Long> timestamps(List<SensorHistoryStore.Reading> readings) {
+        return readings.stream()
+                .map(reading -> reading.timestamp().toEpochMilli())
+                .toList();
+    }
+}
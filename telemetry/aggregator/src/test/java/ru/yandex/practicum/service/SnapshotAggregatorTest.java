@@ -0,0 +1,256 @@
+package ru.yandex.practicum.service;
+
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.serialization.SnapshotDeltaReconstructor;
+import ru.yandex.practicum.store.OffHeapSensorStore;
+import ru.yandex.practicum.store.SensorHistoryStore;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.yandex.practicum.service.Fixtures.event;
+
+class SnapshotAggregatorTest {
+
+    private final SnapshotAggregator aggregator = Fixtures.aggregator();
+
+    @Test
+    void emittedSnapshotIsNotChangedByLaterEvents() {
+        SensorsSnapshotAvro first = aggregator.updateState(event("hub-1", "t1", 1_000, 20), 0).orElseThrow();
+        SensorsSnapshotAvro expected = SensorsSnapshotAvro.newBuilder(first).build();
+
+        aggregator.updateState(event("hub-1", "t1", 2_000, 25), 0).orElseThrow();
+        aggregator.updateState(event("hub-1", "t2", 3_000, 30), 0).orElseThrow();
+
+        assertEquals(expected, first);
+        assertEquals(Instant.ofEpochMilli(1_000), first.getTimestamp());
+        assertEquals(1, first.getSensorsState().size());
+    }
+
+    @Test
+    void drainedSnapshotsAndDeltasAreIndependentCopies() {
+        aggregator.apply(event("hub-1", "t1", 1_000, 20), 0);
+        List<SensorsSnapshotAvro> drained = new ArrayList<>();
+        aggregator.drainDirty(drained::add);
+        SensorsSnapshotDeltaAvro delta = aggregator.delta("hub-1", 10, Long.MAX_VALUE);
+        SensorsSnapshotAvro snapshot = drained.get(0);
+        SensorsSnapshotAvro expectedSnapshot = SensorsSnapshotAvro.newBuilder(snapshot).build();
+        SensorsSnapshotDeltaAvro expectedDelta = SensorsSnapshotDeltaAvro.newBuilder(delta).build();
+
+        assertTrue(aggregator.apply(event("hub-1", "t1", 2_000, 25), 0));
+        aggregator.drainDirty(ignored -> {
+        });
+        aggregator.delta("hub-1", 10, Long.MAX_VALUE);
+
+        assertEquals(expectedSnapshot, snapshot);
+        assertEquals(expectedDelta, delta);
+    }
+
+    @Test
+    void restoredStateDoesNotShareRecordsWithSource() {
+        SensorsSnapshotAvro stored = aggregator.updateState(event("hub-1", "t1", 1_000, 20), 0).orElseThrow();
+        SensorsSnapshotAvro expected = SensorsSnapshotAvro.newBuilder(stored).build();
+        SnapshotAggregator restored = Fixtures.aggregator();
+        restored.restore(stored, 0);
+
+        restored.updateState(event("hub-1", "t1", 2_000, 25), 0).orElseThrow();
+
+        assertEquals(expected, stored);
+    }
+
+    @Test
+    void suppressedChangeIsKeptUntilWrittenToChangelog() {
+        HubCacheProperties properties = new HubCacheProperties();
+        properties.setEnabled(true);
+        properties.setMaxHubs(0);
+        SnapshotAggregator bounded = new SnapshotAggregator(
+                Fixtures.hubCache(properties, null), Fixtures.suppressingGate(), Optional.empty());
+
+        // первое показание хаба проходит: для него впервые определяется набор сценариев
+        assertTrue(bounded.updateState(event("hub-1", "t1", 1_000, 20), 0).isPresent());
+        assertTrue(bounded.updateState(event("hub-1", "t1", 2_000, 25), 0).isEmpty());
+        bounded.evict();
+        assertEquals(1, bounded.hubCount());
+
+        List<SensorsSnapshotAvro> logged = new ArrayList<>();
+        assertEquals(1, bounded.drainUnlogged(logged::add));
+        assertEquals(Instant.ofEpochMilli(2_000), logged.get(0).getTimestamp());
+        assertEquals(0, bounded.drainUnlogged(logged::add));
+
+        bounded.evict();
+        assertEquals(0, bounded.hubCount());
+    }
+
+    @Test
+    void emittedSnapshotIsNotWrittenToChangelogAgain() {
+        aggregator.apply(event("hub-1", "t1", 1_000, 20), 0);
+        aggregator.drainDirty(ignored -> {
+        });
+
+        assertEquals(0, aggregator.drainUnlogged(ignored -> {
+        }));
+    }
+
+    @Test
+    void restartKeepsOnlyStoredHubsOfAssignedPartitions(@TempDir Path directory) throws Exception {
+        OffHeapSensorStore store = new OffHeapSensorStore(16, directory);
+        SnapshotAggregator before = stored(store, new HubCacheProperties());
+        before.updateState(event("hub-1", "t1", 1_000, 20), 0).orElseThrow();
+        before.updateState(event("hub-2", "t1", 1_000, 20), 1).orElseThrow();
+        before.updateState(event("hub-2", "t2", 1_000, 20), 1).orElseThrow();
+        store.close();
+
+        OffHeapSensorStore reopened = new OffHeapSensorStore(16, directory);
+        SnapshotAggregator after = stored(reopened, new HubCacheProperties());
+        after.claimStored(Set.of(0));
+
+        assertEquals(1, after.hubCount());
+        assertEquals(0, after.partitionOf("hub-1"));
+        assertEquals(1, reopened.size());
+    }
+
+    @Test
+    void evictedAndRemovedHubsLeaveOffHeapStore() throws Exception {
+        OffHeapSensorStore store = new OffHeapSensorStore(16, null);
+        HubCacheProperties properties = new HubCacheProperties();
+        properties.setEnabled(true);
+        properties.setMaxHubs(1);
+        SnapshotAggregator bounded = stored(store, properties);
+        bounded.updateState(event("hub-1", "t1", 1_000, 20), 0).orElseThrow();
+        bounded.updateState(event("hub-2", "t1", 1_000, 20), 0).orElseThrow();
+        bounded.updateState(event("hub-2", "t2", 1_000, 20), 0).orElseThrow();
+
+        bounded.evict();
+        assertEquals(1, bounded.hubCount());
+        assertEquals(2, store.size());
+
+        bounded.remove("hub-2");
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void replayedBatchIsWrittenToHistoryOnce() {
+        SensorHistoryStore history = new SensorHistoryStore(8);
+        SnapshotAggregator recording = new SnapshotAggregator(Fixtures.hubCache(new HubCacheProperties(), null),
+                Fixtures.gate(), Optional.of(history));
+        recording.updateState(event("hub-1", "t1", 1_000, 20), 0);
+        List<SensorEventAvro> batch = List.of(
+                event("hub-1", "t1", 2_000, 21),
+                event("hub-1", "t1", 3_000, 22),
+                event("hub-1", "t1", 4_000, 23));
+
+        recording.beginUndo();
+        batch.forEach(reading -> recording.updateState(reading, 0));
+        recording.rollback();
+        recording.beginUndo();
+        batch.forEach(reading -> recording.updateState(reading, 0));
+        recording.commitUndo();
+
+        assertEquals(List.of(4_000L, 3_000L, 2_000L, 1_000L), history.history("hub-1", "t1", 10).stream()
+                .map(reading -> reading.timestamp().toEpochMilli())
+                .toList());
+    }
+
+    @Test
+    void droppedHubsForgetHistory() {
+        SensorHistoryStore history = new SensorHistoryStore(8);
+        HubCacheProperties properties = new HubCacheProperties();
+        properties.setEnabled(true);
+        properties.setMaxHubs(3);
+        SnapshotAggregator recording = new SnapshotAggregator(Fixtures.hubCache(properties, null),
+                Fixtures.gate(), Optional.of(history));
+        for (String hubId : List.of("hub-1", "hub-2", "hub-3")) {
+            recording.updateState(event(hubId, "t1", 1_000, 20), 0);
+        }
+        recording.updateState(event("hub-4", "t1", 1_000, 20), 1);
+        recording.beginUndo();
+        recording.updateState(event("hub-5", "t1", 1_000, 20), 0);
+        recording.rollback();
+
+        // hub-1 вытеснен сверх лимита, hub-2 удалён, hub-4 ушёл вместе с разделом, hub-5 создан в отменённой транзакции
+        recording.evict();
+        recording.remove("hub-2");
+        recording.dropPartitions(Set.of(1));
+
+        assertTrue(history.history("hub-1", "t1", 10).isEmpty());
+        assertTrue(history.history("hub-2", "t1", 10).isEmpty());
+        assertEquals(1, history.history("hub-3", "t1", 10).size());
+        assertTrue(history.history("hub-4", "t1", 10).isEmpty());
+        assertTrue(history.history("hub-5", "t1", 10).isEmpty());
+
+        recording.clear();
+        assertTrue(history.history("hub-3", "t1", 10).isEmpty());
+    }
+
+    @Test
+    void deltaStreamRebuildsFullSnapshots() {
+        MockProducer<String, SpecificRecordBase> producer = Fixtures.producer(true);
+        SnapshotEmitter emitter = Fixtures.emitter(producer, true);
+        // записи отменённых транзакций читатели read_committed не видят
+        SnapshotEmitter aborted = Fixtures.emitter(Fixtures.producer(true), true);
+        Random random = new Random(7);
+        long timestamp = 0;
+        for (int batch = 0; batch < 50; batch++) {
+            List<SensorEventAvro> events = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                timestamp += 1_000;
+                events.add(event("hub-" + random.nextInt(3), "t" + random.nextInt(5), timestamp,
+                        20 + random.nextInt(5)));
+            }
+            aggregator.beginUndo();
+            if (batch % 5 == 4) {
+                // после отката пакет обрабатывается заново, и поток дельт хаба начинается с ключевого кадра 0
+                emit(events, aborted);
+                aggregator.rollback();
+                aggregator.beginUndo();
+            }
+            emit(events, emitter);
+            aggregator.commitUndo();
+        }
+
+        SnapshotDeltaReconstructor reconstructor = new SnapshotDeltaReconstructor();
+        List<SensorsSnapshotAvro> full = new ArrayList<>();
+        List<SensorsSnapshotAvro> rebuilt = new ArrayList<>();
+        for (ProducerRecord<String, SpecificRecordBase> record : producer.history()) {
+            if (record.topic().equals(Fixtures.SNAPSHOTS_TOPIC)) {
+                full.add((SensorsSnapshotAvro) record.value());
+            } else {
+                SensorsSnapshotAvro snapshot = reconstructor.apply((SensorsSnapshotDeltaAvro) record.value()).orElseThrow();
+                // снапшот реконструктора живой, поэтому сравнивается копия
+                rebuilt.add(SensorsSnapshotAvro.newBuilder(snapshot).build());
+            }
+        }
+
+        assertTrue(full.size() > 100);
+        assertEquals(full, rebuilt);
+        assertEquals(0, reconstructor.resyncs());
+    }
+
+    private void emit(List<SensorEventAvro> events, SnapshotEmitter emitter) {
+        List<Future<RecordMetadata>> sent = new ArrayList<>();
+        for (SensorEventAvro event : events) {
+            aggregator.updateState(event, 0).ifPresent(snapshot -> emitter.emit(aggregator, snapshot, sent));
+        }
+    }
+
+    private static SnapshotAggregator stored(OffHeapSensorStore store, HubCacheProperties properties) {
+        return new SnapshotAggregator(Optional.of(store), Fixtures.hubCache(properties, null), Fixtures.gate(),
+                Optional.empty());
+    }
+}
@@ -0,0 +1,107 @@
+package ru.yandex.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.ChangelogConfig;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.yandex.practicum.service.Fixtures.event;
+
+/**
+ * Чтение снимков вытесненных хабов: одно чтение на пакет, короткий таймаут и дочитывание опоздавших снимков.
+ */
+class StateChangelogTest {
+
+    private static final String TOPIC = "telemetry.aggregator.state.v1";
+
+    private final MockProducer<String, SpecificRecordBase> producer = new MockProducer<>(new Cluster("test", List.of(),
+            List.of(new PartitionInfo(TOPIC, 0, null, null, null), new PartitionInfo(TOPIC, 1, null, null, null)),
+            Set.of(), Set.of()), true, null, null, null);
+    private final MockConsumer<String, SensorsSnapshotAvro> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    private final HubCacheProperties properties = new HubCacheProperties();
+    private final StateChangelog changelog;
+
+    StateChangelogTest() {
+        ChangelogConfig config = new ChangelogConfig();
+        config.setLookupTimeoutMs(200);
+        properties.setEnabled(true);
+        changelog = new StateChangelog(config, Fixtures.kafkaClient(producer, null), consumer, null, properties,
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void readsSnapshotsOfAllPartitionsAtOnce() {
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(record(0, 0, snapshot("hub-1", 1_000, "t1")));
+            // запись hub-2 по запомненному смещению удалена сжатием, старее — не подходит, новее — подходит
+            consumer.addRecord(record(0, 1, snapshot("hub-2", 1_000, "t1")));
+            consumer.addRecord(record(0, 5, snapshot("hub-x", 1_000, "t1")));
+            consumer.addRecord(record(0, 7, snapshot("hub-2", 2_000, "t1")));
+        });
+        Map<String, SensorsSnapshotAvro> found = new HashMap<>();
+
+        List<StateChangelog.Lookup> unresolved = changelog.read(List.of(
+                new StateChangelog.Lookup("hub-1", 0, 0),
+                new StateChangelog.Lookup("hub-2", 0, 3),
+                new StateChangelog.Lookup("hub-3", 1, 2)), (lookup, snapshot) -> found.put(lookup.hubId(), snapshot));
+
+        assertEquals(Set.of("hub-1", "hub-2"), found.keySet());
+        assertEquals(Instant.ofEpochMilli(2_000), found.get("hub-2").getTimestamp());
+        assertEquals(List.of(new StateChangelog.Lookup("hub-3", 1, 2)), unresolved);
+    }
+
+    @Test
+    void lateSnapshotIsMergedIntoRestartedHub() {
+        changelog.append(snapshot("hub-1", 1_000, "t1", "t2"), 0);
+        SnapshotAggregator aggregator = new SnapshotAggregator(Fixtures.hubCache(properties, changelog),
+                Fixtures.gate(), Optional.empty());
+
+        // снимок не прочитан за таймаут: хаб начинается заново
+        aggregator.prefetch(List.of(new ConsumerRecord<>("sensors", 0, 0, "hub-1", event("hub-1", "t1", 5_000, 30))));
+        aggregator.updateState(event("hub-1", "t1", 5_000, 30), 0).orElseThrow();
+        aggregator.drainUnlogged(ignored -> {
+        });
+
+        consumer.schedulePollTask(() -> consumer.addRecord(record(0, 0, snapshot("hub-1", 1_000, "t1", "t2"))));
+        aggregator.prefetch(List.of());
+
+        List<SensorsSnapshotAvro> logged = new ArrayList<>();
+        assertEquals(1, aggregator.drainUnlogged(logged::add));
+        SensorsSnapshotAvro merged = logged.get(0);
+        assertEquals(Set.of("t1", "t2"), merged.getSensorsState().keySet());
+        assertEquals(Instant.ofEpochMilli(5_000), merged.getSensorsState().get("t1").getTimestamp());
+        assertEquals(Instant.ofEpochMilli(5_000), merged.getTimestamp());
+        assertEquals(1, aggregator.hubCount());
+    }
+
+    private static ConsumerRecord<String, SensorsSnapshotAvro> record(int partition, long offset,
+                                                                      SensorsSnapshotAvro snapshot) {
+        return new ConsumerRecord<>(TOPIC, partition, offset, snapshot.getHubId(), snapshot);
+    }
+
+    private static SensorsSnapshotAvro snapshot(String hubId, long timestampMs, String... sensorIds) {
+        Map<String, SensorStateAvro> states = new HashMap<>();
+        for (String sensorId : sensorIds) {
+            states.put(sensorId, new SensorStateAvro(Instant.ofEpochMilli(timestampMs),
+                    event(hubId, sensorId, timestampMs, 20).getPayload()));
+        }
+        return new SensorsSnapshotAvro(hubId, Instant.ofEpochMilli(timestampMs), states);
+    }
+}
@@ -0,0 +1,169 @@
+package ru.yandex.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.deserializer.SensorsSnapshotDeserializer;
+import ru.yandex.practicum.kafka.AggregatorStreamsConfig;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.serializer.AvroSerializer;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.yandex.practicum.service.Fixtures.event;
+
+/**
+ * Топология Kafka Streams должна выдавать те же снимки, что и {@link SnapshotAggregator}
+ * на той же последовательности показаний.
+ */
+class StreamsAggregationTest {
+
+    private static final String EVENTS_TOPIC = "telemetry.sensors.v1";
+
+    @TempDir
+    Path stateDir;
+
+    private final SnapshotAggregator aggregator = Fixtures.aggregator();
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, SensorEventAvro> events;
+    private TestOutputTopic<String, SensorsSnapshotAvro> snapshots;
+
+    @BeforeEach
+    void startDriver() {
+        StreamsAggregation aggregation = new StreamsAggregation(new AggregatorStreamsConfig(), null,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(aggregation, "sensorsEventsTopic", EVENTS_TOPIC);
+        ReflectionTestUtils.setField(aggregation, "snapshotsEventsTopic", Fixtures.SNAPSHOTS_TOPIC);
+        Properties properties = new Properties();
+        properties.put(StreamsConfig.APPLICATION_ID_CONFIG, "aggregator-streams-test");
+        properties.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+        driver = new TopologyTestDriver(aggregation.topology(), properties);
+        events = driver.createInputTopic(EVENTS_TOPIC, new StringSerializer(), new AvroSerializer<>());
+        snapshots = driver.createOutputTopic(Fixtures.SNAPSHOTS_TOPIC, new StringDeserializer(),
+                new SensorsSnapshotDeserializer());
+    }
+
+    @AfterEach
+    void closeDriver() {
+        driver.close();
+    }
+
+    @Test
+    void staleAndUnchangedReadingsAreDropped() {
+        List<SensorEventAvro> readings = List.of(
+                event("hub-1", "t1", 1_000, 20),
+                // старее сохранённого
+                event("hub-1", "t1", 500, 25),
+                // новее, но с теми же данными
+                event("hub-1", "t1", 2_000, 20),
+                event("hub-1", "t2", 3_000, 30),
+                event("hub-1", "t1", 4_000, 21));
+
+        List<SensorsSnapshotAvro> expected = aggregate(readings);
+        List<SensorsSnapshotAvro> actual = pipe(readings);
+
+        assertEquals(3, expected.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void firstSnapshotCarriesTimestampOfFirstReading() {
+        List<SensorEventAvro> readings = List.of(
+                event("hub-1", "t1", 1_000, 20),
+                event("hub-2", "t1", 1_500, 20));
+
+        List<SensorsSnapshotAvro> actual = pipe(readings);
+
+        assertEquals(aggregate(readings), actual);
+        assertEquals(Instant.ofEpochMilli(1_000), actual.get(0).getTimestamp());
+        assertEquals(Instant.ofEpochMilli(1_500), actual.get(1).getTimestamp());
+    }
+
+    @Test
+    void stateIsContinuedFromStore() {
+        SensorsSnapshotAvro stored = Fixtures.aggregator()
+                .updateState(event("hub-1", "t1", 1_000, 20), 0).orElseThrow();
+        KeyValueStore<String, SensorsSnapshotAvro> store = driver.getKeyValueStore(SnapshotProcessor.STORE);
+        store.put("hub-1", stored);
+        aggregator.restore(stored, 0);
+        List<SensorEventAvro> readings = List.of(
+                event("hub-1", "t1", 500, 25),
+                event("hub-1", "t1", 2_000, 20),
+                event("hub-1", "t2", 3_000, 30));
+
+        List<SensorsSnapshotAvro> actual = pipe(readings);
+
+        assertEquals(aggregate(readings), actual);
+        assertEquals(1, actual.size());
+        assertEquals(2, actual.get(0).getSensorsState().size());
+        assertEquals(actual.get(0), store.get("hub-1"));
+    }
+
+    @Test
+    void emptyRecordIsSkipped() {
+        events.pipeInput("hub-1", null);
+
+        assertTrue(snapshots.isEmpty());
+    }
+
+    @Test
+    void readingWithoutHubOrSensorIdIsSkipped() {
+        MockProcessorContext<String, SensorsSnapshotAvro> context = new MockProcessorContext<>();
+        KeyValueStore<String, SensorsSnapshotAvro> store = Stores.keyValueStoreBuilder(
+                        Stores.inMemoryKeyValueStore(SnapshotProcessor.STORE), Serdes.String(),
+                        Serdes.serdeFrom(new AvroSerializer<>(), new SensorsSnapshotDeserializer()))
+                .withLoggingDisabled()
+                .build();
+        store.init(context.getStateStoreContext(), store);
+        context.addStateStore(store);
+        SnapshotProcessor processor = new SnapshotProcessor();
+        processor.init(context);
+        // схема не допускает пустых id, поэтому такое показание не проходит сериализацию и строится в обход билдера
+        SensorEventAvro withoutHub = event("hub-1", "t1", 1_000, 20);
+        withoutHub.setHubId(null);
+        SensorEventAvro withoutSensor = event("hub-1", "t1", 1_000, 20);
+        withoutSensor.setId(null);
+
+        processor.process(new Record<>("hub-1", withoutHub, 1_000));
+        processor.process(new Record<>("hub-1", withoutSensor, 1_000));
+
+        assertTrue(context.forwarded().isEmpty());
+        assertEquals(0, store.approximateNumEntries());
+    }
+
+    private List<SensorsSnapshotAvro> aggregate(List<SensorEventAvro> readings) {
+        return readings.stream()
+                .map(reading -> aggregator.updateState(reading, 0))
+                .flatMap(Optional::stream)
+                .toList();
+    }
+
+    private List<SensorsSnapshotAvro> pipe(List<SensorEventAvro> readings) {
+        for (SensorEventAvro reading : readings) {
+            events.pipeInput(reading.getHubId(), reading, reading.getTimestamp());
+        }
+        return new ArrayList<>(snapshots.readValuesToList());
+    }
+}
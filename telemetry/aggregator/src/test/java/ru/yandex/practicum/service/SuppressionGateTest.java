@@ -0,0 +1,181 @@
+package ru.yandex.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioConditionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioRemovedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.yandex.practicum.service.Fixtures.event;
+
+/**
+ * Снимок пропускается, только когда показание меняет истинность условия сценария хаба
+ * или когда сменились сами сценарии. Keep-alive в минуту в тестах не наступает.
+ */
+class SuppressionGateTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ScenarioThresholds thresholds = new ScenarioThresholds();
+    private final SuppressionGate gate = new SuppressionGate(properties(), thresholds, registry);
+    private final HubState hub = new HubState("hub-1", Instant.EPOCH, 0, null);
+
+    @Test
+    void motionCrossingPassesAndRepeatIsSuppressed() {
+        addScenario("s1", condition("m1", ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, true));
+        thresholds.markCaughtUp();
+
+        // первое показание после загрузки сценариев пропускается по их смене
+        assertTrue(gate.admit(hub, motion(false)));
+        assertFalse(gate.admit(hub, motion(false)));
+        assertTrue(gate.admit(hub, motion(true)));
+        assertFalse(gate.admit(hub, motion(true)));
+        assertTrue(gate.admit(hub, motion(false)));
+
+        assertEquals(1, admitted("scenarios"));
+        assertEquals(2, admitted("threshold"));
+        assertEquals(2, registry.get("aggregator.suppression.suppressed").functionCounter().count());
+    }
+
+    @Test
+    void switchStateComparedAsOneOrZero() {
+        addScenario("s1", condition("sw1", ConditionTypeAvro.SWITCH, ConditionOperationAvro.EQUALS, false));
+        thresholds.markCaughtUp();
+
+        assertTrue(gate.admit(hub, switchState(true)));
+        assertTrue(gate.admit(hub, switchState(false)));
+        assertFalse(gate.admit(hub, switchState(false)));
+        assertTrue(gate.admit(hub, switchState(true)));
+    }
+
+    @Test
+    void temperatureOfClimateSensorCrossesGreaterThan() {
+        addScenario("s1", condition("c1", ConditionTypeAvro.TEMPERATURE, ConditionOperationAvro.GREATER_THAN, 25));
+        thresholds.markCaughtUp();
+
+        assertTrue(gate.admit(hub, climate(20)));
+        assertFalse(gate.admit(hub, climate(25)));
+        assertTrue(gate.admit(hub, climate(26)));
+        assertFalse(gate.admit(hub, climate(30)));
+        assertTrue(gate.admit(hub, climate(24)));
+    }
+
+    @Test
+    void temperatureSensorCrossesLowerThan() {
+        addScenario("s1", condition("t1", ConditionTypeAvro.TEMPERATURE, ConditionOperationAvro.LOWER_THAN, 10));
+        thresholds.markCaughtUp();
+
+        assertTrue(gate.admit(hub, event("hub-1", "t1", 1_000, 15)));
+        assertFalse(gate.admit(hub, event("hub-1", "t1", 2_000, 10)));
+        assertTrue(gate.admit(hub, event("hub-1", "t1", 3_000, 9)));
+        assertFalse(gate.admit(hub, event("hub-1", "t1", 4_000, -5)));
+    }
+
+    @Test
+    void sensorWithoutConditionsIsSuppressed() {
+        addScenario("s1", condition("m1", ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, true));
+        thresholds.markCaughtUp();
+        gate.admit(hub, motion(false));
+
+        assertFalse(gate.admit(hub, event("hub-1", "t1", 1_000, 20)));
+        assertFalse(gate.admit(hub, event("hub-1", "t1", 2_000, 40)));
+    }
+
+    @Test
+    void newThresholdVersionResetsStoredTruth() {
+        addScenario("s1", condition("m1", ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, true));
+        thresholds.markCaughtUp();
+        gate.admit(hub, motion(true));
+        assertFalse(gate.admit(hub, motion(true)));
+
+        addScenario("s2", condition("t1", ConditionTypeAvro.TEMPERATURE, ConditionOperationAvro.GREATER_THAN, 25));
+        // новая версия замечена на другом датчике: истинность m1 забыта и посчитается заново
+        assertTrue(gate.admit(hub, event("hub-1", "t1", 1_000, 20)));
+        assertTrue(gate.admit(hub, motion(true)));
+        assertFalse(gate.admit(hub, motion(true)));
+
+        assertEquals(1, admitted("scenarios"));
+        assertEquals(2, admitted("threshold"));
+    }
+
+    @Test
+    void removedScenariosResetTruthAndLeaveHubUnknown() {
+        addScenario("s1", condition("m1", ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, true));
+        thresholds.markCaughtUp();
+        gate.admit(hub, motion(true));
+
+        thresholds.apply(hubEvent(new ScenarioRemovedEventAvro("s1")));
+
+        assertTrue(gate.admit(hub, motion(true)));
+        assertEquals(1, admitted("scenarios"));
+        // хаб без сценариев пропускается целиком, пока это разрешено настройкой
+        assertTrue(gate.admit(hub, motion(true)));
+        assertEquals(1, admitted("unknown-hub"));
+    }
+
+    @Test
+    void everyChangePassesUntilScenariosAreLoaded() {
+        addScenario("s1", condition("m1", ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, true));
+
+        assertTrue(gate.admit(hub, motion(false)));
+        assertTrue(gate.admit(hub, motion(false)));
+
+        assertEquals(2, admitted("warmup"));
+    }
+
+    private double admitted(String reason) {
+        return registry.counter("aggregator.suppression.admitted", "reason", reason).count();
+    }
+
+    private void addScenario(String name, ScenarioConditionAvro condition) {
+        thresholds.apply(hubEvent(new ScenarioAddedEventAvro(name, List.of(condition), List.of())));
+    }
+
+    private static HubEventAvro hubEvent(Object payload) {
+        return new HubEventAvro("hub-1", Instant.EPOCH, payload);
+    }
+
+    private static ScenarioConditionAvro condition(String sensorId, ConditionTypeAvro type,
+                                                   ConditionOperationAvro operation, Object value) {
+        return new ScenarioConditionAvro(sensorId, type, operation, value);
+    }
+
+    private static SuppressionProperties properties() {
+        SuppressionProperties properties = new SuppressionProperties();
+        properties.setEnabled(true);
+        return properties;
+    }
+
+    private static SensorEventAvro motion(boolean motion) {
+        return sensor("m1", new MotionSensorAvro(10, motion, 3000));
+    }
+
+    private static SensorEventAvro switchState(boolean state) {
+        return sensor("sw1", new SwitchSensorAvro(state));
+    }
+
+    private static SensorEventAvro climate(int temperature) {
+        return sensor("c1", new ClimateSensorAvro(temperature, 40, 600));
+    }
+
+    private static SensorEventAvro sensor(String sensorId, Object payload) {
+        return SensorEventAvro.newBuilder()
+                .setHubId("hub-1")
+                .setId(sensorId)
+                .setTimestamp(Instant.ofEpochMilli(1_000))
+                .setPayload(payload)
+                .build();
+    }
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapSensorStoreTest {
+
+    @Test
+    void removeKeepsRemainingSensorsReachable() throws Exception {
+        OffHeapSensorStore store = new OffHeapSensorStore(16, null);
+        Map<String, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        // случайные вставки и удаления по небольшому набору ключей: длинные цепочки проб с переходом через конец таблицы
+        for (int i = 0; i < 20_000; i++) {
+            String sensorId = "sensor-" + random.nextInt(200);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(sensorId) != null, store.remove("hub-1", sensorId));
+            } else {
+                int value = random.nextInt(100);
+                store.compareAndUpdate("hub-1", sensorId, 0, i, temperature(value));
+                expected.put(sensorId, value);
+            }
+        }
+
+        assertEquals(expected.size(), store.size());
+        for (int i = 0; i < 200; i++) {
+            String sensorId = "sensor-" + i;
+            SensorStateAvro state = store.read("hub-1", sensorId);
+            if (expected.containsKey(sensorId)) {
+                assertEquals(expected.get(sensorId), ((TemperatureSensorAvro) state.getData()).getTemperatureC());
+            } else {
+                assertNull(state);
+            }
+        }
+    }
+
+    @Test
+    void removedSensorIsInsertedAgain() throws Exception {
+        OffHeapSensorStore store = new OffHeapSensorStore(16, null);
+        store.compareAndUpdate("hub-1", "t1", 0, 1_000, temperature(20));
+
+        assertTrue(store.remove("hub-1", "t1"));
+        assertFalse(store.remove("hub-1", "t1"));
+
+        assertEquals(OffHeapSensorStore.INSERTED, store.compareAndUpdate("hub-1", "t1", 0, 500, temperature(20)));
+    }
+
+    @Test
+    void reopenedStoreKeepsPartitionsAndRemovals(@TempDir Path directory) throws Exception {
+        OffHeapSensorStore store = new OffHeapSensorStore(16, directory);
+        store.compareAndUpdate("hub-1", "t1", 3, 1_000, temperature(20));
+        store.compareAndUpdate("hub-2", "t1", 7, 1_000, temperature(20));
+        store.compareAndUpdate("hub-2", "t2", 7, 1_000, temperature(20));
+        store.remove("hub-2", "t1");
+        store.close();
+
+        OffHeapSensorStore reopened = new OffHeapSensorStore(16, directory);
+        Map<String, Integer> partitions = new HashMap<>();
+        reopened.forEach((hubId, sensorId, partition, timestamp) -> partitions.put(hubId + "/" + sensorId, partition));
+
+        assertEquals(Map.of("hub-1/t1", 3, "hub-2/t2", 7), partitions);
+        assertEquals(2, reopened.size());
+        assertEquals(Instant.ofEpochMilli(1_000), reopened.read("hub-1", "t1").getTimestamp());
+        assertNull(reopened.read("hub-2", "t1"));
+    }
+
+    private static TemperatureSensorAvro temperature(int celsius) {
+        return TemperatureSensorAvro.newBuilder().setTemperatureC(celsius).setTemperatureF(celsius * 9 / 5 + 32).build();
+    }
+}
@@ -1,9 +0,0 @@
-package ru.yandex.practicum.deserializer;
-
-import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
-
-public class SensorEventDeserializer extends BaseAvroDeserializer<SensorEventAvro> {
-    public SensorEventDeserializer() {
-        super(SensorEventAvro.getClassSchema());
-    }
-}
@@ -1,7 +0,0 @@
-package ru.yandex.practicum.exception;
-
-public class DeserializationException extends RuntimeException {
-    public DeserializationException(String message, Throwable ex) {
-        super(message, ex);
-    }
-}
@@ -0,0 +1,213 @@
+package ru.yandex.practicum.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничение числа событий, отправленных в Kafka, но ещё не подтверждённых брокером.
+ * <p>
+ * Унарные и пакетные вызовы при превышении лимита сразу отклоняются ({@link #tryAcquire}),
+ * а потоковые показания из начального окна gRPC-потока принимаются всегда ({@link #acquire}).
+ * Каждое следующее сообщение потока и каждая строка NDJSON сначала занимают место
+ * ({@link #tryClaim}, {@link #whenAvailable}, {@link #await}), поэтому сверх лимита
+ * в полёте может оказаться не больше суммы начальных окон.
+ * <p>
+ * Ожидающие места выполняются в отдельном потоке, а не в потоке ответов продюсера Kafka,
+ * который освобождает места.
+ */
+@Component
+public class InFlightLimiter {
+
+    private final int maxInFlight;
+    @Getter
+    private final long retryAfterMs;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Queue<Runnable> waiters = new ConcurrentLinkedQueue<>();
+    private final ExecutorService waiterExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "in-flight-waiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter rejectedUnary;
+    private final Counter rejectedBatch;
+    private final Counter rejectedCoalesced;
+    private final Counter pausedStream;
+
+    public InFlightLimiter(@Value("${collector.admission.max-in-flight:10000}") int maxInFlight,
+                           @Value("${collector.admission.retry-after-ms:100}") long retryAfterMs,
+                           MeterRegistry registry) {
+        this.maxInFlight = maxInFlight;
+        this.retryAfterMs = retryAfterMs;
+
+        Gauge.builder("collector.admission.in-flight", inFlight, AtomicInteger::get)
+                .description("События, ожидающие подтверждения Kafka")
+                .register(registry);
+        rejectedUnary = Counter.builder("collector.admission.shed")
+                .description("Отклонённые из-за перегрузки события")
+                .tag("path", "unary")
+                .register(registry);
+        rejectedBatch = Counter.builder("collector.admission.shed")
+                .description("Отклонённые из-за перегрузки события")
+                .tag("path", "batch")
+                .register(registry);
+        rejectedCoalesced = Counter.builder("collector.admission.shed")
+                .description("Отклонённые из-за перегрузки события")
+                .tag("path", "coalesced")
+                .register(registry);
+        pausedStream = Counter.builder("collector.admission.stream-paused")
+                .description("Сколько раз чтение из gRPC-потока приостанавливалось из-за перегрузки")
+                .register(registry);
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1, rejectedUnary);
+    }
+
+    /**
+     * Занимает места под весь пакет или не занимает ничего. Пакет больше лимита пропускается,
+     * только когда в полёте ничего нет, иначе он не прошёл бы никогда.
+     */
+    public boolean tryAcquireBatch(int permits) {
+        return tryAcquire(permits, rejectedBatch);
+    }
+
+    /**
+     * Занимает место под показание, отложенное до конца окна объединения. Его не ждёт ни один клиент,
+     * поэтому при перегрузке оно сбрасывается так же, как унарный вызов, а не встаёт в очередь ожидающих.
+     */
+    public boolean tryAcquireCoalesced() {
+        return tryAcquire(1, rejectedCoalesced);
+    }
+
+    private boolean tryAcquire(int permits, Counter rejected) {
+        while (true) {
+            int current = inFlight.get();
+            if (current > 0 && current + permits > maxInFlight) {
+                rejected.increment(permits);
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + permits)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Занимает места без проверки лимита. Только для показаний, уже запрошенных у gRPC-потока
+     * в начальном окне: их число ограничено окном.
+     */
+    public void acquire(int permits) {
+        inFlight.addAndGet(permits);
+    }
+
+    /**
+     * Занимает одно место, если лимит не исчерпан. В отличие от {@link #tryAcquire} отказ не считается сброшенным событием.
+     */
+    public boolean tryClaim() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(int permits) {
+        inFlight.addAndGet(-permits);
+        runWaiters();
+    }
+
+    public boolean hasCapacity() {
+        return inFlight.get() < maxInFlight;
+    }
+
+    /**
+     * Выполняет {@code action} в потоке ожидающих, как только для него удастся занять место.
+     * Занятое место переходит к {@code action}: его нужно вернуть через {@link #release}
+     * после отправки события или сразу, если событие уже не нужно.
+     */
+    public void whenAvailable(Runnable action) {
+        pausedStream.increment();
+        waiters.add(action);
+        // места могли освободиться между проверкой вызывающего кода и постановкой в очередь
+        runWaiters();
+    }
+
+    /**
+     * Ждёт свободное место не дольше {@code timeoutMs} и занимает его.
+     *
+     * @return {@code false}, если место не освободилось за отведённое время
+     */
+    public boolean await(long timeoutMs) throws InterruptedException {
+        if (tryClaim()) {
+            return true;
+        }
+        CompletableFuture<Void> granted = new CompletableFuture<>();
+        whenAvailable(() -> {
+            // ожидание уже прекращено по таймауту: место никому не нужно
+            if (!granted.complete(null)) {
+                release(1);
+            }
+        });
+        try {
+            granted.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            // место могло достаться ожидающему одновременно с таймаутом — тогда оно уже наше
+            return !granted.cancel(false);
+        } catch (InterruptedException e) {
+            if (!granted.cancel(false)) {
+                release(1);
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void runWaiters() {
+        while (!waiters.isEmpty()) {
+            // место занимается до извлечения ожидающего, чтобы одно освобождение не разбудило всю очередь
+            if (!tryClaim()) {
+                return;
+            }
+            Runnable waiter = waiters.poll();
+            if (waiter == null) {
+                // очередь опустела: возвращаем место и перепроверяем, не встал ли кто-то за это время
+                inFlight.decrementAndGet();
+                continue;
+            }
+            try {
+                waiterExecutor.execute(waiter);
+            } catch (RuntimeException e) {
+                inFlight.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        waiterExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,111 @@
+package ru.yandex.practicum.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Кэш состояний по ключу, разбитый на независимые сегменты со своей блокировкой.
+ * <p>
+ * Каждый сегмент — {@link LinkedHashMap} в порядке доступа: самые давние записи лежат в начале,
+ * поэтому при каждом обращении с головы снимается несколько записей, к которым не обращались
+ * дольше {@code idleTimeoutNanos}, а при переполнении вытесняется самая давняя.
+ * Так память ограничена и при миллионах ключей, а отдельного потока очистки не нужно.
+ */
+public class StripedLruCache<K, V> {
+
+    private static final int MAX_IDLE_EVICTIONS_PER_ACCESS = 8;
+
+    private final Stripe<K, V>[] stripes;
+    private final long idleTimeoutNanos;
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public StripedLruCache(int stripeCount, int maxEntries, long idleTimeoutNanos) {
+        int perStripe = Math.max(1, maxEntries / stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>(perStripe, evictions);
+        }
+        this.idleTimeoutNanos = idleTimeoutNanos;
+    }
+
+    /**
+     * Выполняет {@code action} над значением ключа под блокировкой его сегмента,
+     * создавая значение через {@code factory}, если его ещё нет.
+     */
+    public <R> R compute(K key, long nowNanos, Supplier<V> factory, Function<V, R> action) {
+        Stripe<K, V> stripe = stripes[Math.floorMod(spread(key.hashCode()), stripes.length)];
+        synchronized (stripe) {
+            stripe.evictIdle(nowNanos, idleTimeoutNanos);
+            Entry<V> entry = stripe.get(key);
+            if (entry == null) {
+                entry = new Entry<>(factory.get());
+                stripe.put(key, entry);
+            }
+            entry.lastAccessNanos = nowNanos;
+            return action.apply(entry.value);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private long lastAccessNanos;
+
+        private Entry(V value) {
+            this.value = value;
+        }
+    }
+
+    private static final class Stripe<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private final int maxEntries;
+        private final LongAdder evictions;
+
+        private Stripe(int maxEntries, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+            this.evictions = evictions;
+        }
+
+        private void evictIdle(long nowNanos, long idleTimeoutNanos) {
+            Iterator<Entry<V>> eldest = values().iterator();
+            for (int i = 0; i < MAX_IDLE_EVICTIONS_PER_ACCESS && eldest.hasNext(); i++) {
+                if (nowNanos - eldest.next().lastAccessNanos < idleTimeoutNanos) {
+                    return;
+                }
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
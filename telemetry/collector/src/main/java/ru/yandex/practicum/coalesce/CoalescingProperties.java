@@ -0,0 +1,26 @@
+package ru.yandex.practicum.coalesce;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "collector.coalescing")
+public class CoalescingProperties {
+
+    private boolean enabled;
+    /**
+     * Окно накопления показаний по типу устройства. Типы без окна не объединяются.
+     */
+    private Map<DeviceTypeAvro, Long> windowsMs = new HashMap<>();
+    private long tickMs = 50;
+    private int wheelSize = 512;
+    private int maxSensors = 1_000_000;
+    private long idleEvictMs = 600_000;
+    private int stripes = 64;
+}
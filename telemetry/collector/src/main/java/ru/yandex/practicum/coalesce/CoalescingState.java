@@ -0,0 +1,56 @@
+package ru.yandex.practicum.coalesce;
+
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+
+/**
+ * Окно накопления показаний одного датчика. Все методы вызываются под монитором объекта.
+ */
+class CoalescingState {
+
+    enum Result {
+        /**
+         * Первое показание в окне: отправить и запустить таймер окна.
+         */
+        OPEN_WINDOW,
+        /**
+         * Значимое изменение состояния: отправить сразу, окно продолжается.
+         */
+        SIGNIFICANT,
+        /**
+         * Показание отложено до конца окна.
+         */
+        HELD
+    }
+
+    private boolean windowOpen;
+    private SensorEventProto pending;
+    private Object lastState;
+
+    Result offer(SensorEventProto event, Object state) {
+        if (!windowOpen) {
+            windowOpen = true;
+            lastState = state;
+            return Result.OPEN_WINDOW;
+        }
+        if (state != null && !state.equals(lastState)) {
+            lastState = state;
+            // отложенное показание старше значимого, отправлять его уже незачем
+            pending = null;
+            return Result.SIGNIFICANT;
+        }
+        pending = event;
+        return Result.HELD;
+    }
+
+    /**
+     * Конец окна: возвращает последнее отложенное показание (окно продолжается) или закрывает окно.
+     */
+    SensorEventProto expire() {
+        SensorEventProto last = pending;
+        pending = null;
+        if (last == null) {
+            windowOpen = false;
+        }
+        return last;
+    }
+}
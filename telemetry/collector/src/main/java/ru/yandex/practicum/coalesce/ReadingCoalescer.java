@@ -0,0 +1,161 @@
+package ru.yandex.practicum.coalesce;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cache.StripedLruCache;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+import ru.yandex.practicum.timer.HashedTimerWheel;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Объединение частых показаний датчика во временном окне, заданном для его типа устройства.
+ * <p>
+ * Первое показание отправляется сразу и открывает окно; последующие показания в окне заменяют друг друга,
+ * и по его окончании отправляется только последнее. Смена состояния датчика движения или переключателя
+ * отправляется немедленно. Концы окон всех датчиков обслуживает одно {@link HashedTimerWheel}.
+ */
+@Component
+public class ReadingCoalescer {
+
+    private final boolean enabled;
+    private final Map<SensorEventProto.PayloadCase, Long> windowsMs = new EnumMap<>(SensorEventProto.PayloadCase.class);
+    private final StripedLruCache<SensorKey, CoalescingState> states;
+    private final HashedTimerWheel timers;
+    private final LongSupplier nanoClock;
+    private volatile Consumer<SensorEventProto> sink = event -> {
+    };
+
+    private final Counter forwarded;
+    private final Counter significant;
+    private final Counter held;
+    private final Counter flushed;
+
+    @Autowired
+    public ReadingCoalescer(CoalescingProperties properties, MeterRegistry registry) {
+        this(properties, registry, properties.isEnabled()
+                ? new HashedTimerWheel("coalescing-timer", properties.getTickMs(), properties.getWheelSize())
+                : null, System::nanoTime);
+    }
+
+    /**
+     * @param timers колесо концов окон; {@code null}, если объединение выключено
+     * @param nanoClock время вытеснения простаивающих датчиков; тесты подставляют те же часы, что и колесу
+     */
+    ReadingCoalescer(CoalescingProperties properties, MeterRegistry registry, HashedTimerWheel timers,
+                     LongSupplier nanoClock) {
+        this.enabled = properties.isEnabled();
+        properties.getWindowsMs().forEach((type, windowMs) -> {
+            if (windowMs > 0) {
+                windowsMs.put(payloadCaseOf(type), windowMs);
+            }
+        });
+        // состояние без открытого окна можно вытеснять: следующее показание просто откроет новое
+        this.states = new StripedLruCache<>(properties.getStripes(), properties.getMaxSensors(),
+                TimeUnit.MILLISECONDS.toNanos(properties.getIdleEvictMs()));
+        this.timers = timers;
+        this.nanoClock = nanoClock;
+
+        forwarded = resultCounter(registry, "forwarded");
+        significant = resultCounter(registry, "significant");
+        held = resultCounter(registry, "held");
+        flushed = resultCounter(registry, "flushed");
+        if (timers != null) {
+            Gauge.builder("collector.coalescing.open-windows", timers, HashedTimerWheel::pending)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Куда отправлять показания, отложенные до конца окна.
+     */
+    public void onFlush(Consumer<SensorEventProto> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * @return {@code true}, если показание нужно отправить сейчас; {@code false}, если оно отложено
+     */
+    public boolean shouldForward(SensorEventProto event) {
+        if (!enabled) {
+            return true;
+        }
+        Long windowMs = windowsMs.get(event.getPayloadCase());
+        if (windowMs == null) {
+            return true;
+        }
+        Object state = significantStateOf(event);
+        CoalescingState coalescing = states.compute(new SensorKey(event.getHubId(), event.getId()), nanoClock.getAsLong(),
+                CoalescingState::new, value -> value);
+        CoalescingState.Result result;
+        synchronized (coalescing) {
+            result = coalescing.offer(event, state);
+        }
+        switch (result) {
+            case OPEN_WINDOW -> {
+                forwarded.increment();
+                timers.schedule(windowMs, () -> expire(coalescing, windowMs));
+            }
+            case SIGNIFICANT -> significant.increment();
+            case HELD -> held.increment();
+        }
+        return result != CoalescingState.Result.HELD;
+    }
+
+    private void expire(CoalescingState coalescing, long windowMs) {
+        SensorEventProto last;
+        synchronized (coalescing) {
+            last = coalescing.expire();
+        }
+        if (last != null) {
+            flushed.increment();
+            // окно продолжается: новые показания снова копятся до следующего срабатывания
+            timers.schedule(windowMs, () -> expire(coalescing, windowMs));
+            sink.accept(last);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (timers != null) {
+            timers.close();
+        }
+    }
+
+    private static Object significantStateOf(SensorEventProto event) {
+        return switch (event.getPayloadCase()) {
+            case MOTION_SENSOR_EVENT -> event.getMotionSensorEvent().getMotion();
+            case SWITCH_SENSOR_EVENT -> event.getSwitchSensorEvent().getState();
+            default -> null;
+        };
+    }
+
+    private static SensorEventProto.PayloadCase payloadCaseOf(DeviceTypeAvro type) {
+        return switch (type) {
+            case MOTION_SENSOR -> SensorEventProto.PayloadCase.MOTION_SENSOR_EVENT;
+            case TEMPERATURE_SENSOR -> SensorEventProto.PayloadCase.TEMPERATURE_SENSOR_EVENT;
+            case LIGHT_SENSOR -> SensorEventProto.PayloadCase.LIGHT_SENSOR_EVENT;
+            case CLIMATE_SENSOR -> SensorEventProto.PayloadCase.CLIMATE_SENSOR_EVENT;
+            case SWITCH_SENSOR -> SensorEventProto.PayloadCase.SWITCH_SENSOR_EVENT;
+        };
+    }
+
+    private static Counter resultCounter(MeterRegistry registry, String result) {
+        return Counter.builder("collector.coalescing.readings")
+                .description("Результаты объединения показаний во временных окнах")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private record SensorKey(String hubId, String sensorId) {
+    }
+}
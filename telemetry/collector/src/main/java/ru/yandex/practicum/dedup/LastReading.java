@@ -0,0 +1,44 @@
+package ru.yandex.practicum.dedup;
+
+/**
+ * Последнее пропущенное показание датчика. Не потокобезопасно: доступ сериализует сегмент кэша.
+ */
+class LastReading {
+
+    enum Result {
+        FORWARD,
+        HEARTBEAT,
+        DUPLICATE
+    }
+
+    private Object payload;
+    private long timestampMs = Long.MIN_VALUE;
+    private long forwardedAtMs = Long.MIN_VALUE;
+
+    Result offer(Object newPayload, long newTimestampMs, long maxSilenceMs) {
+        if (!newPayload.equals(payload)) {
+            // запоздавшее показание пропускаем, но состояние не откатываем
+            if (payload == null || newTimestampMs >= timestampMs) {
+                payload = newPayload;
+                timestampMs = newTimestampMs;
+                forwardedAtMs = newTimestampMs;
+            }
+            return Result.FORWARD;
+        }
+        timestampMs = Math.max(timestampMs, newTimestampMs);
+        if (newTimestampMs - forwardedAtMs >= maxSilenceMs) {
+            forwardedAtMs = newTimestampMs;
+            return Result.HEARTBEAT;
+        }
+        return Result.DUPLICATE;
+    }
+
+    /**
+     * Показание не дошло до Kafka: следующее такое же нужно пропустить.
+     */
+    void forget(Object failedPayload) {
+        if (failedPayload.equals(payload)) {
+            payload = null;
+        }
+    }
+}
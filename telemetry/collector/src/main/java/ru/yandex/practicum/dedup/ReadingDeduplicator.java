@@ -0,0 +1,126 @@
+package ru.yandex.practicum.dedup;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cache.StripedLruCache;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Отбрасывает на входе показания, которые не отличаются от предыдущего показания того же датчика.
+ * Раз в {@code max-silence-ms} (по времени показаний) одинаковое показание всё же пропускается как heartbeat.
+ * <p>
+ * Записи датчиков, от которых ничего не приходило дольше {@code max-silence-ms}, вытесняются:
+ * следующее их показание всё равно было бы пропущено.
+ */
+@Component
+public class ReadingDeduplicator {
+
+    private final boolean enabled;
+    private final long maxSilenceMs;
+    private final StripedLruCache<SensorKey, LastReading> lastReadings;
+    private final LongSupplier nanoClock;
+
+    private final Counter forwarded;
+    private final Counter heartbeats;
+    private final Counter duplicates;
+
+    @Autowired
+    public ReadingDeduplicator(@Value("${collector.dedup.enabled:false}") boolean enabled,
+                               @Value("${collector.dedup.max-silence-ms:60000}") long maxSilenceMs,
+                               @Value("${collector.dedup.max-entries:1000000}") int maxEntries,
+                               @Value("${collector.dedup.stripes:64}") int stripes,
+                               MeterRegistry registry) {
+        this(enabled, maxSilenceMs, maxEntries, stripes, registry, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock время вытеснения простаивающих датчиков; тесты подставляют свои часы
+     */
+    ReadingDeduplicator(boolean enabled, long maxSilenceMs, int maxEntries, int stripes, MeterRegistry registry,
+                        LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.enabled = enabled;
+        this.maxSilenceMs = maxSilenceMs;
+        this.lastReadings = new StripedLruCache<>(stripes, maxEntries, TimeUnit.MILLISECONDS.toNanos(maxSilenceMs));
+
+        forwarded = resultCounter(registry, "forwarded");
+        heartbeats = resultCounter(registry, "heartbeat");
+        duplicates = resultCounter(registry, "duplicate");
+        Gauge.builder("collector.dedup.entries", lastReadings, StripedLruCache::size)
+                .description("Число датчиков в кэше последних показаний")
+                .register(registry);
+        FunctionCounter.builder("collector.dedup.evictions", lastReadings, StripedLruCache::evictions)
+                .register(registry);
+    }
+
+    public boolean shouldForward(SensorEventProto event) {
+        if (!enabled) {
+            return true;
+        }
+        Object payload = payloadOf(event);
+        if (payload == null) {
+            return true;
+        }
+        long timestampMs = timestampOf(event);
+        LastReading.Result result = lastReadings.compute(new SensorKey(event.getHubId(), event.getId()),
+                nanoClock.getAsLong(), LastReading::new, last -> last.offer(payload, timestampMs, maxSilenceMs));
+        switch (result) {
+            case FORWARD -> forwarded.increment();
+            case HEARTBEAT -> heartbeats.increment();
+            case DUPLICATE -> duplicates.increment();
+        }
+        return result != LastReading.Result.DUPLICATE;
+    }
+
+    /**
+     * Сообщает, что пропущенное показание не было отправлено, чтобы его повтор не посчитался дубликатом.
+     */
+    public void forwardFailed(SensorEventProto event) {
+        if (!enabled) {
+            return;
+        }
+        Object payload = payloadOf(event);
+        if (payload == null) {
+            return;
+        }
+        lastReadings.compute(new SensorKey(event.getHubId(), event.getId()), nanoClock.getAsLong(),
+                LastReading::new, last -> {
+                    last.forget(payload);
+                    return null;
+                });
+    }
+
+    private static Object payloadOf(SensorEventProto event) {
+        return switch (event.getPayloadCase()) {
+            case CLIMATE_SENSOR_EVENT -> event.getClimateSensorEvent();
+            case LIGHT_SENSOR_EVENT -> event.getLightSensorEvent();
+            case MOTION_SENSOR_EVENT -> event.getMotionSensorEvent();
+            case SWITCH_SENSOR_EVENT -> event.getSwitchSensorEvent();
+            case TEMPERATURE_SENSOR_EVENT -> event.getTemperatureSensorEvent();
+            // неизвестные показания не кэшируем, их отклонит сериализация
+            default -> null;
+        };
+    }
+
+    private static long timestampOf(SensorEventProto event) {
+        return event.getTimestamp().getSeconds() * 1000 + event.getTimestamp().getNanos() / 1_000_000;
+    }
+
+    private static Counter resultCounter(MeterRegistry registry, String result) {
+        return Counter.builder("collector.dedup.readings")
+                .description("Результаты проверки показаний на повтор")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private record SensorKey(String hubId, String sensorId) {
+    }
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.exception;
+
+import lombok.Getter;
+
+@Getter
+public class HubRateLimitException extends RuntimeException {
+    private final long retryAfterMs;
+
+    public HubRateLimitException(String hubId, long retryAfterMs) {
+        // без стека: при флуде от хаба исключение создаётся на каждое показание
+        super("Превышен лимит показаний для хаба " + hubId, null, false, false);
+        this.retryAfterMs = retryAfterMs;
+    }
+}
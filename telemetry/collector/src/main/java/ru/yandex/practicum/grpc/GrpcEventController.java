@@ -1,48 +1,158 @@
 package ru.yandex.practicum.grpc;
 
 import com.google.protobuf.Empty;
+import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
+import org.springframework.beans.factory.annotation.Value;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import ru.yandex.practicum.admission.InFlightLimiter;
+import ru.yandex.practicum.exception.HubRateLimitException;
 import ru.yandex.practicum.grpc.telemetry.collector.CollectorControllerGrpc;
+import ru.yandex.practicum.grpc.telemetry.collector.SensorEventBatchResultProto;
+import ru.yandex.practicum.grpc.telemetry.collector.SensorEventFailureProto;
+import ru.yandex.practicum.grpc.telemetry.collector.SensorEventStreamAckProto;
 import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventBatchProto;
 import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
 import ru.yandex.practicum.service.ProducerService;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
 @Slf4j
 @GrpcService
 @RequiredArgsConstructor
 public class GrpcEventController extends CollectorControllerGrpc.CollectorControllerImplBase {
 
+    private static final Metadata.Key<String> RETRY_AFTER_MS =
+            Metadata.Key.of("retry-after-ms", Metadata.ASCII_STRING_MARSHALLER);
+
     private final ProducerService producerService;
+    private final InFlightLimiter inFlightLimiter;
+
+    @Value("${collector.grpc.stream.window:256}")
+    private int streamWindow;
+
+    @Value("${collector.grpc.stream.ack-every:100}")
+    private int streamAckEvery;
 
     @Override
     public void collectSensorEvent(SensorEventProto request, StreamObserver<Empty> responseObserver) {
-        log.info("Запрос SensorEventProto: {}", request);
+        if (!inFlightLimiter.tryAcquire()) {
+            rejectOverloaded(responseObserver);
+            return;
+        }
         try {
-            producerService.processSensorEvent(request);
+            producerService.processSensorEvent(request).whenComplete((metadata, exception) -> inFlightLimiter.release(1));
             responseObserver.onNext(Empty.getDefaultInstance());
             responseObserver.onCompleted();
+        } catch (RejectedExecutionException e) {
+            inFlightLimiter.release(1);
+            rejectOverloaded(responseObserver);
+        } catch (HubRateLimitException e) {
+            inFlightLimiter.release(1);
+            reject(responseObserver, e.getMessage(), e.getRetryAfterMs());
         } catch (Exception e) {
+            inFlightLimiter.release(1);
             handleError(responseObserver, e, "collectSensorEvent");
         }
     }
 
     @Override
     public void collectHubEvent(HubEventProto request, StreamObserver<Empty> responseObserver) {
-        log.info("Запрос HubEventProto: {}", request);
+        if (!inFlightLimiter.tryAcquire()) {
+            rejectOverloaded(responseObserver);
+            return;
+        }
         try {
-            producerService.processHubEvent(request);
+            producerService.processHubEvent(request).whenComplete((metadata, exception) -> inFlightLimiter.release(1));
             responseObserver.onNext(Empty.getDefaultInstance());
             responseObserver.onCompleted();
+        } catch (RejectedExecutionException e) {
+            inFlightLimiter.release(1);
+            rejectOverloaded(responseObserver);
         } catch (Exception e) {
+            inFlightLimiter.release(1);
             handleError(responseObserver, e, "collectHubEvent");
         }
     }
 
+    @Override
+    public StreamObserver<SensorEventProto> collectSensorEventStream(
+            StreamObserver<SensorEventStreamAckProto> responseObserver) {
+        return new SensorEventStreamObserver(
+                producerService,
+                inFlightLimiter,
+                (ServerCallStreamObserver<SensorEventStreamAckProto>) responseObserver,
+                streamWindow,
+                streamAckEvery
+        );
+    }
+
+    @Override
+    public void collectSensorEventBatch(SensorEventBatchProto request,
+                                        StreamObserver<SensorEventBatchResultProto> responseObserver) {
+        int size = request.getEventCount();
+        if (!inFlightLimiter.tryAcquireBatch(size)) {
+            rejectOverloaded(responseObserver);
+            return;
+        }
+        try {
+            List<CompletableFuture<RecordMetadata>> results =
+                    producerService.processSensorEventBatch(request.getEventList());
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                    .whenComplete((ignored, exception) -> {
+                        inFlightLimiter.release(size);
+                        responseObserver.onNext(toBatchResult(results));
+                        responseObserver.onCompleted();
+                    });
+        } catch (RejectedExecutionException e) {
+            inFlightLimiter.release(size);
+            rejectOverloaded(responseObserver);
+        } catch (Exception e) {
+            inFlightLimiter.release(size);
+            handleError(responseObserver, e, "collectSensorEventBatch");
+        }
+    }
+
+    private SensorEventBatchResultProto toBatchResult(List<CompletableFuture<RecordMetadata>> results) {
+        SensorEventBatchResultProto.Builder result = SensorEventBatchResultProto.newBuilder();
+        int accepted = 0;
+        for (int i = 0; i < results.size(); i++) {
+            CompletableFuture<RecordMetadata> sent = results.get(i);
+            if (sent.state() == Future.State.SUCCESS) {
+                accepted++;
+            } else {
+                Throwable cause = sent.exceptionNow();
+                result.addFailure(SensorEventFailureProto.newBuilder()
+                        .setIndex(i)
+                        .setReason(String.valueOf(cause.getMessage()))
+                        .build());
+            }
+        }
+        return result.setAccepted(accepted).build();
+    }
+
+    private void rejectOverloaded(StreamObserver<?> responseObserver) {
+        reject(responseObserver, "Коллектор перегружен, повторите запрос позже", inFlightLimiter.getRetryAfterMs());
+    }
+
+    private void reject(StreamObserver<?> responseObserver, String description, long retryAfterMs) {
+        Metadata trailers = new Metadata();
+        trailers.put(RETRY_AFTER_MS, Long.toString(retryAfterMs));
+        responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                .withDescription(description)
+                .asRuntimeException(trailers));
+    }
+
     private void handleError(StreamObserver<?> responseObserver, Exception e, String context) {
         log.error("Ошибка в {}: {}", context, e.getMessage(), e);
         responseObserver.onError(new StatusRuntimeException(
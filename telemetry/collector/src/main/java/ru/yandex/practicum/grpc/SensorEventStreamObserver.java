@@ -0,0 +1,158 @@
+package ru.yandex.practicum.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.admission.InFlightLimiter;
+import ru.yandex.practicum.grpc.telemetry.collector.SensorEventStreamAckProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.service.ProducerService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Обработчик входящего потока CollectSensorEventStream.
+ * <p>
+ * Автоматический запрос сообщений у gRPC отключён: сразу запрашивается {@code window} показаний,
+ * а каждое следующее запрашивается только после ответа Kafka на отправку предыдущего.
+ * Так число показаний в полёте на один поток не превышает окна, и медленный брокер
+ * притормаживает клиента, а не копит очередь в коллекторе. Место в общем лимите {@link InFlightLimiter}
+ * под следующее показание занимается до его запроса; если мест нет, запрос откладывается до их освобождения.
+ * Подтверждения накопительные: отправляются раз в {@code ackEvery} обработанных показаний и при завершении потока.
+ */
+@Slf4j
+public class SensorEventStreamObserver implements StreamObserver<SensorEventProto> {
+
+    private final ProducerService producerService;
+    private final InFlightLimiter inFlightLimiter;
+    private final ServerCallStreamObserver<SensorEventStreamAckProto> responseObserver;
+    private final int ackEvery;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // места в лимите, занятые под запрошенные, но ещё не пришедшие показания
+    private final AtomicInteger claimed = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile boolean halfClosed;
+    private long lastAcked;
+
+    public SensorEventStreamObserver(ProducerService producerService,
+                                     InFlightLimiter inFlightLimiter,
+                                     ServerCallStreamObserver<SensorEventStreamAckProto> responseObserver,
+                                     int window,
+                                     int ackEvery) {
+        this.producerService = producerService;
+        this.inFlightLimiter = inFlightLimiter;
+        this.responseObserver = responseObserver;
+        this.ackEvery = ackEvery;
+
+        responseObserver.disableAutoRequest();
+        responseObserver.request(window);
+    }
+
+    @Override
+    public void onNext(SensorEventProto event) {
+        inFlight.incrementAndGet();
+        if (claimed.getAndUpdate(count -> count > 0 ? count - 1 : 0) == 0) {
+            // показание из начального окна
+            inFlightLimiter.acquire(1);
+        }
+        CompletableFuture<?> sent;
+        try {
+            sent = producerService.processSensorEvent(event);
+        } catch (Exception e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((metadata, exception) -> onSendComplete(exception));
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        finished.set(true);
+        releaseClaimed();
+        log.warn("Поток показаний прерван клиентом: {}", Status.fromThrowable(t));
+    }
+
+    @Override
+    public void onCompleted() {
+        halfClosed = true;
+        releaseClaimed();
+        if (inFlight.get() == 0) {
+            finish();
+        }
+    }
+
+    private void onSendComplete(Throwable exception) {
+        if (exception != null) {
+            failed.incrementAndGet();
+            log.warn("Показание из потока не отправлено: {}", exception.getMessage());
+        }
+        inFlightLimiter.release(1);
+        long done = processed.incrementAndGet();
+        synchronized (this) {
+            if (!finished.get() && done - lastAcked >= ackEvery) {
+                sendAck(done);
+            }
+        }
+
+        if (inFlight.decrementAndGet() == 0 && halfClosed) {
+            finish();
+        } else if (!halfClosed) {
+            requestNext();
+        }
+    }
+
+    private void requestNext() {
+        if (inFlightLimiter.tryClaim()) {
+            requestClaimed();
+        } else {
+            inFlightLimiter.whenAvailable(this::requestClaimed);
+        }
+    }
+
+    private void requestClaimed() {
+        claimed.incrementAndGet();
+        // поток мог завершиться, пока место ждало очереди; проверка после учёта места, чтобы оно не потерялось
+        if (halfClosed || finished.get() || responseObserver.isCancelled()) {
+            releaseClaimed();
+            return;
+        }
+        responseObserver.request(1);
+    }
+
+    private void releaseClaimed() {
+        int unused = claimed.getAndSet(0);
+        if (unused > 0) {
+            inFlightLimiter.release(unused);
+        }
+    }
+
+    private void finish() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (this) {
+            if (responseObserver.isCancelled()) {
+                return;
+            }
+            sendAck(processed.get());
+            responseObserver.onCompleted();
+        }
+    }
+
+    private void sendAck(long done) {
+        if (responseObserver.isCancelled()) {
+            return;
+        }
+        responseObserver.onNext(SensorEventStreamAckProto.newBuilder()
+                .setProcessed(done)
+                .setFailed(failed.get())
+                .build());
+        lastAcked = done;
+    }
+}
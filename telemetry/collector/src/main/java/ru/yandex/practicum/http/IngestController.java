@@ -0,0 +1,199 @@
+package ru.yandex.practicum.http;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.admission.InFlightLimiter;
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.service.ProducerService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Массовая загрузка событий в формате NDJSON: одна строка — один объект
+ * {@code {"sensor": {...}}} или {@code {"hub": {...}}}, где событие записано в JSON-представлении protobuf.
+ * <p>
+ * Тело читается потоковым парсером и не собирается в памяти целиком: каждое событие сразу уходит
+ * в тот же конвейер, что и gRPC-вызовы. Пока занят лимит {@link InFlightLimiter}, чтение тела
+ * приостанавливается, и клиента притормаживает TCP, а не очередь в коллекторе.
+ * Ответ отдаётся после подтверждения Kafka по всем принятым событиям.
+ */
+@Slf4j
+@RestController
+public class IngestController {
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    private final ProducerService producerService;
+    private final InFlightLimiter inFlightLimiter;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final int maxErrors;
+    private final long waitTimeoutMs;
+
+    public IngestController(ProducerService producerService,
+                            InFlightLimiter inFlightLimiter,
+                            @Value("${collector.http.ingest.max-errors:100}") int maxErrors,
+                            @Value("${collector.http.ingest.wait-timeout-ms:30000}") long waitTimeoutMs) {
+        this.producerService = producerService;
+        this.inFlightLimiter = inFlightLimiter;
+        this.maxErrors = maxErrors;
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    @PostMapping(path = "/ingest/events", consumes = {NDJSON, "application/json"})
+    public ResponseEntity<IngestResult> ingest(HttpServletRequest request) throws IOException, InterruptedException {
+        IngestSession session = new IngestSession(maxErrors);
+        String aborted = null;
+        try (JsonParser parser = jsonFactory.createParser(request.getInputStream())) {
+            long line = 0;
+            while (parser.nextToken() != null) {
+                line++;
+                if (!inFlightLimiter.await(waitTimeoutMs)) {
+                    aborted = "Коллектор перегружен, повторите загрузку со строки " + line;
+                    skipToRoot(parser);
+                    break;
+                }
+                // занятое место переходит к отправке, а если до неё не дошло — возвращается
+                boolean submitted = false;
+                try {
+                    submit(parser, session, line);
+                    submitted = true;
+                } catch (IllegalArgumentException e) {
+                    session.failed(line, e.getMessage());
+                    skipToRoot(parser);
+                } finally {
+                    if (!submitted) {
+                        inFlightLimiter.release(1);
+                    }
+                }
+            }
+        } catch (JsonProcessingException e) {
+            aborted = "Некорректный JSON: " + e.getOriginalMessage();
+        }
+
+        IngestResult result = session.await();
+        result = new IngestResult(result.accepted(), result.failed(), result.errors(), aborted);
+        if (aborted != null) {
+            log.warn("Загрузка NDJSON прервана: {}", aborted);
+            return ResponseEntity.badRequest().body(result);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    private void submit(JsonParser parser, IngestSession session, long line) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME) {
+            throw new IllegalArgumentException("Ожидался объект с полем sensor или hub");
+        }
+        String kind = parser.currentName();
+        parser.nextToken();
+        CompletableFuture<?> sent;
+        switch (kind) {
+            case "sensor" -> {
+                SensorEventProto.Builder event = SensorEventProto.newBuilder();
+                ProtoJsonReader.merge(parser, event);
+                expectEndOfLine(parser);
+                sent = send(() -> producerService.processSensorEvent(event.build()));
+            }
+            case "hub" -> {
+                HubEventProto.Builder event = HubEventProto.newBuilder();
+                ProtoJsonReader.merge(parser, event);
+                expectEndOfLine(parser);
+                sent = send(() -> producerService.processHubEvent(event.build()));
+            }
+            default -> throw new IllegalArgumentException("Неизвестный тип события: " + kind);
+        }
+        session.track(line, sent);
+    }
+
+    private static void expectEndOfLine(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.END_OBJECT) {
+            throw new IllegalArgumentException("В строке должно быть ровно одно событие");
+        }
+    }
+
+    private CompletableFuture<?> send(SendAction action) {
+        CompletableFuture<?> sent;
+        try {
+            sent = action.send();
+        } catch (Exception e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((metadata, exception) -> inFlightLimiter.release(1));
+        return sent;
+    }
+
+    // дочитывает текущую строку до конца, чтобы следующая начиналась с корня
+    private static void skipToRoot(JsonParser parser) throws IOException {
+        while (!parser.getParsingContext().inRoot()) {
+            if (parser.nextToken() == null) {
+                return;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface SendAction {
+        CompletableFuture<?> send();
+    }
+
+    private static final class IngestSession {
+        private final int maxErrors;
+        private final List<IngestResult.LineError> errors = new ArrayList<>();
+        private long accepted;
+        private long failed;
+        private long pending;
+
+        private IngestSession(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        private synchronized void track(long line, CompletableFuture<?> sent) {
+            pending++;
+            sent.whenComplete((metadata, exception) -> complete(line, exception));
+        }
+
+        private synchronized void complete(long line, Throwable exception) {
+            pending--;
+            if (exception == null) {
+                // пустые метаданные — показание отброшено как повтор, объединено или ушло в спул: оно принято
+                accepted++;
+            } else {
+                failed(line, String.valueOf(unwrap(exception).getMessage()));
+            }
+            if (pending == 0) {
+                notifyAll();
+            }
+        }
+
+        private synchronized void failed(long line, String reason) {
+            failed++;
+            if (errors.size() < maxErrors) {
+                errors.add(new IngestResult.LineError(line, reason));
+            }
+        }
+
+        private synchronized IngestResult await() throws InterruptedException {
+            while (pending > 0) {
+                wait();
+            }
+            return new IngestResult(accepted, failed, List.copyOf(errors), null);
+        }
+
+        private static Throwable unwrap(Throwable exception) {
+            return exception.getCause() != null && exception instanceof CompletionException
+                    ? exception.getCause() : exception;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.http;
+
+import java.util.List;
+
+/**
+ * Итог загрузки NDJSON: сколько событий подтверждено Kafka, сколько не принято,
+ * и первые ошибки с номерами строк (нумерация с единицы).
+ */
+public record IngestResult(long accepted, long failed, List<LineError> errors, String aborted) {
+
+    public record LineError(long line, String reason) {
+    }
+}
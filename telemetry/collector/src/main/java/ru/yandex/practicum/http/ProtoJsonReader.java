@@ -0,0 +1,134 @@
+package ru.yandex.practicum.http;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.InputCoercionException;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Чтение protobuf-сообщения прямо из потокового {@link JsonParser} по дескриптору сообщения,
+ * без промежуточного дерева JSON. Понимает то же представление, что и {@code JsonFormat}:
+ * имена полей в lowerCamelCase или как в .proto, enum по имени или номеру, Timestamp в RFC 3339.
+ * Неизвестные поля пропускаются.
+ */
+final class ProtoJsonReader {
+
+    private static final ConcurrentMap<Descriptors.Descriptor, Map<String, Descriptors.FieldDescriptor>> FIELDS =
+            new ConcurrentHashMap<>();
+
+    private ProtoJsonReader() {
+    }
+
+    /**
+     * Читает объект, на открывающей скобке которого стоит {@code parser}, в {@code builder}.
+     *
+     * @throws IllegalArgumentException если значение поля не подходит по типу или не помещается в него
+     */
+    static void merge(JsonParser parser, Message.Builder builder) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Ожидался объект " + builder.getDescriptorForType().getName());
+        }
+        Map<String, Descriptors.FieldDescriptor> fields =
+                FIELDS.computeIfAbsent(builder.getDescriptorForType(), ProtoJsonReader::indexFields);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            Descriptors.FieldDescriptor field = fields.get(parser.currentName());
+            JsonToken token = parser.nextToken();
+            if (field == null) {
+                parser.skipChildren();
+                continue;
+            }
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if (field.isRepeated()) {
+                if (token != JsonToken.START_ARRAY) {
+                    throw new IllegalArgumentException("Поле " + field.getName() + " должно быть массивом");
+                }
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    builder.addRepeatedField(field, readValue(parser, field, builder));
+                }
+            } else {
+                builder.setField(field, readValue(parser, field, builder));
+            }
+        }
+    }
+
+    private static Object readValue(JsonParser parser, Descriptors.FieldDescriptor field, Message.Builder parent)
+            throws IOException {
+        JsonToken token = parser.currentToken();
+        boolean text = token == JsonToken.VALUE_STRING;
+        // геттеры парсера на токене другого типа бросают JsonParseException, которая прервала бы всю загрузку
+        if (!text && !fits(field.getJavaType(), token)) {
+            throw new IllegalArgumentException("Некорректное значение поля " + field.getName());
+        }
+        try {
+            return switch (field.getJavaType()) {
+                case INT -> text ? Integer.parseInt(parser.getText()) : parser.getIntValue();
+                case LONG -> text ? Long.parseLong(parser.getText()) : parser.getLongValue();
+                case FLOAT -> text ? Float.parseFloat(parser.getText()) : parser.getFloatValue();
+                case DOUBLE -> text ? Double.parseDouble(parser.getText()) : parser.getDoubleValue();
+                case BOOLEAN -> text ? Boolean.parseBoolean(parser.getText()) : parser.getBooleanValue();
+                case STRING -> parser.getText();
+                case BYTE_STRING -> ByteString.copyFrom(parser.getBinaryValue());
+                case ENUM -> readEnum(parser, field, text);
+                case MESSAGE -> readMessage(parser, field, parent);
+            };
+        } catch (NumberFormatException | ParseException e) {
+            throw new IllegalArgumentException("Некорректное значение поля " + field.getName(), e);
+        } catch (InputCoercionException e) {
+            throw new IllegalArgumentException("Значение поля " + field.getName() + " вне допустимого диапазона", e);
+        }
+    }
+
+    private static boolean fits(Descriptors.FieldDescriptor.JavaType type, JsonToken token) {
+        return switch (type) {
+            case INT, LONG, ENUM -> token == JsonToken.VALUE_NUMBER_INT;
+            case FLOAT, DOUBLE -> token.isNumeric();
+            case BOOLEAN -> token.isBoolean();
+            case STRING -> token.isScalarValue();
+            case BYTE_STRING -> false;
+            case MESSAGE -> token == JsonToken.START_OBJECT;
+        };
+    }
+
+    private static Descriptors.EnumValueDescriptor readEnum(JsonParser parser, Descriptors.FieldDescriptor field,
+                                                            boolean text) throws IOException {
+        Descriptors.EnumValueDescriptor value = text
+                ? field.getEnumType().findValueByName(parser.getText())
+                : field.getEnumType().findValueByNumber(parser.getIntValue());
+        if (value == null) {
+            throw new IllegalArgumentException("Неизвестное значение " + parser.getText() + " поля " + field.getName());
+        }
+        return value;
+    }
+
+    private static Message readMessage(JsonParser parser, Descriptors.FieldDescriptor field, Message.Builder parent)
+            throws IOException, ParseException {
+        if (field.getMessageType().equals(Timestamp.getDescriptor())) {
+            return Timestamps.parse(parser.getText());
+        }
+        Message.Builder builder = parent.newBuilderForField(field);
+        merge(parser, builder);
+        return builder.build();
+    }
+
+    private static Map<String, Descriptors.FieldDescriptor> indexFields(Descriptors.Descriptor descriptor) {
+        Map<String, Descriptors.FieldDescriptor> fields = new HashMap<>();
+        for (Descriptors.FieldDescriptor field : descriptor.getFields()) {
+            fields.put(field.getName(), field);
+            fields.put(field.getJsonName(), field);
+        }
+        return fields;
+    }
+}
@@ -1,30 +1,142 @@
 package ru.yandex.practicum.kafka;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.avro.specific.SpecificRecordBase;
-import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.RetriableException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.lane.Lane;
+import ru.yandex.practicum.spool.SegmentSpool;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
-@RequiredArgsConstructor
 @Component
 public class KafkaClient implements AutoCloseable {
-    private final KafkaProducer<String, SpecificRecordBase> producer;
+    private final Producer<String, byte[]> sensorProducer;
+    private final Producer<String, byte[]> hubProducer;
+    private final String hubsTopic;
+    private final SegmentSpool spool;
+
+    private final Counter spooled;
+    private final Counter spoolFull;
+    private final Counter spoolOversized;
+
+    public KafkaClient(@Qualifier("sensorProducer") Producer<String, byte[]> sensorProducer,
+                       @Qualifier("hubProducer") Producer<String, byte[]> hubProducer,
+                       @Value("${collector.kafka.topics.hubs}") String hubsTopic,
+                       Optional<SegmentSpool> spool,
+                       MeterRegistry registry) {
+        this.sensorProducer = sensorProducer;
+        this.hubProducer = hubProducer;
+        this.hubsTopic = hubsTopic;
+        this.spool = spool.orElse(null);
+        this.spooled = Counter.builder("collector.spool.appended")
+                .description("Записи, сохранённые в спул из-за недоступности Kafka")
+                .register(registry);
+        this.spoolFull = Counter.builder("collector.spool.rejected")
+                .description("Записи, потерянные из-за переполнения спула")
+                .register(registry);
+        this.spoolOversized = Counter.builder("collector.spool.oversized")
+                .description("Записи, потерянные потому, что они больше сегмента спула")
+                .register(registry);
+    }
+
+    /**
+     * Отправляет запись в Kafka. Если включён спул, то при недоступности Kafka запись сохраняется в него,
+     * а future завершается с {@code null}: запись принята и будет отправлена позже.
+     * Пока спул не пуст, новые показания тоже идут в него, чтобы не обгонять сохранённые. События хабов
+     * в спул сразу не идут: они по-прежнему отправляются продюсером хабов и не ждут за накопленными показаниями,
+     * а в спул попадают, только если Kafka отклонила и их.
+     * <p>
+     * Порядок при переходе на спул не гарантируется: запись, отклонённая с {@link RetriableException},
+     * попадает в спул уже после того, как более новые записи того же хаба, отправленные до ошибки,
+     * могли дойти до Kafka. Показания от этого не портят состояние: агрегатор отбрасывает показание,
+     * которое старше уже учтённого для датчика. События хабов (сценарии, устройства) при таком сбое
+     * могут прийти не по порядку, в том числе новое событие может обогнать события хаба, ещё лежащие в спуле.
+     */
+    public CompletableFuture<RecordMetadata> send(Lane lane, String topic, String key, byte[] value) {
+        if (lane == Lane.SENSOR && spool != null && !spool.isEmpty()) {
+            return toSpool(topic, key, value);
+        }
+        Producer<String, byte[]> producer = lane == Lane.HUB ? hubProducer : sensorProducer;
+        CompletableFuture<RecordMetadata> result = new CompletableFuture<>();
+        try {
+            producer.send(new ProducerRecord<>(topic, key, value), (recordMetadata, exception) -> {
+                if (exception == null) {
+                    result.complete(recordMetadata);
+                } else if (spool != null && exception instanceof RetriableException) {
+                    toSpool(topic, key, value).whenComplete((ignored, spoolException) -> {
+                        if (spoolException != null) {
+                            result.completeExceptionally(exception);
+                        } else {
+                            result.complete(null);
+                        }
+                    });
+                } else {
+                    log.error("Ошибка при отправке в Kafka", exception);
+                    result.completeExceptionally(exception);
+                }
+            });
+        } catch (KafkaException e) {
+            if (spool == null) {
+                throw e;
+            }
+            return toSpool(topic, key, value);
+        }
+        return result;
+    }
 
-    public void send(String topic, String key, SpecificRecordBase record) {
-        producer.send(new ProducerRecord<>(topic, key, record), (recordMetadata, exception) -> {
+    /**
+     * Отправка мимо спула: для записей, которые из него и прочитаны. Продюсер выбирается по топику,
+     * так же как полоса при исходной отправке.
+     */
+    public CompletableFuture<RecordMetadata> sendDirect(String topic, String key, byte[] value) {
+        Producer<String, byte[]> producer = hubsTopic.equals(topic) ? hubProducer : sensorProducer;
+        CompletableFuture<RecordMetadata> result = new CompletableFuture<>();
+        producer.send(new ProducerRecord<>(topic, key, value), (recordMetadata, exception) -> {
             if (exception != null) {
-                log.error("Ошибка при отправке в Kafka", exception);
+                result.completeExceptionally(exception);
+            } else {
+                result.complete(recordMetadata);
             }
         });
+        return result;
+    }
+
+    private CompletableFuture<RecordMetadata> toSpool(String topic, String key, byte[] value) {
+        try {
+            if (spool.append(topic, key, value)) {
+                spooled.increment();
+                return CompletableFuture.completedFuture(null);
+            }
+            spoolFull.increment();
+            log.error("Спул переполнен, запись для топика [{}] потеряна", topic);
+            return CompletableFuture.failedFuture(new IOException("Спул переполнен"));
+        } catch (IllegalArgumentException e) {
+            spoolOversized.increment();
+            log.error("Запись для топика [{}] не помещается в спул и потеряна: {}", topic, e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        } catch (IOException e) {
+            log.error("Ошибка записи в спул", e);
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
     @Override
     public void close() throws Exception {
-        producer.flush();
-        producer.close();
+        hubProducer.flush();
+        sensorProducer.flush();
+        hubProducer.close();
+        sensorProducer.close();
     }
 
 
@@ -1,16 +1,11 @@
 package ru.yandex.practicum.kafka;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
-import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.CommandLineRunner;
-import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import ru.yandex.practicum.serializer.AvroSerializer;
 
 import java.util.Properties;
 
@@ -27,14 +22,37 @@ public class KafkaConfig {
     @Value("${collector.kafka.producer.value-serializer}")
     private String valueSerializer;
 
+    @Value("${collector.kafka.producer.sensors.linger-ms:5}")
+    private int sensorsLingerMs;
+
+    @Value("${collector.kafka.producer.hubs.linger-ms:0}")
+    private int hubsLingerMs;
+
+    // сколько send может ждать места в буфере продюсера, прежде чем запись уйдёт в спул
+    @Value("${collector.kafka.producer.max-block-ms:60000}")
+    private long maxBlockMs;
+
+    // отдельный продюсер для показаний: их поток не должен занимать буфер и соединения продюсера хабов
+    @Bean
+    public KafkaProducer<String, byte[]> sensorProducer() {
+        return new KafkaProducer<>(producerConfig("collector-sensors", sensorsLingerMs));
+    }
+
     @Bean
-    public KafkaProducer<String, SpecificRecordBase> initProducer(KafkaProperties properties) {
+    public KafkaProducer<String, byte[]> hubProducer() {
+        return new KafkaProducer<>(producerConfig("collector-hubs", hubsLingerMs));
+    }
+
+    private Properties producerConfig(String clientId, int lingerMs) {
         Properties config = new Properties();
 
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, keySerializer);
         config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, valueSerializer);
+        config.put(ProducerConfig.CLIENT_ID_CONFIG, clientId);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        config.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBlockMs);
 
-        return new KafkaProducer<>(config);
+        return config;
     }
 }
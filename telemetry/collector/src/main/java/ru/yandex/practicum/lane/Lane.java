@@ -0,0 +1,6 @@
+package ru.yandex.practicum.lane;
+
+public enum Lane {
+    HUB,
+    SENSOR
+}
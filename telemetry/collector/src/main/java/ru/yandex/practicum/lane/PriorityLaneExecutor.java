@@ -0,0 +1,203 @@
+package ru.yandex.practicum.lane;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Общий пул обработчиков с двумя очередями: свободный обработчик всегда сначала забирает
+ * событие хаба и только потом показание датчика. Кроме общих есть выделенные обработчики хабов,
+ * которые не берут показаний, поэтому долгие отправки показаний не задерживают события хабов.
+ * Обе очереди ограничены: при переполнении задача отклоняется сразу.
+ * <p>
+ * При остановке задачи, оставшиеся в очередях, завершаются с {@link RejectedExecutionException}.
+ */
+@Slf4j
+@Component
+public class PriorityLaneExecutor {
+
+    private final Map<Lane, BlockingQueue<LaneTask>> queues = new EnumMap<>(Lane.class);
+    private final Map<Lane, Timer> queueWait = new EnumMap<>(Lane.class);
+    private final Map<Lane, Timer> latency = new EnumMap<>(Lane.class);
+    // по одному разрешению на каждую задачу в любой из очередей; задачи, взятые выделенными
+    // обработчиками хабов, оставляют лишнее разрешение, и общий обработчик просто проверит очереди ещё раз
+    private final Semaphore pending = new Semaphore(0);
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public PriorityLaneExecutor(@Value("${collector.lanes.workers:4}") int workers,
+                                @Value("${collector.lanes.hub-workers:1}") int hubWorkers,
+                                @Value("${collector.lanes.sensor-queue-capacity:10000}") int sensorQueueCapacity,
+                                @Value("${collector.lanes.hub-queue-capacity:1000}") int hubQueueCapacity,
+                                MeterRegistry registry) {
+        if (hubWorkers < 1) {
+            throw new IllegalArgumentException("Нужен хотя бы один выделенный обработчик хабов: collector.lanes.hub-workers");
+        }
+        queues.put(Lane.HUB, new ArrayBlockingQueue<>(hubQueueCapacity));
+        queues.put(Lane.SENSOR, new ArrayBlockingQueue<>(sensorQueueCapacity));
+
+        for (Lane lane : Lane.values()) {
+            String tag = lane.name().toLowerCase(Locale.ROOT);
+            BlockingQueue<LaneTask> queue = queues.get(lane);
+            Gauge.builder("collector.lane.queue-size", queue, BlockingQueue::size)
+                    .tag("lane", tag)
+                    .register(registry);
+            queueWait.put(lane, Timer.builder("collector.lane.queue-wait")
+                    .description("Время ожидания события в очереди полосы")
+                    .tag("lane", tag)
+                    .register(registry));
+            latency.put(lane, Timer.builder("collector.lane.latency")
+                    .description("Время от приёма события до подтверждения Kafka")
+                    .tag("lane", tag)
+                    .register(registry));
+        }
+
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::work, "lane-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            this.workers.add(worker);
+        }
+        for (int i = 0; i < hubWorkers; i++) {
+            Thread worker = new Thread(this::workHub, "lane-hub-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            this.workers.add(worker);
+        }
+    }
+
+    /**
+     * Ставит отправку в очередь полосы. Результат завершается вместе с future, которую вернёт {@code task}.
+     *
+     * @throws RejectedExecutionException если очередь полосы заполнена
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long accepted = System.nanoTime();
+        execute(lane, result::completeExceptionally, () -> {
+            CompletableFuture<T> sent;
+            try {
+                sent = task.get();
+            } catch (Exception e) {
+                sent = CompletableFuture.failedFuture(e);
+            }
+            sent.whenComplete((value, exception) -> {
+                latency.get(lane).record(System.nanoTime() - accepted, TimeUnit.NANOSECONDS);
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * @param dropped вызывается вместо {@code task}, если задача так и не была выполнена из-за остановки
+     * @throws RejectedExecutionException если очередь полосы заполнена
+     */
+    public void execute(Lane lane, Consumer<? super RejectedExecutionException> dropped, Runnable task) {
+        if (!running) {
+            throw new RejectedExecutionException("Обработчики полос остановлены");
+        }
+        long accepted = System.nanoTime();
+        Runnable timed = () -> {
+            queueWait.get(lane).record(System.nanoTime() - accepted, TimeUnit.NANOSECONDS);
+            task.run();
+        };
+        if (!queues.get(lane).offer(new LaneTask(timed, dropped))) {
+            throw new RejectedExecutionException("Очередь полосы " + lane + " заполнена");
+        }
+        pending.release();
+        if (!running) {
+            // остановка могла разобрать очереди до того, как задача в них попала
+            dropQueued();
+        }
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            LaneTask task = queues.get(Lane.HUB).poll();
+            if (task == null) {
+                task = queues.get(Lane.SENSOR).poll();
+            }
+            if (task != null) {
+                run(task);
+            }
+        }
+    }
+
+    private void workHub() {
+        BlockingQueue<LaneTask> hubQueue = queues.get(Lane.HUB);
+        while (running) {
+            try {
+                run(hubQueue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void run(LaneTask task) {
+        try {
+            task.task().run();
+        } catch (Exception e) {
+            log.error("Ошибка обработки события в полосе", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        int dropped = dropQueued();
+        if (dropped > 0) {
+            log.warn("При остановке не обработано событий: {}", dropped);
+        }
+    }
+
+    private int dropQueued() {
+        int dropped = 0;
+        for (BlockingQueue<LaneTask> queue : queues.values()) {
+            LaneTask task;
+            while ((task = queue.poll()) != null) {
+                dropped++;
+                try {
+                    task.dropped().accept(new RejectedExecutionException("Обработчики полос остановлены"));
+                } catch (Exception e) {
+                    log.warn("Ошибка при отмене задачи полосы: {}", e.getMessage());
+                }
+            }
+        }
+        return dropped;
+    }
+
+    private record LaneTask(Runnable task, Consumer<? super RejectedExecutionException> dropped) {
+    }
+}
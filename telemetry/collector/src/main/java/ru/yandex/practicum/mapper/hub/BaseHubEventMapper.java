@@ -20,7 +20,7 @@ public abstract class BaseHubEventMapper<T extends SpecificRecordBase> implement
 
         T payload = mapToAvroPayload(event);
 
-        log.info("Create {}", HubEventAvro.class.getSimpleName());
+        log.trace("Create {}", HubEventAvro.class.getSimpleName());
         return HubEventAvro.newBuilder()
                 .setHubId(event.getHubId())
                 .setTimestamp(Instant.ofEpochSecond(
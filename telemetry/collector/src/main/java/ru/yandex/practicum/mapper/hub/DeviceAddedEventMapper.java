@@ -14,7 +14,7 @@ public class DeviceAddedEventMapper extends BaseHubEventMapper<DeviceAddedEventA
     @Override
     protected DeviceAddedEventAvro mapToAvroPayload(HubEventProto event) {
         DeviceAddedEventProto hubEvent = event.getDeviceAdded();
-        log.info("Mapper bring event to {}, result: {}", DeviceAddedEventProto.class.getSimpleName(), hubEvent);
+        log.trace("Mapper bring event to {}, result: {}", DeviceAddedEventProto.class.getSimpleName(), hubEvent);
 
         return DeviceAddedEventAvro.newBuilder()
                 .setId(hubEvent.getId())
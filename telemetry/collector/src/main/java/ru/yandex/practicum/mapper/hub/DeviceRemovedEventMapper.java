@@ -13,7 +13,7 @@ public class DeviceRemovedEventMapper extends BaseHubEventMapper<DeviceRemovedEv
     @Override
     protected DeviceRemovedEventAvro mapToAvroPayload(HubEventProto event) {
         DeviceRemovedEventProto hubEvent = event.getDeviceRemoved();
-        log.info("Mapper bring event to {}, result: {}", DeviceRemovedEventProto.class.getSimpleName(), hubEvent);
+        log.trace("Mapper bring event to {}, result: {}", DeviceRemovedEventProto.class.getSimpleName(), hubEvent);
 
         return DeviceRemovedEventAvro.newBuilder()
                 .setId(hubEvent.getId())
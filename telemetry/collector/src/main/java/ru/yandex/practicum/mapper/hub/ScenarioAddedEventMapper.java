@@ -17,7 +17,7 @@ public class ScenarioAddedEventMapper extends BaseHubEventMapper<ScenarioAddedEv
     @Override
     protected ScenarioAddedEventAvro mapToAvroPayload(HubEventProto event) {
         ScenarioAddedEventProto hubEvent = event.getScenarioAdded();
-        log.info("Mapper bring event to {}, result: {}", ScenarioAddedEventProto.class.getSimpleName(), hubEvent);
+        log.trace("Mapper bring event to {}, result: {}", ScenarioAddedEventProto.class.getSimpleName(), hubEvent);
 
         return ScenarioAddedEventAvro.newBuilder()
                 .setName(hubEvent.getName())
@@ -12,7 +12,7 @@ public class ScenarioRemovedEventMapper extends BaseHubEventMapper<ScenarioRemov
     @Override
     protected ScenarioRemovedEventAvro mapToAvroPayload(HubEventProto event) {
         ScenarioRemovedEventProto hubEvent = event.getScenarioRemoved();
-        log.info("Mapper bring event to {}, result: {}", ScenarioRemovedEventProto.class.getSimpleName(), hubEvent);
+        log.trace("Mapper bring event to {}, result: {}", ScenarioRemovedEventProto.class.getSimpleName(), hubEvent);
 
         return ScenarioRemovedEventAvro.newBuilder()
                 .setName(hubEvent.getName())
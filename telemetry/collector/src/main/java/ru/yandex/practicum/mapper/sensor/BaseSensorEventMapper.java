@@ -20,7 +20,7 @@ public abstract class BaseSensorEventMapper<T extends SpecificRecordBase> implem
 
         T payload = mapToAvroPayload(event);
 
-        log.info("Create {}", SensorEventAvro.class.getSimpleName());
+        log.trace("Create {}", SensorEventAvro.class.getSimpleName());
         return SensorEventAvro.newBuilder()
                 .setId(event.getId())
                 .setHubId(event.getHubId())
@@ -12,7 +12,7 @@ public class ClimateSensorEventMapper extends BaseSensorEventMapper<ClimateSenso
     @Override
     protected ClimateSensorAvro mapToAvroPayload(SensorEventProto event) {
         ClimateSensorProto sensorEvent = event.getClimateSensorEvent();
-        log.info("Mapper bring event to {}, result: {}", ClimateSensorProto.class.getSimpleName(), sensorEvent);
+        log.trace("Mapper bring event to {}, result: {}", ClimateSensorProto.class.getSimpleName(), sensorEvent);
         return ClimateSensorAvro.newBuilder()
                 .setTemperatureC(sensorEvent.getTemperatureC())
                 .setHumidity(sensorEvent.getHumidity())
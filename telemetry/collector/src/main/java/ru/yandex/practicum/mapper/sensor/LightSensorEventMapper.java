@@ -12,7 +12,7 @@ public class LightSensorEventMapper extends BaseSensorEventMapper<LightSensorAvr
     @Override
     protected LightSensorAvro mapToAvroPayload(SensorEventProto event) {
         LightSensorProto sensorEvent = event.getLightSensorEvent();
-        log.info("Mapper bring event to {}, result: {}", LightSensorProto.class.getSimpleName(), sensorEvent);
+        log.trace("Mapper bring event to {}, result: {}", LightSensorProto.class.getSimpleName(), sensorEvent);
         return LightSensorAvro.newBuilder()
                 .setLinkQuality(sensorEvent.getLinkQuality())
                 .setLuminosity(sensorEvent.getLuminosity())
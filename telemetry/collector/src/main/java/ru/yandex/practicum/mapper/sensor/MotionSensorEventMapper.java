@@ -12,7 +12,7 @@ public class MotionSensorEventMapper extends BaseSensorEventMapper<MotionSensorA
     @Override
     protected MotionSensorAvro mapToAvroPayload(SensorEventProto event) {
         MotionSensorProto sensorEvent = event.getMotionSensorEvent();
-        log.info("Mapper bring event to {}, result: {}", MotionSensorProto.class.getSimpleName(), sensorEvent);
+        log.trace("Mapper bring event to {}, result: {}", MotionSensorProto.class.getSimpleName(), sensorEvent);
         return MotionSensorAvro.newBuilder()
                 .setLinkQuality(sensorEvent.getLinkQuality())
                 .setMotion(sensorEvent.getMotion())
@@ -12,7 +12,7 @@ public class SwitchSensorEventMapper extends BaseSensorEventMapper<SwitchSensorA
     @Override
     protected SwitchSensorAvro mapToAvroPayload(SensorEventProto event) {
         SwitchSensorProto sensorEvent = event.getSwitchSensorEvent();
-        log.info("Mapper bring event to {}, result: {}", SwitchSensorProto.class.getSimpleName(), sensorEvent);
+        log.trace("Mapper bring event to {}, result: {}", SwitchSensorProto.class.getSimpleName(), sensorEvent);
         return SwitchSensorAvro.newBuilder()
                 .setState(sensorEvent.getState())
                 .build();
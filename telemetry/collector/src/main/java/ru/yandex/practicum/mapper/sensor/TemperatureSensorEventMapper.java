@@ -14,7 +14,7 @@ public class TemperatureSensorEventMapper extends BaseSensorEventMapper<Temperat
     @Override
     protected TemperatureSensorAvro mapToAvroPayload(SensorEventProto event) {
         TemperatureSensorProto sensorEvent = event.getTemperatureSensorEvent();
-        log.info("Mapper bring event to {}, result: {}", TemperatureSensorProto.class.getSimpleName(), sensorEvent);
+        log.trace("Mapper bring event to {}, result: {}", TemperatureSensorProto.class.getSimpleName(), sensorEvent);
         return TemperatureSensorAvro.newBuilder()
                 .setTemperatureC(sensorEvent.getTemperatureC())
                 .setTemperatureF(sensorEvent.getTemperatureF())
@@ -0,0 +1,91 @@
+package ru.yandex.practicum.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики горячего пути коллектора с тегом {@code type} по PayloadCase события.
+ * Все счётчики создаются заранее, чтобы на каждое событие не искать метр в реестре.
+ */
+@Component
+public class CollectorMetrics {
+
+    private final Map<SensorEventProto.PayloadCase, EventMeters> sensorMeters =
+            new EnumMap<>(SensorEventProto.PayloadCase.class);
+    private final Map<HubEventProto.PayloadCase, EventMeters> hubMeters =
+            new EnumMap<>(HubEventProto.PayloadCase.class);
+
+    public CollectorMetrics(MeterRegistry registry) {
+        for (SensorEventProto.PayloadCase payloadCase : SensorEventProto.PayloadCase.values()) {
+            sensorMeters.put(payloadCase, new EventMeters(registry, "sensor", payloadCase.name()));
+        }
+        for (HubEventProto.PayloadCase payloadCase : HubEventProto.PayloadCase.values()) {
+            hubMeters.put(payloadCase, new EventMeters(registry, "hub", payloadCase.name()));
+        }
+    }
+
+    public EventMeters of(SensorEventProto.PayloadCase payloadCase) {
+        return sensorMeters.get(payloadCase);
+    }
+
+    public EventMeters of(HubEventProto.PayloadCase payloadCase) {
+        return hubMeters.get(payloadCase);
+    }
+
+    public static final class EventMeters {
+        private final Timer mapping;
+        private final DistributionSummary size;
+        private final Timer send;
+        private final Counter mappingErrors;
+        private final Counter sendErrors;
+
+        private EventMeters(MeterRegistry registry, String kind, String payloadCase) {
+            String type = payloadCase.toLowerCase(Locale.ROOT);
+            mapping = Timer.builder("collector.event.mapping")
+                    .description("Время преобразования события в Avro-байты")
+                    .tags("kind", kind, "type", type)
+                    .register(registry);
+            size = DistributionSummary.builder("collector.event.size")
+                    .description("Размер сериализованного события")
+                    .baseUnit("bytes")
+                    .tags("kind", kind, "type", type)
+                    .register(registry);
+            send = Timer.builder("collector.kafka.send")
+                    .description("Время от отправки до подтверждения Kafka")
+                    .tags("kind", kind, "type", type)
+                    .register(registry);
+            mappingErrors = Counter.builder("collector.event.errors")
+                    .tags("kind", kind, "type", type, "stage", "mapping")
+                    .register(registry);
+            sendErrors = Counter.builder("collector.event.errors")
+                    .tags("kind", kind, "type", type, "stage", "send")
+                    .register(registry);
+        }
+
+        public void mapped(long startNanos, int bytes) {
+            mapping.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            size.record(bytes);
+        }
+
+        public void mappingFailed() {
+            mappingErrors.increment();
+        }
+
+        public void sent(long startNanos, Throwable exception) {
+            send.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            if (exception != null) {
+                sendErrors.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package ru.yandex.practicum.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cache.StripedLruCache;
+import ru.yandex.practicum.exception.HubRateLimitException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Ограничение частоты показаний от одного хаба: корзина токенов на каждый hubId.
+ * Корзины лежат в {@link StripedLruCache}, поэтому корзины простаивающих хабов вытесняются,
+ * а обращения разных хабов почти не конкурируют за блокировки.
+ */
+@Component
+public class HubRateLimiter {
+
+    /**
+     * Результат {@link #acquire}: показание отбрасывается.
+     */
+    public static final long DROPPED = -1;
+
+    private final boolean enabled;
+    private final double eventsPerSecond;
+    private final double burst;
+    private final OverLimitPolicy policy;
+    private final long maxDelayNanos;
+
+    private final StripedLruCache<String, TokenBucket> buckets;
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier nanoClock;
+
+    private final Counter allowed;
+    private final Counter dropped;
+    private final Counter rejected;
+    private final Counter delayed;
+
+    @Autowired
+    public HubRateLimiter(@Value("${collector.hub-rate-limit.enabled:false}") boolean enabled,
+                          @Value("${collector.hub-rate-limit.events-per-second:50}") double eventsPerSecond,
+                          @Value("${collector.hub-rate-limit.burst:100}") double burst,
+                          @Value("${collector.hub-rate-limit.policy:DROP}") OverLimitPolicy policy,
+                          @Value("${collector.hub-rate-limit.max-delay-ms:500}") long maxDelayMs,
+                          @Value("${collector.hub-rate-limit.max-hubs:1000000}") int maxHubs,
+                          @Value("${collector.hub-rate-limit.idle-evict-ms:600000}") long idleEvictMs,
+                          @Value("${collector.hub-rate-limit.stripes:64}") int stripes,
+                          MeterRegistry registry) {
+        this(enabled, eventsPerSecond, burst, policy, maxDelayMs, maxHubs, idleEvictMs, stripes, registry, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock источник времени для корзин и вытеснения; тесты подставляют свои часы
+     */
+    HubRateLimiter(boolean enabled, double eventsPerSecond, double burst, OverLimitPolicy policy, long maxDelayMs,
+                   int maxHubs, long idleEvictMs, int stripes, MeterRegistry registry, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.enabled = enabled;
+        this.eventsPerSecond = eventsPerSecond;
+        this.burst = burst;
+        this.policy = policy;
+        this.maxDelayNanos = policy == OverLimitPolicy.DELAY ? TimeUnit.MILLISECONDS.toNanos(maxDelayMs) : 0;
+        this.buckets = new StripedLruCache<>(stripes, maxHubs, TimeUnit.MILLISECONDS.toNanos(idleEvictMs));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hub-rate-limit-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        allowed = decisionCounter(registry, "allowed");
+        dropped = decisionCounter(registry, "dropped");
+        rejected = decisionCounter(registry, "rejected");
+        delayed = decisionCounter(registry, "delayed");
+        Gauge.builder("collector.hub-rate-limit.buckets", buckets, StripedLruCache::size)
+                .description("Число корзин токенов в памяти")
+                .register(registry);
+        FunctionCounter.builder("collector.hub-rate-limit.evictions", buckets, StripedLruCache::evictions)
+                .description("Вытесненные корзины простаивающих хабов")
+                .register(registry);
+    }
+
+    /**
+     * Пропускает действие, откладывает его или отбрасывает показание согласно политике.
+     * Отброшенное показание считается успешно принятым: future завершается с {@code null}.
+     *
+     * @throws HubRateLimitException если лимит превышен и политика {@link OverLimitPolicy#REJECT}
+     */
+    public <T> CompletableFuture<T> admit(String hubId, Supplier<CompletableFuture<T>> action) {
+        long delayNanos = acquire(hubId);
+        if (delayNanos == 0) {
+            return action.get();
+        }
+        if (delayNanos == DROPPED) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return schedule(delayNanos, action);
+    }
+
+    /**
+     * @return 0, если показание можно отправить сразу; задержку в наносекундах для политики DELAY;
+     * {@link #DROPPED}, если показание нужно отбросить
+     * @throws HubRateLimitException если лимит превышен и политика {@link OverLimitPolicy#REJECT}
+     */
+    public long acquire(String hubId) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = nanoClock.getAsLong();
+        long waitNanos = buckets.compute(hubId, now,
+                () -> new TokenBucket(eventsPerSecond, burst, now),
+                bucket -> bucket.acquire(now, maxDelayNanos));
+        if (waitNanos == 0) {
+            allowed.increment();
+            return 0;
+        }
+        if (waitNanos > 0) {
+            delayed.increment();
+            return waitNanos;
+        }
+        if (policy == OverLimitPolicy.REJECT) {
+            rejected.increment();
+            throw new HubRateLimitException(hubId, Math.max(1, TimeUnit.NANOSECONDS.toMillis(-waitNanos)));
+        }
+        dropped.increment();
+        return DROPPED;
+    }
+
+    public <T> CompletableFuture<T> schedule(long delayNanos, Supplier<CompletableFuture<T>> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        scheduler.schedule(() -> {
+            try {
+                action.get().whenComplete((value, exception) -> {
+                    if (exception != null) {
+                        result.completeExceptionally(exception);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private static Counter decisionCounter(MeterRegistry registry, String decision) {
+        return Counter.builder("collector.hub-rate-limit.decisions")
+                .description("Решения ограничителя частоты показаний хабов")
+                .tag("decision", decision)
+                .register(registry);
+    }
+}
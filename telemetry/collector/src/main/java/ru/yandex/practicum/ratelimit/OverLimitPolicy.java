@@ -0,0 +1,16 @@
+package ru.yandex.practicum.ratelimit;
+
+public enum OverLimitPolicy {
+    /**
+     * Показание молча отбрасывается, клиент получает успешный ответ.
+     */
+    DROP,
+    /**
+     * Клиент получает RESOURCE_EXHAUSTED с подсказкой, через сколько повторить.
+     */
+    REJECT,
+    /**
+     * Отправка откладывается до появления токена, но не дольше max-delay-ms; дальше — отбрасывание.
+     */
+    DELAY
+}
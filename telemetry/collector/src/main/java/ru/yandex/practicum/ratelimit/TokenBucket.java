@@ -0,0 +1,40 @@
+package ru.yandex.practicum.ratelimit;
+
+/**
+ * Корзина токенов одного хаба. Не потокобезопасна: доступ сериализует сегмент кэша.
+ */
+class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long refilledAtNanos;
+
+    TokenBucket(double tokensPerSecond, double capacity, long nowNanos) {
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilledAtNanos = nowNanos;
+    }
+
+    /**
+     * Забирает токен, если до его появления не больше {@code maxWaitNanos}.
+     *
+     * @return 0, если токен есть сейчас; время ожидания токена, если он зарезервирован в долг;
+     * отрицательное время ожидания, если ждать дольше {@code maxWaitNanos} и токен не взят
+     */
+    long acquire(long nowNanos, long maxWaitNanos) {
+        tokens = Math.min(capacity, tokens + (nowNanos - refilledAtNanos) * tokensPerNano);
+        refilledAtNanos = nowNanos;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        long waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+        if (waitNanos > maxWaitNanos) {
+            return -waitNanos;
+        }
+        tokens -= 1;
+        return waitNanos;
+    }
+}
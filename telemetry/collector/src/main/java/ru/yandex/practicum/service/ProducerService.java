@@ -1,13 +1,19 @@
 package ru.yandex.practicum.service;
 
+import org.apache.kafka.clients.producer.RecordMetadata;
 import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
 import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface ProducerService {
 
-    void processHubEvent(HubEventProto hubEventProto);
+    CompletableFuture<RecordMetadata> processHubEvent(HubEventProto hubEventProto);
+
+    CompletableFuture<RecordMetadata> processSensorEvent(SensorEventProto sensorEventProto);
 
-    void processSensorEvent(SensorEventProto sensorEventProto);
+    List<CompletableFuture<RecordMetadata>> processSensorEventBatch(List<SensorEventProto> sensorEventProtos);
 
 
 }
@@ -1,65 +1,334 @@
 package ru.yandex.practicum.service;
 
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.SerializationException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.admission.InFlightLimiter;
 import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
 import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
 import ru.yandex.practicum.kafka.KafkaClient;
+import ru.yandex.practicum.lane.Lane;
+import ru.yandex.practicum.coalesce.ReadingCoalescer;
+import ru.yandex.practicum.dedup.ReadingDeduplicator;
+import ru.yandex.practicum.exception.HubRateLimitException;
+import ru.yandex.practicum.lane.PriorityLaneExecutor;
 import ru.yandex.practicum.mapper.hub.HubEventMapper;
 import ru.yandex.practicum.mapper.sensor.SensorEventMapper;
+import ru.yandex.practicum.metrics.CollectorMetrics;
+import ru.yandex.practicum.ratelimit.HubRateLimiter;
+import ru.yandex.practicum.serialization.AvroCodecs;
+import ru.yandex.practicum.transcoder.ProtoAvroTranscoder;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 
+@Slf4j
 @Service
 public class ProducerServiceimpl implements ProducerService {
     @Value("${collector.kafka.topics.sensors}")
     private String sensorsEventsTopic;
     @Value("${collector.kafka.topics.hubs}")
     private String hubsEventsTopic;
+    @Value("${collector.transcoding.enabled:false}")
+    private boolean transcodingEnabled;
+    @Value("${collector.logging.debug-sample-rate:0.0}")
+    private double debugSampleRate;
 
     private final KafkaClient kafkaClient;
+    private final PriorityLaneExecutor lanes;
+    private final HubRateLimiter hubRateLimiter;
+    private final ReadingDeduplicator readingDeduplicator;
+    private final ReadingCoalescer readingCoalescer;
+    private final InFlightLimiter inFlightLimiter;
+    private final ProtoAvroTranscoder transcoder;
+    private final CollectorMetrics metrics;
     private final Map<SensorEventProto.PayloadCase, SensorEventMapper> sensorEventMappers;
     private final Map<HubEventProto.PayloadCase, HubEventMapper> hubEventMappers;
 
     public ProducerServiceimpl (
             KafkaClient kafkaClient,
+            PriorityLaneExecutor lanes,
+            HubRateLimiter hubRateLimiter,
+            ReadingDeduplicator readingDeduplicator,
+            ReadingCoalescer readingCoalescer,
+            InFlightLimiter inFlightLimiter,
+            ProtoAvroTranscoder transcoder,
+            CollectorMetrics metrics,
             List<SensorEventMapper> sensorEventMappers,
             List<HubEventMapper> hubEventMappers
     ) {
         this.kafkaClient = kafkaClient;
+        this.lanes = lanes;
+        this.hubRateLimiter = hubRateLimiter;
+        this.readingDeduplicator = readingDeduplicator;
+        this.readingCoalescer = readingCoalescer;
+        this.inFlightLimiter = inFlightLimiter;
+        this.transcoder = transcoder;
+        this.metrics = metrics;
         this.sensorEventMappers = sensorEventMappers.stream()
                 .collect(Collectors.toMap(SensorEventMapper::getSensorEventType, Function.identity()));
         this.hubEventMappers = hubEventMappers.stream()
                 .collect(Collectors.toMap(HubEventMapper::getHubEventType, Function.identity()));
+        readingCoalescer.onFlush(this::forwardCoalesced);
     }
 
     @Override
-    public void processSensorEvent(SensorEventProto sensorEventProto) {
-        if (sensorEventMappers.containsKey(sensorEventProto.getPayloadCase())) {
-            kafkaClient.send(
-                    sensorsEventsTopic,
-                    sensorEventProto.getHubId(),
-                    sensorEventMappers.get(sensorEventProto.getPayloadCase()).mapToAvro(sensorEventProto)
-            );
-        } else {
+    public CompletableFuture<RecordMetadata> processSensorEvent(SensorEventProto sensorEventProto) {
+        if (!sensorEventMappers.containsKey(sensorEventProto.getPayloadCase())) {
             throw new IllegalArgumentException("Нет подходящего маппера");
         }
+        if (!readingCoalescer.shouldForward(sensorEventProto)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return forwardSensorEvent(sensorEventProto);
+    }
+
+    /**
+     * Показание, отложенное до конца окна, не прошло через лимит вызова, который его принёс,
+     * поэтому место в {@link InFlightLimiter} занимается здесь.
+     */
+    private void forwardCoalesced(SensorEventProto sensorEventProto) {
+        if (!inFlightLimiter.tryAcquireCoalesced()) {
+            log.debug("Отложенное показание датчика {} сброшено из-за перегрузки", sensorEventProto.getId());
+            return;
+        }
+        try {
+            forwardSensorEvent(sensorEventProto)
+                    .whenComplete((metadata, exception) -> inFlightLimiter.release(1));
+        } catch (Exception e) {
+            inFlightLimiter.release(1);
+            log.warn("Отложенное показание не отправлено: {}", e.getMessage());
+        }
+    }
+
+    private CompletableFuture<RecordMetadata> forwardSensorEvent(SensorEventProto sensorEventProto) {
+        if (!readingDeduplicator.shouldForward(sensorEventProto)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<RecordMetadata> sent;
+        try {
+            sent = hubRateLimiter.admit(sensorEventProto.getHubId(), () -> submitSensorEvent(sensorEventProto));
+        } catch (RuntimeException e) {
+            readingDeduplicator.forwardFailed(sensorEventProto);
+            throw e;
+        }
+        return watchForward(sensorEventProto, sent);
+    }
+
+    private CompletableFuture<RecordMetadata> watchForward(SensorEventProto sensorEventProto,
+                                                           CompletableFuture<RecordMetadata> sent) {
+        // показание, отброшенное ограничителем или не дошедшее до Kafka, не должно считаться последним отправленным
+        sent.whenComplete((metadata, exception) -> {
+            if (exception != null || metadata == null) {
+                readingDeduplicator.forwardFailed(sensorEventProto);
+            }
+        });
+        return sent;
+    }
+
+    private CompletableFuture<RecordMetadata> submitSensorEvent(SensorEventProto sensorEventProto) {
+        return lanes.submit(Lane.SENSOR, () -> {
+            byte[] value = serialize(sensorEventProto);
+            return send(Lane.SENSOR, sensorsEventsTopic, sensorEventProto.getHubId(), value,
+                    metrics.of(sensorEventProto.getPayloadCase()));
+        });
+    }
+
+    @Override
+    public List<CompletableFuture<RecordMetadata>> processSensorEventBatch(List<SensorEventProto> sensorEventProtos) {
+        List<CompletableFuture<RecordMetadata>> results = new ArrayList<>(sensorEventProtos.size());
+        List<SensorEventProto> admitted = new ArrayList<>(sensorEventProtos.size());
+        List<CompletableFuture<RecordMetadata>> admittedResults = new ArrayList<>(sensorEventProtos.size());
+        List<DelayedReading> delayed = new ArrayList<>();
+        for (SensorEventProto sensorEventProto : sensorEventProtos) {
+            if (!readingCoalescer.shouldForward(sensorEventProto)
+                    || !readingDeduplicator.shouldForward(sensorEventProto)) {
+                results.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            long delayNanos;
+            try {
+                delayNanos = hubRateLimiter.acquire(sensorEventProto.getHubId());
+            } catch (HubRateLimitException e) {
+                readingDeduplicator.forwardFailed(sensorEventProto);
+                results.add(CompletableFuture.failedFuture(e));
+                continue;
+            }
+            if (delayNanos == HubRateLimiter.DROPPED) {
+                readingDeduplicator.forwardFailed(sensorEventProto);
+                results.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            CompletableFuture<RecordMetadata> result = new CompletableFuture<>();
+            results.add(watchForward(sensorEventProto, result));
+            if (delayNanos == 0) {
+                admitted.add(sensorEventProto);
+                admittedResults.add(result);
+            } else {
+                delayed.add(new DelayedReading(sensorEventProto, delayNanos, result));
+            }
+        }
+        if (!admitted.isEmpty()) {
+            // пропущенная часть пакета целиком занимает одно место в очереди показаний
+            Runnable sendAdmitted = () -> {
+                List<CompletableFuture<RecordMetadata>> sent = sendBatch(admitted);
+                for (int i = 0; i < sent.size(); i++) {
+                    relay(sent.get(i), admittedResults.get(i));
+                }
+            };
+            try {
+                lanes.execute(Lane.SENSOR, e -> admittedResults.forEach(result -> result.completeExceptionally(e)),
+                        sendAdmitted);
+            } catch (RejectedExecutionException e) {
+                // отложенные показания ещё не запланированы: пакет отклоняется целиком, и его повтор ничего не задвоит
+                admittedResults.forEach(result -> result.completeExceptionally(e));
+                delayed.forEach(reading -> reading.result().completeExceptionally(e));
+                throw e;
+            }
+        }
+        for (DelayedReading reading : delayed) {
+            relay(hubRateLimiter.schedule(reading.delayNanos(), () -> submitSensorEvent(reading.event())),
+                    reading.result());
+        }
+        return results;
+    }
+
+    private static <T> void relay(CompletableFuture<T> source, CompletableFuture<T> target) {
+        source.whenComplete((value, exception) -> {
+            if (exception != null) {
+                target.completeExceptionally(exception);
+            } else {
+                target.complete(value);
+            }
+        });
+    }
+
+    private List<CompletableFuture<RecordMetadata>> sendBatch(List<SensorEventProto> sensorEventProtos) {
+        // сначала сериализуем весь пакет, затем отправляем одной серией, чтобы продюсер собрал записи в крупные батчи
+        List<byte[]> serialized = new ArrayList<>(sensorEventProtos.size());
+        List<CompletableFuture<RecordMetadata>> results = new ArrayList<>(sensorEventProtos.size());
+        for (SensorEventProto sensorEventProto : sensorEventProtos) {
+            try {
+                serialized.add(serialize(sensorEventProto));
+                results.add(null);
+            } catch (Exception e) {
+                serialized.add(null);
+                results.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        for (int i = 0; i < serialized.size(); i++) {
+            byte[] event = serialized.get(i);
+            if (event == null) {
+                continue;
+            }
+            try {
+                SensorEventProto sensorEventProto = sensorEventProtos.get(i);
+                results.set(i, send(Lane.SENSOR, sensorsEventsTopic, sensorEventProto.getHubId(), event,
+                        metrics.of(sensorEventProto.getPayloadCase())));
+            } catch (Exception e) {
+                results.set(i, CompletableFuture.failedFuture(e));
+            }
+        }
+        return results;
     }
 
     @Override
-    public void processHubEvent(HubEventProto hubEventProto) {
-        if (hubEventMappers.containsKey(hubEventProto.getPayloadCase())) {
-            kafkaClient.send(
-                    hubsEventsTopic,
-                    hubEventProto.getHubId(),
-                    hubEventMappers.get(hubEventProto.getPayloadCase()).mapToAvro(hubEventProto)
-            );
-        } else {
+    public CompletableFuture<RecordMetadata> processHubEvent(HubEventProto hubEventProto) {
+        if (!hubEventMappers.containsKey(hubEventProto.getPayloadCase())) {
             throw new IllegalArgumentException("Нет подходящего маппера");
         }
+        return lanes.submit(Lane.HUB, () -> {
+            byte[] value = serialize(hubEventProto);
+            return send(Lane.HUB, hubsEventsTopic, hubEventProto.getHubId(), value,
+                    metrics.of(hubEventProto.getPayloadCase()));
+        });
+    }
+
+    private CompletableFuture<RecordMetadata> send(Lane lane, String topic, String key, byte[] value,
+                                                   CollectorMetrics.EventMeters meters) {
+        long start = System.nanoTime();
+        CompletableFuture<RecordMetadata> sent = kafkaClient.send(lane, topic, key, value);
+        sent.whenComplete((metadata, exception) -> meters.sent(start, exception));
+        return sent;
+    }
+
+    private byte[] serialize(SensorEventProto sensorEventProto) {
+        CollectorMetrics.EventMeters meters = metrics.of(sensorEventProto.getPayloadCase());
+        if (sampled(debugSampleRate) && log.isDebugEnabled()) {
+            log.debug("Запрос SensorEventProto: {}", sensorEventProto);
+        }
+        long start = System.nanoTime();
+        try {
+            byte[] value = serializeSensorEvent(sensorEventProto);
+            meters.mapped(start, value.length);
+            return value;
+        } catch (RuntimeException e) {
+            meters.mappingFailed();
+            throw e;
+        }
+    }
+
+    private byte[] serialize(HubEventProto hubEventProto) {
+        CollectorMetrics.EventMeters meters = metrics.of(hubEventProto.getPayloadCase());
+        if (sampled(debugSampleRate) && log.isDebugEnabled()) {
+            log.debug("Запрос HubEventProto: {}", hubEventProto);
+        }
+        long start = System.nanoTime();
+        try {
+            byte[] value = serializeHubEvent(hubEventProto);
+            meters.mapped(start, value.length);
+            return value;
+        } catch (RuntimeException e) {
+            meters.mappingFailed();
+            throw e;
+        }
+    }
+
+    private byte[] serializeSensorEvent(SensorEventProto sensorEventProto) {
+        SensorEventMapper mapper = sensorEventMappers.get(sensorEventProto.getPayloadCase());
+        if (mapper == null) {
+            throw new IllegalArgumentException("Нет подходящего маппера");
+        }
+        try {
+            if (!transcodingEnabled) {
+                return AvroCodecs.encode(mapper.mapToAvro(sensorEventProto));
+            }
+            return transcoder.transcode(sensorEventProto);
+        } catch (IOException e) {
+            throw new SerializationException("Ошибка сериализации данных для топика [" + sensorsEventsTopic + "]", e);
+        }
+    }
+
+    private byte[] serializeHubEvent(HubEventProto hubEventProto) {
+        HubEventMapper mapper = hubEventMappers.get(hubEventProto.getPayloadCase());
+        if (mapper == null) {
+            throw new IllegalArgumentException("Нет подходящего маппера");
+        }
+        try {
+            if (!transcodingEnabled) {
+                return AvroCodecs.encode(mapper.mapToAvro(hubEventProto));
+            }
+            return transcoder.transcode(hubEventProto);
+        } catch (IOException e) {
+            throw new SerializationException("Ошибка сериализации данных для топика [" + hubsEventsTopic + "]", e);
+        }
+    }
+
+    private static boolean sampled(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private record DelayedReading(SensorEventProto event, long delayNanos, CompletableFuture<RecordMetadata> result) {
     }
 }
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.spool;
+
+public enum FsyncPolicy {
+    /**
+     * Сброс на диск оставлен ОС: переживает падение процесса, но не питания.
+     */
+    NEVER,
+    /**
+     * Сброс после каждой записи: самый надёжный и самый медленный вариант.
+     */
+    EVERY_WRITE,
+    /**
+     * Сброс раз в fsync-interval-ms: при отказе теряется не больше интервала.
+     */
+    INTERVAL
+}
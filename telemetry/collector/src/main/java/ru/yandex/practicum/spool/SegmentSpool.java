@@ -0,0 +1,310 @@
+package ru.yandex.practicum.spool;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Спул записей для Kafka на диске: набор сегментов фиксированного размера, отображённых в память.
+ * <p>
+ * Сегмент начинается с заголовка (magic, версия, позиция записи, позиция чтения), за ним идут записи
+ * {@code [длина][crc32c][тема][ключ][значение]}. Позиция записи в заголовке обновляется после самой записи,
+ * поэтому оборванная запись при старте просто отбрасывается; crc защищает от мусора на месте хвоста.
+ * Прочитанные сегменты удаляются, а число сегментов ограничено, так что спул занимает не больше
+ * {@code segmentSize * maxSegments} байт диска.
+ */
+@Slf4j
+public class SegmentSpool implements AutoCloseable {
+
+    private static final int MAGIC = 0x53504F4C;
+    private static final int VERSION = 1;
+    private static final int WRITE_POSITION = 8;
+    private static final int READ_POSITION = 12;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final FsyncPolicy fsyncPolicy;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final CRC32C crc = new CRC32C();
+
+    private long nextSegmentId;
+    private volatile boolean empty = true;
+    private volatile long pendingBytes;
+
+    public SegmentSpool(Path directory, int segmentSize, int maxSegments, FsyncPolicy fsyncPolicy) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.fsyncPolicy = fsyncPolicy;
+        Files.createDirectories(directory);
+        recover();
+        if (segments.isEmpty()) {
+            segments.add(createSegment());
+        }
+        updateState();
+    }
+
+    /**
+     * Дописывает запись в конец спула.
+     *
+     * @return {@code false}, если места на диске в пределах лимита не осталось
+     * @throws IllegalArgumentException если запись не помещается даже в пустой сегмент
+     */
+    public synchronized boolean append(String topic, String key, byte[] value) throws IOException {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = 2 + topicBytes.length + 4 + keyBytes.length + 4 + value.length;
+        int size = RECORD_HEADER_SIZE + length;
+        if (size > segmentSize - HEADER_SIZE) {
+            throw new IllegalArgumentException("Запись размером " + size + " байт больше сегмента спула ("
+                    + segmentSize + " байт)");
+        }
+
+        Segment segment = segments.peekLast();
+        if (segment.writePosition + size > segmentSize) {
+            if (segments.size() >= maxSegments) {
+                return false;
+            }
+            segment = createSegment();
+            segments.add(segment);
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition + RECORD_HEADER_SIZE;
+        buffer.putShort(position, (short) topicBytes.length);
+        buffer.put(position + 2, topicBytes);
+        position += 2 + topicBytes.length;
+        buffer.putInt(position, keyBytes.length);
+        buffer.put(position + 4, keyBytes);
+        position += 4 + keyBytes.length;
+        buffer.putInt(position, value.length);
+        buffer.put(position + 4, value);
+
+        buffer.putInt(segment.writePosition, length);
+        buffer.putInt(segment.writePosition + 4, checksum(buffer, segment.writePosition + RECORD_HEADER_SIZE, length));
+        segment.writePosition += size;
+        buffer.putInt(WRITE_POSITION, segment.writePosition);
+        if (fsyncPolicy == FsyncPolicy.EVERY_WRITE) {
+            buffer.force();
+        }
+        updateState();
+        return true;
+    }
+
+    /**
+     * Читает до {@code max} записей от начала спула, не подтверждая их.
+     */
+    public synchronized List<SpoolRecord> peek(int max) {
+        List<SpoolRecord> records = new ArrayList<>(Math.min(max, 1024));
+        for (Segment segment : segments) {
+            int position = segment.readPosition;
+            while (records.size() < max && position < segment.writePosition) {
+                SpoolRecord record = read(segment, position);
+                records.add(record);
+                position = record.nextPosition();
+            }
+            if (records.size() >= max) {
+                break;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Подтверждает {@code record} и все записи перед ним. Полностью прочитанные сегменты удаляются.
+     */
+    public synchronized void ack(SpoolRecord record) throws IOException {
+        while (segments.size() > 1 && segments.peekFirst().id != record.segment()) {
+            delete(segments.pollFirst());
+        }
+        Segment head = segments.peekFirst();
+        if (head.id != record.segment()) {
+            return;
+        }
+        head.readPosition = record.nextPosition();
+        if (head.readPosition == head.writePosition) {
+            if (segments.size() > 1) {
+                delete(segments.pollFirst());
+            } else {
+                // спул пуст: начинаем последний сегмент заново, а не создаём новый файл
+                head.readPosition = HEADER_SIZE;
+                head.writePosition = HEADER_SIZE;
+                head.buffer.putInt(WRITE_POSITION, HEADER_SIZE);
+            }
+        }
+        head.buffer.putInt(READ_POSITION, head.readPosition);
+        if (fsyncPolicy == FsyncPolicy.EVERY_WRITE) {
+            head.buffer.force();
+        }
+        updateState();
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    public long pendingBytes() {
+        return pendingBytes;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    public long diskBytes() {
+        return (long) segmentCount() * segmentSize;
+    }
+
+    public synchronized void force() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            segment.channel.close();
+        }
+    }
+
+    private SpoolRecord read(Segment segment, int recordPosition) {
+        MappedByteBuffer buffer = segment.buffer;
+        int length = buffer.getInt(recordPosition);
+        int position = recordPosition + RECORD_HEADER_SIZE;
+        byte[] topic = new byte[buffer.getShort(position)];
+        buffer.get(position + 2, topic);
+        position += 2 + topic.length;
+        byte[] key = new byte[buffer.getInt(position)];
+        buffer.get(position + 4, key);
+        position += 4 + key.length;
+        byte[] value = new byte[buffer.getInt(position)];
+        buffer.get(position + 4, value);
+        return new SpoolRecord(
+                new String(topic, StandardCharsets.UTF_8),
+                new String(key, StandardCharsets.UTF_8),
+                value,
+                segment.id,
+                recordPosition + RECORD_HEADER_SIZE + length
+        );
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            Segment segment = map(file, id);
+            if (segment.buffer.getInt(0) != MAGIC) {
+                log.warn("Сегмент спула {} повреждён и будет удалён", file);
+                delete(segment);
+                continue;
+            }
+            segment.writePosition = segment.buffer.getInt(WRITE_POSITION);
+            segment.readPosition = segment.buffer.getInt(READ_POSITION);
+            truncateCorruptedTail(segment);
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+            if (segment.readPosition == segment.writePosition && !file.equals(files.get(files.size() - 1))) {
+                delete(segment);
+            } else {
+                segments.add(segment);
+            }
+        }
+        if (!segments.isEmpty()) {
+            log.info("Восстановлен спул: сегментов {}, байт к отправке {}", segments.size(), countPendingBytes());
+        }
+    }
+
+    private void truncateCorruptedTail(Segment segment) {
+        int position = segment.readPosition;
+        while (position < segment.writePosition) {
+            int length = segment.buffer.getInt(position);
+            if (length <= 0 || length > segment.writePosition - position - RECORD_HEADER_SIZE
+                    || segment.buffer.getInt(position + 4) != checksum(segment.buffer, position + RECORD_HEADER_SIZE, length)) {
+                log.warn("Сегмент спула {}: повреждённый хвост с позиции {} отброшен", segment.id, position);
+                segment.writePosition = position;
+                segment.buffer.putInt(WRITE_POSITION, position);
+                return;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+    }
+
+    private Segment createSegment() throws IOException {
+        long id = nextSegmentId++;
+        Segment segment = map(directory.resolve(String.format("%020d%s", id, SUFFIX)), id);
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.buffer.putInt(WRITE_POSITION, HEADER_SIZE);
+        segment.buffer.putInt(READ_POSITION, HEADER_SIZE);
+        segment.writePosition = HEADER_SIZE;
+        segment.readPosition = HEADER_SIZE;
+        return segment;
+    }
+
+    private Segment map(Path file, long id) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(id, file, channel, buffer);
+    }
+
+    private void delete(Segment segment) throws IOException {
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+    }
+
+    private int checksum(MappedByteBuffer buffer, int position, int length) {
+        crc.reset();
+        crc.update(buffer.slice(position, length));
+        return (int) crc.getValue();
+    }
+
+    private long countPendingBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.writePosition - segment.readPosition;
+        }
+        return bytes;
+    }
+
+    private void updateState() {
+        pendingBytes = countPendingBytes();
+        empty = pendingBytes == 0;
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+
+        private Segment(long id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ru.yandex.practicum.spool;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+@ConditionalOnProperty(name = "collector.spool.enabled", havingValue = "true")
+public class SpoolConfig {
+
+    @Value("${collector.spool.directory:${java.io.tmpdir}/collector-spool}")
+    private Path directory;
+
+    @Value("${collector.spool.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${collector.spool.max-segments:16}")
+    private int maxSegments;
+
+    @Value("${collector.spool.fsync:INTERVAL}")
+    private FsyncPolicy fsyncPolicy;
+
+    @Bean
+    public SegmentSpool segmentSpool() throws IOException {
+        // сегмент отображается в память одним буфером, поэтому его размер ограничен int
+        long segmentSize = segmentSizeMb * 1024L * 1024L;
+        if (segmentSizeMb <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "collector.spool.segment-size-mb должен быть от 1 до 2047, указано: " + segmentSizeMb);
+        }
+        if (maxSegments <= 0) {
+            throw new IllegalArgumentException("collector.spool.max-segments должен быть положительным, указано: " + maxSegments);
+        }
+        return new SegmentSpool(directory, (int) segmentSize, maxSegments, fsyncPolicy);
+    }
+}
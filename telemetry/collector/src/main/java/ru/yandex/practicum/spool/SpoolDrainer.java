@@ -0,0 +1,140 @@
+package ru.yandex.practicum.spool;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.KafkaClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Фоновая отправка записей из спула в Kafka в порядке записи.
+ * <p>
+ * Записи читаются пачкой и отправляются все сразу; подтверждается только непрерывный успешный префикс.
+ * После ошибки пачка повторяется с первой неподтверждённой записи, поэтому доставка «хотя бы один раз»:
+ * записи после сбойной могут попасть в Kafka дважды. Записи отправляются тем же продюсером
+ * (показаний или хабов), что и при исходной отправке; о порядке относительно записей,
+ * ушедших в Kafka до перехода на спул, см. {@link KafkaClient#send}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "collector.spool.enabled", havingValue = "true")
+public class SpoolDrainer {
+
+    private final SegmentSpool spool;
+    private final KafkaClient kafkaClient;
+    private final int batchSize;
+    private final long sendTimeoutMs;
+    private final long retryBackoffNanos;
+    private final long fsyncIntervalNanos;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final Counter replayed;
+    private final Counter replayFailures;
+
+    public SpoolDrainer(SegmentSpool spool,
+                        KafkaClient kafkaClient,
+                        @Value("${collector.spool.drain-batch:500}") int batchSize,
+                        @Value("${collector.spool.send-timeout-ms:30000}") long sendTimeoutMs,
+                        @Value("${collector.spool.retry-backoff-ms:1000}") long retryBackoffMs,
+                        @Value("${collector.spool.fsync:INTERVAL}") FsyncPolicy fsyncPolicy,
+                        @Value("${collector.spool.fsync-interval-ms:1000}") long fsyncIntervalMs,
+                        MeterRegistry registry) {
+        this.spool = spool;
+        this.kafkaClient = kafkaClient;
+        this.batchSize = batchSize;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.retryBackoffNanos = TimeUnit.MILLISECONDS.toNanos(retryBackoffMs);
+        this.fsyncIntervalNanos = fsyncPolicy == FsyncPolicy.INTERVAL ? TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs) : 0;
+
+        replayed = Counter.builder("collector.spool.replayed")
+                .description("Записи, отправленные из спула в Kafka")
+                .register(registry);
+        replayFailures = Counter.builder("collector.spool.replay-failures")
+                .register(registry);
+        Gauge.builder("collector.spool.pending", spool, SegmentSpool::pendingBytes)
+                .description("Байты в спуле, ещё не отправленные в Kafka")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("collector.spool.disk", spool, SegmentSpool::diskBytes)
+                .description("Место на диске, занятое сегментами спула")
+                .baseUnit("bytes")
+                .register(registry);
+
+        this.worker = new Thread(this::run, "spool-drainer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run() {
+        long lastFsync = System.nanoTime();
+        while (running) {
+            if (fsyncIntervalNanos > 0 && System.nanoTime() - lastFsync >= fsyncIntervalNanos) {
+                spool.force();
+                lastFsync = System.nanoTime();
+            }
+            try {
+                if (!drainBatch()) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                }
+            } catch (Exception e) {
+                log.error("Ошибка при отправке записей из спула", e);
+                LockSupport.parkNanos(retryBackoffNanos);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true}, если пачка целиком отправлена и стоит сразу читать следующую
+     */
+    private boolean drainBatch() throws Exception {
+        List<SpoolRecord> batch = spool.peek(batchSize);
+        if (batch.isEmpty()) {
+            return false;
+        }
+        List<CompletableFuture<RecordMetadata>> sent = new ArrayList<>(batch.size());
+        for (SpoolRecord record : batch) {
+            sent.add(kafkaClient.sendDirect(record.topic(), record.key(), record.value()));
+        }
+
+        SpoolRecord lastSent = null;
+        boolean complete = true;
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                sent.get(i).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+                lastSent = batch.get(i);
+                replayed.increment();
+            } catch (Exception e) {
+                replayFailures.increment();
+                log.warn("Kafka ещё недоступна, отправка из спула будет повторена: {}", e.getMessage());
+                complete = false;
+                break;
+            }
+        }
+        if (lastSent != null) {
+            spool.ack(lastSent);
+        }
+        if (!complete) {
+            LockSupport.parkNanos(retryBackoffNanos);
+        }
+        return complete;
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        running = false;
+        worker.interrupt();
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
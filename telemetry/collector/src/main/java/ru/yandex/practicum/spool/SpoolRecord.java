@@ -0,0 +1,7 @@
+package ru.yandex.practicum.spool;
+
+/**
+ * Запись, прочитанная из спула. {@code segment} и {@code nextPosition} нужны для подтверждения.
+ */
+public record SpoolRecord(String topic, String key, byte[] value, long segment, int nextPosition) {
+}
@@ -0,0 +1,137 @@
+package ru.yandex.practicum.timer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Колесо таймеров: один поток раз в тик выполняет задачи из ячейки текущего тика.
+ * Постановка задачи — добавление в очередь без блокировок, поэтому миллионы таймеров
+ * не требуют ни отдельной задачи в планировщике на каждый, ни перестройки кучи.
+ * Точность срабатывания — один тик.
+ */
+@Slf4j
+public class HashedTimerWheel implements AutoCloseable {
+
+    private final long tickNanos;
+    private final ArrayDeque<Timeout>[] wheel;
+    private final int mask;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final Thread worker;
+    private volatile boolean running = true;
+    // последний отработанный тик; меняет только поток колеса
+    private long tick;
+
+    public HashedTimerWheel(String name, long tickMs, int wheelSize) {
+        this(name, tickMs, wheelSize, System::nanoTime);
+    }
+
+    /**
+     * @param name имя потока колеса; {@code null} — поток не запускается, и тики продвигает {@link #advance}
+     * @param nanoClock часы колеса; тесты подставляют свои
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimerWheel(String name, long tickMs, int wheelSize, LongSupplier nanoClock) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.wheel = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.mask = size - 1;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        if (name == null) {
+            this.worker = null;
+            return;
+        }
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void schedule(long delayMs, Runnable task) {
+        long delayTicks = Math.max(1, (TimeUnit.MILLISECONDS.toNanos(delayMs) + tickNanos - 1) / tickNanos);
+        added.add(new Timeout(currentTick() + delayTicks, task));
+        pending.incrementAndGet();
+    }
+
+    public int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Отрабатывает все тики, наступившие по часам колеса. Вызывается потоком колеса или, если его нет, извне.
+     */
+    public void advance() {
+        long now = currentTick();
+        while (tick < now) {
+            tick++;
+            transferAdded(tick);
+            expire(wheel[(int) (tick & mask)], tick);
+        }
+    }
+
+    private long currentTick() {
+        return (nanoClock.getAsLong() - startNanos) / tickNanos;
+    }
+
+    private void run() {
+        while (running) {
+            long sleepNanos = startNanos + (tick + 1) * tickNanos - nanoClock.getAsLong();
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(sleepNanos);
+                continue;
+            }
+            advance();
+        }
+    }
+
+    private void transferAdded(long tick) {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            // опоздавшие к своей ячейке срабатывают в текущем тике
+            long deadline = Math.max(timeout.deadlineTick, tick);
+            wheel[(int) (deadline & mask)].add(timeout);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket, long tick) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            // в ячейке лежат и таймеры следующих оборотов колеса
+            if (timeout.deadlineTick > tick) {
+                continue;
+            }
+            iterator.remove();
+            pending.decrementAndGet();
+            try {
+                timeout.task.run();
+            } catch (Exception e) {
+                log.error("Ошибка в задаче таймера", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (worker != null) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private record Timeout(long deadlineTick, Runnable task) {
+    }
+}
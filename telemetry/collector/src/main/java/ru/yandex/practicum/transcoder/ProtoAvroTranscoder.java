@@ -0,0 +1,243 @@
+package ru.yandex.practicum.transcoder;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ProtocolMessageEnum;
+import com.google.protobuf.Timestamp;
+import org.apache.avro.Schema;
+import org.apache.avro.io.Encoder;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.grpc.telemetry.event.ActionTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.ClimateSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.ConditionOperationProto;
+import ru.yandex.practicum.grpc.telemetry.event.ConditionTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceActionProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.LightSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.MotionSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioAddedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioConditionProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.TemperatureSensorProto;
+import ru.yandex.practicum.kafka.telemetry.event.ActionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceRemovedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioRemovedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+import ru.yandex.practicum.serialization.AvroCodecs;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Пишет Avro-байты {@link SensorEventAvro}/{@link HubEventAvro} прямо из protobuf-сообщения,
+ * минуя промежуточные Avro-объекты. Строки копируются как UTF-8 байты protobuf без перекодирования.
+ * <p>
+ * Эталоном остаются мапперы из {@code ru.yandex.practicum.mapper}: транскодер повторяет их поведение
+ * (в том числе запись {@code DeviceActionProto.value} всегда как int), а индексы веток union
+ * и порядковые номера enum берутся из Avro-схем при создании.
+ */
+@Component
+public class ProtoAvroTranscoder {
+
+    private final int climateIndex;
+    private final int lightIndex;
+    private final int motionIndex;
+    private final int switchIndex;
+    private final int temperatureIndex;
+
+    private final int deviceAddedIndex;
+    private final int deviceRemovedIndex;
+    private final int scenarioAddedIndex;
+    private final int scenarioRemovedIndex;
+
+    private final int[] deviceTypes = ordinals(DeviceTypeProto.values(), DeviceTypeAvro.class);
+    private final int[] conditionTypes = ordinals(ConditionTypeProto.values(), ConditionTypeAvro.class);
+    private final int[] conditionOperations = ordinals(ConditionOperationProto.values(), ConditionOperationAvro.class);
+    private final int[] actionTypes = ordinals(ActionTypeProto.values(), ActionTypeAvro.class);
+
+    public ProtoAvroTranscoder() {
+        Schema sensorPayload = SensorEventAvro.getClassSchema().getField("payload").schema();
+        climateIndex = indexOf(sensorPayload, ClimateSensorAvro.getClassSchema());
+        lightIndex = indexOf(sensorPayload, LightSensorAvro.getClassSchema());
+        motionIndex = indexOf(sensorPayload, MotionSensorAvro.getClassSchema());
+        switchIndex = indexOf(sensorPayload, SwitchSensorAvro.getClassSchema());
+        temperatureIndex = indexOf(sensorPayload, TemperatureSensorAvro.getClassSchema());
+
+        Schema hubPayload = HubEventAvro.getClassSchema().getField("payload").schema();
+        deviceAddedIndex = indexOf(hubPayload, DeviceAddedEventAvro.getClassSchema());
+        deviceRemovedIndex = indexOf(hubPayload, DeviceRemovedEventAvro.getClassSchema());
+        scenarioAddedIndex = indexOf(hubPayload, ScenarioAddedEventAvro.getClassSchema());
+        scenarioRemovedIndex = indexOf(hubPayload, ScenarioRemovedEventAvro.getClassSchema());
+    }
+
+    public byte[] transcode(SensorEventProto event) throws IOException {
+        return AvroCodecs.encodeWith(out -> writeSensorEvent(event, out));
+    }
+
+    public byte[] transcode(HubEventProto event) throws IOException {
+        return AvroCodecs.encodeWith(out -> writeHubEvent(event, out));
+    }
+
+    private void writeSensorEvent(SensorEventProto event, Encoder out) throws IOException {
+        writeString(event.getIdBytes(), out);
+        writeString(event.getHubIdBytes(), out);
+        writeTimestamp(event.getTimestamp(), out);
+        switch (event.getPayloadCase()) {
+            case CLIMATE_SENSOR_EVENT -> {
+                ClimateSensorProto climate = event.getClimateSensorEvent();
+                out.writeIndex(climateIndex);
+                out.writeInt(climate.getTemperatureC());
+                out.writeInt(climate.getHumidity());
+                out.writeInt(climate.getCo2Level());
+            }
+            case LIGHT_SENSOR_EVENT -> {
+                LightSensorProto light = event.getLightSensorEvent();
+                out.writeIndex(lightIndex);
+                out.writeInt(light.getLinkQuality());
+                out.writeInt(light.getLuminosity());
+            }
+            case MOTION_SENSOR_EVENT -> {
+                MotionSensorProto motion = event.getMotionSensorEvent();
+                out.writeIndex(motionIndex);
+                out.writeInt(motion.getLinkQuality());
+                out.writeBoolean(motion.getMotion());
+                out.writeInt(motion.getVoltage());
+            }
+            case SWITCH_SENSOR_EVENT -> {
+                out.writeIndex(switchIndex);
+                out.writeBoolean(event.getSwitchSensorEvent().getState());
+            }
+            case TEMPERATURE_SENSOR_EVENT -> {
+                TemperatureSensorProto temperature = event.getTemperatureSensorEvent();
+                out.writeIndex(temperatureIndex);
+                out.writeInt(temperature.getTemperatureC());
+                out.writeInt(temperature.getTemperatureF());
+            }
+            default -> throw new IllegalArgumentException("Unknown type of event: " + event.getPayloadCase());
+        }
+    }
+
+    private void writeHubEvent(HubEventProto event, Encoder out) throws IOException {
+        writeString(event.getHubIdBytes(), out);
+        writeTimestamp(event.getTimestamp(), out);
+        switch (event.getPayloadCase()) {
+            case DEVICE_ADDED -> {
+                out.writeIndex(deviceAddedIndex);
+                writeString(event.getDeviceAdded().getIdBytes(), out);
+                out.writeEnum(ordinal(deviceTypes, event.getDeviceAdded().getTypeValue()));
+            }
+            case DEVICE_REMOVED -> {
+                out.writeIndex(deviceRemovedIndex);
+                writeString(event.getDeviceRemoved().getIdBytes(), out);
+            }
+            case SCENARIO_ADDED -> {
+                out.writeIndex(scenarioAddedIndex);
+                writeScenarioAdded(event.getScenarioAdded(), out);
+            }
+            case SCENARIO_REMOVED -> {
+                out.writeIndex(scenarioRemovedIndex);
+                writeString(event.getScenarioRemoved().getNameBytes(), out);
+            }
+            default -> throw new IllegalArgumentException("Unknown type of event: " + event.getPayloadCase());
+        }
+    }
+
+    private void writeScenarioAdded(ScenarioAddedEventProto scenario, Encoder out) throws IOException {
+        writeString(scenario.getNameBytes(), out);
+
+        List<ScenarioConditionProto> conditions = scenario.getConditionList();
+        out.writeArrayStart();
+        out.setItemCount(conditions.size());
+        for (ScenarioConditionProto condition : conditions) {
+            out.startItem();
+            writeString(condition.getSensorIdBytes(), out);
+            out.writeEnum(ordinal(conditionTypes, condition.getTypeValue()));
+            out.writeEnum(ordinal(conditionOperations, condition.getOperationValue()));
+            // union {null, int, boolean}
+            switch (condition.getValueCase()) {
+                case INT_VALUE -> {
+                    out.writeIndex(1);
+                    out.writeInt(condition.getIntValue());
+                }
+                case BOOL_VALUE -> {
+                    out.writeIndex(2);
+                    out.writeBoolean(condition.getBoolValue());
+                }
+                default -> {
+                    out.writeIndex(0);
+                    out.writeNull();
+                }
+            }
+        }
+        out.writeArrayEnd();
+
+        List<DeviceActionProto> actions = scenario.getActionList();
+        out.writeArrayStart();
+        out.setItemCount(actions.size());
+        for (DeviceActionProto action : actions) {
+            out.startItem();
+            writeString(action.getSensorIdBytes(), out);
+            out.writeEnum(ordinal(actionTypes, action.getTypeValue()));
+            // union {null, int}: DeviceActionMapper всегда передаёт getValue()
+            out.writeIndex(1);
+            out.writeInt(action.getValue());
+        }
+        out.writeArrayEnd();
+    }
+
+    private static void writeString(ByteString utf8, Encoder out) throws IOException {
+        // строка Avro кодируется так же, как bytes: длина и UTF-8 байты
+        out.writeBytes(utf8.asReadOnlyByteBuffer());
+    }
+
+    private static void writeTimestamp(Timestamp timestamp, Encoder out) throws IOException {
+        // то же, что Instant.ofEpochSecond(seconds, nanos).toEpochMilli() в мапперах
+        long millis = Math.multiplyExact(timestamp.getSeconds(), 1000L);
+        out.writeLong(Math.addExact(millis, Math.floorDiv(timestamp.getNanos(), 1_000_000)));
+    }
+
+    private static int ordinal(int[] ordinals, int protoNumber) {
+        if (protoNumber < 0 || protoNumber >= ordinals.length || ordinals[protoNumber] < 0) {
+            throw new IllegalArgumentException("Unknown enum value: " + protoNumber);
+        }
+        return ordinals[protoNumber];
+    }
+
+    private static int indexOf(Schema union, Schema branch) {
+        Integer index = union.getIndexNamed(branch.getFullName());
+        if (index == null) {
+            throw new IllegalStateException(branch.getFullName() + " is not in union " + union);
+        }
+        return index;
+    }
+
+    private static <P extends Enum<P> & ProtocolMessageEnum, A extends Enum<A>> int[] ordinals(
+            P[] protoValues, Class<A> avroType) {
+        int size = 0;
+        for (P value : protoValues) {
+            if (!value.name().equals("UNRECOGNIZED")) {
+                size = Math.max(size, value.getNumber() + 1);
+            }
+        }
+        int[] ordinals = new int[size];
+        Arrays.fill(ordinals, -1);
+        for (P value : protoValues) {
+            if (!value.name().equals("UNRECOGNIZED")) {
+                ordinals[value.getNumber()] = Enum.valueOf(avroType, value.name()).ordinal();
+            }
+        }
+        return ordinals;
+    }
+}
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InFlightLimiterTest {
+
+    private final InFlightLimiter limiter = new InFlightLimiter(2, 100, new SimpleMeterRegistry());
+
+    @AfterEach
+    void shutdown() {
+        limiter.shutdown();
+    }
+
+    @Test
+    void oneReleaseWakesOneWaiter() throws Exception {
+        assertTrue(limiter.tryClaim());
+        assertTrue(limiter.tryClaim());
+        assertFalse(limiter.tryClaim());
+
+        AtomicInteger woken = new AtomicInteger();
+        CountDownLatch first = new CountDownLatch(1);
+        for (int i = 0; i < 5; i++) {
+            limiter.whenAvailable(() -> {
+                woken.incrementAndGet();
+                first.countDown();
+            });
+        }
+
+        limiter.release(1);
+
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, woken.get());
+        // место досталось ожидающему, а не освободилось
+        assertFalse(limiter.hasCapacity());
+    }
+
+    @Test
+    void waitersRunOutsideReleasingThread() throws Exception {
+        limiter.acquire(2);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            limiter.whenAvailable(() -> {
+                threads.add(Thread.currentThread());
+                done.countDown();
+            });
+        }
+
+        limiter.release(2);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    void awaitTimesOutWithoutTakingPermit() throws Exception {
+        limiter.acquire(2);
+
+        assertFalse(limiter.await(50));
+
+        // ожидавший по таймауту не удерживает освободившееся место
+        limiter.release(1);
+        Thread.sleep(100);
+        assertTrue(limiter.tryClaim());
+        assertFalse(limiter.tryClaim());
+    }
+
+    @Test
+    void awaitClaimsReleasedPermit() throws Exception {
+        limiter.acquire(2);
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            limiter.release(1);
+        }).start();
+
+        assertTrue(limiter.await(5_000));
+        assertFalse(limiter.tryClaim());
+    }
+}
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StripedLruCacheTest {
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    @Test
+    void leastRecentlyUsedEntryOfStripeIsEvicted() {
+        // ключи 0, 2, 4 попадают в один сегмент, 1 — в другой; в каждом сегменте по две записи
+        StripedLruCache<Integer, Integer> cache = new StripedLruCache<>(2, 4, Long.MAX_VALUE);
+        get(cache, 0, 0);
+        get(cache, 1, 0);
+        get(cache, 2, 0);
+        // 0 становится свежее, чем 2
+        get(cache, 0, 0);
+
+        get(cache, 4, 0);
+
+        assertEquals(1, cache.evictions());
+        assertEquals(4, created.get());
+        // 0 и 1 на месте, а 2 вытеснен и создаётся заново
+        get(cache, 0, 0);
+        get(cache, 1, 0);
+        assertEquals(4, created.get());
+        get(cache, 2, 0);
+        assertEquals(5, created.get());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void idleEntriesAreEvictedOnAccessToTheirStripe() {
+        StripedLruCache<Integer, Integer> cache = new StripedLruCache<>(1, 100, 1_000);
+        get(cache, 1, 0);
+        get(cache, 2, 500);
+
+        get(cache, 3, 1_200);
+
+        // 1 простаивал 1 200 нс, 2 — только 700 нс
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void valueIsCreatedOnceAndUpdatedUnderLock() {
+        StripedLruCache<String, AtomicInteger> cache = new StripedLruCache<>(4, 100, Long.MAX_VALUE);
+
+        for (int i = 0; i < 3; i++) {
+            cache.compute("hub-1", i, AtomicInteger::new, AtomicInteger::incrementAndGet);
+        }
+
+        assertEquals(3, cache.compute("hub-1", 3, AtomicInteger::new, AtomicInteger::get));
+        assertEquals(1, cache.size());
+    }
+
+    private int get(StripedLruCache<Integer, Integer> cache, int key, long nowNanos) {
+        return cache.compute(key, nowNanos, created::incrementAndGet, value -> value);
+    }
+}
@@ -0,0 +1,137 @@
+package ru.yandex.practicum.coalesce;
+
+import com.google.protobuf.Timestamp;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.grpc.telemetry.event.LightSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.MotionSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.TemperatureSensorProto;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+import ru.yandex.practicum.timer.HashedTimerWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Окна объединения показаний на часах теста: окно в 100 мс, тик колеса 10 мс.
+ */
+class ReadingCoalescerTest {
+
+    private static final long MILLISECOND = 1_000_000L;
+
+    private final AtomicLong now = new AtomicLong();
+    private final HashedTimerWheel timers = new HashedTimerWheel(null, 10, 64, now::get);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<SensorEventProto> flushed = new ArrayList<>();
+    private ReadingCoalescer coalescer;
+
+    @BeforeEach
+    void create() {
+        CoalescingProperties properties = new CoalescingProperties();
+        properties.setEnabled(true);
+        properties.getWindowsMs().put(DeviceTypeAvro.TEMPERATURE_SENSOR, 100L);
+        properties.getWindowsMs().put(DeviceTypeAvro.MOTION_SENSOR, 100L);
+        coalescer = new ReadingCoalescer(properties, registry, timers, now::get);
+        coalescer.onFlush(flushed::add);
+    }
+
+    @Test
+    void lastHeldReadingIsFlushedWhenWindowCloses() {
+        assertTrue(coalescer.shouldForward(temperature(20)));
+        assertFalse(coalescer.shouldForward(temperature(21)));
+        assertFalse(coalescer.shouldForward(temperature(22)));
+
+        advanceTo(90);
+        assertEquals(List.of(), flushed);
+        advanceTo(100);
+        assertEquals(List.of(temperature(22)), flushed);
+
+        // окно продолжается, пока в нём есть показания
+        assertFalse(coalescer.shouldForward(temperature(23)));
+        advanceTo(200);
+        assertEquals(List.of(temperature(22), temperature(23)), flushed);
+
+        // пустое окно закрывается, и следующее показание уходит сразу
+        advanceTo(300);
+        assertEquals(0, timers.pending());
+        assertTrue(coalescer.shouldForward(temperature(24)));
+
+        assertEquals(2, readings("forwarded"));
+        assertEquals(3, readings("held"));
+        assertEquals(2, readings("flushed"));
+    }
+
+    @Test
+    void motionChangeIsForwardedAtOnceAndReplacesHeldReading() {
+        assertTrue(coalescer.shouldForward(motion(true)));
+        assertFalse(coalescer.shouldForward(motion(true)));
+
+        assertTrue(coalescer.shouldForward(motion(false)));
+
+        advanceTo(100);
+        // отложенное показание старше отправленной смены состояния
+        assertEquals(List.of(), flushed);
+        assertEquals(1, readings("significant"));
+    }
+
+    @Test
+    void sensorsHaveSeparateWindows() {
+        assertTrue(coalescer.shouldForward(temperature("t1", 20)));
+        assertTrue(coalescer.shouldForward(temperature("t2", 20)));
+        assertFalse(coalescer.shouldForward(temperature("t1", 21)));
+
+        advanceTo(100);
+
+        assertEquals(List.of(temperature("t1", 21)), flushed);
+    }
+
+    @Test
+    void typeWithoutWindowIsNotCoalesced() {
+        SensorEventProto light = SensorEventProto.newBuilder()
+                .setId("l1")
+                .setHubId("hub-1")
+                .setLightSensorEvent(LightSensorProto.newBuilder().setLuminosity(100))
+                .build();
+
+        assertTrue(coalescer.shouldForward(light));
+        assertTrue(coalescer.shouldForward(light));
+        assertEquals(0, timers.pending());
+    }
+
+    private void advanceTo(long millis) {
+        now.set(millis * MILLISECOND);
+        timers.advance();
+    }
+
+    private double readings(String result) {
+        return registry.counter("collector.coalescing.readings", "result", result).count();
+    }
+
+    private static SensorEventProto temperature(int temperature) {
+        return temperature("t1", temperature);
+    }
+
+    private static SensorEventProto temperature(String sensorId, int temperature) {
+        return SensorEventProto.newBuilder()
+                .setId(sensorId)
+                .setHubId("hub-1")
+                .setTimestamp(Timestamp.newBuilder().setSeconds(temperature))
+                .setTemperatureSensorEvent(TemperatureSensorProto.newBuilder().setTemperatureC(temperature))
+                .build();
+    }
+
+    private static SensorEventProto motion(boolean motion) {
+        return SensorEventProto.newBuilder()
+                .setId("m1")
+                .setHubId("hub-1")
+                .setMotionSensorEvent(MotionSensorProto.newBuilder().setMotion(motion))
+                .build();
+    }
+}
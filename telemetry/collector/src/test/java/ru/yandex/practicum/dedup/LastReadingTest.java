@@ -0,0 +1,59 @@
+package ru.yandex.practicum.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LastReadingTest {
+
+    private static final long MAX_SILENCE_MS = 60_000;
+
+    private final LastReading last = new LastReading();
+
+    @Test
+    void repeatIsDuplicateUntilSilenceRunsOut() {
+        assertEquals(LastReading.Result.FORWARD, last.offer("20", 0, MAX_SILENCE_MS));
+        assertEquals(LastReading.Result.DUPLICATE, last.offer("20", 30_000, MAX_SILENCE_MS));
+        assertEquals(LastReading.Result.DUPLICATE, last.offer("20", 59_999, MAX_SILENCE_MS));
+        assertEquals(LastReading.Result.HEARTBEAT, last.offer("20", 60_000, MAX_SILENCE_MS));
+        // тишина отсчитывается заново от heartbeat
+        assertEquals(LastReading.Result.DUPLICATE, last.offer("20", 119_999, MAX_SILENCE_MS));
+        assertEquals(LastReading.Result.HEARTBEAT, last.offer("20", 120_000, MAX_SILENCE_MS));
+    }
+
+    @Test
+    void changeIsForwardedAndRestartsSilence() {
+        last.offer("20", 0, MAX_SILENCE_MS);
+
+        assertEquals(LastReading.Result.FORWARD, last.offer("21", 50_000, MAX_SILENCE_MS));
+        assertEquals(LastReading.Result.DUPLICATE, last.offer("21", 100_000, MAX_SILENCE_MS));
+        assertEquals(LastReading.Result.HEARTBEAT, last.offer("21", 110_000, MAX_SILENCE_MS));
+    }
+
+    @Test
+    void lateReadingIsForwardedWithoutReplacingNewer() {
+        last.offer("21", 10_000, MAX_SILENCE_MS);
+
+        assertEquals(LastReading.Result.FORWARD, last.offer("20", 5_000, MAX_SILENCE_MS));
+        assertEquals(LastReading.Result.DUPLICATE, last.offer("21", 11_000, MAX_SILENCE_MS));
+    }
+
+    @Test
+    void forgottenReadingIsForwardedAgain() {
+        last.offer("20", 0, MAX_SILENCE_MS);
+
+        last.forget("20");
+
+        assertEquals(LastReading.Result.FORWARD, last.offer("20", 0, MAX_SILENCE_MS));
+    }
+
+    @Test
+    void forgettingOtherPayloadKeepsLastReading() {
+        last.offer("21", 0, MAX_SILENCE_MS);
+
+        // не дошло более старое показание, последнее пропущенное остаётся
+        last.forget("20");
+
+        assertEquals(LastReading.Result.DUPLICATE, last.offer("21", 1_000, MAX_SILENCE_MS));
+    }
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.dedup;
+
+import com.google.protobuf.Timestamp;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.TemperatureSensorProto;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Дедупликация на часах теста: heartbeat считается по времени показаний,
+ * а вытеснение простаивающих датчиков — по часам коллектора.
+ */
+class ReadingDeduplicatorTest {
+
+    private static final long MAX_SILENCE_MS = 60_000;
+
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ReadingDeduplicator deduplicator =
+            new ReadingDeduplicator(true, MAX_SILENCE_MS, 1_000, 4, registry, now::get);
+
+    @Test
+    void repeatedReadingIsDroppedUntilHeartbeat() {
+        assertTrue(deduplicator.shouldForward(reading("t1", 0, 20)));
+        assertFalse(deduplicator.shouldForward(reading("t1", 1_000, 20)));
+        assertTrue(deduplicator.shouldForward(reading("t1", 1_000, 21)));
+        assertTrue(deduplicator.shouldForward(reading("t1", 1_000 + MAX_SILENCE_MS, 21)));
+
+        assertEquals(2, readings("forwarded"));
+        assertEquals(1, readings("duplicate"));
+        assertEquals(1, readings("heartbeat"));
+    }
+
+    @Test
+    void sensorsAreTrackedSeparately() {
+        assertTrue(deduplicator.shouldForward(reading("t1", 0, 20)));
+        assertTrue(deduplicator.shouldForward(reading("t2", 0, 20)));
+        assertFalse(deduplicator.shouldForward(reading("t2", 0, 20)));
+    }
+
+    @Test
+    void failedForwardIsNotCountedAsLastReading() {
+        SensorEventProto reading = reading("t1", 0, 20);
+        deduplicator.shouldForward(reading);
+
+        deduplicator.forwardFailed(reading);
+
+        assertTrue(deduplicator.shouldForward(reading));
+        assertFalse(deduplicator.shouldForward(reading));
+    }
+
+    @Test
+    void idleSensorIsEvictedAndItsNextReadingForwarded() {
+        deduplicator.shouldForward(reading("t1", 0, 20));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(MAX_SILENCE_MS) + 1);
+
+        // по времени показания это ещё не heartbeat, но запись датчика уже вытеснена
+        assertTrue(deduplicator.shouldForward(reading("t1", 1_000, 20)));
+        assertEquals(1, registry.get("collector.dedup.evictions").functionCounter().count());
+    }
+
+    @Test
+    void disabledDeduplicatorForwardsEverything() {
+        ReadingDeduplicator disabled = new ReadingDeduplicator(false, MAX_SILENCE_MS, 1_000, 4,
+                new SimpleMeterRegistry(), now::get);
+
+        assertTrue(disabled.shouldForward(reading("t1", 0, 20)));
+        assertTrue(disabled.shouldForward(reading("t1", 0, 20)));
+    }
+
+    private double readings(String result) {
+        return registry.counter("collector.dedup.readings", "result", result).count();
+    }
+
+    private static SensorEventProto reading(String sensorId, long timestampMs, int temperature) {
+        return SensorEventProto.newBuilder()
+                .setId(sensorId)
+                .setHubId("hub-1")
+                .setTimestamp(Timestamp.newBuilder()
+                        .setSeconds(timestampMs / 1000)
+                        .setNanos((int) (timestampMs % 1000) * 1_000_000))
+                .setTemperatureSensorEvent(TemperatureSensorProto.newBuilder()
+                        .setTemperatureC(temperature)
+                        .setTemperatureF(temperature * 9 / 5 + 32))
+                .build();
+    }
+}
@@ -0,0 +1,111 @@
+package ru.yandex.practicum.http;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import ru.yandex.practicum.admission.InFlightLimiter;
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.service.ProducerService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Загрузка NDJSON, в которой хорошие строки перемешаны с некорректными и со значениями,
+ * не помещающимися в поле: плохие строки отклоняются по одной, остальные отправляются.
+ */
+class IngestControllerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final InFlightLimiter inFlightLimiter = new InFlightLimiter(10, 100, registry);
+    private final List<String> sent = new ArrayList<>();
+    private final IngestController controller = new IngestController(new RecordingProducerService(),
+            inFlightLimiter, 100, 5_000);
+
+    @AfterEach
+    void shutdown() {
+        inFlightLimiter.shutdown();
+    }
+
+    @Test
+    void badAndTooBigLinesFailAloneAndOthersAreSent() throws Exception {
+        String body = """
+                {"sensor": {"id": "t1", "hubId": "hub-1", "temperature_sensor_event": {"temperature_c": 20}}}
+                {"sensor": {"id": "t2", "hubId": "hub-1", "temperature_sensor_event": {"temperature_c": 99999999999}}}
+                {"hub": {"hub_id": "hub-1", "device_added": {"id": "m1", "type": 99999999999}}}
+                {"sensor": {"id": "t3", "hubId": "hub-1", "temperature_sensor_event": {"temperature_c": true}}}
+                {"device": {"id": "x"}}
+                {"sensor": {"id": "fail", "hubId": "hub-1"}}
+                {"hub": {"hub_id": "hub-1", "device_removed": {"id": "m1"}}}
+                {"sensor": {"id": "t4", "hubId": "hub-1", "temperature_sensor_event": {"temperature_c": 21}}}
+                """;
+
+        ResponseEntity<IngestResult> response = controller.ingest(request(body));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        IngestResult result = response.getBody();
+        assertEquals(3, result.accepted());
+        assertEquals(5, result.failed());
+        assertNull(result.aborted());
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L),
+                result.errors().stream().map(IngestResult.LineError::line).sorted().toList());
+        assertEquals(List.of("t1", "fail", "hub:m1", "t4"), sent);
+        // места под отклонённые строки возвращены
+        assertTrue(inFlightLimiter.hasCapacity());
+        assertEquals(0, registry.get("collector.admission.in-flight").gauge().value());
+    }
+
+    @Test
+    void brokenJsonAbortsUpload() throws Exception {
+        String body = """
+                {"sensor": {"id": "t1", "hubId": "hub-1", "temperature_sensor_event": {"temperature_c": 20}}}
+                {"sensor": {"id": "t2", "hubId":
+                """;
+
+        ResponseEntity<IngestResult> response = controller.ingest(request(body));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(1, response.getBody().accepted());
+        assertTrue(response.getBody().aborted().startsWith("Некорректный JSON"));
+    }
+
+    private static MockHttpServletRequest request(String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/ingest/events");
+        request.setContentType(IngestController.NDJSON);
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private class RecordingProducerService implements ProducerService {
+
+        @Override
+        public CompletableFuture<RecordMetadata> processHubEvent(HubEventProto hubEventProto) {
+            sent.add("hub:" + hubEventProto.getDeviceRemoved().getId());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<RecordMetadata> processSensorEvent(SensorEventProto sensorEventProto) {
+            sent.add(sensorEventProto.getId());
+            return "fail".equals(sensorEventProto.getId())
+                    ? CompletableFuture.failedFuture(new IllegalStateException("Брокер недоступен"))
+                    : CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public List<CompletableFuture<RecordMetadata>> processSensorEventBatch(List<SensorEventProto> sensorEventProtos) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ru.yandex.practicum.http;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.protobuf.util.Timestamps;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Значения, которые не подходят полю по типу или не помещаются в него, отклоняются как
+ * {@link IllegalArgumentException}, а не как ошибка разбора JSON.
+ */
+class ProtoJsonReaderTest {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Test
+    void readsBothFieldNameStylesTimestampAndEnum() throws Exception {
+        SensorEventProto sensor = sensor("""
+                {"id": "t1", "hubId": "hub-1", "timestamp": "2024-01-01T00:00:01Z",
+                 "temperature_sensor_event": {"temperatureC": 20, "temperature_f": "68"}, "unknown": [1, {}]}""");
+        HubEventProto hub = hub("""
+                {"hub_id": "hub-1", "deviceAdded": {"id": "m1", "type": 3}}""");
+
+        assertEquals("hub-1", sensor.getHubId());
+        assertEquals(Timestamps.parse("2024-01-01T00:00:01Z"), sensor.getTimestamp());
+        assertEquals(20, sensor.getTemperatureSensorEvent().getTemperatureC());
+        assertEquals(68, sensor.getTemperatureSensorEvent().getTemperatureF());
+        assertEquals(DeviceTypeProto.CLIMATE_SENSOR, hub.getDeviceAdded().getType());
+    }
+
+    @Test
+    void numberOutOfIntRangeIsIllegalArgument() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> sensor("""
+                {"id": "t1", "temperature_sensor_event": {"temperature_c": 99999999999}}"""));
+
+        assertTrue(e.getMessage().contains("temperature_c"));
+        assertThrows(IllegalArgumentException.class, () -> sensor("""
+                {"id": "t1", "temperature_sensor_event": {"temperature_c": "99999999999"}}"""));
+    }
+
+    @Test
+    void enumNumberOutOfIntRangeIsIllegalArgument() {
+        assertThrows(IllegalArgumentException.class, () -> hub("""
+                {"hub_id": "hub-1", "device_added": {"id": "m1", "type": 99999999999}}"""));
+        assertThrows(IllegalArgumentException.class, () -> hub("""
+                {"hub_id": "hub-1", "device_added": {"id": "m1", "type": 42}}"""));
+    }
+
+    @Test
+    void valueOfWrongTokenTypeIsIllegalArgument() {
+        assertThrows(IllegalArgumentException.class, () -> sensor("""
+                {"id": "t1", "temperature_sensor_event": {"temperature_c": true}}"""));
+        assertThrows(IllegalArgumentException.class, () -> sensor("""
+                {"id": "t1", "temperature_sensor_event": {"temperature_c": 20.5}}"""));
+        assertThrows(IllegalArgumentException.class, () -> sensor("""
+                {"id": "m1", "motion_sensor_event": {"motion": 1}}"""));
+        assertThrows(IllegalArgumentException.class, () -> sensor("""
+                {"id": {"nested": "t1"}}"""));
+        assertThrows(IllegalArgumentException.class, () -> sensor("""
+                {"id": "t1", "timestamp": 1000}"""));
+    }
+
+    private SensorEventProto sensor(String json) throws IOException {
+        SensorEventProto.Builder builder = SensorEventProto.newBuilder();
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            parser.nextToken();
+            ProtoJsonReader.merge(parser, builder);
+        }
+        return builder.build();
+    }
+
+    private HubEventProto hub(String json) throws IOException {
+        HubEventProto.Builder builder = HubEventProto.newBuilder();
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            parser.nextToken();
+            ProtoJsonReader.merge(parser, builder);
+        }
+        return builder.build();
+    }
+}
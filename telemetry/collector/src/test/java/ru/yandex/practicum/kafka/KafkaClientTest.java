@@ -0,0 +1,109 @@
+package ru.yandex.practicum.kafka;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.lane.Lane;
+import ru.yandex.practicum.spool.FsyncPolicy;
+import ru.yandex.practicum.spool.SegmentSpool;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Выбор между Kafka и спулом: показания встают за сохранёнными, события хабов их не ждут.
+ */
+class KafkaClientTest {
+
+    private static final String SENSORS_TOPIC = "telemetry.sensors.v1";
+    private static final String HUBS_TOPIC = "telemetry.hubs.v1";
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private final MockProducer<String, byte[]> sensorProducer =
+            new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+    private final MockProducer<String, byte[]> hubProducer =
+            new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private SegmentSpool spool;
+    private KafkaClient client;
+
+    @BeforeEach
+    void open() throws Exception {
+        spool = new SegmentSpool(directory, SEGMENT_SIZE, 4, FsyncPolicy.NEVER);
+        client = new KafkaClient(sensorProducer, hubProducer, HUBS_TOPIC, Optional.of(spool), registry);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        spool.close();
+    }
+
+    @Test
+    void readingWaitsBehindSpooledRecords() throws Exception {
+        spool.append(SENSORS_TOPIC, "hub-1", bytes("spooled"));
+
+        CompletableFuture<RecordMetadata> sent = client.send(Lane.SENSOR, SENSORS_TOPIC, "hub-1", bytes("reading"));
+
+        assertNull(sent.get());
+        assertTrue(sensorProducer.history().isEmpty());
+        assertEquals(2, spool.peek(10).size());
+    }
+
+    @Test
+    void hubEventBypassesNonEmptySpool() throws Exception {
+        spool.append(SENSORS_TOPIC, "hub-1", bytes("spooled"));
+
+        CompletableFuture<RecordMetadata> sent = client.send(Lane.HUB, HUBS_TOPIC, "hub-1", bytes("hub-event"));
+        hubProducer.completeNext();
+
+        assertEquals(HUBS_TOPIC, sent.get().topic());
+        assertEquals(1, hubProducer.history().size());
+        assertEquals(1, spool.peek(10).size());
+    }
+
+    @Test
+    void rejectedHubEventIsSpooled() throws Exception {
+        spool.append(SENSORS_TOPIC, "hub-1", bytes("spooled"));
+
+        CompletableFuture<RecordMetadata> sent = client.send(Lane.HUB, HUBS_TOPIC, "hub-1", bytes("hub-event"));
+        hubProducer.errorNext(new TimeoutException("Брокер недоступен"));
+
+        assertNull(sent.get());
+        assertEquals(HUBS_TOPIC, spool.peek(10).get(1).topic());
+    }
+
+    @Test
+    void oversizedRecordIsCountedApartFromFullSpool() throws Exception {
+        spool.append(SENSORS_TOPIC, "hub-1", bytes("spooled"));
+
+        CompletableFuture<RecordMetadata> sent = client.send(Lane.SENSOR, SENSORS_TOPIC, "hub-1", new byte[SEGMENT_SIZE]);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, sent::get);
+        assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+        assertEquals(1, registry.counter("collector.spool.oversized").count());
+        assertEquals(0, registry.counter("collector.spool.rejected").count());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
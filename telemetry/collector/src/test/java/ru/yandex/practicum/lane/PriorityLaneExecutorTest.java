@@ -0,0 +1,91 @@
+package ru.yandex.practicum.lane;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriorityLaneExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PriorityLaneExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void hubEventPassesWhileSharedWorkersAreBusyWithSensors() throws Exception {
+        executor = new PriorityLaneExecutor(1, 1, 10, 10, new SimpleMeterRegistry());
+        CountDownLatch started = new CountDownLatch(1);
+        executor.submit(Lane.SENSOR, () -> block(started));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.submit(Lane.SENSOR, () -> CompletableFuture.completedFuture("sensor"));
+
+        CompletableFuture<String> hub = executor.submit(Lane.HUB, () -> CompletableFuture.completedFuture("hub"));
+
+        assertEquals("hub", hub.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void rejectsHubEventWhenHubQueueIsFull() throws Exception {
+        executor = new PriorityLaneExecutor(1, 1, 10, 1, new SimpleMeterRegistry());
+        occupyWorkers();
+
+        executor.submit(Lane.HUB, () -> CompletableFuture.completedFuture("queued"));
+
+        assertThrows(RejectedExecutionException.class,
+                () -> executor.submit(Lane.HUB, () -> CompletableFuture.completedFuture("rejected")));
+    }
+
+    @Test
+    void shutdownFailsQueuedTasks() throws Exception {
+        executor = new PriorityLaneExecutor(1, 1, 10, 10, new SimpleMeterRegistry());
+        occupyWorkers();
+        CompletableFuture<String> sensor = executor.submit(Lane.SENSOR, () -> CompletableFuture.completedFuture("sensor"));
+        CompletableFuture<String> hub = executor.submit(Lane.HUB, () -> CompletableFuture.completedFuture("hub"));
+        CompletableFuture<Void> executed = new CompletableFuture<>();
+        executor.execute(Lane.SENSOR, executed::completeExceptionally, () -> executed.complete(null));
+
+        executor.shutdown();
+
+        for (CompletableFuture<?> future : List.of(sensor, hub, executed)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        }
+        assertThrows(RejectedExecutionException.class,
+                () -> executor.submit(Lane.HUB, () -> CompletableFuture.completedFuture("late")));
+    }
+
+    // занимает общий и выделенный обработчики; задачи ставятся по одной, чтобы не переполнить очередь хабов
+    private void occupyWorkers() throws InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            CountDownLatch started = new CountDownLatch(1);
+            executor.submit(Lane.HUB, () -> block(started));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private CompletableFuture<String> block(CountDownLatch started) {
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return CompletableFuture.completedFuture("blocked");
+    }
+}
@@ -0,0 +1,123 @@
+package ru.yandex.practicum.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.exception.HubRateLimitException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Решения ограничителя по часам, которые двигает сам тест.
+ */
+class HubRateLimiterTest {
+
+    private static final long MILLISECOND = 1_000_000L;
+
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private HubRateLimiter limiter;
+
+    @AfterEach
+    void shutdown() {
+        limiter.shutdown();
+    }
+
+    @Test
+    void dropPolicyDropsOverBurstUntilRefill() {
+        limiter = limiter(OverLimitPolicy.DROP);
+
+        assertEquals(0, limiter.acquire("hub-1"));
+        assertEquals(0, limiter.acquire("hub-1"));
+        assertEquals(HubRateLimiter.DROPPED, limiter.acquire("hub-1"));
+        // у другого хаба своя корзина
+        assertEquals(0, limiter.acquire("hub-2"));
+
+        now.addAndGet(100 * MILLISECOND);
+        assertEquals(0, limiter.acquire("hub-1"));
+        assertEquals(HubRateLimiter.DROPPED, limiter.acquire("hub-1"));
+
+        assertEquals(4, decisions("allowed"));
+        assertEquals(2, decisions("dropped"));
+    }
+
+    @Test
+    void delayPolicyDelaysWithinMaxDelayAndDropsBeyond() {
+        limiter = limiter(OverLimitPolicy.DELAY);
+        limiter.acquire("hub-1");
+        limiter.acquire("hub-1");
+
+        assertEquals(100 * MILLISECOND, limiter.acquire("hub-1"));
+        assertEquals(200 * MILLISECOND, limiter.acquire("hub-1"));
+        // ждать пришлось бы 300 мс при лимите 250 мс
+        assertEquals(HubRateLimiter.DROPPED, limiter.acquire("hub-1"));
+
+        assertEquals(2, decisions("delayed"));
+        assertEquals(1, decisions("dropped"));
+    }
+
+    @Test
+    void rejectPolicyThrowsWithRetryAfter() {
+        limiter = limiter(OverLimitPolicy.REJECT);
+        limiter.acquire("hub-1");
+        limiter.acquire("hub-1");
+        now.addAndGet(40 * MILLISECOND);
+
+        HubRateLimitException e = assertThrows(HubRateLimitException.class, () -> limiter.acquire("hub-1"));
+
+        assertEquals(60, e.getRetryAfterMs());
+        assertEquals(1, decisions("rejected"));
+    }
+
+    @Test
+    void admitRunsAllowedActionAndCompletesDroppedWithNull() throws Exception {
+        limiter = limiter(OverLimitPolicy.DROP);
+        AtomicInteger runs = new AtomicInteger();
+
+        limiter.admit("hub-1", () -> CompletableFuture.completedFuture(runs.incrementAndGet()));
+        limiter.admit("hub-1", () -> CompletableFuture.completedFuture(runs.incrementAndGet()));
+        CompletableFuture<Integer> dropped = limiter.admit("hub-1",
+                () -> CompletableFuture.completedFuture(runs.incrementAndGet()));
+
+        assertNull(dropped.get(1, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void disabledLimiterAllowsEverything() {
+        limiter = new HubRateLimiter(false, 10, 2, OverLimitPolicy.DROP, 250, 1_000, 60_000, 4, registry, now::get);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.acquire("hub-1"));
+        }
+    }
+
+    @Test
+    void idleBucketsAreEvicted() {
+        limiter = limiter(OverLimitPolicy.DROP);
+        limiter.acquire("hub-1");
+        limiter.acquire("hub-1");
+
+        // корзина простаивала дольше idle-evict-ms и создаётся заново, полной
+        now.addAndGet(60_001 * MILLISECOND);
+        assertEquals(0, limiter.acquire("hub-1"));
+
+        assertEquals(1, registry.get("collector.hub-rate-limit.evictions").functionCounter().count());
+    }
+
+    // 10 показаний в секунду, запас 2, ожидание до 250 мс, вытеснение через минуту простоя; один сегмент кэша
+    private HubRateLimiter limiter(OverLimitPolicy policy) {
+        return new HubRateLimiter(true, 10, 2, policy, 250, 1_000, 60_000, 1, registry, now::get);
+    }
+
+    private double decisions(String decision) {
+        return registry.counter("collector.hub-rate-limit.decisions", "decision", decision).count();
+    }
+}
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void burstIsAvailableAtOnceAndThenRefillsAtRate() {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+
+        assertEquals(0, bucket.acquire(0, 0));
+        assertEquals(0, bucket.acquire(0, 0));
+        assertEquals(0, bucket.acquire(0, 0));
+        // токен появляется раз в 100 мс
+        assertEquals(-SECOND / 10, bucket.acquire(0, 0));
+        assertEquals(-SECOND / 20, bucket.acquire(SECOND / 20, 0));
+        assertEquals(0, bucket.acquire(SECOND / 10, 0));
+    }
+
+    @Test
+    void refillIsCappedByBurst() {
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+
+        // за минуту простоя накопилось бы 600 токенов, но корзина вмещает только 2
+        long later = 60 * SECOND;
+        assertEquals(0, bucket.acquire(later, 0));
+        assertEquals(0, bucket.acquire(later, 0));
+        assertEquals(-SECOND / 10, bucket.acquire(later, 0));
+    }
+
+    @Test
+    void tokenWithinMaxWaitIsReservedInAdvance() {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        bucket.acquire(0, 0);
+
+        assertEquals(SECOND / 10, bucket.acquire(0, SECOND));
+        // следующий токен уже занят: ждать вдвое дольше
+        assertEquals(2 * SECOND / 10, bucket.acquire(0, SECOND));
+        // ожидание сверх лимита токен не занимает
+        assertEquals(-3 * SECOND / 10, bucket.acquire(0, SECOND / 5));
+        assertEquals(3 * SECOND / 10, bucket.acquire(0, SECOND));
+    }
+}
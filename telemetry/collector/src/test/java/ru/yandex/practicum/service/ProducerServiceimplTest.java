@@ -0,0 +1,190 @@
+package ru.yandex.practicum.service;
+
+import com.google.protobuf.Timestamp;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.admission.InFlightLimiter;
+import ru.yandex.practicum.coalesce.CoalescingProperties;
+import ru.yandex.practicum.coalesce.ReadingCoalescer;
+import ru.yandex.practicum.dedup.ReadingDeduplicator;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+import ru.yandex.practicum.grpc.telemetry.event.TemperatureSensorProto;
+import ru.yandex.practicum.kafka.KafkaClient;
+import ru.yandex.practicum.lane.Lane;
+import ru.yandex.practicum.lane.PriorityLaneExecutor;
+import ru.yandex.practicum.mapper.sensor.TemperatureSensorEventMapper;
+import ru.yandex.practicum.metrics.CollectorMetrics;
+import ru.yandex.practicum.ratelimit.HubRateLimiter;
+import ru.yandex.practicum.ratelimit.OverLimitPolicy;
+import ru.yandex.practicum.transcoder.ProtoAvroTranscoder;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Пакет показаний, часть которого ограничитель частоты откладывает, а очередь показаний переполнена,
+ * и показания, отложенные до конца окна объединения, при занятом лимите отправки.
+ */
+class ProducerServiceimplTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MockProducer<String, byte[]> sensorProducer =
+            new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+    private final PriorityLaneExecutor lanes = new PriorityLaneExecutor(1, 1, 2, 10, registry);
+    private final AtomicInteger scheduled = new AtomicInteger();
+    // 20 показаний в секунду без запаса: второе показание хаба откладывается на 50 мс
+    private final HubRateLimiter hubRateLimiter = new HubRateLimiter(true, 20, 1, OverLimitPolicy.DELAY,
+            1_000, 1_000, 600_000, 1, registry) {
+        @Override
+        public <T> CompletableFuture<T> schedule(long delayNanos, Supplier<CompletableFuture<T>> action) {
+            scheduled.incrementAndGet();
+            return super.schedule(delayNanos, action);
+        }
+    };
+    private final ReadingCoalescer readingCoalescer = new ReadingCoalescer(new CoalescingProperties(), registry);
+    private final ReadingCoalescer windowCoalescer = new ReadingCoalescer(coalescing(), registry);
+    // одно место: его занимает тест, изображая вызов, который ещё ждёт подтверждения
+    private final InFlightLimiter inFlightLimiter = new InFlightLimiter(1, 100, registry);
+    private final ProducerServiceimpl service = service(readingCoalescer);
+
+    @AfterEach
+    void shutdown() {
+        lanes.shutdown();
+        hubRateLimiter.shutdown();
+        readingCoalescer.shutdown();
+        windowCoalescer.shutdown();
+        inFlightLimiter.shutdown();
+    }
+
+    @Test
+    void rejectedBatchSchedulesNothingAndCanBeResent() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch drained = fillSensorQueue(release);
+        List<SensorEventProto> batch = List.of(reading("t1", 20), reading("t2", 21));
+
+        assertThrows(RejectedExecutionException.class, () -> service.processSensorEventBatch(batch));
+        // иначе отложенное показание ушло бы в Kafka, а хаб прислал бы его снова вместе со всем пакетом
+        assertEquals(0, scheduled.get());
+
+        release.countDown();
+        assertTrue(drained.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<RecordMetadata>> results = service.processSensorEventBatch(batch);
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // отклонённые показания не остались в дедупликаторе и при повторе отправляются
+        assertEquals(2, sensorProducer.history().size());
+    }
+
+    @Test
+    void coalescedReadingTakesInFlightPermit() throws Exception {
+        ProducerServiceimpl service = service(windowCoalescer);
+        assertTrue(inFlightLimiter.tryAcquire());
+        service.processSensorEvent(reading("t1", 20)).get(5, TimeUnit.SECONDS);
+        assertNull(service.processSensorEvent(reading("t1", 21)).get(5, TimeUnit.SECONDS));
+
+        // лимит занят: показание из конца окна сбрасывается, а не уходит в Kafka сверх лимита
+        await(() -> shed("coalesced") == 1);
+        assertEquals(1, sensorProducer.history().size());
+
+        inFlightLimiter.release(1);
+        assertNull(service.processSensorEvent(reading("t1", 22)).get(5, TimeUnit.SECONDS));
+
+        await(() -> sensorProducer.history().size() == 2);
+        // место возвращается после подтверждения Kafka
+        await(() -> registry.get("collector.admission.in-flight").gauge().value() == 0);
+        assertTrue(inFlightLimiter.tryAcquire());
+    }
+
+    private ProducerServiceimpl service(ReadingCoalescer coalescer) {
+        ProducerServiceimpl service = new ProducerServiceimpl(
+                new KafkaClient(sensorProducer, new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer()),
+                        "telemetry.hubs.v1", Optional.empty(), registry),
+                lanes,
+                hubRateLimiter,
+                new ReadingDeduplicator(true, 60_000, 1_000, 1, registry),
+                coalescer,
+                inFlightLimiter,
+                new ProtoAvroTranscoder(),
+                new CollectorMetrics(registry),
+                List.of(new TemperatureSensorEventMapper()),
+                List.of());
+        ReflectionTestUtils.setField(service, "sensorsEventsTopic", "telemetry.sensors.v1");
+        ReflectionTestUtils.setField(service, "hubsEventsTopic", "telemetry.hubs.v1");
+        return service;
+    }
+
+    private double shed(String path) {
+        return registry.counter("collector.admission.shed", "path", path).count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Не дождались конца окна объединения");
+            Thread.sleep(5);
+        }
+    }
+
+    private static CoalescingProperties coalescing() {
+        CoalescingProperties properties = new CoalescingProperties();
+        properties.setEnabled(true);
+        properties.setTickMs(5);
+        properties.getWindowsMs().put(DeviceTypeAvro.TEMPERATURE_SENSOR, 50L);
+        return properties;
+    }
+
+    /**
+     * Занимает обработчик показаний до {@code release} и заполняет очередь полосы.
+     *
+     * @return освобождается, когда очередь снова пуста
+     */
+    private CountDownLatch fillSensorQueue(CountDownLatch release) throws InterruptedException {
+        CountDownLatch busy = new CountDownLatch(1);
+        lanes.execute(Lane.SENSOR, e -> {
+        }, () -> {
+            busy.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        CountDownLatch drained = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            lanes.execute(Lane.SENSOR, e -> {
+            }, drained::countDown);
+        }
+        return drained;
+    }
+
+    private static SensorEventProto reading(String sensorId, int temperature) {
+        return SensorEventProto.newBuilder()
+                .setId(sensorId)
+                .setHubId("hub-1")
+                .setTimestamp(Timestamp.newBuilder().setSeconds(1_000))
+                .setTemperatureSensorEvent(TemperatureSensorProto.newBuilder()
+                        .setTemperatureC(temperature)
+                        .setTemperatureF(temperature * 9 / 5 + 32))
+                .build();
+    }
+}
@@ -0,0 +1,218 @@
+package ru.yandex.practicum.spool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сегменты спула на диске: переход на новый сегмент, лимит сегментов, подтверждение
+ * и восстановление после оборванной или испорченной записи.
+ */
+class SegmentSpoolTest {
+
+    // заголовок сегмента и позиция записи в нём
+    private static final int HEADER_SIZE = 16;
+    private static final int WRITE_POSITION = 8;
+    // запись "value-N" в топик "t" с ключом "k": 8 байт заголовка записи и 2 + 1 + 4 + 1 + 4 + 7 байт данных
+    private static final int RECORD_SIZE = 27;
+    // четыре записи на сегмент
+    private static final int SEGMENT_SIZE = HEADER_SIZE + 4 * RECORD_SIZE + 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsRollOverToNewSegmentsAndArePeekedInOrder() throws Exception {
+        try (SegmentSpool spool = open(16)) {
+            append(spool, 0, 10);
+
+            assertEquals(3, spool.segmentCount());
+            assertEquals(values(0, 10), values(spool.peek(100)));
+            assertEquals(values(0, 3), values(spool.peek(3)));
+            assertEquals(10L * RECORD_SIZE, spool.pendingBytes());
+        }
+    }
+
+    @Test
+    void ackRemovesReadSegmentsAndKeepsTheRest() throws Exception {
+        try (SegmentSpool spool = open(16)) {
+            append(spool, 0, 10);
+            List<SpoolRecord> records = spool.peek(100);
+
+            spool.ack(records.get(5));
+
+            assertEquals(values(6, 10), values(spool.peek(100)));
+            assertEquals(2, spool.segmentCount());
+
+            spool.ack(records.get(9));
+
+            assertTrue(spool.isEmpty());
+            assertEquals(1, spool.segmentCount());
+            assertTrue(spool.peek(100).isEmpty());
+        }
+    }
+
+    @Test
+    void appendIsRejectedWhenSegmentLimitIsReached() throws Exception {
+        try (SegmentSpool spool = open(2)) {
+            append(spool, 0, 8);
+
+            assertFalse(spool.append("t", "k", "value-8".getBytes(StandardCharsets.UTF_8)));
+            assertEquals(2, spool.segmentCount());
+
+            // после подтверждения первого сегмента место снова есть
+            spool.ack(spool.peek(4).get(3));
+            assertTrue(spool.append("t", "k", "value-8".getBytes(StandardCharsets.UTF_8)));
+            assertEquals(values(4, 9), values(spool.peek(100)));
+        }
+    }
+
+    @Test
+    void recordLargerThanSegmentIsRejectedSeparately() throws Exception {
+        try (SegmentSpool spool = open(16)) {
+            assertThrows(IllegalArgumentException.class, () -> spool.append("t", "k", new byte[SEGMENT_SIZE]));
+            assertTrue(spool.isEmpty());
+        }
+    }
+
+    @Test
+    void unackedRecordsSurviveReopen() throws Exception {
+        try (SegmentSpool spool = open(16)) {
+            append(spool, 0, 6);
+            spool.ack(spool.peek(2).get(1));
+        }
+
+        try (SegmentSpool reopened = open(16)) {
+            assertEquals(values(2, 6), values(reopened.peek(100)));
+            append(reopened, 6, 7);
+            assertEquals(values(2, 7), values(reopened.peek(100)));
+        }
+    }
+
+    @Test
+    void cutLastRecordIsDroppedOnRecovery() throws Exception {
+        try (SegmentSpool spool = open(16)) {
+            append(spool, 0, 3);
+        }
+        // позиция записи уже учитывает последнюю запись, а её хвост до диска не дошёл
+        Path segment = lastSegment();
+        int writePosition = writePosition(segment);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(writePosition - 5);
+        }
+
+        try (SegmentSpool reopened = open(16)) {
+            assertEquals(values(0, 2), values(reopened.peek(100)));
+            // новая запись занимает место отброшенной
+            append(reopened, 3, 4);
+        }
+        try (SegmentSpool reopened = open(16)) {
+            assertEquals(List.of("value-0", "value-1", "value-3"), values(reopened.peek(100)));
+        }
+    }
+
+    @Test
+    void recordWithBadChecksumCutsTheTail() throws Exception {
+        try (SegmentSpool spool = open(16)) {
+            append(spool, 0, 3);
+        }
+        // последний байт значения второй записи
+        corrupt(lastSegment(), HEADER_SIZE + 2 * RECORD_SIZE - 1);
+
+        try (SegmentSpool reopened = open(16)) {
+            assertEquals(values(0, 1), values(reopened.peek(100)));
+        }
+    }
+
+    @Test
+    void recordLengthBeyondWritePositionCutsTheTail() throws Exception {
+        try (SegmentSpool spool = open(16)) {
+            append(spool, 0, 3);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(lastSegment().toFile(), "rw")) {
+            file.seek(HEADER_SIZE + 2 * RECORD_SIZE);
+            file.writeInt(1_000);
+        }
+
+        try (SegmentSpool reopened = open(16)) {
+            assertEquals(values(0, 2), values(reopened.peek(100)));
+        }
+    }
+
+    @Test
+    void segmentWithoutMagicIsDeleted() throws Exception {
+        try (SegmentSpool spool = open(16)) {
+            append(spool, 0, 6);
+        }
+        corrupt(firstSegment(), 0);
+
+        try (SegmentSpool reopened = open(16)) {
+            assertEquals(values(4, 6), values(reopened.peek(100)));
+            assertEquals(1, reopened.segmentCount());
+        }
+    }
+
+    private SegmentSpool open(int maxSegments) throws IOException {
+        return new SegmentSpool(directory, SEGMENT_SIZE, maxSegments, FsyncPolicy.NEVER);
+    }
+
+    private static void append(SegmentSpool spool, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            assertTrue(spool.append("t", "k", ("value-" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    private static List<String> values(int from, int to) {
+        return IntStream.range(from, to).mapToObj(i -> "value-" + i).toList();
+    }
+
+    private static List<String> values(List<SpoolRecord> records) {
+        return records.stream()
+                .map(record -> new String(record.value(), StandardCharsets.UTF_8))
+                .toList();
+    }
+
+    private Path firstSegment() throws IOException {
+        return segments().get(0);
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Path> segments = segments();
+        return segments.get(segments.size() - 1);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static int writePosition(Path segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "r")) {
+            file.seek(WRITE_POSITION);
+            return file.readInt();
+        }
+    }
+
+    private static void corrupt(Path segment, int position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ru.yandex.practicum.spool;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.kafka.KafkaClient;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Отправка из спула: подтверждается только непрерывный успешный префикс пачки,
+ * а после ошибки пачка повторяется с первой неподтверждённой записи.
+ */
+class SpoolDrainerTest {
+
+    private static final String SENSORS_TOPIC = "telemetry.sensors.v1";
+    private static final String HUBS_TOPIC = "telemetry.hubs.v1";
+
+    @TempDir
+    Path directory;
+
+    private final MockProducer<String, byte[]> sensorProducer =
+            new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+    private final MockProducer<String, byte[]> hubProducer =
+            new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private SegmentSpool spool;
+    private SpoolDrainer drainer;
+
+    @AfterEach
+    void stop() throws Exception {
+        if (drainer != null) {
+            drainer.shutdown();
+        }
+        spool.close();
+    }
+
+    @Test
+    void failedRecordAndEverythingAfterItAreSentAgain() throws Exception {
+        spool = new SegmentSpool(directory, 4096, 4, FsyncPolicy.NEVER);
+        for (int i = 0; i < 3; i++) {
+            spool.append(SENSORS_TOPIC, "hub-1", ("value-" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        drainer = drainer();
+
+        await(() -> sensorProducer.history().size() == 3);
+        sensorProducer.completeNext();
+        sensorProducer.errorNext(new TimeoutException("Брокер недоступен"));
+
+        // первая запись подтверждена, вторая и третья отправляются заново
+        await(() -> sensorProducer.history().size() == 5);
+        assertEquals(List.of("value-1", "value-2"), values(spool.peek(10)));
+        while (sensorProducer.completeNext()) {
+            // завершаем и зависшую третью запись первой пачки, и повторы
+        }
+        await(spool::isEmpty);
+
+        assertEquals(List.of("value-0", "value-1", "value-2", "value-1", "value-2"), sent(sensorProducer));
+        assertEquals(3, registry.counter("collector.spool.replayed").count());
+        assertEquals(1, registry.counter("collector.spool.replay-failures").count());
+    }
+
+    @Test
+    void recordsGoToProducerOfTheirTopic() throws Exception {
+        spool = new SegmentSpool(directory, 4096, 4, FsyncPolicy.NEVER);
+        spool.append(HUBS_TOPIC, "hub-1", "hub-event".getBytes(StandardCharsets.UTF_8));
+        spool.append(SENSORS_TOPIC, "hub-1", "reading".getBytes(StandardCharsets.UTF_8));
+        drainer = drainer();
+
+        await(() -> hubProducer.history().size() == 1 && sensorProducer.history().size() == 1);
+        hubProducer.completeNext();
+        sensorProducer.completeNext();
+        await(spool::isEmpty);
+
+        assertEquals(List.of("hub-event"), sent(hubProducer));
+        assertEquals(List.of("reading"), sent(sensorProducer));
+    }
+
+    private SpoolDrainer drainer() {
+        KafkaClient kafkaClient = new KafkaClient(sensorProducer, hubProducer, HUBS_TOPIC, Optional.of(spool), registry);
+        return new SpoolDrainer(spool, kafkaClient, 500, 5_000, 10, FsyncPolicy.NEVER, 1_000, registry);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Не дождались отправки из спула");
+            Thread.sleep(5);
+        }
+    }
+
+    private static List<String> values(List<SpoolRecord> records) {
+        return records.stream()
+                .map(record -> new String(record.value(), StandardCharsets.UTF_8))
+                .toList();
+    }
+
+    private static List<String> sent(MockProducer<String, byte[]> producer) {
+        return producer.history().stream()
+                .map(record -> new String(record.value(), StandardCharsets.UTF_8))
+                .toList();
+    }
+}
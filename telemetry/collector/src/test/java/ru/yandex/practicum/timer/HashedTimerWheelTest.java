@@ -0,0 +1,105 @@
+package ru.yandex.practicum.timer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Колесо без своего потока: часы и тики двигает тест.
+ */
+class HashedTimerWheelTest {
+
+    private static final long MILLISECOND = 1_000_000L;
+
+    private final AtomicLong now = new AtomicLong();
+    // 8 ячеек по 10 мс: оборот колеса — 80 мс
+    private final HashedTimerWheel wheel = new HashedTimerWheel(null, 10, 8, now::get);
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    void timerFiresOnTickOfItsDeadline() {
+        wheel.schedule(25, () -> fired.add("25"));
+
+        advanceTo(20);
+        assertEquals(List.of(), fired);
+
+        advanceTo(30);
+        assertEquals(List.of("25"), fired);
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    void timerLongerThanRevolutionWaitsForItsRound() {
+        wheel.schedule(200, () -> fired.add("200"));
+        wheel.schedule(40, () -> fired.add("40"));
+
+        // 40, 120 и 200 мс — одна и та же ячейка
+        advanceTo(40);
+        assertEquals(List.of("40"), fired);
+        advanceTo(120);
+        assertEquals(List.of("40"), fired);
+        assertEquals(1, wheel.pending());
+
+        advanceTo(200);
+        assertEquals(List.of("40", "200"), fired);
+    }
+
+    @Test
+    void zeroDelayWaitsForNextTick() {
+        wheel.schedule(0, () -> fired.add("0"));
+
+        wheel.advance();
+        assertEquals(List.of(), fired);
+
+        advanceTo(10);
+        assertEquals(List.of("0"), fired);
+    }
+
+    @Test
+    void overdueTimersFireOnceWhenWheelCatchesUp() {
+        wheel.schedule(10, () -> fired.add("10"));
+        wheel.schedule(70, () -> fired.add("70"));
+
+        // колесо отстало больше чем на оборот
+        advanceTo(500);
+
+        assertEquals(List.of("10", "70"), fired);
+        advanceTo(1_000);
+        assertEquals(2, fired.size());
+    }
+
+    @Test
+    void failingTaskDoesNotStopOthers() {
+        wheel.schedule(10, () -> {
+            throw new IllegalStateException("Сбой задачи");
+        });
+        wheel.schedule(10, () -> fired.add("10"));
+
+        advanceTo(10);
+
+        assertEquals(List.of("10"), fired);
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    void wheelThreadFiresOnSystemClock() throws Exception {
+        try (HashedTimerWheel running = new HashedTimerWheel("timer-test", 5, 8)) {
+            CountDownLatch done = new CountDownLatch(1);
+            running.schedule(20, done::countDown);
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private void advanceTo(long millis) {
+        now.set(millis * MILLISECOND);
+        wheel.advance();
+    }
+}
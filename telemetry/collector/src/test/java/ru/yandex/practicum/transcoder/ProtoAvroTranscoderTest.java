@@ -0,0 +1,208 @@
+package ru.yandex.practicum.transcoder;
+
+import com.google.protobuf.Timestamp;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import ru.yandex.practicum.grpc.telemetry.event.ActionTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.ClimateSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.ConditionOperationProto;
+import ru.yandex.practicum.grpc.telemetry.event.ConditionTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceActionProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceAddedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceRemovedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.LightSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.MotionSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioAddedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioConditionProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioRemovedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SwitchSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.TemperatureSensorProto;
+import ru.yandex.practicum.mapper.hub.DeviceActionMapper;
+import ru.yandex.practicum.mapper.hub.DeviceAddedEventMapper;
+import ru.yandex.practicum.mapper.hub.DeviceRemovedEventMapper;
+import ru.yandex.practicum.mapper.hub.HubEventMapper;
+import ru.yandex.practicum.mapper.hub.ScenarioAddedEventMapper;
+import ru.yandex.practicum.mapper.hub.ScenarioConditionMapper;
+import ru.yandex.practicum.mapper.hub.ScenarioRemovedEventMapper;
+import ru.yandex.practicum.mapper.sensor.ClimateSensorEventMapper;
+import ru.yandex.practicum.mapper.sensor.LightSensorEventMapper;
+import ru.yandex.practicum.mapper.sensor.MotionSensorEventMapper;
+import ru.yandex.practicum.mapper.sensor.SensorEventMapper;
+import ru.yandex.practicum.mapper.sensor.SwitchSensorEventMapper;
+import ru.yandex.practicum.mapper.sensor.TemperatureSensorEventMapper;
+import ru.yandex.practicum.serialization.AvroCodecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Транскодер должен давать те же байты, что и эталон: маппер + {@link AvroCodecs#encode}.
+ */
+class ProtoAvroTranscoderTest {
+
+    private static final Map<SensorEventProto.PayloadCase, SensorEventMapper> SENSOR_MAPPERS = Stream.of(
+                    new ClimateSensorEventMapper(),
+                    new LightSensorEventMapper(),
+                    new MotionSensorEventMapper(),
+                    new SwitchSensorEventMapper(),
+                    new TemperatureSensorEventMapper())
+            .collect(Collectors.toMap(SensorEventMapper::getSensorEventType, Function.identity()));
+
+    private static final Map<HubEventProto.PayloadCase, HubEventMapper> HUB_MAPPERS = Stream.of(
+                    new DeviceAddedEventMapper(),
+                    new DeviceRemovedEventMapper(),
+                    new ScenarioAddedEventMapper(new ScenarioConditionMapper(), new DeviceActionMapper()),
+                    new ScenarioRemovedEventMapper())
+            .collect(Collectors.toMap(HubEventMapper::getHubEventType, Function.identity()));
+
+    // отрицательные, дробные (меньше миллисекунды) и граничные метки времени
+    private static final List<Timestamp> TIMESTAMPS = List.of(
+            Timestamp.getDefaultInstance(),
+            timestamp(1_700_000_000L, 123_456_789),
+            timestamp(1_700_000_000L, 999_999),
+            timestamp(1_700_000_000L, 999_999_999),
+            timestamp(0, 1),
+            timestamp(-1, 0),
+            timestamp(-1, 999_999),
+            timestamp(-1, 1_000_000),
+            timestamp(-62_135_596_800L, 0),
+            timestamp(253_402_300_799L, 999_999_999));
+
+    private final ProtoAvroTranscoder transcoder = new ProtoAvroTranscoder();
+
+    static Stream<SensorEventProto> sensorEvents() {
+        List<SensorEventProto.Builder> payloads = List.of(
+                SensorEventProto.newBuilder().setClimateSensorEvent(ClimateSensorProto.newBuilder()
+                        .setTemperatureC(-21).setHumidity(45).setCo2Level(Integer.MAX_VALUE)),
+                SensorEventProto.newBuilder().setLightSensorEvent(LightSensorProto.newBuilder()
+                        .setLinkQuality(90).setLuminosity(Integer.MIN_VALUE)),
+                SensorEventProto.newBuilder().setMotionSensorEvent(MotionSensorProto.newBuilder()
+                        .setLinkQuality(80).setMotion(true).setVoltage(220)),
+                SensorEventProto.newBuilder().setMotionSensorEvent(MotionSensorProto.newBuilder()
+                        .setMotion(false)),
+                SensorEventProto.newBuilder().setSwitchSensorEvent(SwitchSensorProto.newBuilder().setState(true)),
+                SensorEventProto.newBuilder().setSwitchSensorEvent(SwitchSensorProto.newBuilder().setState(false)),
+                SensorEventProto.newBuilder().setTemperatureSensorEvent(TemperatureSensorProto.newBuilder()
+                        .setTemperatureC(-5).setTemperatureF(23)));
+
+        List<SensorEventProto> events = new ArrayList<>();
+        for (SensorEventProto.Builder payload : payloads) {
+            for (Timestamp timestamp : TIMESTAMPS) {
+                events.add(payload.clone()
+                        .setId("sensor.Ω-1")
+                        .setHubId("hub-" + events.size())
+                        .setTimestamp(timestamp)
+                        .build());
+            }
+        }
+        events.add(SensorEventProto.newBuilder()
+                .setSwitchSensorEvent(SwitchSensorProto.getDefaultInstance())
+                .build());
+        return events.stream();
+    }
+
+    static Stream<HubEventProto> hubEvents() {
+        List<HubEventProto.Builder> payloads = new ArrayList<>();
+        for (DeviceTypeProto type : values(DeviceTypeProto.values())) {
+            payloads.add(HubEventProto.newBuilder().setDeviceAdded(DeviceAddedEventProto.newBuilder()
+                    .setId("sensor." + type).setType(type)));
+        }
+        payloads.add(HubEventProto.newBuilder().setDeviceRemoved(DeviceRemovedEventProto.newBuilder()
+                .setId("sensor.1")));
+        payloads.add(HubEventProto.newBuilder().setScenarioRemoved(ScenarioRemovedEventProto.newBuilder()
+                .setName("Свет в коридоре")));
+        payloads.add(HubEventProto.newBuilder().setScenarioAdded(ScenarioAddedEventProto.newBuilder()
+                .setName("Пустой сценарий")));
+
+        ScenarioAddedEventProto.Builder scenario = ScenarioAddedEventProto.newBuilder().setName("Все ветки");
+        for (ConditionTypeProto type : values(ConditionTypeProto.values())) {
+            for (ConditionOperationProto operation : values(ConditionOperationProto.values())) {
+                scenario.addCondition(condition(type, operation).setIntValue(-7));
+                scenario.addCondition(condition(type, operation).setBoolValue(true));
+                scenario.addCondition(condition(type, operation).setBoolValue(false));
+                scenario.addCondition(condition(type, operation));
+            }
+        }
+        for (ActionTypeProto type : values(ActionTypeProto.values())) {
+            scenario.addAction(DeviceActionProto.newBuilder().setSensorId("sensor.2").setType(type));
+            scenario.addAction(DeviceActionProto.newBuilder().setSensorId("sensor.2").setType(type).setValue(0));
+            scenario.addAction(DeviceActionProto.newBuilder().setSensorId("sensor.2").setType(type).setValue(-1));
+        }
+        payloads.add(HubEventProto.newBuilder().setScenarioAdded(scenario));
+
+        List<HubEventProto> events = new ArrayList<>();
+        for (HubEventProto.Builder payload : payloads) {
+            for (Timestamp timestamp : TIMESTAMPS) {
+                events.add(payload.clone()
+                        .setHubId("hub-" + events.size())
+                        .setTimestamp(timestamp)
+                        .build());
+            }
+        }
+        return events.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("sensorEvents")
+    void sensorEventMatchesMapper(SensorEventProto event) throws Exception {
+        byte[] expected = AvroCodecs.encode(SENSOR_MAPPERS.get(event.getPayloadCase()).mapToAvro(event));
+
+        assertArrayEquals(expected, transcoder.transcode(event));
+    }
+
+    @ParameterizedTest
+    @MethodSource("hubEvents")
+    void hubEventMatchesMapper(HubEventProto event) throws Exception {
+        byte[] expected = AvroCodecs.encode(HUB_MAPPERS.get(event.getPayloadCase()).mapToAvro(event));
+
+        assertArrayEquals(expected, transcoder.transcode(event));
+    }
+
+    @Test
+    void coversEveryPayloadCase() {
+        assertEquals(payloadCases(SensorEventProto.PayloadCase.values()),
+                sensorEvents().map(SensorEventProto::getPayloadCase).distinct().count());
+        assertEquals(payloadCases(HubEventProto.PayloadCase.values()),
+                hubEvents().map(HubEventProto::getPayloadCase).distinct().count());
+    }
+
+    @Test
+    void rejectsEventWithoutPayload() {
+        assertThrows(IllegalArgumentException.class, () -> transcoder.transcode(SensorEventProto.newBuilder()
+                .setId("sensor.1").setHubId("hub-1").build()));
+        assertThrows(IllegalArgumentException.class, () -> transcoder.transcode(HubEventProto.newBuilder()
+                .setHubId("hub-1").build()));
+    }
+
+    private static Timestamp timestamp(long seconds, int nanos) {
+        return Timestamp.newBuilder().setSeconds(seconds).setNanos(nanos).build();
+    }
+
+    private static ScenarioConditionProto.Builder condition(ConditionTypeProto type, ConditionOperationProto operation) {
+        return ScenarioConditionProto.newBuilder()
+                .setSensorId("sensor." + type)
+                .setType(type)
+                .setOperation(operation);
+    }
+
+    private static <E extends Enum<E>> List<E> values(E[] values) {
+        return Arrays.stream(values).filter(value -> !value.name().equals("UNRECOGNIZED")).toList();
+    }
+
+    private static long payloadCases(Enum<?>[] cases) {
+        return Arrays.stream(cases).filter(value -> !value.name().equals("PAYLOAD_NOT_SET")).count();
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.driver.OpenLoopDriver;
+
+@SpringBootApplication
+@ConfigurationPropertiesScan
+public class LoadGenerator {
+    public static void main(String[] args) {
+        ConfigurableApplicationContext context =
+                SpringApplication.run(LoadGenerator.class, args);
+
+        boolean completed = context.getBean(OpenLoopDriver.class).run();
+        System.exit(SpringApplication.exit(context, () -> completed ? 0 : 1));
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import ru.yandex.practicum.generator.EventKind;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties("load-generator")
+public class LoadGeneratorProperties {
+    // число имитируемых хабов
+    private int hubs = 100;
+    // датчиков каждого типа на хабе
+    private int sensorsPerType = 2;
+    // целевая частота отправки, событий в секунду
+    private double rate = 1000;
+    private long durationSeconds = 60;
+    // первые секунды не попадают в итоговую гистограмму
+    private long warmupSeconds = 5;
+    private long reportIntervalSeconds = 5;
+    private long deadlineMs = 5000;
+    // предел неподтверждённых вызовов; при его превышении событие не отправляется и считается потерянным
+    private int maxInFlight = 50000;
+    // доля показаний, повторяющих предыдущее значение датчика
+    private double unchangedRatio = 0.3;
+    private long seed = 42;
+    private String histogramFile = "load-generator-latency.hgrm";
+    // веса видов событий в общем потоке
+    private Map<EventKind, Double> mix = new EnumMap<>(EventKind.class);
+}
@@ -0,0 +1,139 @@
+package ru.yandex.practicum.driver;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Empty;
+import lombok.extern.slf4j.Slf4j;
+import net.devh.boot.grpc.client.inject.GrpcClient;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.config.LoadGeneratorProperties;
+import ru.yandex.practicum.generator.EventFactory;
+import ru.yandex.practicum.grpc.telemetry.collector.CollectorControllerGrpc;
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.report.LatencyReport;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Подача нагрузки на коллектор по открытой модели: момент отправки i-го события заранее задан как
+ * {@code start + i / rate} и не зависит от того, ответил ли коллектор на предыдущие. Вызовы асинхронные,
+ * так что медленные ответы не тормозят расписание, а отставание самого генератора учитывается
+ * в задержке (см. {@link LatencyReport}).
+ */
+@Slf4j
+@Component
+public class OpenLoopDriver {
+
+    private final CollectorControllerGrpc.CollectorControllerFutureStub collector;
+    private final EventFactory eventFactory;
+    private final LoadGeneratorProperties properties;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public OpenLoopDriver(@GrpcClient("collector") CollectorControllerGrpc.CollectorControllerFutureStub collector,
+                          EventFactory eventFactory,
+                          LoadGeneratorProperties properties) {
+        this.collector = collector;
+        this.eventFactory = eventFactory;
+        this.properties = properties;
+    }
+
+    /**
+     * @return {@code true}, если все события отправлены и подтверждены без ошибок
+     */
+    public boolean run() {
+        if (!register()) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(properties.getWarmupSeconds());
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(properties.getDurationSeconds());
+        double intervalNanos = 1e9 / properties.getRate();
+        LatencyReport report = new LatencyReport(measureFrom);
+
+        log.info("Нагрузка: {} событий/с, хабов {}, прогрев {} с, замер {} с",
+                properties.getRate(), properties.getHubs(), properties.getWarmupSeconds(), properties.getDurationSeconds());
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(report::reportInterval,
+                properties.getReportIntervalSeconds(), properties.getReportIntervalSeconds(), TimeUnit.SECONDS);
+        try {
+            for (long i = 0; ; i++) {
+                long intended = start + (long) (i * intervalNanos);
+                if (intended >= end) {
+                    break;
+                }
+                long now;
+                while ((now = System.nanoTime()) < intended) {
+                    LockSupport.parkNanos(intended - now);
+                }
+                send(eventFactory.next().message(), intended, report);
+            }
+            awaitInFlight();
+        } finally {
+            reporter.shutdownNow();
+        }
+
+        report.reportTotal(end - measureFrom, Path.of(properties.getHistogramFile()));
+        return !report.hasErrors();
+    }
+
+    private boolean register() {
+        List<HubEventProto> events = eventFactory.registrationEvents();
+        log.info("Регистрация датчиков: {} событий", events.size());
+        List<ListenableFuture<Empty>> results = events.stream()
+                .map(event -> withDeadline().collectHubEvent(event))
+                .toList();
+        try {
+            Futures.allAsList(results).get(properties.getDeadlineMs() * 2, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (Exception e) {
+            log.error("Не удалось зарегистрировать датчики: проверьте, что коллектор запущен", e);
+            return false;
+        }
+    }
+
+    private void send(Object message, long intendedNanos, LatencyReport report) {
+        if (inFlight.get() >= properties.getMaxInFlight()) {
+            report.saturated();
+            return;
+        }
+        ListenableFuture<Empty> result = message instanceof SensorEventProto sensorEvent
+                ? withDeadline().collectSensorEvent(sensorEvent)
+                : withDeadline().collectHubEvent((HubEventProto) message);
+        inFlight.incrementAndGet();
+        report.sent();
+        Futures.addCallback(result, new FutureCallback<>() {
+            @Override
+            public void onSuccess(Empty empty) {
+                inFlight.decrementAndGet();
+                report.success(intendedNanos, System.nanoTime());
+            }
+
+            @Override
+            public void onFailure(Throwable exception) {
+                inFlight.decrementAndGet();
+                report.failure(intendedNanos, exception);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private CollectorControllerGrpc.CollectorControllerFutureStub withDeadline() {
+        return collector.withDeadlineAfter(properties.getDeadlineMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void awaitInFlight() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getDeadlineMs());
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+}
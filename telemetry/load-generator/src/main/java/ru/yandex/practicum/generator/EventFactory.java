@@ -0,0 +1,221 @@
+package ru.yandex.practicum.generator;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.Timestamp;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.config.LoadGeneratorProperties;
+import ru.yandex.practicum.generator.SimulatedHub.SimulatedSensor;
+import ru.yandex.practicum.grpc.telemetry.event.ActionTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.ClimateSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.ConditionOperationProto;
+import ru.yandex.practicum.grpc.telemetry.event.ConditionTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceActionProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceAddedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceRemovedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceTypeProto;
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.LightSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.MotionSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioAddedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioConditionProto;
+import ru.yandex.practicum.grpc.telemetry.event.ScenarioRemovedEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SwitchSensorProto;
+import ru.yandex.practicum.grpc.telemetry.event.TemperatureSensorProto;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Генератор событий для нагрузки: показания всех типов датчиков и события хабов в пропорциях
+ * {@code load-generator.mix}. Значения датчиков меняются случайным блужданием, часть показаний
+ * повторяет предыдущее значение. Не потокобезопасен — вызывается только из потока расписания.
+ */
+@Component
+public class EventFactory {
+
+    private final List<SimulatedHub> hubs = new ArrayList<>();
+    private final EventKind[] kinds;
+    private final double[] cumulativeWeights;
+    private final double unchangedRatio;
+    private final SplittableRandom random;
+
+    public EventFactory(LoadGeneratorProperties properties) {
+        for (int i = 0; i < properties.getHubs(); i++) {
+            hubs.add(new SimulatedHub("load-hub-" + i, properties.getSensorsPerType()));
+        }
+        Map<EventKind, Double> mix = properties.getMix();
+        if (mix.isEmpty()) {
+            mix = Map.of(EventKind.MOTION, 1.0, EventKind.TEMPERATURE, 1.0, EventKind.LIGHT, 1.0,
+                    EventKind.CLIMATE, 1.0, EventKind.SWITCH, 1.0);
+        }
+        kinds = mix.keySet().toArray(EventKind[]::new);
+        cumulativeWeights = new double[kinds.length];
+        double total = 0;
+        for (int i = 0; i < kinds.length; i++) {
+            total += mix.get(kinds[i]);
+            cumulativeWeights[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Сумма весов load-generator.mix должна быть положительной");
+        }
+        unchangedRatio = properties.getUnchangedRatio();
+        random = new SplittableRandom(properties.getSeed());
+    }
+
+    /**
+     * События регистрации всех датчиков, которые отправляются до начала замера.
+     */
+    public List<HubEventProto> registrationEvents() {
+        List<HubEventProto> events = new ArrayList<>();
+        for (SimulatedHub hub : hubs) {
+            hub.getSensors().forEach((type, sensors) -> sensors.forEach(sensor ->
+                    events.add(deviceAdded(hub, sensor.getId(), type))));
+        }
+        return events;
+    }
+
+    public GeneratedEvent next() {
+        EventKind kind = nextKind();
+        SimulatedHub hub = hubs.get(random.nextInt(hubs.size()));
+        Message message = switch (kind) {
+            case MOTION, TEMPERATURE, LIGHT, CLIMATE, SWITCH -> reading(hub, kind);
+            case DEVICE_ADDED -> addSpare(hub);
+            case DEVICE_REMOVED -> hub.getSpareDevices().isEmpty()
+                    ? addSpare(hub)
+                    : deviceRemoved(hub, hub.getSpareDevices().remove(hub.getSpareDevices().size() - 1));
+            case SCENARIO_ADDED -> scenarioAdded(hub);
+            case SCENARIO_REMOVED -> hub.getScenarios().isEmpty()
+                    ? scenarioAdded(hub)
+                    : scenarioRemoved(hub, hub.getScenarios().remove(hub.getScenarios().size() - 1));
+        };
+        return new GeneratedEvent(kind, message);
+    }
+
+    private EventKind nextKind() {
+        double point = random.nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (point < cumulativeWeights[i]) {
+                return kinds[i];
+            }
+        }
+        return kinds[kinds.length - 1];
+    }
+
+    private SensorEventProto reading(SimulatedHub hub, EventKind kind) {
+        DeviceTypeProto type = switch (kind) {
+            case MOTION -> DeviceTypeProto.MOTION_SENSOR;
+            case TEMPERATURE -> DeviceTypeProto.TEMPERATURE_SENSOR;
+            case LIGHT -> DeviceTypeProto.LIGHT_SENSOR;
+            case CLIMATE -> DeviceTypeProto.CLIMATE_SENSOR;
+            default -> DeviceTypeProto.SWITCH_SENSOR;
+        };
+        List<SimulatedSensor> sensors = hub.getSensors().get(type);
+        SimulatedSensor sensor = sensors.get(random.nextInt(sensors.size()));
+        if (!sensor.initialized || random.nextDouble() >= unchangedRatio) {
+            walk(sensor, kind);
+        }
+
+        int[] v = sensor.values;
+        SensorEventProto.Builder event = SensorEventProto.newBuilder()
+                .setId(sensor.getId())
+                .setHubId(hub.getId())
+                .setTimestamp(now());
+        switch (kind) {
+            case MOTION -> event.setMotionSensorEvent(MotionSensorProto.newBuilder()
+                    .setMotion(v[0] != 0).setLinkQuality(v[1]).setVoltage(v[2]));
+            case TEMPERATURE -> event.setTemperatureSensorEvent(TemperatureSensorProto.newBuilder()
+                    .setTemperatureC(v[0]).setTemperatureF(v[0] * 9 / 5 + 32));
+            case LIGHT -> event.setLightSensorEvent(LightSensorProto.newBuilder()
+                    .setLuminosity(v[0]).setLinkQuality(v[1]));
+            case CLIMATE -> event.setClimateSensorEvent(ClimateSensorProto.newBuilder()
+                    .setTemperatureC(v[0]).setHumidity(v[1]).setCo2Level(v[2]));
+            default -> event.setSwitchSensorEvent(SwitchSensorProto.newBuilder().setState(v[0] != 0));
+        }
+        return event.build();
+    }
+
+    private void walk(SimulatedSensor sensor, EventKind kind) {
+        int[] v = sensor.values;
+        if (!sensor.initialized) {
+            v[0] = kind == EventKind.CLIMATE || kind == EventKind.TEMPERATURE ? 20 : 0;
+            v[1] = kind == EventKind.CLIMATE ? 40 : 100;
+            v[2] = kind == EventKind.CLIMATE ? 600 : 220;
+            sensor.initialized = true;
+        }
+        switch (kind) {
+            case MOTION, SWITCH -> v[0] = random.nextInt(2);
+            case LIGHT -> v[0] = Math.max(0, v[0] + random.nextInt(-50, 51));
+            default -> v[0] += random.nextInt(-1, 2);
+        }
+        if (kind == EventKind.CLIMATE) {
+            v[1] = Math.clamp(v[1] + random.nextInt(-2, 3), 0, 100);
+            v[2] = Math.max(300, v[2] + random.nextInt(-20, 21));
+        }
+    }
+
+    private HubEventProto addSpare(SimulatedHub hub) {
+        String id = hub.nextSpareId();
+        hub.getSpareDevices().add(id);
+        return deviceAdded(hub, id, DeviceTypeProto.SWITCH_SENSOR);
+    }
+
+    private HubEventProto deviceAdded(SimulatedHub hub, String id, DeviceTypeProto type) {
+        return HubEventProto.newBuilder()
+                .setHubId(hub.getId())
+                .setTimestamp(now())
+                .setDeviceAdded(DeviceAddedEventProto.newBuilder().setId(id).setType(type))
+                .build();
+    }
+
+    private HubEventProto deviceRemoved(SimulatedHub hub, String id) {
+        return HubEventProto.newBuilder()
+                .setHubId(hub.getId())
+                .setTimestamp(now())
+                .setDeviceRemoved(DeviceRemovedEventProto.newBuilder().setId(id))
+                .build();
+    }
+
+    private HubEventProto scenarioAdded(SimulatedHub hub) {
+        String name = hub.nextScenarioName();
+        hub.getScenarios().add(name);
+        String thermometer = hub.getSensors().get(DeviceTypeProto.TEMPERATURE_SENSOR).get(0).getId();
+        String relay = hub.getSensors().get(DeviceTypeProto.SWITCH_SENSOR).get(0).getId();
+        return HubEventProto.newBuilder()
+                .setHubId(hub.getId())
+                .setTimestamp(now())
+                .setScenarioAdded(ScenarioAddedEventProto.newBuilder()
+                        .setName(name)
+                        .addCondition(ScenarioConditionProto.newBuilder()
+                                .setSensorId(thermometer)
+                                .setType(ConditionTypeProto.TEMPERATURE)
+                                .setOperation(ConditionOperationProto.GREATER_THAN)
+                                .setIntValue(18 + random.nextInt(8)))
+                        .addAction(DeviceActionProto.newBuilder()
+                                .setSensorId(relay)
+                                .setType(ActionTypeProto.ACTIVATE)))
+                .build();
+    }
+
+    private HubEventProto scenarioRemoved(SimulatedHub hub, String name) {
+        return HubEventProto.newBuilder()
+                .setHubId(hub.getId())
+                .setTimestamp(now())
+                .setScenarioRemoved(ScenarioRemovedEventProto.newBuilder().setName(name))
+                .build();
+    }
+
+    private static Timestamp now() {
+        Instant instant = Instant.now();
+        return Timestamp.newBuilder()
+                .setSeconds(instant.getEpochSecond())
+                .setNanos(instant.getNano())
+                .build();
+    }
+
+    public record GeneratedEvent(EventKind kind, Message message) {
+    }
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.generator;
+
+public enum EventKind {
+    MOTION,
+    TEMPERATURE,
+    LIGHT,
+    CLIMATE,
+    SWITCH,
+    DEVICE_ADDED,
+    DEVICE_REMOVED,
+    SCENARIO_ADDED,
+    SCENARIO_REMOVED;
+
+    public boolean isHubEvent() {
+        return ordinal() >= DEVICE_ADDED.ordinal();
+    }
+}
@@ -0,0 +1,57 @@
+package ru.yandex.practicum.generator;
+
+import lombok.Getter;
+import ru.yandex.practicum.grpc.telemetry.event.DeviceTypeProto;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Состояние одного имитируемого хаба: датчики по типам, их последние показания,
+ * временно подключённые устройства и добавленные сценарии.
+ */
+@Getter
+public class SimulatedHub {
+
+    private final String id;
+    private final Map<DeviceTypeProto, List<SimulatedSensor>> sensors = new EnumMap<>(DeviceTypeProto.class);
+    private final List<String> spareDevices = new ArrayList<>();
+    private final List<String> scenarios = new ArrayList<>();
+    private int nextSpare;
+    private int nextScenario;
+
+    public SimulatedHub(String id, int sensorsPerType) {
+        this.id = id;
+        for (DeviceTypeProto type : DeviceTypeProto.values()) {
+            if (type == DeviceTypeProto.UNRECOGNIZED) {
+                continue;
+            }
+            List<SimulatedSensor> ofType = new ArrayList<>(sensorsPerType);
+            for (int i = 0; i < sensorsPerType; i++) {
+                ofType.add(new SimulatedSensor(id + "-" + type.name().toLowerCase() + "-" + i));
+            }
+            sensors.put(type, ofType);
+        }
+    }
+
+    public String nextSpareId() {
+        return id + "-spare-" + nextSpare++;
+    }
+
+    public String nextScenarioName() {
+        return "load-scenario-" + nextScenario++;
+    }
+
+    public static class SimulatedSensor {
+        @Getter
+        private final String id;
+        final int[] values = new int[3];
+        boolean initialized;
+
+        SimulatedSensor(String id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ru.yandex.practicum.report;
+
+import io.grpc.Status;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Сбор задержек в HdrHistogram (в микросекундах) и вывод промежуточных и итогового отчётов.
+ * <p>
+ * Задержка считается от запланированного момента отправки, а не от фактического: если генератор
+ * или коллектор отстали, время ожидания попадает в гистограмму, а не теряется (coordinated omission).
+ * События, запланированные на период прогрева, в итоговую гистограмму не входят.
+ */
+@Slf4j
+public class LatencyReport {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final long measureFromNanos;
+    private final Map<Status.Code, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder saturated = new LongAdder();
+    private final AtomicLong sent = new AtomicLong();
+    private Histogram interval;
+    private long intervalStartNanos;
+    private long intervalSent;
+
+    public LatencyReport(long measureFromNanos) {
+        this.measureFromNanos = measureFromNanos;
+        this.intervalStartNanos = System.nanoTime();
+    }
+
+    public void sent() {
+        sent.incrementAndGet();
+    }
+
+    public void success(long intendedNanos, long completedNanos) {
+        if (intendedNanos >= measureFromNanos) {
+            recorder.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS,
+                    TimeUnit.NANOSECONDS.toMicros(completedNanos - intendedNanos)));
+        }
+    }
+
+    public void failure(long intendedNanos, Throwable exception) {
+        if (intendedNanos >= measureFromNanos) {
+            errors.computeIfAbsent(Status.fromThrowable(exception).getCode(), code -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Событие не отправлено: превышен предел неподтверждённых вызовов самого генератора.
+     */
+    public void saturated() {
+        saturated.increment();
+    }
+
+    /**
+     * Выводит задержки и пропускную способность за время с предыдущего отчёта.
+     */
+    public synchronized void reportInterval() {
+        long now = System.nanoTime();
+        long sentNow = sent.get();
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        double seconds = (now - intervalStartNanos) / 1e9;
+        log.info("Отправлено {}/с, подтверждено {}/с, p50 {} мс, p99 {} мс, p99.9 {} мс, max {} мс",
+                Math.round((sentNow - intervalSent) / seconds),
+                Math.round(interval.getTotalCount() / seconds),
+                millis(interval.getValueAtPercentile(50)),
+                millis(interval.getValueAtPercentile(99)),
+                millis(interval.getValueAtPercentile(99.9)),
+                millis(interval.getMaxValue()));
+        intervalStartNanos = now;
+        intervalSent = sentNow;
+    }
+
+    /**
+     * Итоговый отчёт за весь замер; распределение задержек сохраняется в {@code histogramFile}
+     * в формате .hgrm (значения в миллисекундах).
+     */
+    public synchronized void reportTotal(long measuredNanos, Path histogramFile) {
+        reportInterval();
+        double seconds = measuredNanos / 1e9;
+        log.info("Итог: подтверждено {} событий, {}/с; p50 {} мс, p90 {} мс, p99 {} мс, p99.9 {} мс, p99.99 {} мс, max {} мс",
+                total.getTotalCount(),
+                Math.round(total.getTotalCount() / seconds),
+                millis(total.getValueAtPercentile(50)),
+                millis(total.getValueAtPercentile(90)),
+                millis(total.getValueAtPercentile(99)),
+                millis(total.getValueAtPercentile(99.9)),
+                millis(total.getValueAtPercentile(99.99)),
+                millis(total.getMaxValue()));
+        if (!errors.isEmpty()) {
+            log.warn("Ошибки по кодам gRPC: {}", errors);
+        }
+        if (saturated.sum() > 0) {
+            log.warn("Не отправлено из-за предела вызовов генератора: {} — результат занижает нагрузку", saturated.sum());
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(histogramFile))) {
+            total.outputPercentileDistribution(out, 1000.0);
+            log.info("Распределение задержек сохранено в {}", histogramFile.toAbsolutePath());
+        } catch (IOException e) {
+            log.error("Не удалось сохранить распределение задержек в {}", histogramFile, e);
+        }
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty() || saturated.sum() > 0;
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.3f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,509 @@
+package ru.yandex.practicum.codegen;
+
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Protocol;
+import org.apache.avro.Schema;
+import org.apache.avro.compiler.idl.Idl;
+import org.apache.avro.compiler.specific.SpecificCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Генератор специализированных Avro-кодеков в духе fast-avro.
+ * <p>
+ * Для каждой записи, достижимой из заданных корневых схем, генерируется класс {@code <Запись>Codec},
+ * реализующий {@code DatumWriter} и {@code DatumReader}: поля пишутся и читаются прямыми вызовами
+ * {@code Encoder}/{@code Decoder} без обхода схемы. Порядок и кодирование полей повторяют
+ * {@code SpecificDatumWriter}, поэтому байты совпадают с обычным форматом.
+ * Реестр {@code FastAvroCodecs} отдаёт кодек только для схемы, с которой он был сгенерирован.
+ * <p>
+ * Аргументы: каталог с .avdl, каталог для исходников, пакет кодеков, корневые записи через запятую.
+ */
+public final class FastAvroCodecGenerator {
+
+    private final String codecPackage;
+    private final Map<String, Schema> records = new LinkedHashMap<>();
+
+    private FastAvroCodecGenerator(String codecPackage) {
+        this.codecPackage = codecPackage;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4) {
+            throw new IllegalArgumentException(
+                    "Usage: FastAvroCodecGenerator <avdl dir> <output dir> <codec package> <root records>");
+        }
+        Map<String, Schema> types = parseIdl(Path.of(args[0]));
+        FastAvroCodecGenerator generator = new FastAvroCodecGenerator(args[2]);
+        for (String root : args[3].split(",")) {
+            Schema schema = types.get(root.trim());
+            if (schema == null) {
+                throw new IllegalArgumentException("Schema not found: " + root);
+            }
+            generator.collect(schema);
+        }
+        generator.write(Path.of(args[1]));
+    }
+
+    private static Map<String, Schema> parseIdl(Path sourceDir) throws Exception {
+        Map<String, Schema> types = new HashMap<>();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(sourceDir)) {
+            files = walk.filter(path -> path.toString().endsWith(".avdl")).sorted().toList();
+        }
+        for (Path file : files) {
+            try (Idl idl = new Idl(file.toFile())) {
+                Protocol protocol = idl.CompilationUnit();
+                for (Schema type : protocol.getTypes()) {
+                    types.put(type.getFullName(), type);
+                }
+            }
+        }
+        return types;
+    }
+
+    private void collect(Schema schema) {
+        switch (schema.getType()) {
+            case RECORD -> {
+                if (records.putIfAbsent(schema.getFullName(), schema) == null) {
+                    schema.getFields().forEach(field -> collect(field.schema()));
+                }
+            }
+            case UNION -> schema.getTypes().forEach(this::collect);
+            case MAP -> collect(schema.getValueType());
+            case ARRAY -> collect(schema.getElementType());
+            case NULL, BOOLEAN, INT, LONG, FLOAT, DOUBLE, STRING, ENUM -> checkLogicalType(schema);
+            default -> throw new IllegalArgumentException("Unsupported schema type: " + schema);
+        }
+    }
+
+    private static void checkLogicalType(Schema schema) {
+        LogicalType logicalType = schema.getLogicalType();
+        if (logicalType != null && !isTimestampMillis(schema)) {
+            throw new IllegalArgumentException("Unsupported logical type: " + logicalType.getName());
+        }
+    }
+
+    private static boolean isTimestampMillis(Schema schema) {
+        return schema.getLogicalType() instanceof LogicalTypes.TimestampMillis;
+    }
+
+    private void write(Path outputDir) throws IOException {
+        Path packageDir = outputDir.resolve(codecPackage.replace('.', File.separatorChar));
+        Files.createDirectories(packageDir);
+        for (Schema record : records.values()) {
+            Files.writeString(packageDir.resolve(codecName(record) + ".java"),
+                    new RecordCodec(record).render(), StandardCharsets.UTF_8);
+        }
+        Files.writeString(packageDir.resolve("FastAvroCodecs.java"), renderRegistry(), StandardCharsets.UTF_8);
+    }
+
+    private String renderRegistry() {
+        StringBuilder codecs = new StringBuilder();
+        for (Schema record : records.values()) {
+            codecs.append("        register(").append(codecName(record)).append(".INSTANCE);\n");
+        }
+        return """
+                package %1$s;
+
+                import org.apache.avro.Schema;
+                import org.apache.avro.io.DatumReader;
+                import org.apache.avro.io.DatumWriter;
+
+                import java.util.HashMap;
+                import java.util.Map;
+
+                /** Сгенерировано FastAvroCodecGenerator, не редактировать. */
+                public final class FastAvroCodecs {
+
+                    private static final Map<String, Object> CODECS = new HashMap<>();
+
+                    static {
+                %2$s    }
+
+                    private FastAvroCodecs() {
+                    }
+
+                    /** Кодек для схемы или {@code null}, если схема отличается от той, по которой он сгенерирован. */
+                    @SuppressWarnings("unchecked")
+                    public static <T> DatumWriter<T> writerFor(Schema schema) {
+                        return (DatumWriter<T>) find(schema);
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    public static <T> DatumReader<T> readerFor(Schema schema) {
+                        return (DatumReader<T>) find(schema);
+                    }
+
+                    private static Object find(Schema schema) {
+                        Object codec = CODECS.get(schema.getFullName());
+                        if (codec == null || !schemaOf(codec).equals(schema)) {
+                            return null;
+                        }
+                        return codec;
+                    }
+
+                    private static Schema schemaOf(Object codec) {
+                        return ((SchemaAware) codec).getSchema();
+                    }
+
+                    private static void register(Object codec) {
+                        CODECS.put(schemaOf(codec).getFullName(), codec);
+                    }
+
+                    interface SchemaAware {
+                        Schema getSchema();
+                    }
+                }
+                """.formatted(codecPackage, codecs);
+    }
+
+    private static String codecName(Schema record) {
+        return record.getName() + "Codec";
+    }
+
+    private static String javaType(Schema schema, boolean boxed) {
+        return switch (schema.getType()) {
+            case RECORD, ENUM -> schema.getFullName();
+            case STRING -> "java.lang.String";
+            case INT -> boxed ? "java.lang.Integer" : "int";
+            case LONG -> isTimestampMillis(schema) ? "java.time.Instant" : boxed ? "java.lang.Long" : "long";
+            case BOOLEAN -> boxed ? "java.lang.Boolean" : "boolean";
+            case FLOAT -> boxed ? "java.lang.Float" : "float";
+            case DOUBLE -> boxed ? "java.lang.Double" : "double";
+            case NULL -> "java.lang.Object";
+            case MAP -> "java.util.Map<java.lang.String, " + javaType(schema.getValueType(), true) + ">";
+            case ARRAY -> "java.util.List<" + javaType(schema.getElementType(), true) + ">";
+            case UNION -> {
+                Schema single = nullableBranch(schema);
+                yield single != null ? javaType(single, true) : "java.lang.Object";
+            }
+            default -> throw new IllegalArgumentException("Unsupported schema type: " + schema);
+        };
+    }
+
+    private static String instanceType(Schema schema) {
+        return switch (schema.getType()) {
+            case MAP -> "java.util.Map<?, ?>";
+            case ARRAY -> "java.util.List<?>";
+            case STRING -> "java.lang.CharSequence";
+            default -> javaType(schema, true);
+        };
+    }
+
+    private static List<String> unionNames(Schema union) {
+        return union.getTypes().stream().map(Schema::getFullName).toList();
+    }
+
+    private static Schema nullableBranch(Schema union) {
+        List<Schema> types = union.getTypes();
+        if (types.size() != 2) {
+            return null;
+        }
+        if (types.get(0).getType() == Schema.Type.NULL) {
+            return types.get(1);
+        }
+        return types.get(1).getType() == Schema.Type.NULL ? types.get(0) : null;
+    }
+
+    /** Исходник кодека одной записи. */
+    private final class RecordCodec {
+        private final Schema record;
+        private final Set<String> enums = new LinkedHashSet<>();
+        private final StringBuilder out = new StringBuilder();
+        private int indent;
+        private int tmp;
+
+        private RecordCodec(Schema record) {
+            this.record = record;
+        }
+
+        private String render() {
+            String type = record.getFullName();
+
+            indent = 1;
+            line("static void encode(" + type + " record, Encoder out) throws IOException {");
+            indent++;
+            for (Schema.Field field : record.getFields()) {
+                writeValue(field.schema(), "record." + SpecificCompiler.generateGetMethod(record, field) + "()");
+            }
+            indent--;
+            line("}");
+            line("");
+            line("static " + type + " decode(" + type + " reuse, Decoder in) throws IOException {");
+            indent++;
+            line(type + " record = reuse != null ? reuse : new " + type + "();");
+            for (Schema.Field field : record.getFields()) {
+                String reuse = "record." + SpecificCompiler.generateGetMethod(record, field) + "()";
+                String value = readValue(field.schema(), reuse);
+                line("record." + SpecificCompiler.generateSetMethod(record, field) + "(" + value + ");");
+            }
+            line("return record;");
+            indent--;
+            line("}");
+            String methods = out.toString();
+
+            StringBuilder enumConstants = new StringBuilder();
+            for (String enumType : enums) {
+                enumConstants.append("    private static final ").append(enumType).append("[] ")
+                        .append(enumConstant(enumType)).append(" = ").append(enumType).append(".values();\n");
+            }
+            if (!enumConstants.isEmpty()) {
+                enumConstants.append('\n');
+            }
+
+            return """
+                    package %1$s;
+
+                    import org.apache.avro.AvroRuntimeException;
+                    import org.apache.avro.Schema;
+                    import org.apache.avro.io.DatumReader;
+                    import org.apache.avro.io.DatumWriter;
+                    import org.apache.avro.io.Decoder;
+                    import org.apache.avro.io.Encoder;
+
+                    import java.io.IOException;
+
+                    /** Сгенерировано FastAvroCodecGenerator по схеме %3$s, не редактировать. */
+                    public final class %2$s implements DatumWriter<%3$s>, DatumReader<%3$s>, FastAvroCodecs.SchemaAware {
+
+                        public static final %2$s INSTANCE = new %2$s();
+
+                    %4$s    private %2$s() {
+                        }
+
+                        @Override
+                        public Schema getSchema() {
+                            return %3$s.getClassSchema();
+                        }
+
+                        @Override
+                        public void setSchema(Schema schema) {
+                            if (!getSchema().equals(schema)) {
+                                throw new AvroRuntimeException("%2$s supports only its own schema, got " + schema.getFullName());
+                            }
+                        }
+
+                        @Override
+                        public void write(%3$s datum, Encoder out) throws IOException {
+                            encode(datum, out);
+                        }
+
+                        @Override
+                        public %3$s read(%3$s reuse, Decoder in) throws IOException {
+                            return decode(reuse, in);
+                        }
+
+                    %5$s}
+                    """.formatted(codecPackage, codecName(record), type, enumConstants, methods);
+        }
+
+        private void writeValue(Schema schema, String expr) {
+            switch (schema.getType()) {
+                case NULL -> line("out.writeNull();");
+                case BOOLEAN -> line("out.writeBoolean(" + expr + ");");
+                case INT -> line("out.writeInt(" + expr + ");");
+                case LONG -> line(isTimestampMillis(schema)
+                        ? "out.writeLong(" + expr + ".toEpochMilli());"
+                        : "out.writeLong(" + expr + ");");
+                case FLOAT -> line("out.writeFloat(" + expr + ");");
+                case DOUBLE -> line("out.writeDouble(" + expr + ");");
+                case STRING -> line("out.writeString(" + expr + ".toString());");
+                case ENUM -> line("out.writeEnum(" + expr + ".ordinal());");
+                case RECORD -> line(codecName(schema) + ".encode(" + expr + ", out);");
+                case MAP -> {
+                    String map = next("map");
+                    String entry = next("entry");
+                    String valueType = javaType(schema.getValueType(), true);
+                    line("java.util.Map<java.lang.String, " + valueType + "> " + map + " = " + expr + ";");
+                    line("out.writeMapStart();");
+                    line("out.setItemCount(" + map + ".size());");
+                    line("for (java.util.Map.Entry<java.lang.String, " + valueType + "> " + entry + " : "
+                            + map + ".entrySet()) {");
+                    indent++;
+                    line("out.startItem();");
+                    line("out.writeString(" + entry + ".getKey());");
+                    writeValue(schema.getValueType(), entry + ".getValue()");
+                    indent--;
+                    line("}");
+                    line("out.writeMapEnd();");
+                }
+                case ARRAY -> {
+                    String list = next("list");
+                    String item = next("item");
+                    String elementType = javaType(schema.getElementType(), true);
+                    line("java.util.List<" + elementType + "> " + list + " = " + expr + ";");
+                    line("out.writeArrayStart();");
+                    line("out.setItemCount(" + list + ".size());");
+                    line("for (" + elementType + " " + item + " : " + list + ") {");
+                    indent++;
+                    line("out.startItem();");
+                    writeValue(schema.getElementType(), item);
+                    indent--;
+                    line("}");
+                    line("out.writeArrayEnd();");
+                }
+                case UNION -> writeUnion(schema, expr);
+                default -> throw new IllegalArgumentException("Unsupported schema type: " + schema);
+            }
+        }
+
+        private void writeUnion(Schema union, String expr) {
+            String value = next("value");
+            line("java.lang.Object " + value + " = " + expr + ";");
+            List<Schema> branches = union.getTypes();
+            for (int i = 0; i < branches.size(); i++) {
+                Schema branch = branches.get(i);
+                String keyword = i == 0 ? "if" : "} else if";
+                if (branch.getType() == Schema.Type.NULL) {
+                    line(keyword + " (" + value + " == null) {");
+                    indent++;
+                    line("out.writeIndex(" + i + ");");
+                    line("out.writeNull();");
+                } else {
+                    String typed = next("branch");
+                    line(keyword + " (" + value + " instanceof " + instanceType(branch) + " " + typed + ") {");
+                    indent++;
+                    line("out.writeIndex(" + i + ");");
+                    writeValue(branch, castForWrite(branch, typed));
+                }
+                indent--;
+            }
+            line("} else {");
+            indent++;
+            line("throw new AvroRuntimeException(\"Not in union " + String.join(", ", unionNames(union))
+                    + ": \" + " + value + ");");
+            indent--;
+            line("}");
+        }
+
+        private String castForWrite(Schema branch, String typed) {
+            return switch (branch.getType()) {
+                case MAP, ARRAY -> "((" + javaType(branch, true) + ") " + typed + ")";
+                default -> typed;
+            };
+        }
+
+        private String readValue(Schema schema, String reuse) {
+            return switch (schema.getType()) {
+                case NULL -> {
+                    line("in.readNull();");
+                    yield "null";
+                }
+                case BOOLEAN -> "in.readBoolean()";
+                case INT -> "in.readInt()";
+                case LONG -> isTimestampMillis(schema)
+                        ? "java.time.Instant.ofEpochMilli(in.readLong())"
+                        : "in.readLong()";
+                case FLOAT -> "in.readFloat()";
+                case DOUBLE -> "in.readDouble()";
+                case STRING -> "in.readString()";
+                case ENUM -> {
+                    enums.add(schema.getFullName());
+                    yield enumConstant(schema.getFullName()) + "[in.readEnum()]";
+                }
+                case RECORD -> codecName(schema) + ".decode(" + reuse + ", in)";
+                case MAP -> readMap(schema);
+                case ARRAY -> readArray(schema);
+                case UNION -> readUnion(schema, reuse);
+                default -> throw new IllegalArgumentException("Unsupported schema type: " + schema);
+            };
+        }
+
+        private String readMap(Schema schema) {
+            String map = next("map");
+            String count = next("count");
+            String i = next("i");
+            line("java.util.Map<java.lang.String, " + javaType(schema.getValueType(), true) + "> " + map
+                    + " = new java.util.HashMap<>();");
+            line("for (long " + count + " = in.readMapStart(); " + count + " != 0; " + count + " = in.mapNext()) {");
+            indent++;
+            line("for (long " + i + " = 0; " + i + " < " + count + "; " + i + "++) {");
+            indent++;
+            String key = next("key");
+            line("java.lang.String " + key + " = in.readString();");
+            String value = readValue(schema.getValueType(), "null");
+            line(map + ".put(" + key + ", " + value + ");");
+            indent--;
+            line("}");
+            indent--;
+            line("}");
+            return map;
+        }
+
+        private String readArray(Schema schema) {
+            String list = next("list");
+            String count = next("count");
+            String i = next("i");
+            line("java.util.List<" + javaType(schema.getElementType(), true) + "> " + list
+                    + " = new java.util.ArrayList<>();");
+            line("for (long " + count + " = in.readArrayStart(); " + count + " != 0; " + count
+                    + " = in.arrayNext()) {");
+            indent++;
+            line("for (long " + i + " = 0; " + i + " < " + count + "; " + i + "++) {");
+            indent++;
+            String value = readValue(schema.getElementType(), "null");
+            line(list + ".add(" + value + ");");
+            indent--;
+            line("}");
+            indent--;
+            line("}");
+            return list;
+        }
+
+        private String readUnion(Schema union, String reuse) {
+            String result = next("union");
+            String index = next("index");
+            String old = next("old");
+            line(javaType(union, true) + " " + result + ";");
+            line("java.lang.Object " + old + " = " + reuse + ";");
+            line("int " + index + " = in.readIndex();");
+            List<Schema> branches = union.getTypes();
+            for (int i = 0; i < branches.size(); i++) {
+                Schema branch = branches.get(i);
+                line((i == 0 ? "if" : "} else if") + " (" + index + " == " + i + ") {");
+                indent++;
+                String branchReuse = branch.getType() == Schema.Type.RECORD
+                        ? "(" + old + " instanceof " + branch.getFullName() + " ? "
+                        + "(" + branch.getFullName() + ") " + old + " : null)"
+                        : "null";
+                String value = readValue(branch, branchReuse);
+                line(result + " = " + value + ";");
+                indent--;
+            }
+            line("} else {");
+            indent++;
+            line("throw new AvroRuntimeException(\"Unknown union index \" + " + index + ");");
+            indent--;
+            line("}");
+            return result;
+        }
+
+        private String enumConstant(String enumType) {
+            return "ENUM_" + enumType.substring(enumType.lastIndexOf('.') + 1);
+        }
+
+        private String next(String prefix) {
+            return prefix + (tmp++);
+        }
+
+        private void line(String code) {
+            if (!code.isEmpty()) {
+                out.append("    ".repeat(indent)).append(code);
+            }
+            out.append('\n');
+        }
+    }
+}
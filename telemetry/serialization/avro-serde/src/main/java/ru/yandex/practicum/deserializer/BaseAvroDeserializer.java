@@ -1,34 +1,29 @@
 package ru.yandex.practicum.deserializer;
 
 import org.apache.avro.Schema;
-import org.apache.avro.io.BinaryDecoder;
-import org.apache.avro.io.DatumReader;
-import org.apache.avro.io.DecoderFactory;
-import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.common.serialization.Deserializer;
 import ru.yandex.practicum.exception.DeserializationException;
+import ru.yandex.practicum.serialization.AvroCodecs;
 
 public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deserializer<T> {
 
-    private final DecoderFactory decoderFactory;
-    private final DatumReader<T> reader;
+    private final Schema schema;
 
     public BaseAvroDeserializer(Schema schema) {
-        this(DecoderFactory.get(), schema);
-    }
-
-    public BaseAvroDeserializer(DecoderFactory decoderFactory, Schema schema) {
-        this.decoderFactory = decoderFactory;
-        this.reader = new SpecificDatumReader<>(schema);
+        this.schema = schema;
     }
 
     @Override
     public T deserialize(String topic, byte[] data) {
+        // экземпляр записи не переиспользуется: Kafka отдаёт все записи poll() разом
+        return deserialize(topic, data, null);
+    }
+
+    public T deserialize(String topic, byte[] data, T reuse) {
         try {
             if (data != null) {
-                BinaryDecoder decoder = decoderFactory.binaryDecoder(data, null);
-                return reader.read(null, decoder);
+                return AvroCodecs.decode(schema, data, reuse);
             }
             return null;
         } catch (Exception e) {
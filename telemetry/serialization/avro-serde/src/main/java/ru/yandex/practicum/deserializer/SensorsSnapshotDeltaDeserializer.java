@@ -0,0 +1,9 @@
+package ru.yandex.practicum.deserializer;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+
+public class SensorsSnapshotDeltaDeserializer extends BaseAvroDeserializer<SensorsSnapshotDeltaAvro> {
+    public SensorsSnapshotDeltaDeserializer() {
+        super(SensorsSnapshotDeltaAvro.getClassSchema());
+    }
+}
@@ -0,0 +1,114 @@
+package ru.yandex.practicum.serialization;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import ru.yandex.practicum.kafka.telemetry.event.codec.FastAvroCodecs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Общая точка (де)сериализации Avro для всех сервисов телеметрии.
+ * <p>
+ * {@link SpecificDatumWriter} и {@link SpecificDatumReader} строятся один раз на схему и разделяются
+ * между потоками. Энкодер, декодер и буфер вывода у каждого потока свои и переиспользуются
+ * от записи к записи, поэтому на одну запись выделяется только итоговый массив байт.
+ * <p>
+ * Для схем, по которым при сборке сгенерированы кодеки ({@link FastAvroCodecs}), используются они;
+ * остальные схемы идут через обычные Specific-реализации. Отключить сгенерированные кодеки можно
+ * системным свойством {@code -Davro.fast-codecs.enabled=false}.
+ */
+public final class AvroCodecs {
+
+    // буфер, выросший больше этого размера, не удерживается потоком после записи
+    private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+    private static final boolean FAST_CODECS_ENABLED =
+            Boolean.parseBoolean(System.getProperty("avro.fast-codecs.enabled", "true"));
+
+    private static final ConcurrentMap<Schema, DatumWriter<?>> WRITERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Schema, DatumReader<?>> READERS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<EncodeContext> ENCODE_CONTEXT = ThreadLocal.withInitial(EncodeContext::new);
+    private static final ThreadLocal<BinaryDecoder[]> DECODER = ThreadLocal.withInitial(() -> new BinaryDecoder[1]);
+
+    private AvroCodecs() {
+    }
+
+    public static <T extends SpecificRecord> byte[] encode(T record) throws IOException {
+        return encodeWith(out -> AvroCodecs.<T>writer(record.getSchema()).write(record, out));
+    }
+
+    /**
+     * Пишет байты записи вручную, например при транскодировании из другого формата,
+     * используя те же переиспользуемые энкодер и буфер потока.
+     */
+    public static byte[] encodeWith(EncoderAction action) throws IOException {
+        EncodeContext context = ENCODE_CONTEXT.get();
+        try {
+            context.encoder = EncoderFactory.get().binaryEncoder(context.out, context.encoder);
+            action.write(context.encoder);
+            context.encoder.flush();
+            return context.out.toByteArray();
+        } finally {
+            context.reset();
+        }
+    }
+
+    /**
+     * Декодирует запись, по возможности заполняя {@code reuse} вместо создания нового объекта.
+     * Переиспользовать экземпляр можно только если вызывающий код больше не держит на него ссылок.
+     */
+    public static <T extends SpecificRecord> T decode(Schema schema, byte[] data, T reuse) throws IOException {
+        BinaryDecoder[] holder = DECODER.get();
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(data, holder[0]);
+        holder[0] = decoder;
+        return AvroCodecs.<T>reader(schema).read(reuse, decoder);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> DatumWriter<T> writer(Schema schema) {
+        return (DatumWriter<T>) WRITERS.computeIfAbsent(schema, s -> {
+            DatumWriter<?> fast = FAST_CODECS_ENABLED ? FastAvroCodecs.writerFor(s) : null;
+            return fast != null ? fast : new SpecificDatumWriter<>(s);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> DatumReader<T> reader(Schema schema) {
+        return (DatumReader<T>) READERS.computeIfAbsent(schema, s -> {
+            DatumReader<?> fast = FAST_CODECS_ENABLED ? FastAvroCodecs.readerFor(s) : null;
+            return fast != null ? fast : new SpecificDatumReader<>(s);
+        });
+    }
+
+    @FunctionalInterface
+    public interface EncoderAction {
+        void write(Encoder out) throws IOException;
+    }
+
+    private static final class EncodeContext {
+        private ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        private BinaryEncoder encoder;
+
+        private void reset() {
+            if (out.size() > MAX_RETAINED_BUFFER) {
+                out = new ByteArrayOutputStream(256);
+                encoder = null;
+            } else {
+                out.reset();
+            }
+        }
+    }
+}
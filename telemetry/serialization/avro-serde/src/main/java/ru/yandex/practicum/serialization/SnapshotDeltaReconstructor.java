@@ -0,0 +1,78 @@
+package ru.yandex.practicum.serialization;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Сборка полных снапшотов хабов из потока {@link SensorsSnapshotDeltaAvro}.
+ * <p>
+ * Ключевой кадр заменяет состояние хаба целиком, дельта дописывается к нему. Если номер дельты
+ * не следует сразу за предыдущим (пропуск или хаб ещё не видели), состояние хаба сбрасывается
+ * и до следующего ключевого кадра снапшоты по нему не выдаются. Повторно доставленные записи
+ * (номер не больше уже применённого) пропускаются. Не потокобезопасен: один экземпляр на поток чтения.
+ */
+public class SnapshotDeltaReconstructor {
+
+    private final Map<String, HubSnapshot> hubs = new HashMap<>();
+    private long resyncs;
+
+    /**
+     * @return снапшот хаба после применения записи или пустой результат, если хаб ждёт ключевого кадра
+     * либо запись — повтор. Снапшот живой: он меняется следующими вызовами для этого хаба
+     */
+    public Optional<SensorsSnapshotAvro> apply(SensorsSnapshotDeltaAvro delta) {
+        String hubId = delta.getHubId();
+        HubSnapshot hub = hubs.get(hubId);
+        if (delta.getKeyframe()) {
+            if (hub == null) {
+                hub = new HubSnapshot(hubId);
+                hubs.put(hubId, hub);
+            }
+            hub.sensors.clear();
+            return Optional.of(hub.apply(delta));
+        }
+        if (hub == null) {
+            return Optional.empty();
+        }
+        if (delta.getSequence() <= hub.sequence) {
+            return Optional.empty();
+        }
+        if (delta.getSequence() != hub.sequence + 1) {
+            hubs.remove(hubId);
+            resyncs++;
+            return Optional.empty();
+        }
+        return Optional.of(hub.apply(delta));
+    }
+
+    /**
+     * Сколько раз из-за пропуска в номерах пришлось ждать ключевого кадра.
+     */
+    public long resyncs() {
+        return resyncs;
+    }
+
+    private static final class HubSnapshot {
+        private final Map<String, SensorStateAvro> sensors = new HashMap<>();
+        private final SensorsSnapshotAvro snapshot;
+        private long sequence;
+
+        private HubSnapshot(String hubId) {
+            this.snapshot = new SensorsSnapshotAvro();
+            snapshot.setHubId(hubId);
+            snapshot.setSensorsState(sensors);
+        }
+
+        private SensorsSnapshotAvro apply(SensorsSnapshotDeltaAvro delta) {
+            sensors.putAll(delta.getSensorsState());
+            snapshot.setTimestamp(delta.getTimestamp());
+            sequence = delta.getSequence();
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.serializer;
+
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+import ru.yandex.practicum.serialization.AvroCodecs;
+
+import java.io.IOException;
+
+public class AvroSerializer<T extends SpecificRecordBase> implements Serializer<T> {
+
+    @Override
+    public byte[] serialize(String topic, T data) {
+        if (data == null) {
+            return null;
+        }
+
+        try {
+            return AvroCodecs.encode(data);
+        } catch (IOException ex) {
+            throw new SerializationException("Ошибка сериализации данных для топика [" + topic + "]", ex);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ru.yandex.practicum.serialization;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import ru.yandex.practicum.kafka.telemetry.event.ActionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceActionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceRemovedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioConditionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioRemovedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * {@link AvroCodecs} (в том числе сгенерированные кодеки) должен давать те же байты,
+ * что и {@code SpecificDatumWriter}, и читать их обратно в равную запись.
+ */
+class AvroCodecsTest {
+
+    private static final Instant TIMESTAMP = Instant.ofEpochMilli(1_700_000_000_123L);
+
+    static Stream<SpecificRecord> samples() {
+        return Stream.of(
+                sensorEvent(ClimateSensorAvro.newBuilder().setTemperatureC(21).setHumidity(45).setCo2Level(600).build()),
+                sensorEvent(LightSensorAvro.newBuilder().setLinkQuality(90).setLuminosity(300).build()),
+                sensorEvent(MotionSensorAvro.newBuilder().setLinkQuality(80).setMotion(true).setVoltage(220).build()),
+                sensorEvent(SwitchSensorAvro.newBuilder().setState(false).build()),
+                sensorEvent(TemperatureSensorAvro.newBuilder().setTemperatureC(-5).setTemperatureF(23).build()),
+                hubEvent(DeviceAddedEventAvro.newBuilder().setId("sensor.1").setType(DeviceTypeAvro.SWITCH_SENSOR).build()),
+                hubEvent(DeviceRemovedEventAvro.newBuilder().setId("sensor.1").build()),
+                hubEvent(ScenarioAddedEventAvro.newBuilder()
+                        .setName("Свет в коридоре")
+                        .setConditions(List.of(
+                                condition(ConditionTypeAvro.MOTION, ConditionOperationAvro.EQUALS, true),
+                                condition(ConditionTypeAvro.LUMINOSITY, ConditionOperationAvro.LOWER_THAN, 100),
+                                condition(ConditionTypeAvro.TEMPERATURE, ConditionOperationAvro.GREATER_THAN, null)))
+                        .setActions(List.of(
+                                action(ActionTypeAvro.ACTIVATE, null),
+                                action(ActionTypeAvro.SET_VALUE, -1)))
+                        .build()),
+                hubEvent(ScenarioRemovedEventAvro.newBuilder().setName("Свет в коридоре").build()),
+                snapshot(0),
+                snapshot(100),
+                SensorsSnapshotDeltaAvro.newBuilder()
+                        .setHubId("hub-1")
+                        .setSequence(Long.MAX_VALUE)
+                        .setKeyframe(true)
+                        .setTimestamp(TIMESTAMP)
+                        .setSensorsState(snapshot(3).getSensorsState())
+                        .build()
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("samples")
+    void encodesSameBytesAsSpecificWriter(SpecificRecord sample) throws Exception {
+        assertArrayEquals(specificEncode(sample), AvroCodecs.encode(sample));
+    }
+
+    @ParameterizedTest
+    @MethodSource("samples")
+    void decodesSpecificWriterBytes(SpecificRecord sample) throws Exception {
+        byte[] data = specificEncode(sample);
+
+        assertEquals(sample, AvroCodecs.decode(sample.getSchema(), data, null));
+        assertEquals(sample, specificDecode(sample, AvroCodecs.encode(sample)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("samples")
+    void decodesIntoReusedInstance(SpecificRecord sample) throws Exception {
+        byte[] data = AvroCodecs.encode(sample);
+        SpecificRecord reuse = AvroCodecs.decode(sample.getSchema(), data, null);
+
+        SpecificRecord decoded = AvroCodecs.decode(sample.getSchema(), data, reuse);
+
+        assertSame(reuse, decoded);
+        assertEquals(sample, decoded);
+    }
+
+    private static byte[] specificEncode(SpecificRecord record) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new SpecificDatumWriter<SpecificRecord>(record.getSchema()).write(record, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    private static SpecificRecord specificDecode(SpecificRecord sample, byte[] data) throws Exception {
+        return new SpecificDatumReader<SpecificRecord>(sample.getSchema())
+                .read(null, DecoderFactory.get().binaryDecoder(data, null));
+    }
+
+    private static SensorEventAvro sensorEvent(Object payload) {
+        return SensorEventAvro.newBuilder()
+                .setId("sensor.1")
+                .setHubId("hub-1")
+                .setTimestamp(TIMESTAMP)
+                .setPayload(payload)
+                .build();
+    }
+
+    private static HubEventAvro hubEvent(Object payload) {
+        return HubEventAvro.newBuilder()
+                .setHubId("hub-1")
+                .setTimestamp(TIMESTAMP)
+                .setPayload(payload)
+                .build();
+    }
+
+    private static ScenarioConditionAvro condition(ConditionTypeAvro type, ConditionOperationAvro operation,
+                                                   Object value) {
+        return ScenarioConditionAvro.newBuilder()
+                .setSensorId("sensor.1")
+                .setType(type)
+                .setOperation(operation)
+                .setValue(value)
+                .build();
+    }
+
+    private static DeviceActionAvro action(ActionTypeAvro type, Integer value) {
+        return DeviceActionAvro.newBuilder()
+                .setSensorId("sensor.2")
+                .setType(type)
+                .setValue(value)
+                .build();
+    }
+
+    private static SensorsSnapshotAvro snapshot(int sensors) {
+        Map<String, SensorStateAvro> states = new HashMap<>();
+        for (int i = 0; i < sensors; i++) {
+            states.put("sensor.climate." + i, SensorStateAvro.newBuilder()
+                    .setTimestamp(Instant.ofEpochMilli(TIMESTAMP.toEpochMilli() - i))
+                    .setData(ClimateSensorAvro.newBuilder()
+                            .setTemperatureC(20 + i % 5)
+                            .setHumidity(40 + i % 10)
+                            .setCo2Level(500 + i)
+                            .build())
+                    .build());
+        }
+        return SensorsSnapshotAvro.newBuilder()
+                .setHubId("hub-1")
+                .setTimestamp(TIMESTAMP)
+                .setSensorsState(states)
+                .build();
+    }
+}
@@ -0,0 +1,128 @@
+package ru.yandex.practicum.serialization;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Замер выделений памяти и времени на одну запись для {@link AvroCodecs}
+ * в сравнении с прежним подходом (новые writer/reader и буфер на каждый вызов).
+ * Совпадение формата проверяет {@link AvroCodecsTest}.
+ * <p>
+ * Лежит в тестовых исходниках и не попадает в jar модуля. Запуск после {@code mvn test-compile}:
+ * {@code java -cp target/test-classes:target/classes:<classpath> ru.yandex.practicum.serialization.AvroSerdeBenchmark [records]}
+ */
+public final class AvroSerdeBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private AvroSerdeBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        SensorEventAvro event = sensorEvent();
+        SensorsSnapshotAvro snapshot = snapshot(100);
+
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1; // первый проход — прогрев JIT
+            run(report, "SensorEventAvro    encode (per-call writer)", records, () -> legacyEncode(event));
+            run(report, "SensorEventAvro    encode (AvroCodecs)     ", records, () -> AvroCodecs.encode(event));
+            run(report, "SensorsSnapshot100 encode (per-call writer)", records / 10, () -> legacyEncode(snapshot));
+            run(report, "SensorsSnapshot100 encode (AvroCodecs)     ", records / 10, () -> AvroCodecs.encode(snapshot));
+
+            byte[] eventBytes = AvroCodecs.encode(event);
+            SensorEventAvro reuse = new SensorEventAvro();
+            run(report, "SensorEventAvro    decode (per-call reader)", records, () -> legacyDecode(eventBytes));
+            run(report, "SensorEventAvro    decode (AvroCodecs)     ", records,
+                    () -> AvroCodecs.decode(SensorEventAvro.getClassSchema(), eventBytes, null));
+            run(report, "SensorEventAvro    decode (AvroCodecs+reuse)", records,
+                    () -> AvroCodecs.decode(SensorEventAvro.getClassSchema(), eventBytes, reuse));
+        }
+    }
+
+    private static void run(boolean report, String name, int records, Task task) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long sink = 0;
+        for (int i = 0; i < records; i++) {
+            sink += task.run() != null ? 1 : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (report && sink == records) {
+            System.out.printf("%s: %8.1f B/record, %8.1f ns/record%n",
+                    name, (double) allocated / records, (double) elapsed / records);
+        }
+    }
+
+    private static byte[] legacyEncode(SpecificRecord record) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new SpecificDatumWriter<SpecificRecord>(record.getSchema()).write(record, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    private static SensorEventAvro legacyDecode(byte[] data) throws Exception {
+        return new SpecificDatumReader<SensorEventAvro>(SensorEventAvro.getClassSchema())
+                .read(null, DecoderFactory.get().binaryDecoder(data, null));
+    }
+
+    private static SensorEventAvro sensorEvent() {
+        return sensorEvent(ClimateSensorAvro.newBuilder()
+                .setTemperatureC(21)
+                .setHumidity(45)
+                .setCo2Level(600)
+                .build());
+    }
+
+    private static SensorEventAvro sensorEvent(Object payload) {
+        return SensorEventAvro.newBuilder()
+                .setId("sensor.1")
+                .setHubId("hub-1")
+                .setTimestamp(Instant.ofEpochMilli(System.currentTimeMillis()))
+                .setPayload(payload)
+                .build();
+    }
+
+    private static SensorsSnapshotAvro snapshot(int sensors) {
+        Map<String, SensorStateAvro> states = new HashMap<>();
+        for (int i = 0; i < sensors; i++) {
+            states.put("sensor.climate." + i, SensorStateAvro.newBuilder()
+                    .setTimestamp(Instant.ofEpochMilli(System.currentTimeMillis()))
+                    .setData(ClimateSensorAvro.newBuilder()
+                            .setTemperatureC(20 + i % 5)
+                            .setHumidity(40 + i % 10)
+                            .setCo2Level(500 + i)
+                            .build())
+                    .build());
+        }
+        return SensorsSnapshotAvro.newBuilder()
+                .setHubId("hub-1")
+                .setTimestamp(Instant.ofEpochMilli(System.currentTimeMillis()))
+                .setSensorsState(states)
+                .build();
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        Object run() throws Exception;
+    }
+}
@@ -0,0 +1,129 @@
+package ru.yandex.practicum.serialization;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotDeltaAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сборка снапшотов из ключевых кадров и дельт: пропуски номеров, повторы и перезапуск потока хаба.
+ */
+class SnapshotDeltaReconstructorTest {
+
+    private final SnapshotDeltaReconstructor reconstructor = new SnapshotDeltaReconstructor();
+
+    @Test
+    void deltasAreAppliedOnTopOfKeyframe() {
+        reconstructor.apply(record(0, true, Map.of("t1", 20, "t2", 30)));
+
+        SensorsSnapshotAvro snapshot = reconstructor.apply(record(1, false, Map.of("t1", 21))).orElseThrow();
+
+        assertEquals(Map.of("t1", 21, "t2", 30), temperatures(snapshot));
+        assertEquals(Instant.ofEpochMilli(1), snapshot.getTimestamp());
+    }
+
+    @Test
+    void keyframeReplacesHubState() {
+        reconstructor.apply(record(0, true, Map.of("t1", 20, "t2", 30)));
+
+        SensorsSnapshotAvro snapshot = reconstructor.apply(record(1, true, Map.of("t1", 21))).orElseThrow();
+
+        assertEquals(Map.of("t1", 21), temperatures(snapshot));
+    }
+
+    @Test
+    void deltaOfUnknownHubWaitsForKeyframe() {
+        assertTrue(reconstructor.apply(record(3, false, Map.of("t1", 20))).isEmpty());
+        assertEquals(0, reconstructor.resyncs());
+    }
+
+    @Test
+    void redeliveredRecordsAreSkipped() {
+        reconstructor.apply(record(0, true, Map.of("t1", 20)));
+        reconstructor.apply(record(1, false, Map.of("t1", 21)));
+        reconstructor.apply(record(2, false, Map.of("t1", 22)));
+
+        assertTrue(reconstructor.apply(record(1, false, Map.of("t1", 21))).isEmpty());
+        assertTrue(reconstructor.apply(record(2, false, Map.of("t1", 22))).isEmpty());
+        assertEquals(Map.of("t1", 23),
+                temperatures(reconstructor.apply(record(3, false, Map.of("t1", 23))).orElseThrow()));
+        assertEquals(0, reconstructor.resyncs());
+    }
+
+    @Test
+    void gapWaitsForNextKeyframe() {
+        reconstructor.apply(record(0, true, Map.of("t1", 20, "t2", 30)));
+        reconstructor.apply(record(1, false, Map.of("t1", 21)));
+
+        // запись 2 потеряна
+        assertTrue(reconstructor.apply(record(3, false, Map.of("t1", 23))).isEmpty());
+        assertTrue(reconstructor.apply(record(4, false, Map.of("t1", 24))).isEmpty());
+        assertEquals(1, reconstructor.resyncs());
+
+        SensorsSnapshotAvro snapshot = reconstructor.apply(record(5, true, Map.of("t1", 25, "t2", 35))).orElseThrow();
+        assertEquals(Map.of("t1", 25, "t2", 35), temperatures(snapshot));
+        assertEquals(Map.of("t1", 26, "t2", 35),
+                temperatures(reconstructor.apply(record(6, false, Map.of("t1", 26))).orElseThrow()));
+        assertEquals(1, reconstructor.resyncs());
+    }
+
+    @Test
+    void keyframeWithSequenceZeroRestartsStream() {
+        // так поток хаба начинается заново после отката транзакции в агрегаторе
+        reconstructor.apply(record(0, true, Map.of("t1", 20)));
+        reconstructor.apply(record(1, false, Map.of("t1", 21)));
+        reconstructor.apply(record(2, false, Map.of("t1", 22)));
+
+        SensorsSnapshotAvro snapshot = reconstructor.apply(record(0, true, Map.of("t1", 21, "t2", 30))).orElseThrow();
+        assertEquals(Map.of("t1", 21, "t2", 30), temperatures(snapshot));
+        assertEquals(Map.of("t1", 22, "t2", 30),
+                temperatures(reconstructor.apply(record(1, false, Map.of("t1", 22))).orElseThrow()));
+        assertEquals(0, reconstructor.resyncs());
+    }
+
+    @Test
+    void hubsAreTrackedSeparately() {
+        reconstructor.apply(record("hub-1", 0, true, Map.of("t1", 20)));
+        reconstructor.apply(record("hub-2", 0, true, Map.of("t1", 30)));
+
+        assertEquals(Map.of("t1", 21),
+                temperatures(reconstructor.apply(record("hub-1", 1, false, Map.of("t1", 21))).orElseThrow()));
+        assertTrue(reconstructor.apply(record("hub-2", 2, false, Map.of("t1", 32))).isEmpty());
+        assertEquals(Set.of("t1"), reconstructor.apply(record("hub-1", 2, false, Map.of()))
+                .orElseThrow().getSensorsState().keySet());
+    }
+
+    private static SensorsSnapshotDeltaAvro record(long sequence, boolean keyframe, Map<String, Integer> temperatures) {
+        return record("hub-1", sequence, keyframe, temperatures);
+    }
+
+    private static SensorsSnapshotDeltaAvro record(String hubId, long sequence, boolean keyframe,
+                                                   Map<String, Integer> temperatures) {
+        Map<String, SensorStateAvro> states = new HashMap<>();
+        temperatures.forEach((sensorId, temperature) -> states.put(sensorId, new SensorStateAvro(
+                Instant.ofEpochMilli(sequence), new TemperatureSensorAvro(temperature, temperature * 9 / 5 + 32))));
+        return SensorsSnapshotDeltaAvro.newBuilder()
+                .setHubId(hubId)
+                .setSequence(sequence)
+                .setKeyframe(keyframe)
+                .setTimestamp(Instant.ofEpochMilli(sequence))
+                .setSensorsState(states)
+                .build();
+    }
+
+    private static Map<String, Integer> temperatures(SensorsSnapshotAvro snapshot) {
+        Map<String, Integer> temperatures = new HashMap<>();
+        snapshot.getSensorsState().forEach((sensorId, state) ->
+                temperatures.put(sensorId, ((TemperatureSensorAvro) state.getData()).getTemperatureC()));
+        return temperatures;
+    }
+}